@@ -5,20 +5,41 @@ import com.jivesoftware.os.amza.api.filer.UIO;
 import com.jivesoftware.os.amza.api.partition.PartitionName;
 import com.jivesoftware.os.amza.api.partition.VersionedPartitionName;
 import com.jivesoftware.os.amza.api.ring.RingMember;
-import com.jivesoftware.os.jive.utils.collections.bah.ConcurrentBAHash;
 
 /**
- *
+ * Interns ring members and the names within partition names. Both caches are bounded and evict entries which have not been used recently,
+ * so interned instances must be compared with equals.
  */
 public class AmzaInterner {
 
-    private final BAInterner baInterner = new BAInterner();
-    private final ConcurrentBAHash<RingMember> ringMemberInterner = new ConcurrentBAHash<>(3, true, 1024);
+    private final BAInterner baInterner;
+    private final BAInternCache<RingMember> ringMemberInterner;
+
+    public AmzaInterner() {
+        this(1_048_576, 65_536);
+    }
+
+    public AmzaInterner(int maxInternedNames, int maxInternedRingMembers) {
+        this.baInterner = new BAInterner(maxInternedNames, 64);
+        this.ringMemberInterner = new BAInternCache<>(maxInternedRingMembers, 16);
+    }
 
     public long size() {
         return ringMemberInterner.size() + baInterner.size();
     }
 
+    public long hits() {
+        return ringMemberInterner.hits() + baInterner.getCache().hits();
+    }
+
+    public long misses() {
+        return ringMemberInterner.misses() + baInterner.getCache().misses();
+    }
+
+    public long evictions() {
+        return ringMemberInterner.evictions() + baInterner.getCache().evictions();
+    }
+
     public RingMember internRingMember(byte[] bytes, int offset, int length) throws InterruptedException {
         if (bytes == null || length == -1) {
             return null;
@@ -27,14 +48,7 @@ public class AmzaInterner {
         if (bytes[offset] == 0) {
             int o = offset + 1;
             int l = length - 1;
-            RingMember ringMember = ringMemberInterner.get(bytes, o, l);
-            if (ringMember == null) {
-                byte[] key = new byte[l];
-                System.arraycopy(bytes, o, key, 0, l);
-                ringMember = new RingMember(key);
-                ringMemberInterner.put(key, ringMember);
-            }
-            return ringMember;
+            return ringMemberInterner.intern(bytes, o, l, RingMember::new);
         }
         return null;
     }
@@ -0,0 +1,130 @@
+package com.jivesoftware.os.amza.api;
+
+import com.jivesoftware.os.amza.api.filer.UIO;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Length prefixed framing for the persistent client connection. Every frame is (int length, int streamId, byte type, payload) where length
+ * covers the streamId, type and payload. Many streams are multiplexed over one connection; a stream starts with a request frame, each side
+ * then sends data frames and finishes with an end or error frame. Response data is flow controlled: the server may only send as many
+ * payload bytes as the client has granted through its initial window plus any credit frames.
+ *
+ * Request and response bodies are byte for byte the same as the bodies of the equivalent /amza/v1 http endpoints, except that take request
+ * bodies start with the int limit which http carries in the path. Servers reject request bodies larger than their configured maximum with
+ * {@link #STATUS_TOO_LARGE}.
+ */
+public final class AmzaStreamProtocol {
+
+    public static final byte FRAME_REQUEST = 1;
+    public static final byte FRAME_DATA = 2;
+    public static final byte FRAME_END = 3;
+    public static final byte FRAME_ERROR = 4;
+    public static final byte FRAME_CREDIT = 5;
+
+    public static final byte OP_GET = 1;
+    public static final byte OP_GET_OFFSET = 2;
+    public static final byte OP_SCAN = 3;
+    public static final byte OP_COMMIT = 4;
+    public static final byte OP_TAKE = 5;
+    public static final byte OP_TAKE_PREFIX = 6;
+
+    public static final int MAX_FRAME_PAYLOAD = 64 * 1024;
+    public static final int INITIAL_WINDOW = 256 * 1024;
+
+    public static final int STATUS_BAD_REQUEST = 400;
+    public static final int STATUS_NOT_FOUND = 404;
+    public static final int STATUS_CONFLICT = 409;
+    public static final int STATUS_TOO_LARGE = 413;
+    public static final int STATUS_ERROR = 500;
+    public static final int STATUS_UNAVAILABLE = 503;
+    public static final int STATUS_QUORUM_TIMEOUT = 202;
+
+    private AmzaStreamProtocol() {
+    }
+
+    public static class Frame {
+
+        public final int streamId;
+        public final byte type;
+        public final byte[] payload;
+
+        public Frame(int streamId, byte type, byte[] payload) {
+            this.streamId = streamId;
+            this.type = type;
+            this.payload = payload;
+        }
+    }
+
+    /**
+     * Callers must hold the connection's write lock.
+     */
+    public static void writeFrame(DataOutputStream out, int streamId, byte type, byte[] payload, int offset, int length) throws IOException {
+        out.writeInt(4 + 1 + length);
+        out.writeInt(streamId);
+        out.writeByte(type);
+        if (length > 0) {
+            out.write(payload, offset, length);
+        }
+    }
+
+    public static Frame readFrame(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 5 || length > 5 + MAX_FRAME_PAYLOAD) {
+            throw new IOException("Invalid frame length:" + length);
+        }
+        int streamId = in.readInt();
+        byte type = in.readByte();
+        byte[] payload = new byte[length - 5];
+        in.readFully(payload);
+        return new Frame(streamId, type, payload);
+    }
+
+    public static byte[] request(byte op, byte[] partitionName, String consistency, boolean checkLeader, boolean hydrateValues) {
+        byte[] consistencyBytes = consistency.getBytes(StandardCharsets.UTF_8);
+        byte[] payload = new byte[1 + 4 + partitionName.length + 4 + consistencyBytes.length + 1 + 1];
+        int o = 0;
+        payload[o] = op;
+        o++;
+        o = putBytes(partitionName, payload, o);
+        o = putBytes(consistencyBytes, payload, o);
+        payload[o] = checkLeader ? (byte) 1 : (byte) 0;
+        o++;
+        payload[o] = hydrateValues ? (byte) 1 : (byte) 0;
+        return payload;
+    }
+
+    public static byte[] error(int status, String message) {
+        byte[] messageBytes = (message == null ? "" : message).getBytes(StandardCharsets.UTF_8);
+        byte[] payload = new byte[4 + 4 + messageBytes.length];
+        int o = putInt(status, payload, 0);
+        putBytes(messageBytes, payload, o);
+        return payload;
+    }
+
+    public static byte[] credit(int bytes) {
+        byte[] payload = new byte[4];
+        putInt(bytes, payload, 0);
+        return payload;
+    }
+
+    public static byte[] getBytes(byte[] bytes, int offset) {
+        int length = UIO.bytesInt(bytes, offset);
+        byte[] got = new byte[length];
+        System.arraycopy(bytes, offset + 4, got, 0, length);
+        return got;
+    }
+
+    private static int putInt(int value, byte[] bytes, int offset) {
+        UIO.intBytes(value, bytes, offset);
+        return offset + 4;
+    }
+
+    private static int putBytes(byte[] value, byte[] bytes, int offset) {
+        offset = putInt(value.length, bytes, offset);
+        System.arraycopy(value, 0, bytes, offset, value.length);
+        return offset + value.length;
+    }
+}
@@ -0,0 +1,116 @@
+package com.jivesoftware.os.amza.api;
+
+import com.jivesoftware.os.amza.api.PartitionClient.KeyValueFilter;
+import com.jivesoftware.os.amza.api.partition.Consistency;
+import com.jivesoftware.os.amza.api.ring.RingMember;
+import com.jivesoftware.os.amza.api.stream.ClientUpdates;
+import com.jivesoftware.os.amza.api.stream.KeyValueStream;
+import com.jivesoftware.os.amza.api.stream.KeyValueTimestampStream;
+import com.jivesoftware.os.amza.api.stream.OffsetUnprefixedWALKeys;
+import com.jivesoftware.os.amza.api.stream.PrefixedKeyRanges;
+import com.jivesoftware.os.amza.api.stream.TxKeyValueStream;
+import com.jivesoftware.os.amza.api.stream.UnprefixedWALKeys;
+import com.jivesoftware.os.amza.api.take.Highwaters;
+import com.jivesoftware.os.amza.api.take.TakeResult;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * The non blocking counterpart of {@link PartitionClient}. Each call returns as soon as it has been routed, and its future completes once
+ * the call has been solved. Streams are fed on a client thread while the answers are merged, before the future completes, so they must
+ * not block waiting on other calls to this client.
+ */
+public interface AsyncPartitionClient {
+
+    CompletableFuture<Void> commit(Consistency consistency,
+        byte[] prefix,
+        ClientUpdates updates,
+        long additionalSolverAfterNMillis,
+        long abandonSolutionAfterNMillis,
+        Optional<List<String>> solutionLog);
+
+    CompletableFuture<Long> getApproximateCount(Consistency consistency,
+        long additionalSolverAfterNMillis,
+        long abandonLeaderSolutionAfterNMillis,
+        long abandonSolutionAfterNMillis,
+        Optional<List<String>> solutionLog);
+
+    CompletableFuture<Boolean> get(Consistency consistency,
+        byte[] prefix,
+        UnprefixedWALKeys keys,
+        KeyValueTimestampStream valuesStream,
+        long additionalSolverAfterNMillis,
+        long abandonLeaderSolutionAfterNMillis,
+        long abandonSolutionAfterNMillis,
+        Optional<List<String>> solutionLog);
+
+    CompletableFuture<Boolean> getOffset(Consistency consistency,
+        byte[] prefix,
+        OffsetUnprefixedWALKeys keys,
+        KeyValueTimestampStream valuesStream,
+        long additionalSolverAfterNMillis,
+        long abandonLeaderSolutionAfterNMillis,
+        long abandonSolutionAfterNMillis,
+        Optional<List<String>> solutionLog);
+
+    CompletableFuture<Boolean> getRaw(Consistency consistency,
+        byte[] prefix,
+        UnprefixedWALKeys keys,
+        KeyValueStream valuesStream,
+        long additionalSolverAfterNMillis,
+        long abandonLeaderSolutionAfterNMillis,
+        long abandonSolutionAfterNMillis,
+        Optional<List<String>> solutionLog);
+
+    /**
+     * @param ranges the ranges (from key/prefix is nullable and inclusive, to key/prefix is nullable and exclusive)
+     */
+    CompletableFuture<Boolean> scan(Consistency consistency,
+        boolean compressed,
+        PrefixedKeyRanges ranges,
+        KeyValueTimestampStream scan,
+        long additionalSolverAfterNMillis,
+        long abandonLeaderSolutionAfterNMillis,
+        long abandonSolutionAfterNMillis,
+        Optional<List<String>> solutionLog);
+
+    CompletableFuture<Boolean> scanFiltered(Consistency consistency,
+        boolean compressed,
+        PrefixedKeyRanges ranges,
+        KeyValueFilter filter,
+        KeyValueTimestampStream scan,
+        long additionalSolverAfterNMillis,
+        long abandonLeaderSolutionAfterNMillis,
+        long abandonSolutionAfterNMillis,
+        Optional<List<String>> solutionLog);
+
+    CompletableFuture<Boolean> scanKeys(Consistency consistency,
+        boolean compressed,
+        PrefixedKeyRanges ranges,
+        KeyValueTimestampStream scan,
+        long additionalSolverAfterNMillis,
+        long abandonLeaderSolutionAfterNMillis,
+        long abandonSolutionAfterNMillis,
+        Optional<List<String>> solutionLog);
+
+    CompletableFuture<TakeResult> takeFromTransactionId(List<RingMember> membersInOrder,
+        Map<RingMember, Long> memberTxIds,
+        int limit,
+        Highwaters highwaters,
+        TxKeyValueStream stream,
+        long additionalSolverAfterNMillis,
+        long abandonSolutionAfterNMillis,
+        Optional<List<String>> solutionLog);
+
+    CompletableFuture<TakeResult> takePrefixFromTransactionId(List<RingMember> membersInOrder,
+        byte[] prefix,
+        Map<RingMember, Long> memberTxIds,
+        int limit,
+        Highwaters highwaters,
+        TxKeyValueStream stream,
+        long additionalSolverAfterNMillis,
+        long abandonSolutionAfterNMillis,
+        Optional<List<String>> solutionLog);
+}
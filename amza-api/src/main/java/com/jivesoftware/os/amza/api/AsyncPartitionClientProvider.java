@@ -0,0 +1,16 @@
+package com.jivesoftware.os.amza.api;
+
+import com.jivesoftware.os.amza.api.partition.PartitionName;
+import com.jivesoftware.os.amza.api.partition.PartitionProperties;
+
+/**
+ *
+ */
+public interface AsyncPartitionClientProvider {
+
+    AsyncPartitionClient getAsyncPartition(PartitionName partitionName) throws Exception;
+
+    AsyncPartitionClient getAsyncPartition(PartitionName partitionName,
+        int ringSize,
+        PartitionProperties partitionProperties) throws Exception;
+}
@@ -0,0 +1,181 @@
+package com.jivesoftware.os.amza.api;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A size bounded interning cache keyed by byte ranges, so lookups never copy the key. Entries are spread over striped segments and each
+ * segment evicts with the CLOCK algorithm: a hit marks an entry referenced, and the hand clears marks until it finds an entry which has not
+ * been used since it last passed. Evicted values are simply interned again on their next use, so callers must compare interned values by
+ * content rather than identity.
+ *
+ * @param <V> the interned value
+ */
+public class BAInternCache<V> {
+
+    public interface ValueFactory<V> {
+
+        /**
+         * @param key a private copy of the key, which the value may keep
+         */
+        V create(byte[] key);
+    }
+
+    private final Segment<V>[] segments;
+    private final int segmentMask;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    @SuppressWarnings("unchecked")
+    public BAInternCache(int maxSize, int concurrencyLevel) {
+        int numSegments = Integer.highestOneBit(Math.max(1, Math.min(concurrencyLevel, maxSize)));
+        this.segments = new Segment[numSegments];
+        this.segmentMask = numSegments - 1;
+        int segmentCapacity = Math.max(1, maxSize / numSegments);
+        for (int i = 0; i < numSegments; i++) {
+            segments[i] = new Segment<>(segmentCapacity);
+        }
+    }
+
+    public V intern(byte[] bytes, int offset, int length, ValueFactory<V> valueFactory) {
+        int hash = hash(bytes, offset, length);
+        Segment<V> segment = segments[(hash >>> 16) & segmentMask];
+        synchronized (segment) {
+            Entry<V> entry = segment.get(hash, bytes, offset, length);
+            if (entry != null) {
+                entry.referenced = true;
+                hits.increment();
+                return entry.value;
+            }
+            byte[] key = new byte[length];
+            System.arraycopy(bytes, offset, key, 0, length);
+            V value = valueFactory.create(key);
+            if (segment.put(new Entry<>(hash, key, value))) {
+                evictions.increment();
+            }
+            misses.increment();
+            return value;
+        }
+    }
+
+    public long size() {
+        long size = 0;
+        for (Segment<V> segment : segments) {
+            synchronized (segment) {
+                size += segment.size;
+            }
+        }
+        return size;
+    }
+
+    public long hits() {
+        return hits.longValue();
+    }
+
+    public long misses() {
+        return misses.longValue();
+    }
+
+    public long evictions() {
+        return evictions.longValue();
+    }
+
+    private static int hash(byte[] bytes, int offset, int length) {
+        int hash = 1;
+        for (int i = offset; i < offset + length; i++) {
+            hash = 31 * hash + bytes[i];
+        }
+        return hash ^ (hash >>> 16);
+    }
+
+    private static class Entry<V> {
+
+        private final int hash;
+        private final byte[] key;
+        private final V value;
+        private Entry<V> next;
+        private boolean referenced;
+
+        private Entry(int hash, byte[] key, V value) {
+            this.hash = hash;
+            this.key = key;
+            this.value = value;
+        }
+
+        private boolean matches(int hash, byte[] bytes, int offset, int length) {
+            if (this.hash != hash || key.length != length) {
+                return false;
+            }
+            for (int i = 0; i < length; i++) {
+                if (key[i] != bytes[offset + i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    private static class Segment<V> {
+
+        private final Entry<V>[] buckets;
+        private final Entry<V>[] clock;
+        private int hand;
+        private int size;
+
+        @SuppressWarnings("unchecked")
+        private Segment(int capacity) {
+            this.buckets = new Entry[Integer.highestOneBit(Math.max(1, capacity - 1)) << 1];
+            this.clock = new Entry[capacity];
+        }
+
+        private Entry<V> get(int hash, byte[] bytes, int offset, int length) {
+            for (Entry<V> entry = buckets[hash & (buckets.length - 1)]; entry != null; entry = entry.next) {
+                if (entry.matches(hash, bytes, offset, length)) {
+                    return entry;
+                }
+            }
+            return null;
+        }
+
+        /**
+         * @return true if an entry was evicted to make room
+         */
+        private boolean put(Entry<V> entry) {
+            boolean evicted = false;
+            int slot;
+            if (size < clock.length) {
+                slot = size;
+                size++;
+            } else {
+                while (clock[hand].referenced) {
+                    clock[hand].referenced = false;
+                    hand = (hand + 1) % clock.length;
+                }
+                slot = hand;
+                hand = (hand + 1) % clock.length;
+                remove(clock[slot]);
+                evicted = true;
+            }
+            clock[slot] = entry;
+            int bucket = entry.hash & (buckets.length - 1);
+            entry.next = buckets[bucket];
+            buckets[bucket] = entry;
+            return evicted;
+        }
+
+        private void remove(Entry<V> evict) {
+            int bucket = evict.hash & (buckets.length - 1);
+            Entry<V> prev = null;
+            for (Entry<V> entry = buckets[bucket]; entry != null; prev = entry, entry = entry.next) {
+                if (entry == evict) {
+                    if (prev == null) {
+                        buckets[bucket] = entry.next;
+                    } else {
+                        prev.next = entry.next;
+                    }
+                    return;
+                }
+            }
+        }
+    }
+}
@@ -1,30 +1,33 @@
 package com.jivesoftware.os.amza.api;
 
-import com.jivesoftware.os.jive.utils.collections.bah.ConcurrentBAHash;
-
 /**
  *
  * @author jonathan.colt
  */
 public class BAInterner {
 
-    private final ConcurrentBAHash<byte[]> interned = new ConcurrentBAHash<>(3, false, 1024);
+    private final BAInternCache<byte[]> interned;
+
+    public BAInterner() {
+        this(1_048_576, 64);
+    }
+
+    public BAInterner(int maxSize, int concurrencyLevel) {
+        this.interned = new BAInternCache<>(maxSize, concurrencyLevel);
+    }
 
     public byte[] intern(byte[] bytes, int offset, int length) throws InterruptedException {
         if (bytes == null || length == -1) {
             return null;
         }
-        byte[] got = interned.get(bytes, offset, length);
-        if (got != null) {
-            return got;
-        }
-        byte[] copy = new byte[length];
-        System.arraycopy(bytes, offset, copy, 0, length);
-        interned.put(copy, copy);
-        return copy;
+        return interned.intern(bytes, offset, length, key -> key);
     }
 
-    public int size() {
+    public long size() {
         return interned.size();
     }
+
+    public BAInternCache<byte[]> getCache() {
+        return interned;
+    }
 }
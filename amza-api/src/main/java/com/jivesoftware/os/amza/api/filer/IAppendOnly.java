@@ -1,6 +1,7 @@
 package com.jivesoftware.os.amza.api.filer;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 /**
  *
@@ -19,6 +20,25 @@ public interface IAppendOnly extends ICloseable, IFilePointer {
      */
      void write(byte b[], int _offset, int _len) throws IOException;
 
+    /**
+     * Writes the remaining bytes of every buffer, in order, as a single gathering write where the backing storage supports it. The default
+     * copies each buffer through {@link #write(byte[], int, int)}.
+     *
+     * @param buffers
+     * @throws IOException
+     */
+    default void write(ByteBuffer[] buffers) throws IOException {
+        byte[] bytes = null;
+        for (ByteBuffer buffer : buffers) {
+            int remaining = buffer.remaining();
+            if (bytes == null || bytes.length < remaining) {
+                bytes = new byte[remaining];
+            }
+            buffer.get(bytes, 0, remaining);
+            write(bytes, 0, remaining);
+        }
+    }
+
     /**
      *
      * @throws IOException
@@ -0,0 +1,15 @@
+package com.jivesoftware.os.amza.api.filer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Implemented by readables that can expose a region of their backing storage without copying.
+ */
+public interface ISliceable {
+
+    /**
+     * @return a read only view of [position, position + length) or null if the region cannot be sliced without copying
+     */
+    ByteBuffer slice(long position, int length) throws IOException;
+}
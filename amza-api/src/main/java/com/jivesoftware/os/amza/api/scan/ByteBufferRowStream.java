@@ -0,0 +1,14 @@
+package com.jivesoftware.os.amza.api.scan;
+
+import com.jivesoftware.os.amza.api.stream.RowType;
+import java.nio.ByteBuffer;
+
+/**
+ * Like {@link RowStream} but the row may be a view of the underlying WAL. The buffer is only valid for the duration of the call, so copy
+ * out anything that needs to be retained.
+ */
+public interface ByteBufferRowStream {
+
+    boolean row(long rowFP, long rowTxId, RowType rowType, ByteBuffer row) throws Exception;
+
+}
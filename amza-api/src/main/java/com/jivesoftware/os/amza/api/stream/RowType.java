@@ -10,7 +10,8 @@ public enum RowType {
     system((byte) -1, true, false),
     highwater((byte) 0, false, false),
     primary((byte) 1, false, true),
-    snappy_primary((byte) 2, false, true);
+    snappy_primary((byte) 2, false, true),
+    deflate_primary((byte) 3, false, true);
 
     public static final long COMPACTION_HINTS_KEY = 0;
     public static final long COMMIT_KEY = 1;
@@ -34,6 +34,23 @@ public interface RowIO extends WALReader, WALWriter {
         ValidationStream forward,
         PreTruncationNotifier preTruncationNotifier) throws Exception;
 
+    /**
+     * Like {@link #validate(IoStats, boolean, boolean, ValidationStream, ValidationStream, PreTruncationNotifier)} but trusts every row
+     * before {@code fromFp}, so only the tail beyond it is scanned and truncation never goes below it.
+     */
+    void validate(IoStats ioStats,
+        long fromFp,
+        boolean backwardScan,
+        boolean truncateToLastRowFp,
+        ValidationStream backward,
+        ValidationStream forward,
+        PreTruncationNotifier preTruncationNotifier) throws Exception;
+
+    /**
+     * @return the fp and txId of the row which ends at the given fp, or null if the bytes before it do not frame a row
+     */
+    long[] rowEndingAt(long endFp) throws Exception;
+
     void hackTruncation(int numBytes);
 
     interface ValidationStream {
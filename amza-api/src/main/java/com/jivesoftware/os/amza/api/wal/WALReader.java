@@ -16,6 +16,7 @@
 package com.jivesoftware.os.amza.api.wal;
 
 import com.jivesoftware.os.amza.api.IoStats;
+import com.jivesoftware.os.amza.api.scan.ByteBufferRowStream;
 import com.jivesoftware.os.amza.api.scan.RowStream;
 import com.jivesoftware.os.amza.api.stream.Fps;
 
@@ -32,6 +33,17 @@ public interface WALReader {
      */
     boolean scan(IoStats ioStats, long offsetFp, boolean allowRepairs, RowStream rowStream) throws Exception;
 
+    /**
+     * Scans from the given fp offset (must be the start of a row) to the end of the WAL without repairs. When the WAL is memory mapped the
+     * rows are handed out as views of the mapping instead of being copied.
+     *
+     * @param offsetFp  the fp offset
+     * @param rowStream the callback stream
+     * @return true if the scan reaches the end of the WAL, otherwise false
+     * @throws Exception if an error occurred
+     */
+    boolean scanBuffers(IoStats ioStats, long offsetFp, ByteBufferRowStream rowStream) throws Exception;
+
     boolean reverseScan(IoStats ioStats, RowStream rowStream) throws Exception;
 
     byte[] readTypeByteTxIdAndRow(long fp) throws Exception;
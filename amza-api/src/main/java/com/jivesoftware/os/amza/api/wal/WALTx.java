@@ -31,6 +31,9 @@ public interface WALTx {
 
     void delete(File baseKey) throws Exception;
 
+    /**
+     * @param force when false the implementation may decide the WAL is not worth rewriting, in which case it returns null
+     */
     <I extends CompactableWALIndex> Compacted<I> compact(IoStats ioStats,
         WALCompactionStats compactionStats,
         File fromBaseKey,
@@ -42,7 +45,8 @@ public interface WALTx {
         long ttlVersion,
         long disposalVersion,
         I rowIndex,
-        int stripe) throws Exception;
+        int stripe,
+        boolean force) throws Exception;
 
     interface EndOfMerge {
 
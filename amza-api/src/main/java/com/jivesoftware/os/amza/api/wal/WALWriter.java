@@ -31,6 +31,18 @@ public interface WALWriter {
         boolean addToLeapCount,
         boolean hardFsyncBeforeLeapBoundary) throws Exception;
 
+    /**
+     * Appends the rows of several transactions as a single write. Rows for a given txId must be streamed contiguously and txIds must be
+     * streamed in ascending order.
+     */
+    int writeTxs(IoStats ioStats,
+        int estimatedNumberOfRows,
+        int estimatedSizeInBytes,
+        TxRawRows rows,
+        TxRowFpStream stream,
+        boolean addToLeapCount,
+        boolean hardFsyncBeforeLeapBoundary) throws Exception;
+
     long writeSystem(IoStats ioStats, byte[] row) throws Exception;
 
     long writeHighwater(IoStats ioStats, byte[] row) throws Exception;
@@ -47,6 +59,21 @@ public interface WALWriter {
         boolean stream(byte[] row) throws Exception;
     }
 
+    interface TxRawRows {
+
+        boolean consume(TxRawRowStream stream) throws Exception;
+    }
+
+    interface TxRawRowStream {
+
+        boolean stream(long txId, RowType rowType, byte[] row) throws Exception;
+    }
+
+    interface TxRowFpStream {
+
+        boolean stream(long txId, long fp) throws Exception;
+    }
+
     interface IndexableKeys {
 
         boolean consume(IndexableKeyStream stream) throws Exception;
@@ -1,5 +1,6 @@
 package com.jivesoftware.os.amza.api;
 
+import com.jivesoftware.os.amza.api.filer.UIO;
 import org.testng.Assert;
 import org.testng.annotations.Test;
 
@@ -25,4 +26,21 @@ public class BAInternerTest {
         }
     }
 
-}
\ No newline at end of file
+    @Test
+    public void testBoundedEviction() throws InterruptedException {
+        BAInterner interner = new BAInterner(100, 1);
+        byte[] hot = new byte[] { -1, -1, -1, -1 };
+        byte[] internedHot = interner.intern(hot, 0, hot.length);
+        for (int i = 0; i < 10_000; i++) {
+            byte[] bytes = UIO.intBytes(i);
+            Assert.assertEquals(interner.intern(bytes, 0, bytes.length), bytes);
+            // keep touching one entry so the clock hand passes it by
+            Assert.assertSame(interner.intern(hot, 0, hot.length), internedHot);
+        }
+        Assert.assertEquals(interner.size(), 100);
+        Assert.assertTrue(interner.getCache().evictions() > 0);
+        Assert.assertEquals(interner.getCache().misses(), 10_001);
+        Assert.assertEquals(interner.getCache().hits(), 10_000);
+    }
+
+}
@@ -2,6 +2,7 @@ package com.jivesoftware.os.amzabot.deployable;
 
 import org.merlin.config.Config;
 import org.merlin.config.defaults.BooleanDefault;
+import org.merlin.config.defaults.DoubleDefault;
 import org.merlin.config.defaults.IntDefault;
 import org.merlin.config.defaults.LongDefault;
 
@@ -13,6 +14,24 @@ public interface AmzaBotConfig extends Config {
     @IntDefault(100)
     int getAmzaCallerThreadPoolSize();
 
+    @IntDefault(128)
+    int getAmzaHostLatencyWindowSize();
+
+    @IntDefault(16)
+    int getAmzaHostLatencyMinSamples();
+
+    @DoubleDefault(0.99d)
+    double getAmzaHedgePercentile();
+
+    @LongDefault(1)
+    long getAmzaMinHedgeMillis();
+
+    @IntDefault(32)
+    int getAmzaHedgeProbeOneInN();
+
+    @LongDefault(10 * 60_000)
+    long getAmzaHostLatencyExpireAfterMillis();
+
     @LongDefault(1_000L)
     long getAdditionalSolverAfterNMillis();
 
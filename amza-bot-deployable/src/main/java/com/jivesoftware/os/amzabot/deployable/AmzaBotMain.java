@@ -5,6 +5,7 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.jivesoftware.os.amza.api.partition.Consistency;
 import com.jivesoftware.os.amza.api.partition.Durability;
 import com.jivesoftware.os.amza.client.http.AmzaClientProvider;
+import com.jivesoftware.os.amza.client.http.HostLatencies;
 import com.jivesoftware.os.amza.client.http.HttpPartitionClientFactory;
 import com.jivesoftware.os.amza.client.http.HttpPartitionHostsProvider;
 import com.jivesoftware.os.amza.client.http.RingHostHttpClientProvider;
@@ -128,6 +129,12 @@ public class AmzaBotMain {
                 new HttpPartitionHostsProvider(amzaClient, tailAtScaleStrategy, objectMapper),
                 new RingHostHttpClientProvider(amzaClient),
                 Executors.newFixedThreadPool(amzaBotConfig.getAmzaCallerThreadPoolSize()),
+                new HostLatencies(amzaBotConfig.getAmzaHostLatencyWindowSize(),
+                    amzaBotConfig.getAmzaHostLatencyMinSamples(),
+                    amzaBotConfig.getAmzaHedgePercentile(),
+                    amzaBotConfig.getAmzaMinHedgeMillis(),
+                    amzaBotConfig.getAmzaHedgeProbeOneInN(),
+                    amzaBotConfig.getAmzaHostLatencyExpireAfterMillis()),
                 amzaBotConfig.getAmzaAwaitLeaderElectionForNMillis(),
                 -1,
                 -1);
@@ -2,14 +2,12 @@ package com.jivesoftware.os.amza.client.collection;
 
 import com.google.common.collect.Maps;
 import com.jivesoftware.os.amza.api.PartitionClient;
+import com.jivesoftware.os.amza.api.PartitionClientProvider;
 import com.jivesoftware.os.amza.api.partition.Consistency;
 import com.jivesoftware.os.amza.api.partition.PartitionName;
 import com.jivesoftware.os.amza.api.partition.PartitionProperties;
-import com.jivesoftware.os.amza.client.http.AmzaClientProvider;
 import com.jivesoftware.os.mlogger.core.MetricLogger;
 import com.jivesoftware.os.mlogger.core.MetricLoggerFactory;
-import com.jivesoftware.os.routing.bird.http.client.HttpClient;
-import com.jivesoftware.os.routing.bird.shared.HttpClientException;
 import java.nio.charset.StandardCharsets;
 import java.util.Collection;
 import java.util.Collections;
@@ -20,11 +18,13 @@ import java.util.Optional;
 
 /**
  * Created by jonathan.colt on 1/16/17.
+ *
+ * Gets are served from the client side when the provider is a {@link com.jivesoftware.os.amza.client.http.CachingPartitionClientProvider}.
  */
 public class AmzaMap<K, V> {
 
     private static final MetricLogger LOG = MetricLoggerFactory.getLogger();
-    private final AmzaClientProvider<HttpClient, HttpClientException> clientProvider;
+    private final PartitionClientProvider clientProvider;
 
     private final PartitionProperties partitionProperties;
     private final int ringSize = 3; //TODO expose to conf?
@@ -35,7 +35,7 @@ public class AmzaMap<K, V> {
     private final long abandonLeaderSolutionAfterNMillis = 5_000; //TODO expose to conf?
     private final long abandonSolutionAfterNMillis = 30_000; //TODO expose to conf?
 
-    public AmzaMap(AmzaClientProvider clientProvider,
+    public AmzaMap(PartitionClientProvider clientProvider,
         String partitionName,
         PartitionProperties partitionProperties,
         AmzaMarshaller<K> keyMarshaller,
@@ -1,12 +1,12 @@
 package com.jivesoftware.os.amza.client.http;
 
 import com.google.common.base.Predicates;
-import com.google.common.cache.Cache;
-import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.jivesoftware.os.amza.api.partition.Consistency;
 import com.jivesoftware.os.amza.api.partition.PartitionName;
+import com.jivesoftware.os.amza.api.ring.RingHost;
 import com.jivesoftware.os.amza.api.ring.RingMember;
 import com.jivesoftware.os.amza.api.ring.RingMemberAndHost;
 import com.jivesoftware.os.amza.client.http.exceptions.LeaderElectionInProgressException;
@@ -21,16 +21,22 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Optional;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.CompletionService;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorCompletionService;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiFunction;
+import java.util.function.Function;
 
 /**
  * @author jonathan.colt
@@ -40,20 +46,70 @@ public class AmzaClientCallRouter<C, E extends Throwable> implements RouteInvali
     private static final MetricLogger LOG = MetricLoggerFactory.getLogger();
 
     private final ExecutorService callerThreads;
+    private final ScheduledExecutorService timer;
     private final PartitionHostsProvider partitionHostsProvider;
     private final RingHostClientProvider<C, E> clientProvider;
-    private final Cache<PartitionName, Ring> partitionRoutingCache;
+    private final PartitionRoutingCache partitionRoutingCache;
+    private final HostLatencies hostLatencies;
 
     public AmzaClientCallRouter(ExecutorService callerThreads,
+        PartitionHostsProvider partitionHostsProvider,
+        RingHostClientProvider<C, E> clientProvider) {
+        this(callerThreads, SharedTimer.TIMER, partitionHostsProvider, clientProvider);
+    }
+
+    public AmzaClientCallRouter(ExecutorService callerThreads,
+        PartitionRoutingCache partitionRoutingCache,
+        PartitionHostsProvider partitionHostsProvider,
+        RingHostClientProvider<C, E> clientProvider) {
+        this(callerThreads, SharedTimer.TIMER, partitionRoutingCache, partitionHostsProvider, clientProvider);
+    }
+
+    /**
+     * @param timer hedges and abandons the async calls, so it only ever runs short tasks
+     */
+    public AmzaClientCallRouter(ExecutorService callerThreads,
+        ScheduledExecutorService timer,
+        PartitionHostsProvider partitionHostsProvider,
+        RingHostClientProvider<C, E> clientProvider) {
+        this(callerThreads,
+            timer,
+            new PartitionRoutingCache(50_000, TimeUnit.MINUTES.toMillis(5)), //TODO config
+            partitionHostsProvider,
+            clientProvider);
+    }
+
+    /**
+     * @param partitionRoutingCache may be shared by the routers of many partitions so warmup and pushed leader changes reach all of them
+     */
+    public AmzaClientCallRouter(ExecutorService callerThreads,
+        ScheduledExecutorService timer,
+        PartitionRoutingCache partitionRoutingCache,
+        PartitionHostsProvider partitionHostsProvider,
+        RingHostClientProvider<C, E> clientProvider) {
+        this(callerThreads,
+            timer,
+            partitionRoutingCache,
+            HostLatencies.defaults(),
+            partitionHostsProvider,
+            clientProvider);
+    }
+
+    /**
+     * @param hostLatencies should be shared by the routers of many partitions, since a host is about as fast for all of them
+     */
+    public AmzaClientCallRouter(ExecutorService callerThreads,
+        ScheduledExecutorService timer,
+        PartitionRoutingCache partitionRoutingCache,
+        HostLatencies hostLatencies,
         PartitionHostsProvider partitionHostsProvider,
         RingHostClientProvider<C, E> clientProvider) {
         this.callerThreads = callerThreads;
+        this.timer = timer;
+        this.partitionRoutingCache = partitionRoutingCache;
+        this.hostLatencies = hostLatencies;
         this.partitionHostsProvider = partitionHostsProvider;
         this.clientProvider = clientProvider;
-        this.partitionRoutingCache = CacheBuilder.newBuilder()
-            .maximumSize(50_000) //TODO config
-            .expireAfterWrite(5, TimeUnit.MINUTES) //TODO config
-            .build();
     }
 
     public <R, A extends Abortable> R write(List<String> solutionLog,
@@ -78,7 +134,7 @@ public class AmzaClientCallRouter<C, E extends Throwable> implements RouteInvali
                     leader.ringMember, leader);
             } catch (LeaderElectionInProgressException | NoLongerTheLeaderException | ExecutionException e) {
                 LOG.inc("reattempts>write>" + e.getClass().getSimpleName() + ">" + consistency.name());
-                partitionRoutingCache.invalidate(partitionName);
+                partitionRoutingCache.invalidateLeader(partitionName, ring.leader().ringMember);
                 ring = ring(partitionName,
                     consistency,
                     (e instanceof ExecutionException) ? Optional.empty() : Optional.of(ring.leader()),
@@ -104,7 +160,22 @@ public class AmzaClientCallRouter<C, E extends Throwable> implements RouteInvali
 
     @Override
     public void invalidateRouting(PartitionName partitionName) {
-        partitionRoutingCache.invalidate(partitionName);
+        partitionRoutingCache.invalidateLeader(partitionName);
+    }
+
+    /**
+     * Looks up the host of a member of the currently cached ring, or null if the partition's ring is not cached or does not contain the member.
+     */
+    public RingHost ringHost(PartitionName partitionName, RingMember ringMember) {
+        Ring ring = partitionRoutingCache.getIfPresent(partitionName);
+        if (ring != null) {
+            for (RingMemberAndHost memberAndHost : ring.actualRing()) {
+                if (memberAndHost.ringMember.equals(ringMember)) {
+                    return memberAndHost.ringHost;
+                }
+            }
+        }
+        return null;
     }
 
     public <R, A extends Abortable> R read(List<String> solutionLog,
@@ -146,7 +217,7 @@ public class AmzaClientCallRouter<C, E extends Throwable> implements RouteInvali
                     closeable = true;
                 } catch (LeaderElectionInProgressException | NoLongerTheLeaderException | ExecutionException e) {
                     LOG.inc("reattempts>read>" + e.getClass().getSimpleName() + ">" + consistency.name());
-                    partitionRoutingCache.invalidate(partitionName);
+                    partitionRoutingCache.invalidateLeader(partitionName, leader.ringMember);
                     ring = ring(partitionName,
                         consistency,
                         (e instanceof ExecutionException) ? Optional.empty() : Optional.of(ring.leader()),
@@ -192,7 +263,7 @@ public class AmzaClientCallRouter<C, E extends Throwable> implements RouteInvali
                 LOG.error("Illegal argument, there is likely a problem with the request to leader {} for {}", new Object[] { leader, partitionName }, x);
                 throw x;
             } catch (Exception x) {
-                partitionRoutingCache.invalidate(partitionName);
+                partitionRoutingCache.invalidateLeader(partitionName, leader.ringMember);
                 if (consistency == Consistency.leader) {
                     LOG.error("Failed to read from leader {} for {}", new Object[] { leader, partitionName }, x);
                     throw x;
@@ -219,75 +290,51 @@ public class AmzaClientCallRouter<C, E extends Throwable> implements RouteInvali
                 }
             }
 
-            if (consistency == Consistency.leader_plus_one) {
-                RingMemberAndHost[] leaderlessRing = ring.leaderlessRing();
-                if (solutionLog != null) {
-                    solutionLog.add("Failing over READ to all " + leaderlessRing.length + " members.");
-                }
-                return solve(solutionLog,
-                    partitionName,
-                    family,
-                    call,
-                    leaderlessRing.length,
-                    false,
-                    merger,
-                    additionalSolverAfterNMillis,
-                    abandonSolutionAfterNMillis,
-                    null,
-                    leaderlessRing);
-            } else if (consistency == Consistency.leader_quorum) {
-                RingMemberAndHost[] leaderlessRing = ring.leaderlessRing();
-                int neighborQuorum = 1 + consistency.repairQuorum(leaderlessRing.length);
-                if (solutionLog != null) {
-                    solutionLog.add("Failing over READ to " + neighborQuorum + " out of" + leaderlessRing.length + " members.");
-                }
-                return solve(solutionLog,
-                    partitionName,
-                    family,
-                    call,
-                    neighborQuorum,
-                    true,
-                    merger,
-                    additionalSolverAfterNMillis,
-                    abandonSolutionAfterNMillis,
-                    null,
-                    leaderlessRing);
-            } else if (consistency == Consistency.leader_all) {
-                RingMemberAndHost[] leaderlessRing = ring.leaderlessRing();
-                if (solutionLog != null) {
-                    solutionLog.add("Failing over READ to 1 out of" + leaderlessRing.length + " members.");
-                }
-                return solve(solutionLog,
-                    partitionName,
-                    family,
-                    call,
-                    1,
-                    true,
-                    merger,
-                    additionalSolverAfterNMillis,
-                    abandonSolutionAfterNMillis,
-                    null,
-                    leaderlessRing);
-            } else {
-                throw new RuntimeException("Unsupported leader read consistency:" + consistency);
+            Solvers solvers = leaderFailoverSolvers(solutionLog, consistency, ring);
+            return solve(solutionLog, partitionName, family, call, solvers.mandatory, solvers.addNewSolverOnTimeout, merger, additionalSolverAfterNMillis,
+                abandonSolutionAfterNMillis, null, solvers.ringMemberAndHosts);
+        } else {
+            Solvers solvers = readSolvers(consistency, ring);
+            return solve(solutionLog, partitionName, family, call, solvers.mandatory, solvers.addNewSolverOnTimeout, merger, additionalSolverAfterNMillis,
+                abandonSolutionAfterNMillis, null, solvers.ringMemberAndHosts);
+        }
+    }
+
+    private Solvers leaderFailoverSolvers(List<String> solutionLog, Consistency consistency, Ring ring) {
+        if (consistency == Consistency.leader_plus_one) {
+            RingMemberAndHost[] leaderlessRing = ring.leaderlessRing();
+            if (solutionLog != null) {
+                solutionLog.add("Failing over READ to all " + leaderlessRing.length + " members.");
+            }
+            return new Solvers(leaderlessRing.length, false, leaderlessRing);
+        } else if (consistency == Consistency.leader_quorum) {
+            RingMemberAndHost[] leaderlessRing = hostLatencies.order(ring.leaderlessRing());
+            int neighborQuorum = 1 + consistency.repairQuorum(leaderlessRing.length);
+            if (solutionLog != null) {
+                solutionLog.add("Failing over READ to " + neighborQuorum + " out of" + leaderlessRing.length + " members.");
             }
-        } else if (consistency == Consistency.quorum) {
-            RingMemberAndHost[] randomizeRing = ring.randomizeRing();
+            return new Solvers(neighborQuorum, true, leaderlessRing);
+        } else if (consistency == Consistency.leader_all) {
+            RingMemberAndHost[] leaderlessRing = hostLatencies.order(ring.leaderlessRing());
+            if (solutionLog != null) {
+                solutionLog.add("Failing over READ to 1 out of" + leaderlessRing.length + " members.");
+            }
+            return new Solvers(1, true, leaderlessRing);
+        } else {
+            throw new RuntimeException("Unsupported leader read consistency:" + consistency);
+        }
+    }
+
+    private Solvers readSolvers(Consistency consistency, Ring ring) {
+        if (consistency == Consistency.quorum) {
+            RingMemberAndHost[] randomizeRing = hostLatencies.order(ring.randomizeRing());
             int neighborQuorum = consistency.quorum(randomizeRing.length - 1);
-            return solve(solutionLog, partitionName, family, call, 1 + neighborQuorum, true, merger, additionalSolverAfterNMillis, abandonSolutionAfterNMillis,
-                null, randomizeRing);
+            return new Solvers(1 + neighborQuorum, true, randomizeRing);
         } else if (consistency == Consistency.write_one_read_all) {
             RingMemberAndHost[] actualRing = ring.actualRing();
-            return solve(solutionLog, partitionName, family, call, actualRing.length, false, merger, additionalSolverAfterNMillis, abandonSolutionAfterNMillis,
-                null, actualRing);
-        } else if (consistency == Consistency.write_all_read_one) {
-            RingMemberAndHost[] randomizeRing = ring.randomizeRing();
-            return solve(solutionLog, partitionName, family, call, 1, true, merger, additionalSolverAfterNMillis, abandonSolutionAfterNMillis, null,
-                randomizeRing);
-        } else if (consistency == Consistency.none) {
-            RingMemberAndHost[] randomizeRing = ring.randomizeRing();
-            return solve(solutionLog, partitionName, family, call, 1, true, merger, additionalSolverAfterNMillis, abandonSolutionAfterNMillis, null,
-                randomizeRing);
+            return new Solvers(actualRing.length, false, actualRing);
+        } else if (consistency == Consistency.write_all_read_one || consistency == Consistency.none) {
+            return new Solvers(1, true, hostLatencies.order(ring.randomizeRing()));
         } else {
             throw new IllegalStateException("Unsupported read consistency:" + consistency.name());
         }
@@ -309,6 +356,194 @@ public class AmzaClientCallRouter<C, E extends Throwable> implements RouteInvali
         return solve(solutionLog, partitionName, family, call, 1, true, merger, additionalSolverAfterNMillis, abandonSolutionAfterNMillis, null, orderedRing);
     }
 
+    /**
+     * The non blocking counterpart of {@link #write}. Nothing waits on the solution, and the future completes with the merged answers. A
+     * leader write which fails because the leader changed or with an {@link ExecutionException} is reattempted as {@link #write} would.
+     */
+    public <R, A extends Abortable> CompletableFuture<R> writeAsync(List<String> solutionLog,
+        PartitionName partitionName,
+        Consistency consistency,
+        String family,
+        PartitionCall<C, A, E> partitionCall,
+        Merger<R, A> merger,
+        long awaitLeaderElectionForNMillis,
+        long additionalSolverAfterNMillis,
+        long abandonSolutionAfterNMillis) {
+
+        return ringAsync(partitionName, consistency, Optional.empty(), awaitLeaderElectionForNMillis).thenCompose(ring -> {
+            if (consistency.requiresLeader()) {
+                RingMemberAndHost leader = ring.leader();
+                if (solutionLog != null) {
+                    solutionLog.add("Writing to " + leader);
+                }
+                return handleCompose(solveAsync(solutionLog, partitionName, family, partitionCall, 1, false, merger, additionalSolverAfterNMillis,
+                    abandonSolutionAfterNMillis, leader.ringMember, leader),
+                    (result, t) -> {
+                        if (t == null) {
+                            return CompletableFuture.completedFuture(result);
+                        }
+                        // like write, an execution failure re-resolves the ring without a leader hint
+                        Throwable cause = unwrap(t);
+                        Throwable leaderChanged = leaderChanged(cause);
+                        boolean executionFailed = leaderChanged == null && cause instanceof ExecutionException;
+                        if (leaderChanged == null && !executionFailed) {
+                            return failed(cause);
+                        }
+                        Throwable reattempt = executionFailed ? cause : leaderChanged;
+                        LOG.inc("reattempts>write>" + reattempt.getClass().getSimpleName() + ">" + consistency.name());
+                        partitionRoutingCache.invalidateLeader(partitionName, leader.ringMember);
+                        Optional<RingMemberAndHost> useHost = executionFailed ? Optional.empty() : Optional.of(leader);
+                        return ringAsync(partitionName, consistency, useHost, awaitLeaderElectionForNMillis).thenCompose(nextRing -> {
+                            RingMemberAndHost nextLeader = nextRing.leader();
+                            if (solutionLog != null) {
+                                solutionLog.add("Leader may have changed. Reattempting WRITE against " + nextLeader);
+                            }
+                            return solveAsync(solutionLog, partitionName, family, partitionCall, 1, false, merger, additionalSolverAfterNMillis,
+                                abandonSolutionAfterNMillis, nextLeader.ringMember, nextLeader);
+                        });
+                    });
+            } else if (consistency == Consistency.quorum
+                || consistency == Consistency.write_all_read_one
+                || consistency == Consistency.write_one_read_all
+                || consistency == Consistency.none) {
+                return solveAsync(solutionLog, partitionName, family, partitionCall, 1, false, merger, additionalSolverAfterNMillis,
+                    abandonSolutionAfterNMillis, null, ring.randomizeRing());
+            } else {
+                return failed(new IllegalStateException("Unsupported write consistency:" + consistency.name()));
+            }
+        });
+    }
+
+    /**
+     * The non blocking counterpart of {@link #read}. A leader read which times out or fails is retried against the followers exactly as
+     * {@link #read} would, by composing the failover onto the leader's future.
+     */
+    public <R, A extends Abortable> CompletableFuture<R> readAsync(List<String> solutionLog,
+        PartitionName partitionName,
+        Consistency consistency,
+        String family,
+        PartitionCall<C, A, E> call,
+        Merger<R, A> merger,
+        long awaitLeaderElectionForNMillis,
+        long additionalSolverAfterNMillis,
+        long abandonLeaderSolutionAfterNMillis,
+        long abandonSolutionAfterNMillis) {
+
+        return ringAsync(partitionName, consistency, Optional.empty(), awaitLeaderElectionForNMillis).thenCompose(ring -> {
+            if (!consistency.requiresLeader()) {
+                Solvers solvers = readSolvers(consistency, ring);
+                return solveAsync(solutionLog, partitionName, family, call, solvers.mandatory, solvers.addNewSolverOnTimeout, merger,
+                    additionalSolverAfterNMillis, abandonSolutionAfterNMillis, null, solvers.ringMemberAndHosts);
+            }
+
+            AtomicReference<Ring> ringRef = new AtomicReference<>(ring);
+            RingMemberAndHost initialLeader = ring.leader();
+            if (solutionLog != null) {
+                solutionLog.add("Reading from " + initialLeader);
+            }
+            CompletableFuture<R> leaderRead = handleCompose(solveAsync(solutionLog, partitionName, family, call, 1, false, merger,
+                abandonLeaderSolutionAfterNMillis, abandonLeaderSolutionAfterNMillis, initialLeader.ringMember, initialLeader),
+                (result, t) -> {
+                    if (t == null) {
+                        return CompletableFuture.completedFuture(result);
+                    }
+                    Throwable cause = unwrap(t);
+                    if (cause instanceof TimeoutException || cause instanceof IllegalArgumentException) {
+                        return failed(cause);
+                    }
+                    LOG.inc("reattempts>read>" + cause.getClass().getSimpleName() + ">" + consistency.name());
+                    partitionRoutingCache.invalidateLeader(partitionName, initialLeader.ringMember);
+                    return ringAsync(partitionName, consistency, Optional.empty(), awaitLeaderElectionForNMillis).thenCompose(nextRing -> {
+                        ringRef.set(nextRing);
+                        RingMemberAndHost nextLeader = nextRing.leader();
+                        if (solutionLog != null) {
+                            solutionLog.add("Leader may have changed. Reattempting READ against " + nextLeader);
+                        }
+                        return solveAsync(solutionLog, partitionName, family, call, 1, false, merger,
+                            abandonLeaderSolutionAfterNMillis, abandonLeaderSolutionAfterNMillis, nextLeader.ringMember, nextLeader);
+                    });
+                });
+
+            return handleCompose(leaderRead, (result, t) -> {
+                if (t == null) {
+                    return CompletableFuture.completedFuture(result);
+                }
+                Throwable cause = unwrap(t);
+                RingMemberAndHost leader = ringRef.get().leader();
+                if (cause instanceof TimeoutException) {
+                    if (consistency == Consistency.leader) {
+                        LOG.error("Timed out reading from leader {} for {}", new Object[] { leader, partitionName }, cause);
+                        return failed(cause);
+                    }
+                    LOG.inc("timeout>read>" + consistency.name());
+                    LOG.warn("Timed out reading from leader {} for {}, will retry at quorum", leader, partitionName);
+                } else if (cause instanceof IllegalArgumentException) {
+                    LOG.error("Illegal argument, there is likely a problem with the request to leader {} for {}", new Object[] { leader, partitionName },
+                        cause);
+                    return failed(cause);
+                } else {
+                    partitionRoutingCache.invalidateLeader(partitionName, leader.ringMember);
+                    if (consistency == Consistency.leader) {
+                        LOG.error("Failed to read from leader {} for {}", new Object[] { leader, partitionName }, cause);
+                        return failed(cause);
+                    }
+                    LOG.inc("failover>read>" + consistency.name());
+                    LOG.warn("Failed to read from leader {} for {}, will retry at quorum", new Object[] { leader, partitionName }, cause);
+                }
+                Solvers solvers = leaderFailoverSolvers(solutionLog, consistency, ringRef.get());
+                return solveAsync(solutionLog, partitionName, family, call, solvers.mandatory, solvers.addNewSolverOnTimeout, merger,
+                    additionalSolverAfterNMillis, abandonSolutionAfterNMillis, null, solvers.ringMemberAndHosts);
+            });
+        });
+    }
+
+    /**
+     * The non blocking counterpart of {@link #take}.
+     */
+    public <R, A extends Abortable> CompletableFuture<R> takeAsync(List<String> solutionLog,
+        PartitionName partitionName,
+        List<RingMember> membersInOrder,
+        String family,
+        PartitionCall<C, A, E> call,
+        Merger<R, A> merger,
+        long awaitLeaderElectionForNMillis,
+        long additionalSolverAfterNMillis,
+        long abandonSolutionAfterNMillis) {
+
+        return ringAsync(partitionName, Consistency.none, Optional.empty(), awaitLeaderElectionForNMillis).thenCompose(ring -> {
+            RingMemberAndHost[] orderedRing = ring.orderedRing(membersInOrder);
+            return solveAsync(solutionLog, partitionName, family, call, 1, true, merger, additionalSolverAfterNMillis, abandonSolutionAfterNMillis, null,
+                orderedRing);
+        });
+    }
+
+    /**
+     * Only hands the lookup to a caller thread when the ring is not already cached, since a lookup may wait on a leader election.
+     */
+    private CompletableFuture<Ring> ringAsync(PartitionName partitionName,
+        Consistency consistency,
+        Optional<RingMemberAndHost> useHost,
+        long waitForLeaderElection) {
+
+        Ring ring = partitionRoutingCache.getIfPresent(partitionName);
+        if (ring != null && (!consistency.requiresLeader() || ring.leader() != null)) {
+            return CompletableFuture.completedFuture(ring);
+        }
+        CompletableFuture<Ring> future = new CompletableFuture<>();
+        try {
+            callerThreads.execute(() -> {
+                try {
+                    future.complete(ring(partitionName, consistency, useHost, waitForLeaderElection));
+                } catch (Throwable t) {
+                    future.completeExceptionally(t);
+                }
+            });
+        } catch (Throwable t) {
+            future.completeExceptionally(t);
+        }
+        return future;
+    }
+
     private Ring ring(PartitionName partitionName,
         Consistency consistency,
         Optional<RingMemberAndHost> useHost,
@@ -339,39 +574,20 @@ public class AmzaClientCallRouter<C, E extends Throwable> implements RouteInvali
         RingMember leader,
         RingMemberAndHost... ringMemberAndHosts) throws Exception {
         long start = System.currentTimeMillis();
+        long hedgeAfterNMillis = addNewSolverOnTimeout
+            ? hostLatencies.hedgeAfterMillis(ringMemberAndHosts, mandatory, addAdditionalSolverAfterNMillis)
+            : addAdditionalSolverAfterNMillis;
         List<Abortable> abortables = Collections.synchronizedList(Lists.newArrayListWithCapacity(mandatory));
         List<Abortable> closeables = Lists.newArrayListWithCapacity(mandatory);
         AtomicBoolean complete = new AtomicBoolean(false);
         boolean closeable = false;
         try {
-            if (solutionLog != null) {
-                solutionLog.add("Solving...");
-                solutionLog.add("family:" + family);
-                solutionLog.add("partitionName:" + partitionName);
-                solutionLog.add("mandatory:" + mandatory);
-                solutionLog.add("addNewSolverOnTimeout:" + addNewSolverOnTimeout);
-                solutionLog.add("addAdditionalSolverAfterNMillis:" + addAdditionalSolverAfterNMillis);
-                solutionLog.add("abandonSolutionAfterNMillis:" + abandonSolutionAfterNMillis);
-            }
-
-            Iterable<Callable<RingMemberAndHostAnswer<A>>> callOrder = Iterables.transform(
-                Iterables.filter(Arrays.asList(ringMemberAndHosts), Predicates.notNull()),
-                (ringMemberAndHost) -> {
-                    if (solutionLog != null) {
-                        solutionLog.add("Adding solver " + ringMemberAndHost);
-                    }
-                    return () -> {
-                        A answer = clientProvider.call(partitionName, leader, ringMemberAndHost, family, partitionCall);
-                        abortables.add(answer);
-                        if (complete.get()) {
-                            answer.abort();
-                            throw new InterruptedException("Aborted future");
-                        }
-                        return new RingMemberAndHostAnswer<>(ringMemberAndHost, answer);
-                    };
-                });
+            logSolving(solutionLog, partitionName, family, mandatory, addNewSolverOnTimeout, addAdditionalSolverAfterNMillis, hedgeAfterNMillis,
+                abandonSolutionAfterNMillis);
+            Iterable<Callable<RingMemberAndHostAnswer<A>>> callOrder = callOrder(solutionLog, partitionName, family, partitionCall,
+                addAdditionalSolverAfterNMillis, complete, abortables, leader, ringMemberAndHosts);
             List<RingMemberAndHostAnswer<A>> solutions = solve(solutionLog, callerThreads, callOrder.iterator(), mandatory,
-                addNewSolverOnTimeout, addAdditionalSolverAfterNMillis, abandonSolutionAfterNMillis);
+                addNewSolverOnTimeout, hedgeAfterNMillis, abandonSolutionAfterNMillis);
             for (RingMemberAndHostAnswer<A> solution : solutions) {
                 closeables.add(solution.getAnswer());
                 abortables.remove(solution.getAnswer());
@@ -395,7 +611,152 @@ public class AmzaClientCallRouter<C, E extends Throwable> implements RouteInvali
             }
             throw t;
         } finally {
-            complete.set(true);
+            release(partitionName, leader, ringMemberAndHosts, complete, abortables, closeables, closeable);
+        }
+    }
+
+    private <R, A extends Abortable> CompletableFuture<R> solveAsync(List<String> solutionLog,
+        PartitionName partitionName,
+        String family,
+        PartitionCall<C, A, E> partitionCall,
+        int mandatory,
+        boolean addNewSolverOnTimeout,
+        Merger<R, A> merger,
+        long addAdditionalSolverAfterNMillis,
+        long abandonSolutionAfterNMillis,
+        RingMember leader,
+        RingMemberAndHost... ringMemberAndHosts) {
+        long start = System.currentTimeMillis();
+        long hedgeAfterNMillis = addNewSolverOnTimeout
+            ? hostLatencies.hedgeAfterMillis(ringMemberAndHosts, mandatory, addAdditionalSolverAfterNMillis)
+            : addAdditionalSolverAfterNMillis;
+        List<Abortable> abortables = Collections.synchronizedList(Lists.newArrayListWithCapacity(mandatory));
+        AtomicBoolean complete = new AtomicBoolean(false);
+        logSolving(solutionLog, partitionName, family, mandatory, addNewSolverOnTimeout, addAdditionalSolverAfterNMillis, hedgeAfterNMillis,
+            abandonSolutionAfterNMillis);
+        Iterable<Callable<RingMemberAndHostAnswer<A>>> callOrder = callOrder(solutionLog, partitionName, family, partitionCall,
+            addAdditionalSolverAfterNMillis, complete, abortables, leader, ringMemberAndHosts);
+
+        CompletableFuture<R> merged = new CompletableFuture<>();
+        new AsyncSolution<>(solutionLog, callerThreads, timer, callOrder.iterator(), mandatory, addNewSolverOnTimeout, hedgeAfterNMillis,
+            abandonSolutionAfterNMillis).solve().whenComplete((solutions, failure) -> {
+                // runs on the solver thread which completed the solution, so merging streams the answers without another hand off
+                List<Abortable> closeables = Lists.newArrayListWithCapacity(mandatory);
+                boolean closeable = false;
+                R result = null;
+                Throwable t = failure;
+                if (t == null) {
+                    try {
+                        for (RingMemberAndHostAnswer<A> solution : solutions) {
+                            closeables.add(solution.getAnswer());
+                            abortables.remove(solution.getAnswer());
+                        }
+                        result = merger.merge(solutions);
+                        if (solutionLog != null) {
+                            solutionLog.add("Solved. " + (System.currentTimeMillis() - start) + "millis");
+                        }
+                        closeable = true;
+                    } catch (Throwable mt) {
+                        t = mt;
+                    }
+                }
+                release(partitionName, leader, ringMemberAndHosts, complete, abortables, closeables, closeable);
+                if (t == null) {
+                    merged.complete(result);
+                    return;
+                }
+                if (t instanceof NotSolveableException) {
+                    LOG.inc("notSolveable");
+                    partitionRoutingCache.invalidate(partitionName);
+                    if (solutionLog != null) {
+                        solutionLog.add("Not solvable. " + (System.currentTimeMillis() - start) + "millis");
+                    }
+                } else if (solutionLog != null) {
+                    solutionLog.add("Failed to solve." + t + " " + (System.currentTimeMillis() - start) + "millis");
+                }
+                merged.completeExceptionally(t);
+            });
+        return merged;
+    }
+
+    private void logSolving(List<String> solutionLog,
+        PartitionName partitionName,
+        String family,
+        int mandatory,
+        boolean addNewSolverOnTimeout,
+        long addAdditionalSolverAfterNMillis,
+        long hedgeAfterNMillis,
+        long abandonSolutionAfterNMillis) {
+        if (solutionLog != null) {
+            solutionLog.add("Solving...");
+            solutionLog.add("family:" + family);
+            solutionLog.add("partitionName:" + partitionName);
+            solutionLog.add("mandatory:" + mandatory);
+            solutionLog.add("addNewSolverOnTimeout:" + addNewSolverOnTimeout);
+            solutionLog.add("addAdditionalSolverAfterNMillis:" + addAdditionalSolverAfterNMillis);
+            solutionLog.add("hedgeAfterNMillis:" + hedgeAfterNMillis);
+            solutionLog.add("abandonSolutionAfterNMillis:" + abandonSolutionAfterNMillis);
+        }
+    }
+
+    private <A extends Abortable> Iterable<Callable<RingMemberAndHostAnswer<A>>> callOrder(List<String> solutionLog,
+        PartitionName partitionName,
+        String family,
+        PartitionCall<C, A, E> partitionCall,
+        long addAdditionalSolverAfterNMillis,
+        AtomicBoolean complete,
+        List<Abortable> abortables,
+        RingMember leader,
+        RingMemberAndHost[] ringMemberAndHosts) {
+        return Iterables.transform(
+            Iterables.filter(Arrays.asList(ringMemberAndHosts), Predicates.notNull()),
+            (ringMemberAndHost) -> {
+                if (solutionLog != null) {
+                    solutionLog.add("Adding solver " + ringMemberAndHost);
+                }
+                return solver(partitionName, family, partitionCall, leader, ringMemberAndHost, addAdditionalSolverAfterNMillis, complete, abortables);
+            });
+    }
+
+    private <A extends Abortable> Callable<RingMemberAndHostAnswer<A>> solver(PartitionName partitionName,
+        String family,
+        PartitionCall<C, A, E> partitionCall,
+        RingMember leader,
+        RingMemberAndHost ringMemberAndHost,
+        long addAdditionalSolverAfterNMillis,
+        AtomicBoolean complete,
+        List<Abortable> abortables) {
+        return () -> {
+            long callStart = System.currentTimeMillis();
+            A answer;
+            try {
+                answer = clientProvider.call(partitionName, leader, ringMemberAndHost, family, partitionCall);
+            } catch (Exception x) {
+                long elapsed = System.currentTimeMillis() - callStart;
+                // an abandoned call only tells us the host was slower than the winners, not that it failed
+                boolean abandoned = complete.get() || Thread.currentThread().isInterrupted() || x instanceof InterruptedException;
+                hostLatencies.failed(ringMemberAndHost, elapsed, abandoned ? elapsed : addAdditionalSolverAfterNMillis);
+                throw x;
+            }
+            hostLatencies.completed(ringMemberAndHost, System.currentTimeMillis() - callStart);
+            abortables.add(answer);
+            if (complete.get()) {
+                answer.abort();
+                throw new InterruptedException("Aborted future");
+            }
+            return new RingMemberAndHostAnswer<>(ringMemberAndHost, answer);
+        };
+    }
+
+    private void release(PartitionName partitionName,
+        RingMember leader,
+        RingMemberAndHost[] ringMemberAndHosts,
+        AtomicBoolean complete,
+        List<Abortable> abortables,
+        List<Abortable> closeables,
+        boolean closeable) {
+        complete.set(true);
+        synchronized (abortables) {
             for (Abortable abortable : abortables) {
                 try {
                     abortable.abort();
@@ -404,17 +765,17 @@ public class AmzaClientCallRouter<C, E extends Throwable> implements RouteInvali
                         new Object[] { abortable, leader, Arrays.toString(ringMemberAndHosts), partitionName }, t);
                 }
             }
-            for (Abortable abortable : closeables) {
-                try {
-                    if (closeable) {
-                        abortable.close();
-                    } else {
-                        abortable.abort();
-                    }
-                } catch (Throwable t) {
-                    LOG.warn("Failed to close {} using leader {} hosts {} for {} closeable:{}",
-                        new Object[] { abortable, leader, Arrays.toString(ringMemberAndHosts), partitionName, closeable }, t);
+        }
+        for (Abortable abortable : closeables) {
+            try {
+                if (closeable) {
+                    abortable.close();
+                } else {
+                    abortable.abort();
                 }
+            } catch (Throwable t) {
+                LOG.warn("Failed to close {} using leader {} hosts {} for {} closeable:{}",
+                    new Object[] { abortable, leader, Arrays.toString(ringMemberAndHosts), partitionName, closeable }, t);
             }
         }
     }
@@ -496,4 +857,55 @@ public class AmzaClientCallRouter<C, E extends Throwable> implements RouteInvali
         return answers;
     }
 
+    private static <T, U> CompletableFuture<U> handleCompose(CompletableFuture<T> future, BiFunction<T, Throwable, CompletableFuture<U>> handler) {
+        return future.handle(handler).thenCompose(Function.identity());
+    }
+
+    private static <T> CompletableFuture<T> failed(Throwable t) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        future.completeExceptionally(t);
+        return future;
+    }
+
+    private static Throwable unwrap(Throwable t) {
+        while (t instanceof CompletionException && t.getCause() != null) {
+            t = t.getCause();
+        }
+        return t;
+    }
+
+    private static Throwable leaderChanged(Throwable t) {
+        for (Throwable cause = t; cause != null; cause = cause.getCause()) {
+            if (cause instanceof LeaderElectionInProgressException || cause instanceof NoLongerTheLeaderException) {
+                return cause;
+            }
+        }
+        return null;
+    }
+
+    private static class Solvers {
+
+        private final int mandatory;
+        private final boolean addNewSolverOnTimeout;
+        private final RingMemberAndHost[] ringMemberAndHosts;
+
+        private Solvers(int mandatory, boolean addNewSolverOnTimeout, RingMemberAndHost[] ringMemberAndHosts) {
+            this.mandatory = mandatory;
+            this.addNewSolverOnTimeout = addNewSolverOnTimeout;
+            this.ringMemberAndHosts = ringMemberAndHosts;
+        }
+    }
+
+    static class SharedTimer {
+
+        static final ScheduledExecutorService TIMER = create();
+
+        private static ScheduledExecutorService create() {
+            ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1,
+                new ThreadFactoryBuilder().setNameFormat("amza-client-timer-%d").setDaemon(true).build());
+            // hedges are rescheduled on every answer, so don't let the cancelled ones pile up until their delay
+            timer.setRemoveOnCancelPolicy(true);
+            return timer;
+        }
+    }
 }
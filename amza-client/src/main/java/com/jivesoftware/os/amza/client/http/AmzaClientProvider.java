@@ -1,24 +1,36 @@
 package com.jivesoftware.os.amza.client.http;
 
+import com.google.common.collect.Iterables;
 import com.google.common.collect.Maps;
+import com.jivesoftware.os.amza.api.AsyncPartitionClient;
+import com.jivesoftware.os.amza.api.AsyncPartitionClientProvider;
 import com.jivesoftware.os.amza.api.PartitionClient;
 import com.jivesoftware.os.amza.api.PartitionClientProvider;
 import com.jivesoftware.os.amza.api.RingPartitionProperties;
 import com.jivesoftware.os.amza.api.partition.PartitionName;
 import com.jivesoftware.os.amza.api.partition.PartitionProperties;
+import com.jivesoftware.os.mlogger.core.MetricLogger;
+import com.jivesoftware.os.mlogger.core.MetricLoggerFactory;
+import java.util.Collection;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
 
 /**
  *
  * @author jonathan.colt
  */
-public class AmzaClientProvider<C, E extends Throwable> implements PartitionClientProvider {
+public class AmzaClientProvider<C, E extends Throwable> implements PartitionClientProvider, AsyncPartitionClientProvider {
+
+    private static final MetricLogger LOG = MetricLoggerFactory.getLogger();
 
     private final PartitionClientFactory<C, E> partitionClientFactory;
     private final PartitionHostsProvider partitionHostsProvider;
     private final RingHostClientProvider<C, E> clientProvider;
     private final ExecutorService callerThreads;
+    private final PartitionRoutingCache partitionRoutingCache;
+    private final HostLatencies hostLatencies;
     private final long awaitLeaderElectionForNMillis;
     private final long debugClientCount;
     private final long debugClientCountInterval;
@@ -31,22 +43,118 @@ public class AmzaClientProvider<C, E extends Throwable> implements PartitionClie
         long awaitLeaderElectionForNMillis,
         long debugClientCount,
         long debugClientCountInterval) {
+        this(partitionClientFactory,
+            partitionHostsProvider,
+            clientProvider,
+            callerThreads,
+            HostLatencies.defaults(),
+            awaitLeaderElectionForNMillis,
+            debugClientCount,
+            debugClientCountInterval);
+    }
+
+    /**
+     * @param hostLatencies is shared by the routers of every partition this provider hands out
+     */
+    public AmzaClientProvider(PartitionClientFactory<C, E> partitionClientFactory,
+        PartitionHostsProvider partitionHostsProvider,
+        RingHostClientProvider<C, E> clientProvider,
+        ExecutorService callerThreads,
+        HostLatencies hostLatencies,
+        long awaitLeaderElectionForNMillis,
+        long debugClientCount,
+        long debugClientCountInterval) {
+        this(partitionClientFactory,
+            partitionHostsProvider,
+            clientProvider,
+            callerThreads,
+            new PartitionRoutingCache(50_000, TimeUnit.MINUTES.toMillis(5)), //TODO config
+            hostLatencies,
+            awaitLeaderElectionForNMillis,
+            debugClientCount,
+            debugClientCountInterval);
+    }
+
+    /**
+     * @param partitionRoutingCache is shared by the routers of every partition this provider hands out
+     */
+    public AmzaClientProvider(PartitionClientFactory<C, E> partitionClientFactory,
+        PartitionHostsProvider partitionHostsProvider,
+        RingHostClientProvider<C, E> clientProvider,
+        ExecutorService callerThreads,
+        PartitionRoutingCache partitionRoutingCache,
+        long awaitLeaderElectionForNMillis,
+        long debugClientCount,
+        long debugClientCountInterval) {
+        this(partitionClientFactory,
+            partitionHostsProvider,
+            clientProvider,
+            callerThreads,
+            partitionRoutingCache,
+            HostLatencies.defaults(),
+            awaitLeaderElectionForNMillis,
+            debugClientCount,
+            debugClientCountInterval);
+    }
+
+    /**
+     * @param partitionRoutingCache is shared by the routers of every partition this provider hands out
+     * @param hostLatencies         is shared by the routers of every partition this provider hands out
+     */
+    public AmzaClientProvider(PartitionClientFactory<C, E> partitionClientFactory,
+        PartitionHostsProvider partitionHostsProvider,
+        RingHostClientProvider<C, E> clientProvider,
+        ExecutorService callerThreads,
+        PartitionRoutingCache partitionRoutingCache,
+        HostLatencies hostLatencies,
+        long awaitLeaderElectionForNMillis,
+        long debugClientCount,
+        long debugClientCountInterval) {
         this.partitionClientFactory = partitionClientFactory;
         this.partitionHostsProvider = partitionHostsProvider;
         this.clientProvider = clientProvider;
         this.callerThreads = callerThreads;
+        this.partitionRoutingCache = partitionRoutingCache;
+        this.hostLatencies = hostLatencies;
         this.awaitLeaderElectionForNMillis = awaitLeaderElectionForNMillis;
         this.debugClientCount = debugClientCount;
         this.debugClientCountInterval = debugClientCountInterval;
     }
 
+    public PartitionRoutingCache getPartitionRoutingCache() {
+        return partitionRoutingCache;
+    }
+
+    /**
+     * Looks up the rings and current leaders of the given partitions in bulk, so their first calls need not. Partitions which are still
+     * electing are cached without a leader, and the first call which needs one waits for the election as usual.
+     */
+    public void warmup(Collection<PartitionName> partitionNames) throws Exception {
+        for (List<PartitionName> batch : Iterables.partition(partitionNames, 1_000)) { //TODO config
+            Map<PartitionName, Ring> rings = partitionHostsProvider.getPartitionHosts(batch);
+            for (Map.Entry<PartitionName, Ring> entry : rings.entrySet()) {
+                partitionRoutingCache.put(entry.getKey(), entry.getValue());
+            }
+            LOG.inc("warmup>partitions", rings.size());
+        }
+    }
+
+    private AmzaClientCallRouter<C, E> router() {
+        return new AmzaClientCallRouter<>(callerThreads,
+            AmzaClientCallRouter.SharedTimer.TIMER,
+            partitionRoutingCache,
+            hostLatencies,
+            partitionHostsProvider,
+            clientProvider);
+    }
+
     @Override
     public PartitionClient getPartition(PartitionName partitionName) throws Exception {
         PartitionClient got = cache.get(partitionName);
         if (got != null) {
             return got;
         }
-        AmzaClientCallRouter<C, E> partitionCallRouter = new AmzaClientCallRouter<>(callerThreads, partitionHostsProvider, clientProvider);
+        AmzaClientCallRouter<C, E> partitionCallRouter = router();
 
         return partitionClientFactory.create(partitionName, partitionCallRouter, awaitLeaderElectionForNMillis, debugClientCount, debugClientCountInterval);
     }
@@ -59,7 +167,7 @@ public class AmzaClientProvider<C, E extends Throwable> implements PartitionClie
         return cache.computeIfAbsent(partitionName, (key) -> {
             try {
                 partitionHostsProvider.ensurePartition(partitionName, ringSize, partitionProperties);
-                AmzaClientCallRouter<C, E> partitionCallRouter = new AmzaClientCallRouter<>(callerThreads, partitionHostsProvider, clientProvider);
+                AmzaClientCallRouter<C, E> partitionCallRouter = router();
                 return partitionClientFactory.create(key, partitionCallRouter, awaitLeaderElectionForNMillis, debugClientCount, debugClientCountInterval);
             } catch (Exception x) {
                 throw new RuntimeException(x);
@@ -67,6 +175,26 @@ public class AmzaClientProvider<C, E extends Throwable> implements PartitionClie
         });
     }
 
+    @Override
+    public AsyncPartitionClient getAsyncPartition(PartitionName partitionName) throws Exception {
+        return async(getPartition(partitionName));
+    }
+
+    @Override
+    public AsyncPartitionClient getAsyncPartition(PartitionName partitionName,
+        int ringSize,
+        PartitionProperties partitionProperties) throws Exception {
+        return async(getPartition(partitionName, ringSize, partitionProperties));
+    }
+
+    private AsyncPartitionClient async(PartitionClient partitionClient) {
+        if (partitionClient instanceof AmzaPartitionClient) {
+            return ((AmzaPartitionClient<?, ?>) partitionClient).async();
+        }
+        // a custom factory's client has no async view, so its blocking calls run on the caller threads
+        return new BlockingAsyncPartitionClient(partitionClient, callerThreads);
+    }
+
     @Override
     public RingPartitionProperties getProperties(PartitionName partitionName) throws Exception {
         return partitionHostsProvider.getRingPartitionProperties(partitionName);
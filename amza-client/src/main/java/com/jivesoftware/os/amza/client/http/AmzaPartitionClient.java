@@ -1,6 +1,7 @@
 package com.jivesoftware.os.amza.client.http;
 
 import com.google.common.collect.Lists;
+import com.jivesoftware.os.amza.api.AsyncPartitionClient;
 import com.jivesoftware.os.amza.api.CompareTimestampVersions;
 import com.jivesoftware.os.amza.api.PartitionClient;
 import com.jivesoftware.os.amza.api.filer.FilerInputStream;
@@ -30,6 +31,7 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 import org.xerial.snappy.SnappyInputStream;
 
 /**
@@ -46,6 +48,8 @@ public class AmzaPartitionClient<C, E extends Throwable> implements PartitionCli
     private final long debugClientCount;
     private final long debugClientCountInterval;
 
+    private final AsyncPartitionClient asyncClient = new AsyncClient();
+
     private volatile long lastDebugClientTime = 0;
 
     public AmzaPartitionClient(PartitionName partitionName,
@@ -63,6 +67,13 @@ public class AmzaPartitionClient<C, E extends Throwable> implements PartitionCli
         this.debugClientCountInterval = debugClientCountInterval;
     }
 
+    /**
+     * @return a view of this client whose calls return futures instead of waiting on the ring
+     */
+    public AsyncPartitionClient async() {
+        return asyncClient;
+    }
+
     @Override
     public void commit(Consistency consistency,
         byte[] prefix,
@@ -72,15 +83,22 @@ public class AmzaPartitionClient<C, E extends Throwable> implements PartitionCli
         Optional<List<String>> solutionLog) throws Exception {
 
         partitionCallRouter.write(solutionLog.orElse(null), partitionName, consistency, "commit",
-            (leader, ringMember, client) -> {
-                return remotePartitionCaller.commit(leader, ringMember, client, consistency, prefix, updates, abandonSolutionAfterNMillis);
-            },
+            commitCall(consistency, prefix, updates, abandonSolutionAfterNMillis),
             answer -> true,
             awaitLeaderElectionForNMillis,
             additionalSolverAfterNMillis,
             abandonSolutionAfterNMillis);
     }
 
+    private PartitionCall<C, NoOpCloseable, E> commitCall(Consistency consistency,
+        byte[] prefix,
+        ClientUpdates updates,
+        long abandonSolutionAfterNMillis) {
+        return (leader, ringMember, client) -> {
+            return remotePartitionCaller.commit(leader, ringMember, client, consistency, prefix, updates, abandonSolutionAfterNMillis);
+        };
+    }
+
     @Override
     public long getApproximateCount(Consistency consistency,
         long additionalSolverAfterNMillis,
@@ -93,20 +111,28 @@ public class AmzaPartitionClient<C, E extends Throwable> implements PartitionCli
             consistency,
             "approximateCount",
             remotePartitionCaller::getApproximateCount,
-            (answers) -> {
-                long maxApproximateCount = -1;
-                for (RingMemberAndHostAnswer<CloseableLong> answer : answers) {
-                    CloseableLong a = answer.getAnswer();
-                    maxApproximateCount = Math.max(maxApproximateCount, a.getLong());
-                }
-                return maxApproximateCount;
-            },
+            AmzaPartitionClient::maxApproximateCount,
             awaitLeaderElectionForNMillis,
             additionalSolverAfterNMillis,
             abandonLeaderSolutionAfterNMillis,
             abandonSolutionAfterNMillis);
     }
 
+    private static long maxApproximateCount(List<RingMemberAndHostAnswer<CloseableLong>> answers) {
+        long maxApproximateCount = -1;
+        for (RingMemberAndHostAnswer<CloseableLong> answer : answers) {
+            CloseableLong a = answer.getAnswer();
+            maxApproximateCount = Math.max(maxApproximateCount, a.getLong());
+        }
+        return maxApproximateCount;
+    }
+
+    private static KeyValueStream skipTombstoned(KeyValueTimestampStream valuesStream) {
+        return (prefix, key, value, valueTimestamp, valueTombstoned, valueVersion) -> {
+            return valueTombstoned || valuesStream.stream(prefix, key, value, valueTimestamp, valueVersion);
+        };
+    }
+
     @Override
     public boolean get(Consistency consistency,
         byte[] prefix,
@@ -119,9 +145,7 @@ public class AmzaPartitionClient<C, E extends Throwable> implements PartitionCli
         return getInternal(consistency,
             prefix,
             keys,
-            (prefix1, key, value, valueTimestamp, valueTombstoned, valueVersion) -> {
-                return valueTombstoned || valuesStream.stream(prefix1, key, value, valueTimestamp, valueVersion);
-            },
+            skipTombstoned(valuesStream),
             additionalSolverAfterNMillis,
             abandonLeaderSolutionAfterNMillis,
             abandonSolutionAfterNMillis,
@@ -140,9 +164,7 @@ public class AmzaPartitionClient<C, E extends Throwable> implements PartitionCli
         return getInternal(consistency,
             prefix,
             keys,
-            (prefix1, key, value, valueTimestamp, valueTombstoned, valueVersion) -> {
-                return valueTombstoned || valuesStream.stream(prefix1, key, value, valueTimestamp, valueVersion);
-            },
+            skipTombstoned(valuesStream),
             additionalSolverAfterNMillis,
             abandonLeaderSolutionAfterNMillis,
             abandonSolutionAfterNMillis,
@@ -176,15 +198,13 @@ public class AmzaPartitionClient<C, E extends Throwable> implements PartitionCli
         long abandonLeaderSolutionAfterNMillis,
         long abandonSolutionAfterNMillis,
         Optional<List<String>> solutionLog) throws Exception {
-        return getInternalCall(consistency,
-            stream,
+        return partitionCallRouter.read(solutionLog.orElse(null), partitionName, consistency, "get",
+            getCall(consistency, prefix, keys),
+            getMerger(stream),
+            awaitLeaderElectionForNMillis,
             additionalSolverAfterNMillis,
             abandonLeaderSolutionAfterNMillis,
-            abandonSolutionAfterNMillis,
-            solutionLog,
-            (leader, ringMember, client) -> {
-                return remotePartitionCaller.get(leader, ringMember, client, consistency, prefix, keys);
-            });
+            abandonSolutionAfterNMillis);
     }
 
     private boolean getInternal(Consistency consistency,
@@ -195,78 +215,75 @@ public class AmzaPartitionClient<C, E extends Throwable> implements PartitionCli
         long abandonLeaderSolutionAfterNMillis,
         long abandonSolutionAfterNMillis,
         Optional<List<String>> solutionLog) throws Exception {
-        return getInternalCall(consistency,
-            stream,
+        return partitionCallRouter.read(solutionLog.orElse(null), partitionName, consistency, "get",
+            getOffsetCall(consistency, prefix, keys),
+            getMerger(stream),
+            awaitLeaderElectionForNMillis,
             additionalSolverAfterNMillis,
             abandonLeaderSolutionAfterNMillis,
-            abandonSolutionAfterNMillis,
-            solutionLog,
-            (leader, ringMember, client) -> {
-                return remotePartitionCaller.getOffset(leader, ringMember, client, consistency, prefix, keys);
-            });
+            abandonSolutionAfterNMillis);
     }
 
-    private boolean getInternalCall(Consistency consistency,
-        KeyValueStream stream,
-        long additionalSolverAfterNMillis,
-        long abandonLeaderSolutionAfterNMillis,
-        long abandonSolutionAfterNMillis,
-        Optional<List<String>> solutionLog,
-        PartitionCall<C, CloseableStreamResponse, E> partitionCall) throws Exception {
+    private PartitionCall<C, CloseableStreamResponse, E> getCall(Consistency consistency, byte[] prefix, UnprefixedWALKeys keys) {
+        return (leader, ringMember, client) -> {
+            return remotePartitionCaller.get(leader, ringMember, client, consistency, prefix, keys);
+        };
+    }
+
+    private PartitionCall<C, CloseableStreamResponse, E> getOffsetCall(Consistency consistency, byte[] prefix, OffsetUnprefixedWALKeys keys) {
+        return (leader, ringMember, client) -> {
+            return remotePartitionCaller.getOffset(leader, ringMember, client, consistency, prefix, keys);
+        };
+    }
+
+    private Merger<Boolean, CloseableStreamResponse> getMerger(KeyValueStream stream) {
         byte[] intLongBuffer = new byte[8];
-        partitionCallRouter.read(solutionLog.orElse(null), partitionName, consistency, "get",
-            partitionCall,
-            (answers) -> {
-                List<FilerInputStream> streams = Lists.newArrayList(
-                    Lists.transform(answers, input -> {
-                        CloseableStreamResponse streamResponse = input.getAnswer();
-                        debugStreamResponse(streamResponse);
-                        return new FilerInputStream(streamResponse.getInputStream());
-                    }));
-                int eosed = 0;
-                while (streams.size() > 0 && eosed == 0) {
-                    byte[] latestPrefix = null;
-                    byte[] latestKey = null;
-                    byte[] latestValue = null;
-                    long latestTimestamp = Long.MIN_VALUE;
-                    boolean latestTombstoned = false;
-                    long latestVersion = Long.MIN_VALUE;
-                    for (FilerInputStream fis : streams) {
-                        if (!UIO.readBoolean(fis, "eos")) {
-                            byte[] p = UIO.readByteArray(fis, "prefix", intLongBuffer);
-                            byte[] k = UIO.readByteArray(fis, "key", intLongBuffer);
-                            byte[] v = UIO.readByteArray(fis, "value", intLongBuffer);
-                            long t = UIO.readLong(fis, "timestamp", intLongBuffer);
-                            boolean d = UIO.readBoolean(fis, "tombstone");
-                            long z = UIO.readLong(fis, "version", intLongBuffer);
-
-                            int c = CompareTimestampVersions.compare(t, z, latestTimestamp, latestVersion);
-                            if (c > 0) {
-                                latestPrefix = p;
-                                latestKey = k;
-                                latestValue = v;
-                                latestTimestamp = t;
-                                latestTombstoned = d;
-                                latestVersion = z;
-                            }
-                        } else {
-                            eosed++;
+        return (answers) -> {
+            List<FilerInputStream> streams = Lists.newArrayList(
+                Lists.transform(answers, input -> {
+                    CloseableStreamResponse streamResponse = input.getAnswer();
+                    debugStreamResponse(streamResponse);
+                    return new FilerInputStream(streamResponse.getInputStream());
+                }));
+            int eosed = 0;
+            while (streams.size() > 0 && eosed == 0) {
+                byte[] latestPrefix = null;
+                byte[] latestKey = null;
+                byte[] latestValue = null;
+                long latestTimestamp = Long.MIN_VALUE;
+                boolean latestTombstoned = false;
+                long latestVersion = Long.MIN_VALUE;
+                for (FilerInputStream fis : streams) {
+                    if (!UIO.readBoolean(fis, "eos")) {
+                        byte[] p = UIO.readByteArray(fis, "prefix", intLongBuffer);
+                        byte[] k = UIO.readByteArray(fis, "key", intLongBuffer);
+                        byte[] v = UIO.readByteArray(fis, "value", intLongBuffer);
+                        long t = UIO.readLong(fis, "timestamp", intLongBuffer);
+                        boolean d = UIO.readBoolean(fis, "tombstone");
+                        long z = UIO.readLong(fis, "version", intLongBuffer);
+
+                        int c = CompareTimestampVersions.compare(t, z, latestTimestamp, latestVersion);
+                        if (c > 0) {
+                            latestPrefix = p;
+                            latestKey = k;
+                            latestValue = v;
+                            latestTimestamp = t;
+                            latestTombstoned = d;
+                            latestVersion = z;
                         }
-                    }
-                    if (eosed > 0 && eosed < answers.size()) {
-                        throw new RuntimeException("Mismatched response lengths");
-                    }
-                    if (eosed == 0 && !stream.stream(latestPrefix, latestKey, latestValue, latestTimestamp, latestTombstoned, latestVersion)) {
-                        break;
+                    } else {
+                        eosed++;
                     }
                 }
-                return null;
-            },
-            awaitLeaderElectionForNMillis,
-            additionalSolverAfterNMillis,
-            abandonLeaderSolutionAfterNMillis,
-            abandonSolutionAfterNMillis);
-        return true;
+                if (eosed > 0 && eosed < answers.size()) {
+                    throw new RuntimeException("Mismatched response lengths");
+                }
+                if (eosed == 0 && !stream.stream(latestPrefix, latestKey, latestValue, latestTimestamp, latestTombstoned, latestVersion)) {
+                    break;
+                }
+            }
+            return true;
+        };
     }
 
     @Override
@@ -344,6 +361,35 @@ public class AmzaPartitionClient<C, E extends Throwable> implements PartitionCli
         long abandonSolutionAfterNMillis,
         Optional<List<String>> solutionLog) throws Exception {
 
+        return partitionCallRouter.read(solutionLog.orElse(null), partitionName, consistency,
+            scanFamily(filter, hydrateValues),
+            scanCall(consistency, compressed, ranges, filter, hydrateValues),
+            scanMerger(consistency, compressed, stream, hydrateValues),
+            awaitLeaderElectionForNMillis,
+            additionalSolverAfterNMillis,
+            abandonLeaderSolutionAfterNMillis,
+            abandonSolutionAfterNMillis);
+    }
+
+    private static String scanFamily(KeyValueFilter filter, boolean hydrateValues) {
+        return filter != null ? "scanFiltered" : hydrateValues ? "scan" : "scanKeys";
+    }
+
+    private PartitionCall<C, CloseableStreamResponse, E> scanCall(Consistency consistency,
+        boolean compressed,
+        PrefixedKeyRanges ranges,
+        KeyValueFilter filter,
+        boolean hydrateValues) {
+        return (leader, ringMember, client) -> {
+            return remotePartitionCaller.scan(leader, ringMember, client, consistency, compressed, ranges, filter, hydrateValues);
+        };
+    }
+
+    private Merger<Boolean, CloseableStreamResponse> scanMerger(Consistency consistency,
+        boolean compressed,
+        KeyValueTimestampStream stream,
+        boolean hydrateValues) {
+
         boolean merge;
         if (consistency == Consistency.leader_plus_one
             || consistency == Consistency.leader_quorum
@@ -355,108 +401,94 @@ public class AmzaPartitionClient<C, E extends Throwable> implements PartitionCli
         }
         byte[] intLongBuffer = new byte[8];
 
-        PartitionCall<C, CloseableStreamResponse, E> partitionCall = (leader, ringMember, client) -> {
-            return remotePartitionCaller.scan(leader, ringMember, client, consistency, compressed, ranges, filter, hydrateValues);
-        };
-
-        KeyValueStream keyValueStream = (prefix, key, value, valueTimestamp, valueTombstoned, valueVersion) -> {
-            return valueTombstoned || stream.stream(prefix, key, value, valueTimestamp, valueVersion);
-        };
-
-        String family = filter != null ? "scanFiltered" : hydrateValues ? "scan" : "scanKeys";
-        return partitionCallRouter.read(solutionLog.orElse(null), partitionName, consistency,
-            family,
-            partitionCall,
-            (answers) -> {
-                List<FilerInputStream> streams = Lists.newArrayList(Lists.transform(answers, input -> {
-                    try {
-                        CloseableStreamResponse streamResponse = input.getAnswer();
-                        debugStreamResponse(streamResponse);
-                        InputStream answerInputStream = streamResponse.getInputStream();
-                        InputStream inputStream = compressed ? new SnappyInputStream(new BufferedInputStream(answerInputStream, 8192)) : answerInputStream;
-                        return new FilerInputStream(inputStream);
-                    } catch (IOException e) {
-                        throw new RuntimeException(e);
-                    }
-                }));
-                int size = streams.size();
-                if (merge && size > 1) {
-                    while (true) {
-                        int eosRange = 0;
-                        for (int i = 0; i < size; i++) {
-                            FilerInputStream fis = streams.get(i);
-                            if (UIO.readBoolean(fis, "eosRange")) {
-                                eosRange++;
-                            }
-                        }
-                        if (eosRange == size) {
-                            break;
-                        } else if (eosRange > 0) {
-                            throw new IllegalStateException("Answers returned mismatched ranges");
+        KeyValueStream keyValueStream = skipTombstoned(stream);
+
+        return (answers) -> {
+            List<FilerInputStream> streams = Lists.newArrayList(Lists.transform(answers, input -> {
+                try {
+                    CloseableStreamResponse streamResponse = input.getAnswer();
+                    debugStreamResponse(streamResponse);
+                    InputStream answerInputStream = streamResponse.getInputStream();
+                    InputStream inputStream = compressed ? new SnappyInputStream(new BufferedInputStream(answerInputStream, 8192)) : answerInputStream;
+                    return new FilerInputStream(inputStream);
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            }));
+            int size = streams.size();
+            if (merge && size > 1) {
+                while (true) {
+                    int eosRange = 0;
+                    for (int i = 0; i < size; i++) {
+                        FilerInputStream fis = streams.get(i);
+                        if (UIO.readBoolean(fis, "eosRange")) {
+                            eosRange++;
                         }
+                    }
+                    if (eosRange == size) {
+                        break;
+                    } else if (eosRange > 0) {
+                        throw new IllegalStateException("Answers returned mismatched ranges");
+                    }
 
-                        boolean[] eos = new boolean[size];
-                        QuorumScan quorumScan = new QuorumScan(size);
-                        int eosed = 0;
-                        while (eosed < size) {
-                            for (int i = 0; i < size; i++) {
-                                if (quorumScan.used(i) && !eos[i]) {
-                                    FilerInputStream fis = streams.get(i);
-                                    eos[i] = UIO.readBoolean(fis, "eos");
-                                    if (!eos[i]) {
-                                        quorumScan.fill(i, UIO.readByteArray(fis, "prefix", intLongBuffer),
-                                            UIO.readByteArray(fis, "key", intLongBuffer),
-                                            hydrateValues ? UIO.readByteArray(fis, "value", intLongBuffer) : null,
-                                            UIO.readLong(fis, "timestamp", intLongBuffer),
-                                            UIO.readBoolean(fis, "tombstone"),
-                                            UIO.readLong(fis, "version", intLongBuffer));
-                                    } else {
-                                        eosed++;
-                                    }
+                    boolean[] eos = new boolean[size];
+                    QuorumScan quorumScan = new QuorumScan(size);
+                    int eosed = 0;
+                    while (eosed < size) {
+                        for (int i = 0; i < size; i++) {
+                            if (quorumScan.used(i) && !eos[i]) {
+                                FilerInputStream fis = streams.get(i);
+                                eos[i] = UIO.readBoolean(fis, "eos");
+                                if (!eos[i]) {
+                                    quorumScan.fill(i, UIO.readByteArray(fis, "prefix", intLongBuffer),
+                                        UIO.readByteArray(fis, "key", intLongBuffer),
+                                        hydrateValues ? UIO.readByteArray(fis, "value", intLongBuffer) : null,
+                                        UIO.readLong(fis, "timestamp", intLongBuffer),
+                                        UIO.readBoolean(fis, "tombstone"),
+                                        UIO.readLong(fis, "version", intLongBuffer));
+                                } else {
+                                    eosed++;
                                 }
                             }
-                            int wi = quorumScan.findWinningIndex();
-                            if (wi > -1 && !quorumScan.stream(wi, keyValueStream)) {
-                                return false;
-                            }
                         }
-                        int wi;
-                        while ((wi = quorumScan.findWinningIndex()) > -1) {
-                            if (!quorumScan.stream(wi, keyValueStream)) {
-                                return false;
-                            }
+                        int wi = quorumScan.findWinningIndex();
+                        if (wi > -1 && !quorumScan.stream(wi, keyValueStream)) {
+                            return false;
                         }
                     }
-                    LOG.debug("Merged {}", answers.size());
-                    return true;
-
-                } else if (size == 1) {
-                    FilerInputStream fis = streams.get(0);
-                    while (!UIO.readBoolean(fis, "eosRange")) {
-                        while (!UIO.readBoolean(fis, "eos")) {
-                            byte[] prefix = UIO.readByteArray(fis, "prefix", intLongBuffer);
-                            byte[] key = UIO.readByteArray(fis, "key", intLongBuffer);
-                            byte[] value = hydrateValues ? UIO.readByteArray(fis, "value", intLongBuffer) : null;
-                            long timestamp = UIO.readLong(fis, "timestamp", intLongBuffer);
-                            boolean tombstoned = UIO.readBoolean(fis, "tombstone");
-                            long version = UIO.readLong(fis, "version", intLongBuffer);
-                            if (!tombstoned && !stream.stream(prefix,
-                                key,
-                                value,
-                                timestamp,
-                                version)) {
-                                return false;
-                            }
+                    int wi;
+                    while ((wi = quorumScan.findWinningIndex()) > -1) {
+                        if (!quorumScan.stream(wi, keyValueStream)) {
+                            return false;
                         }
                     }
-                    return true;
                 }
-                throw new RuntimeException("Failed to scan.");
-            },
-            awaitLeaderElectionForNMillis,
-            additionalSolverAfterNMillis,
-            abandonLeaderSolutionAfterNMillis,
-            abandonSolutionAfterNMillis);
+                LOG.debug("Merged {}", answers.size());
+                return true;
+
+            } else if (size == 1) {
+                FilerInputStream fis = streams.get(0);
+                while (!UIO.readBoolean(fis, "eosRange")) {
+                    while (!UIO.readBoolean(fis, "eos")) {
+                        byte[] prefix = UIO.readByteArray(fis, "prefix", intLongBuffer);
+                        byte[] key = UIO.readByteArray(fis, "key", intLongBuffer);
+                        byte[] value = hydrateValues ? UIO.readByteArray(fis, "value", intLongBuffer) : null;
+                        long timestamp = UIO.readLong(fis, "timestamp", intLongBuffer);
+                        boolean tombstoned = UIO.readBoolean(fis, "tombstone");
+                        long version = UIO.readLong(fis, "version", intLongBuffer);
+                        if (!tombstoned && !stream.stream(prefix,
+                            key,
+                            value,
+                            timestamp,
+                            version)) {
+                            return false;
+                        }
+                    }
+                }
+                return true;
+            }
+            throw new RuntimeException("Failed to scan.");
+        };
     }
 
     @Override
@@ -469,23 +501,9 @@ public class AmzaPartitionClient<C, E extends Throwable> implements PartitionCli
         long abandonSolutionAfterNMillis,
         Optional<List<String>> solutionLog) throws Exception {
 
-        byte[] intLongBuffer = new byte[8];
         return partitionCallRouter.take(solutionLog.orElse(null), partitionName, membersInOrder, "takeFromTransactionId",
-            (leader, ringMember, client) -> {
-                return remotePartitionCaller.takeFromTransactionId(leader, ringMember, client, membersTxId, limit);
-            },
-            (answers) -> {
-                List<FilerInputStream> streams = Lists.newArrayList(
-                    Lists.transform(answers, input -> {
-                        CloseableStreamResponse streamResponse = input.getAnswer();
-                        debugStreamResponse(streamResponse);
-                        return new FilerInputStream(streamResponse.getInputStream());
-                    }));
-                if (streams.isEmpty()) {
-                    throw new RuntimeException("Failed to takeFromTransactionId.");
-                }
-                return take(streams.get(0), highwaters, stream, intLongBuffer);
-            },
+            takeCall(membersTxId, limit),
+            takeMerger("takeFromTransactionId", highwaters, stream),
             awaitLeaderElectionForNMillis,
             additionalSolverAfterNMillis,
             abandonSolutionAfterNMillis);
@@ -501,28 +519,42 @@ public class AmzaPartitionClient<C, E extends Throwable> implements PartitionCli
         long additionalSolverAfterNMillis,
         long abandonSolutionAfterNMillis,
         Optional<List<String>> solutionLog) throws Exception {
-        byte[] intLongBuffer = new byte[8];
         return partitionCallRouter.take(solutionLog.orElse(null), partitionName, membersInOrder, "takePrefixFromTransactionId",
-            (leader, ringMember, client) -> {
-                return remotePartitionCaller.takePrefixFromTransactionId(leader, ringMember, client, prefix, membersTxId, limit);
-            },
-            (answers) -> {
-                List<FilerInputStream> streams = Lists.newArrayList(
-                    Lists.transform(answers, input -> {
-                        CloseableStreamResponse streamResponse = input.getAnswer();
-                        debugStreamResponse(streamResponse);
-                        return new FilerInputStream(streamResponse.getInputStream());
-                    }));
-                if (streams.isEmpty()) {
-                    throw new RuntimeException("Failed to takePrefixFromTransactionId.");
-                }
-                return take(streams.get(0), highwaters, stream, intLongBuffer);
-            },
+            takePrefixCall(prefix, membersTxId, limit),
+            takeMerger("takePrefixFromTransactionId", highwaters, stream),
             awaitLeaderElectionForNMillis,
             additionalSolverAfterNMillis,
             abandonSolutionAfterNMillis);
     }
 
+    private PartitionCall<C, CloseableStreamResponse, E> takeCall(Map<RingMember, Long> membersTxId, int limit) {
+        return (leader, ringMember, client) -> {
+            return remotePartitionCaller.takeFromTransactionId(leader, ringMember, client, membersTxId, limit);
+        };
+    }
+
+    private PartitionCall<C, CloseableStreamResponse, E> takePrefixCall(byte[] prefix, Map<RingMember, Long> membersTxId, int limit) {
+        return (leader, ringMember, client) -> {
+            return remotePartitionCaller.takePrefixFromTransactionId(leader, ringMember, client, prefix, membersTxId, limit);
+        };
+    }
+
+    private Merger<TakeResult, CloseableStreamResponse> takeMerger(String family, Highwaters highwaters, TxKeyValueStream stream) {
+        byte[] intLongBuffer = new byte[8];
+        return (answers) -> {
+            List<FilerInputStream> streams = Lists.newArrayList(
+                Lists.transform(answers, input -> {
+                    CloseableStreamResponse streamResponse = input.getAnswer();
+                    debugStreamResponse(streamResponse);
+                    return new FilerInputStream(streamResponse.getInputStream());
+                }));
+            if (streams.isEmpty()) {
+                throw new RuntimeException("Failed to " + family + ".");
+            }
+            return take(streams.get(0), highwaters, stream, intLongBuffer);
+        };
+    }
+
     private TakeResult take(FilerInputStream fis, Highwaters highwaters, TxKeyValueStream stream, byte[] intLongBuffer) throws Exception {
         long maxTxId = -1;
         byte[] ringMemberBytes = UIO.readByteArray(fis, "ringMember", intLongBuffer);
@@ -612,4 +644,193 @@ public class AmzaPartitionClient<C, E extends Throwable> implements PartitionCli
         }
     }
 
+    private class AsyncClient implements AsyncPartitionClient {
+
+        @Override
+        public CompletableFuture<Void> commit(Consistency consistency,
+            byte[] prefix,
+            ClientUpdates updates,
+            long additionalSolverAfterNMillis,
+            long abandonSolutionAfterNMillis,
+            Optional<List<String>> solutionLog) {
+
+            return partitionCallRouter.writeAsync(solutionLog.orElse(null), partitionName, consistency, "commit",
+                commitCall(consistency, prefix, updates, abandonSolutionAfterNMillis),
+                answers -> (Void) null,
+                awaitLeaderElectionForNMillis,
+                additionalSolverAfterNMillis,
+                abandonSolutionAfterNMillis);
+        }
+
+        @Override
+        public CompletableFuture<Long> getApproximateCount(Consistency consistency,
+            long additionalSolverAfterNMillis,
+            long abandonLeaderSolutionAfterNMillis,
+            long abandonSolutionAfterNMillis,
+            Optional<List<String>> solutionLog) {
+
+            return partitionCallRouter.readAsync(solutionLog.orElse(null), partitionName, consistency, "approximateCount",
+                remotePartitionCaller::getApproximateCount,
+                AmzaPartitionClient::maxApproximateCount,
+                awaitLeaderElectionForNMillis,
+                additionalSolverAfterNMillis,
+                abandonLeaderSolutionAfterNMillis,
+                abandonSolutionAfterNMillis);
+        }
+
+        @Override
+        public CompletableFuture<Boolean> get(Consistency consistency,
+            byte[] prefix,
+            UnprefixedWALKeys keys,
+            KeyValueTimestampStream valuesStream,
+            long additionalSolverAfterNMillis,
+            long abandonLeaderSolutionAfterNMillis,
+            long abandonSolutionAfterNMillis,
+            Optional<List<String>> solutionLog) {
+            return getRaw(consistency,
+                prefix,
+                keys,
+                skipTombstoned(valuesStream),
+                additionalSolverAfterNMillis,
+                abandonLeaderSolutionAfterNMillis,
+                abandonSolutionAfterNMillis,
+                solutionLog);
+        }
+
+        @Override
+        public CompletableFuture<Boolean> getOffset(Consistency consistency,
+            byte[] prefix,
+            OffsetUnprefixedWALKeys keys,
+            KeyValueTimestampStream valuesStream,
+            long additionalSolverAfterNMillis,
+            long abandonLeaderSolutionAfterNMillis,
+            long abandonSolutionAfterNMillis,
+            Optional<List<String>> solutionLog) {
+
+            return partitionCallRouter.readAsync(solutionLog.orElse(null), partitionName, consistency, "get",
+                getOffsetCall(consistency, prefix, keys),
+                getMerger(skipTombstoned(valuesStream)),
+                awaitLeaderElectionForNMillis,
+                additionalSolverAfterNMillis,
+                abandonLeaderSolutionAfterNMillis,
+                abandonSolutionAfterNMillis);
+        }
+
+        @Override
+        public CompletableFuture<Boolean> getRaw(Consistency consistency,
+            byte[] prefix,
+            UnprefixedWALKeys keys,
+            KeyValueStream valuesStream,
+            long additionalSolverAfterNMillis,
+            long abandonLeaderSolutionAfterNMillis,
+            long abandonSolutionAfterNMillis,
+            Optional<List<String>> solutionLog) {
+
+            return partitionCallRouter.readAsync(solutionLog.orElse(null), partitionName, consistency, "get",
+                getCall(consistency, prefix, keys),
+                getMerger(valuesStream),
+                awaitLeaderElectionForNMillis,
+                additionalSolverAfterNMillis,
+                abandonLeaderSolutionAfterNMillis,
+                abandonSolutionAfterNMillis);
+        }
+
+        @Override
+        public CompletableFuture<Boolean> scan(Consistency consistency,
+            boolean compressed,
+            PrefixedKeyRanges ranges,
+            KeyValueTimestampStream scan,
+            long additionalSolverAfterNMillis,
+            long abandonLeaderSolutionAfterNMillis,
+            long abandonSolutionAfterNMillis,
+            Optional<List<String>> solutionLog) {
+            return scanAsync(consistency, compressed, ranges, null, scan, true,
+                additionalSolverAfterNMillis, abandonLeaderSolutionAfterNMillis, abandonSolutionAfterNMillis, solutionLog);
+        }
+
+        @Override
+        public CompletableFuture<Boolean> scanFiltered(Consistency consistency,
+            boolean compressed,
+            PrefixedKeyRanges ranges,
+            KeyValueFilter filter,
+            KeyValueTimestampStream scan,
+            long additionalSolverAfterNMillis,
+            long abandonLeaderSolutionAfterNMillis,
+            long abandonSolutionAfterNMillis,
+            Optional<List<String>> solutionLog) {
+            return scanAsync(consistency, compressed, ranges, filter, scan, true,
+                additionalSolverAfterNMillis, abandonLeaderSolutionAfterNMillis, abandonSolutionAfterNMillis, solutionLog);
+        }
+
+        @Override
+        public CompletableFuture<Boolean> scanKeys(Consistency consistency,
+            boolean compressed,
+            PrefixedKeyRanges ranges,
+            KeyValueTimestampStream scan,
+            long additionalSolverAfterNMillis,
+            long abandonLeaderSolutionAfterNMillis,
+            long abandonSolutionAfterNMillis,
+            Optional<List<String>> solutionLog) {
+            return scanAsync(consistency, compressed, ranges, null, scan, false,
+                additionalSolverAfterNMillis, abandonLeaderSolutionAfterNMillis, abandonSolutionAfterNMillis, solutionLog);
+        }
+
+        private CompletableFuture<Boolean> scanAsync(Consistency consistency,
+            boolean compressed,
+            PrefixedKeyRanges ranges,
+            KeyValueFilter filter,
+            KeyValueTimestampStream stream,
+            boolean hydrateValues,
+            long additionalSolverAfterNMillis,
+            long abandonLeaderSolutionAfterNMillis,
+            long abandonSolutionAfterNMillis,
+            Optional<List<String>> solutionLog) {
+
+            return partitionCallRouter.readAsync(solutionLog.orElse(null), partitionName, consistency,
+                scanFamily(filter, hydrateValues),
+                scanCall(consistency, compressed, ranges, filter, hydrateValues),
+                scanMerger(consistency, compressed, stream, hydrateValues),
+                awaitLeaderElectionForNMillis,
+                additionalSolverAfterNMillis,
+                abandonLeaderSolutionAfterNMillis,
+                abandonSolutionAfterNMillis);
+        }
+
+        @Override
+        public CompletableFuture<TakeResult> takeFromTransactionId(List<RingMember> membersInOrder,
+            Map<RingMember, Long> membersTxId,
+            int limit,
+            Highwaters highwaters,
+            TxKeyValueStream stream,
+            long additionalSolverAfterNMillis,
+            long abandonSolutionAfterNMillis,
+            Optional<List<String>> solutionLog) {
+
+            return partitionCallRouter.takeAsync(solutionLog.orElse(null), partitionName, membersInOrder, "takeFromTransactionId",
+                takeCall(membersTxId, limit),
+                takeMerger("takeFromTransactionId", highwaters, stream),
+                awaitLeaderElectionForNMillis,
+                additionalSolverAfterNMillis,
+                abandonSolutionAfterNMillis);
+        }
+
+        @Override
+        public CompletableFuture<TakeResult> takePrefixFromTransactionId(List<RingMember> membersInOrder,
+            byte[] prefix,
+            Map<RingMember, Long> membersTxId,
+            int limit,
+            Highwaters highwaters,
+            TxKeyValueStream stream,
+            long additionalSolverAfterNMillis,
+            long abandonSolutionAfterNMillis,
+            Optional<List<String>> solutionLog) {
+
+            return partitionCallRouter.takeAsync(solutionLog.orElse(null), partitionName, membersInOrder, "takePrefixFromTransactionId",
+                takePrefixCall(prefix, membersTxId, limit),
+                takeMerger("takePrefixFromTransactionId", highwaters, stream),
+                awaitLeaderElectionForNMillis,
+                additionalSolverAfterNMillis,
+                abandonSolutionAfterNMillis);
+        }
+    }
 }
@@ -0,0 +1,90 @@
+package com.jivesoftware.os.amza.client.http;
+
+import com.jivesoftware.os.amza.api.ring.RingHost;
+import com.jivesoftware.os.mlogger.core.MetricLogger;
+import com.jivesoftware.os.mlogger.core.MetricLoggerFactory;
+import com.jivesoftware.os.routing.bird.http.client.HttpClient;
+import com.jivesoftware.os.routing.bird.http.client.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps one persistent stream connection per host. The stream port is discovered through the host's http endpoint, and hosts which do not
+ * serve the stream protocol are rechecked after {@code rediscoverAfterMillis}. Like the http client's socket timeout,
+ * {@code readTimeoutMillis} must exceed the longest a host may take to start answering, such as a commit awaiting its quorum.
+ */
+public class AmzaStreamClient {
+
+    private static final MetricLogger LOG = MetricLoggerFactory.getLogger();
+
+    private final int connectTimeoutMillis;
+    private final int readTimeoutMillis;
+    private final long rediscoverAfterMillis;
+    private final Map<RingHost, HostConnection> hostConnections = new ConcurrentHashMap<>();
+
+    public AmzaStreamClient(int connectTimeoutMillis, int readTimeoutMillis, long rediscoverAfterMillis) {
+        this.connectTimeoutMillis = connectTimeoutMillis;
+        this.readTimeoutMillis = readTimeoutMillis;
+        this.rediscoverAfterMillis = rediscoverAfterMillis;
+    }
+
+    /**
+     * @return an open connection to the host, or null if the caller should fall back to http
+     */
+    public AmzaStreamConnection connection(RingHost ringHost, HttpClient client) {
+        HostConnection hostConnection = hostConnections.computeIfAbsent(ringHost, key -> new HostConnection());
+        synchronized (hostConnection) {
+            if (hostConnection.connection != null && hostConnection.connection.isOpen()) {
+                return hostConnection.connection;
+            }
+            hostConnection.connection = null;
+            long now = System.currentTimeMillis();
+            if (now < hostConnection.retryAfterTimestamp) {
+                return null;
+            }
+            try {
+                int port = discoverPort(client);
+                if (port < 0) {
+                    LOG.inc("stream>unsupported");
+                    hostConnection.retryAfterTimestamp = now + rediscoverAfterMillis;
+                    return null;
+                }
+                hostConnection.connection = new AmzaStreamConnection(ringHost.getHost(), port, connectTimeoutMillis, readTimeoutMillis);
+                LOG.inc("stream>connected");
+                return hostConnection.connection;
+            } catch (Exception x) {
+                LOG.warn("Failed to open stream connection to {}", new Object[] { ringHost }, x);
+                LOG.inc("stream>failed");
+                hostConnection.retryAfterTimestamp = now + rediscoverAfterMillis;
+                return null;
+            }
+        }
+    }
+
+    public void close() {
+        for (HostConnection hostConnection : hostConnections.values()) {
+            synchronized (hostConnection) {
+                if (hostConnection.connection != null) {
+                    hostConnection.connection.close();
+                    hostConnection.connection = null;
+                }
+            }
+        }
+        hostConnections.clear();
+    }
+
+    private static int discoverPort(HttpClient client) throws Exception {
+        HttpResponse got = client.get("/amza/v1/stream/port", null);
+        if (got.getStatusCode() < 200 || got.getStatusCode() >= 300) {
+            return -1;
+        }
+        return Integer.parseInt(new String(got.getResponseBody(), StandardCharsets.UTF_8).trim());
+    }
+
+    private static class HostConnection {
+
+        private AmzaStreamConnection connection;
+        private long retryAfterTimestamp;
+    }
+}
@@ -0,0 +1,411 @@
+package com.jivesoftware.os.amza.client.http;
+
+import com.jivesoftware.os.amza.api.AmzaStreamProtocol;
+import com.jivesoftware.os.amza.api.AmzaStreamProtocol.Frame;
+import com.jivesoftware.os.amza.api.filer.UIO;
+import com.jivesoftware.os.mlogger.core.MetricLogger;
+import com.jivesoftware.os.mlogger.core.MetricLoggerFactory;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * One persistent, multiplexed {@link AmzaStreamProtocol} connection to a single host. Callers waiting on a stream give up after
+ * {@code readTimeoutMillis}, and the connection is closed when the host sends nothing for that long while any caller is waiting on it.
+ */
+public class AmzaStreamConnection {
+
+    private static final MetricLogger LOG = MetricLoggerFactory.getLogger();
+
+    private static final byte[] END_OF_STREAM = new byte[0];
+
+    private final String host;
+    private final int port;
+    private final long readTimeoutMillis;
+    private final Socket socket;
+    private final DataInputStream in;
+    private final DataOutputStream out;
+    private final AtomicInteger nextStreamId = new AtomicInteger();
+    private final Map<Integer, ClientStream> streams = new ConcurrentHashMap<>();
+    private final AtomicBoolean open = new AtomicBoolean(true);
+
+    public AmzaStreamConnection(String host, int port, int connectTimeoutMillis, int readTimeoutMillis) throws IOException {
+        this.host = host;
+        this.port = port;
+        this.readTimeoutMillis = readTimeoutMillis;
+        this.socket = new Socket();
+        socket.setTcpNoDelay(true);
+        socket.setKeepAlive(true);
+        socket.setSoTimeout(readTimeoutMillis);
+        socket.connect(new InetSocketAddress(host, port), connectTimeoutMillis);
+        this.in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), 64 * 1024));
+        this.out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), 64 * 1024));
+        Thread reader = new Thread(this::read, "amza-stream-" + host + ":" + port);
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    public boolean isOpen() {
+        return open.get();
+    }
+
+    public interface RequestBody {
+
+        void write(OutputStream out) throws Exception;
+    }
+
+    public ClientStream open(byte op, byte[] partitionName, String consistency, boolean checkLeader, boolean hydrateValues, RequestBody body)
+        throws Exception {
+        int streamId = nextStreamId.incrementAndGet();
+        ClientStream stream = new ClientStream(streamId);
+        streams.put(streamId, stream);
+        try {
+            byte[] request = AmzaStreamProtocol.request(op, partitionName, consistency, checkLeader, hydrateValues);
+            write(streamId, AmzaStreamProtocol.FRAME_REQUEST, request, 0, request.length, false);
+            RequestOutputStream requestOut = new RequestOutputStream(streamId);
+            body.write(requestOut);
+            requestOut.close();
+            return stream;
+        } catch (Exception x) {
+            streams.remove(streamId);
+            if (open.get()) {
+                byte[] cancel = AmzaStreamProtocol.error(AmzaStreamProtocol.STATUS_BAD_REQUEST, "failed to write request");
+                write(streamId, AmzaStreamProtocol.FRAME_ERROR, cancel, 0, cancel.length, true);
+            }
+            throw x;
+        }
+    }
+
+    public void close() {
+        if (open.compareAndSet(true, false)) {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                LOG.warn("Failed to close stream connection to {}:{}", host, port);
+            }
+            for (ClientStream stream : streams.values()) {
+                stream.failed("Connection to " + host + ":" + port + " closed");
+            }
+            streams.clear();
+        }
+    }
+
+    private void read() {
+        try {
+            while (open.get()) {
+                if (!awaitFrame()) {
+                    if (isAnyStreamWaiting()) {
+                        LOG.inc("stream>readTimeout");
+                        throw new SocketTimeoutException("No response from " + host + ":" + port + " in " + readTimeoutMillis + "millis");
+                    }
+                    continue;
+                }
+                Frame frame = AmzaStreamProtocol.readFrame(in);
+                ClientStream stream = streams.get(frame.streamId);
+                if (stream == null) {
+                    continue;
+                }
+                if (frame.type == AmzaStreamProtocol.FRAME_DATA) {
+                    stream.data(frame.payload);
+                } else if (frame.type == AmzaStreamProtocol.FRAME_END) {
+                    streams.remove(frame.streamId);
+                    stream.end();
+                } else if (frame.type == AmzaStreamProtocol.FRAME_ERROR) {
+                    streams.remove(frame.streamId);
+                    int status = UIO.bytesInt(frame.payload, 0);
+                    stream.error(status, new String(AmzaStreamProtocol.getBytes(frame.payload, 4), StandardCharsets.UTF_8));
+                }
+            }
+        } catch (Exception x) {
+            if (open.get()) {
+                LOG.warn("Stream connection to {}:{} failed", new Object[] { host, port }, x);
+            }
+        } finally {
+            close();
+        }
+    }
+
+    /**
+     * An idle connection legitimately sees nothing for longer than the socket timeout, so only a timeout between frames is survivable.
+     */
+    private boolean awaitFrame() throws IOException {
+        in.mark(1);
+        try {
+            if (in.read() < 0) {
+                throw new EOFException("Connection to " + host + ":" + port + " was closed by the host");
+            }
+        } catch (SocketTimeoutException x) {
+            return false;
+        }
+        in.reset();
+        return true;
+    }
+
+    private boolean isAnyStreamWaiting() {
+        for (ClientStream stream : streams.values()) {
+            if (stream.waiting.get() > 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void write(int streamId, byte type, byte[] payload, int offset, int length, boolean flush) throws IOException {
+        if (!open.get()) {
+            throw new IOException("Connection to " + host + ":" + port + " is closed");
+        }
+        try {
+            synchronized (out) {
+                AmzaStreamProtocol.writeFrame(out, streamId, type, payload, offset, length);
+                if (flush) {
+                    out.flush();
+                }
+            }
+        } catch (IOException x) {
+            close();
+            throw x;
+        }
+    }
+
+    private class RequestOutputStream extends OutputStream {
+
+        private final int streamId;
+        private final byte[] buffer = new byte[AmzaStreamProtocol.MAX_FRAME_PAYLOAD];
+        private int length;
+        private boolean closed;
+
+        RequestOutputStream(int streamId) {
+            this.streamId = streamId;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (length == buffer.length) {
+                flushData();
+            }
+            buffer[length] = (byte) b;
+            length++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                if (length == buffer.length) {
+                    flushData();
+                }
+                int copy = Math.min(len, buffer.length - length);
+                System.arraycopy(b, off, buffer, length, copy);
+                length += copy;
+                off += copy;
+                len -= copy;
+            }
+        }
+
+        private void flushData() throws IOException {
+            if (length > 0) {
+                AmzaStreamConnection.this.write(streamId, AmzaStreamProtocol.FRAME_DATA, buffer, 0, length, false);
+                length = 0;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!closed) {
+                closed = true;
+                flushData();
+                AmzaStreamConnection.this.write(streamId, AmzaStreamProtocol.FRAME_END, null, 0, 0, true);
+            }
+        }
+    }
+
+    /**
+     * The response side of a stream. Consumed bytes are handed back to the server as credit a quarter window at a time.
+     */
+    public class ClientStream implements CloseableStreamResponse {
+
+        private final int streamId;
+        private final LinkedBlockingQueue<byte[]> chunks = new LinkedBlockingQueue<>();
+        private final CountDownLatch responded = new CountDownLatch(1);
+        private final AtomicBoolean finished = new AtomicBoolean(false);
+        private volatile int status = 200;
+        private volatile String message;
+        private final AtomicInteger waiting = new AtomicInteger();
+        private int consumed;
+
+        private final InputStream inputStream = new InputStream() {
+
+            private byte[] chunk;
+            private int offset;
+
+            @Override
+            public int read() throws IOException {
+                if (!ensureChunk()) {
+                    return -1;
+                }
+                int b = chunk[offset] & 0xFF;
+                offset++;
+                consumed(1);
+                return b;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                if (len == 0) {
+                    return 0;
+                }
+                if (!ensureChunk()) {
+                    return -1;
+                }
+                int read = Math.min(len, chunk.length - offset);
+                System.arraycopy(chunk, offset, b, off, read);
+                offset += read;
+                consumed(read);
+                return read;
+            }
+
+            private boolean ensureChunk() throws IOException {
+                while (chunk == null || offset == chunk.length) {
+                    if (chunk == END_OF_STREAM) {
+                        return false;
+                    }
+                    waiting.incrementAndGet();
+                    try {
+                        chunk = chunks.poll(readTimeoutMillis, TimeUnit.MILLISECONDS);
+                        offset = 0;
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new IOException("Interrupted while reading stream " + streamId, e);
+                    } finally {
+                        waiting.decrementAndGet();
+                    }
+                    if (chunk == null) {
+                        abortQuietly();
+                        throw new SocketTimeoutException("Timed out after " + readTimeoutMillis + "millis reading stream " + streamId);
+                    }
+                    if (chunk == END_OF_STREAM) {
+                        if (status >= 300) {
+                            throw new IOException("Stream " + streamId + " failed with status:" + status + " " + message);
+                        }
+                        return false;
+                    }
+                }
+                return true;
+            }
+        };
+
+        ClientStream(int streamId) {
+            this.streamId = streamId;
+        }
+
+        /**
+         * Blocks until the server either starts responding or fails the request, and cancels the stream if neither happens in time.
+         */
+        public int awaitStatus() throws InterruptedException, TimeoutException {
+            waiting.incrementAndGet();
+            boolean respondedInTime;
+            try {
+                respondedInTime = responded.await(readTimeoutMillis, TimeUnit.MILLISECONDS);
+            } finally {
+                waiting.decrementAndGet();
+            }
+            if (!respondedInTime) {
+                abortQuietly();
+                throw new TimeoutException("No response to stream " + streamId + " from " + host + ":" + port
+                    + " in " + readTimeoutMillis + "millis");
+            }
+            return status;
+        }
+
+        private void abortQuietly() {
+            try {
+                close();
+            } catch (Exception x) {
+                LOG.debug("Failed to cancel {}", new Object[] { this }, x);
+            }
+        }
+
+        public String getMessage() {
+            return message;
+        }
+
+        void data(byte[] payload) {
+            chunks.add(payload);
+            responded.countDown();
+        }
+
+        void end() {
+            finished.set(true);
+            chunks.add(END_OF_STREAM);
+            responded.countDown();
+        }
+
+        void error(int status, String message) {
+            this.status = status;
+            this.message = message;
+            end();
+        }
+
+        void failed(String message) {
+            if (!finished.get()) {
+                error(AmzaStreamProtocol.STATUS_ERROR, message);
+            }
+        }
+
+        private void consumed(int bytes) throws IOException {
+            consumed += bytes;
+            if (consumed >= AmzaStreamProtocol.INITIAL_WINDOW / 4 && !finished.get()) {
+                byte[] credit = AmzaStreamProtocol.credit(consumed);
+                consumed = 0;
+                write(streamId, AmzaStreamProtocol.FRAME_CREDIT, credit, 0, credit.length, true);
+            }
+        }
+
+        @Override
+        public InputStream getInputStream() {
+            return inputStream;
+        }
+
+        @Override
+        public long getActiveCount() {
+            return streams.size();
+        }
+
+        @Override
+        public void abort() throws Exception {
+            close();
+        }
+
+        @Override
+        public void close() throws Exception {
+            if (finished.compareAndSet(false, true)) {
+                streams.remove(streamId);
+                byte[] cancel = AmzaStreamProtocol.error(AmzaStreamProtocol.STATUS_ERROR, "cancelled");
+                write(streamId, AmzaStreamProtocol.FRAME_ERROR, cancel, 0, cancel.length, true);
+                chunks.add(END_OF_STREAM);
+                responded.countDown();
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "ClientStream{" + "host=" + host + ":" + port + ", streamId=" + streamId + ", status=" + status + '}';
+        }
+    }
+}
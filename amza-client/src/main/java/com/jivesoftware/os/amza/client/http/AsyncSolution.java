@@ -0,0 +1,211 @@
+package com.jivesoftware.os.amza.client.http;
+
+import com.jivesoftware.os.amza.client.http.exceptions.NotSolveableException;
+import com.jivesoftware.os.mlogger.core.MetricLogger;
+import com.jivesoftware.os.mlogger.core.MetricLoggerFactory;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Solves for {@code mandatory} answers the way {@link AmzaClientCallRouter} does, but without a thread waiting on the outcome. Each solver
+ * reports back from the executor thread it ran on, and the timer adds a solver when none has reported for {@code
+ * addAdditionalSolverAfterNMillis} and abandons the solution after {@code abandonSolutionAfterNMillis}. An abandoned solution fails with a
+ * {@link TimeoutException}.
+ */
+class AsyncSolution<A extends Abortable> {
+
+    private static final MetricLogger LOG = MetricLoggerFactory.getLogger();
+
+    private final List<String> solutionLog;
+    private final ExecutorService executor;
+    private final ScheduledExecutorService timer;
+    private final Iterator<Callable<RingMemberAndHostAnswer<A>>> solvers;
+    private final int mandatory;
+    private final boolean addNewSolverOnTimeout;
+    private final long addAdditionalSolverAfterNMillis;
+    private final long abandonSolutionAfterNMillis;
+
+    private final CompletableFuture<List<RingMemberAndHostAnswer<A>>> solved = new CompletableFuture<>();
+    private final List<RingMemberAndHostAnswer<A>> answers = new ArrayList<>();
+    private final List<Submitted> submitted = new ArrayList<>();
+    private int pending;
+    private boolean done;
+    private Throwable lastFailure;
+    private ScheduledFuture<?> hedge;
+    private ScheduledFuture<?> abandon;
+
+    AsyncSolution(List<String> solutionLog,
+        ExecutorService executor,
+        ScheduledExecutorService timer,
+        Iterator<Callable<RingMemberAndHostAnswer<A>>> solvers,
+        int mandatory,
+        boolean addNewSolverOnTimeout,
+        long addAdditionalSolverAfterNMillis,
+        long abandonSolutionAfterNMillis) {
+        this.solutionLog = solutionLog;
+        this.executor = executor;
+        this.timer = timer;
+        this.solvers = solvers;
+        this.mandatory = mandatory;
+        this.addNewSolverOnTimeout = addNewSolverOnTimeout;
+        this.addAdditionalSolverAfterNMillis = addAdditionalSolverAfterNMillis;
+        this.abandonSolutionAfterNMillis = abandonSolutionAfterNMillis;
+    }
+
+    CompletableFuture<List<RingMemberAndHostAnswer<A>>> solve() {
+        Throwable failure = null;
+        synchronized (this) {
+            for (int i = 0; i < mandatory && !done; i++) {
+                if (solvers.hasNext()) {
+                    submit(solvers.next());
+                } else {
+                    if (solutionLog != null) {
+                        solutionLog.add("Not enough solveable available. desire:" + mandatory);
+                    }
+                    done = true;
+                    failure = new NotSolveableException("Not enough solveable available. desire:" + mandatory);
+                }
+            }
+            if (!done) {
+                abandon = timer.schedule(this::abandon, abandonSolutionAfterNMillis, TimeUnit.MILLISECONDS);
+                scheduleHedge();
+            }
+        }
+        if (failure != null) {
+            finish(null, failure);
+        }
+        return solved;
+    }
+
+    private void submit(Callable<RingMemberAndHostAnswer<A>> solver) {
+        pending++;
+        Submitted submitted = new Submitted();
+        this.submitted.add(submitted);
+        submitted.future = executor.submit(() -> {
+            RingMemberAndHostAnswer<A> answer = null;
+            Throwable failure = null;
+            try {
+                answer = solver.call();
+            } catch (Throwable t) {
+                failure = t;
+            }
+            answered(submitted, answer, failure);
+        });
+    }
+
+    private void answered(Submitted submitted, RingMemberAndHostAnswer<A> answer, Throwable failure) {
+        List<RingMemberAndHostAnswer<A>> solution = null;
+        Throwable notSolveable = null;
+        synchronized (this) {
+            submitted.answered = true;
+            pending--;
+            if (done) {
+                // the router aborts answers which arrive after the solution is done
+                return;
+            }
+            if (failure != null) {
+                if (solutionLog != null) {
+                    solutionLog.add("Solver failed: " + failure);
+                }
+                LOG.debug("Failed to solve", failure);
+                lastFailure = failure;
+                if (solvers.hasNext()) {
+                    submit(solvers.next());
+                }
+            } else if (answer != null) {
+                if (solutionLog != null) {
+                    solutionLog.add("Solving with " + answer.getRingMemberAndHost());
+                }
+                answers.add(answer);
+            }
+            if (answers.size() == mandatory) {
+                done = true;
+                solution = new ArrayList<>(answers);
+            } else if (pending == 0 && !solvers.hasNext()) {
+                done = true;
+                notSolveable = new NotSolveableException("Not currently solveable. desire:" + mandatory + " achieved:" + answers.size(), lastFailure);
+            } else if (hedge != null) {
+                // like a poll which returned, an answer restarts the wait for another solver
+                hedge.cancel(false);
+                scheduleHedge();
+            }
+        }
+        if (solution != null || notSolveable != null) {
+            finish(solution, notSolveable);
+        }
+    }
+
+    private void hedge() {
+        synchronized (this) {
+            if (done || !solvers.hasNext()) {
+                return;
+            }
+            submit(solvers.next());
+            if (!done) {
+                scheduleHedge();
+            }
+        }
+    }
+
+    private void abandon() {
+        synchronized (this) {
+            if (done) {
+                return;
+            }
+            done = true;
+            if (solutionLog != null) {
+                solutionLog.add("Abandoned solution because it took more than " + abandonSolutionAfterNMillis + "millis.");
+            }
+        }
+        finish(null, new TimeoutException("Abandoned solution because it took more than " + abandonSolutionAfterNMillis + "millis."));
+    }
+
+    private void scheduleHedge() {
+        if (addNewSolverOnTimeout && solvers.hasNext()) {
+            hedge = timer.schedule(this::hedge, addAdditionalSolverAfterNMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void finish(List<RingMemberAndHostAnswer<A>> solution, Throwable failure) {
+        List<Future<?>> cancel;
+        synchronized (this) {
+            if (hedge != null) {
+                hedge.cancel(false);
+            }
+            if (abandon != null) {
+                abandon.cancel(false);
+            }
+            cancel = new ArrayList<>();
+            for (Submitted s : submitted) {
+                if (!s.answered && s.future != null) {
+                    cancel.add(s.future);
+                }
+            }
+        }
+        // only stragglers which never answered are cancelled, and never interrupted, because the thread completing the solution runs
+        // the caller's dependent stages (e.g. the router's merge) and an answered solver's thread may already be running those
+        for (Future<?> future : cancel) {
+            future.cancel(false);
+        }
+        if (failure != null) {
+            solved.completeExceptionally(failure);
+        } else {
+            solved.complete(solution);
+        }
+    }
+
+    private static class Submitted {
+
+        private Future<?> future;
+        private boolean answered;
+    }
+}
@@ -0,0 +1,239 @@
+package com.jivesoftware.os.amza.client.http;
+
+import com.jivesoftware.os.amza.api.AsyncPartitionClient;
+import com.jivesoftware.os.amza.api.PartitionClient;
+import com.jivesoftware.os.amza.api.PartitionClient.KeyValueFilter;
+import com.jivesoftware.os.amza.api.partition.Consistency;
+import com.jivesoftware.os.amza.api.ring.RingMember;
+import com.jivesoftware.os.amza.api.stream.ClientUpdates;
+import com.jivesoftware.os.amza.api.stream.KeyValueStream;
+import com.jivesoftware.os.amza.api.stream.KeyValueTimestampStream;
+import com.jivesoftware.os.amza.api.stream.OffsetUnprefixedWALKeys;
+import com.jivesoftware.os.amza.api.stream.PrefixedKeyRanges;
+import com.jivesoftware.os.amza.api.stream.TxKeyValueStream;
+import com.jivesoftware.os.amza.api.stream.UnprefixedWALKeys;
+import com.jivesoftware.os.amza.api.take.Highwaters;
+import com.jivesoftware.os.amza.api.take.TakeResult;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Adapts a {@link PartitionClient} which has no async view of its own, such as one from a custom {@link PartitionClientFactory}. Each
+ * call runs the blocking call on the executor, so unlike {@link AmzaPartitionClient#async()} it holds a thread until it is solved.
+ */
+class BlockingAsyncPartitionClient implements AsyncPartitionClient {
+
+    private final PartitionClient partitionClient;
+    private final ExecutorService executor;
+
+    BlockingAsyncPartitionClient(PartitionClient partitionClient, ExecutorService executor) {
+        this.partitionClient = partitionClient;
+        this.executor = executor;
+    }
+
+    private interface BlockingCall<T> {
+
+        T call() throws Exception;
+    }
+
+    private <T> CompletableFuture<T> submit(BlockingCall<T> call) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        try {
+            executor.submit(() -> {
+                try {
+                    future.complete(call.call());
+                } catch (Throwable t) {
+                    future.completeExceptionally(t);
+                }
+            });
+        } catch (Throwable t) {
+            future.completeExceptionally(t);
+        }
+        return future;
+    }
+
+    @Override
+    public CompletableFuture<Void> commit(Consistency consistency,
+        byte[] prefix,
+        ClientUpdates updates,
+        long additionalSolverAfterNMillis,
+        long abandonSolutionAfterNMillis,
+        Optional<List<String>> solutionLog) {
+        return submit(() -> {
+            partitionClient.commit(consistency, prefix, updates, additionalSolverAfterNMillis, abandonSolutionAfterNMillis, solutionLog);
+            return null;
+        });
+    }
+
+    @Override
+    public CompletableFuture<Long> getApproximateCount(Consistency consistency,
+        long additionalSolverAfterNMillis,
+        long abandonLeaderSolutionAfterNMillis,
+        long abandonSolutionAfterNMillis,
+        Optional<List<String>> solutionLog) {
+        return submit(() -> partitionClient.getApproximateCount(consistency,
+            additionalSolverAfterNMillis,
+            abandonLeaderSolutionAfterNMillis,
+            abandonSolutionAfterNMillis,
+            solutionLog));
+    }
+
+    @Override
+    public CompletableFuture<Boolean> get(Consistency consistency,
+        byte[] prefix,
+        UnprefixedWALKeys keys,
+        KeyValueTimestampStream valuesStream,
+        long additionalSolverAfterNMillis,
+        long abandonLeaderSolutionAfterNMillis,
+        long abandonSolutionAfterNMillis,
+        Optional<List<String>> solutionLog) {
+        return submit(() -> partitionClient.get(consistency,
+            prefix,
+            keys,
+            valuesStream,
+            additionalSolverAfterNMillis,
+            abandonLeaderSolutionAfterNMillis,
+            abandonSolutionAfterNMillis,
+            solutionLog));
+    }
+
+    @Override
+    public CompletableFuture<Boolean> getOffset(Consistency consistency,
+        byte[] prefix,
+        OffsetUnprefixedWALKeys keys,
+        KeyValueTimestampStream valuesStream,
+        long additionalSolverAfterNMillis,
+        long abandonLeaderSolutionAfterNMillis,
+        long abandonSolutionAfterNMillis,
+        Optional<List<String>> solutionLog) {
+        return submit(() -> partitionClient.getOffset(consistency,
+            prefix,
+            keys,
+            valuesStream,
+            additionalSolverAfterNMillis,
+            abandonLeaderSolutionAfterNMillis,
+            abandonSolutionAfterNMillis,
+            solutionLog));
+    }
+
+    @Override
+    public CompletableFuture<Boolean> getRaw(Consistency consistency,
+        byte[] prefix,
+        UnprefixedWALKeys keys,
+        KeyValueStream valuesStream,
+        long additionalSolverAfterNMillis,
+        long abandonLeaderSolutionAfterNMillis,
+        long abandonSolutionAfterNMillis,
+        Optional<List<String>> solutionLog) {
+        return submit(() -> partitionClient.getRaw(consistency,
+            prefix,
+            keys,
+            valuesStream,
+            additionalSolverAfterNMillis,
+            abandonLeaderSolutionAfterNMillis,
+            abandonSolutionAfterNMillis,
+            solutionLog));
+    }
+
+    @Override
+    public CompletableFuture<Boolean> scan(Consistency consistency,
+        boolean compressed,
+        PrefixedKeyRanges ranges,
+        KeyValueTimestampStream scan,
+        long additionalSolverAfterNMillis,
+        long abandonLeaderSolutionAfterNMillis,
+        long abandonSolutionAfterNMillis,
+        Optional<List<String>> solutionLog) {
+        return submit(() -> partitionClient.scan(consistency,
+            compressed,
+            ranges,
+            scan,
+            additionalSolverAfterNMillis,
+            abandonLeaderSolutionAfterNMillis,
+            abandonSolutionAfterNMillis,
+            solutionLog));
+    }
+
+    @Override
+    public CompletableFuture<Boolean> scanFiltered(Consistency consistency,
+        boolean compressed,
+        PrefixedKeyRanges ranges,
+        KeyValueFilter filter,
+        KeyValueTimestampStream scan,
+        long additionalSolverAfterNMillis,
+        long abandonLeaderSolutionAfterNMillis,
+        long abandonSolutionAfterNMillis,
+        Optional<List<String>> solutionLog) {
+        return submit(() -> partitionClient.scanFiltered(consistency,
+            compressed,
+            ranges,
+            filter,
+            scan,
+            additionalSolverAfterNMillis,
+            abandonLeaderSolutionAfterNMillis,
+            abandonSolutionAfterNMillis,
+            solutionLog));
+    }
+
+    @Override
+    public CompletableFuture<Boolean> scanKeys(Consistency consistency,
+        boolean compressed,
+        PrefixedKeyRanges ranges,
+        KeyValueTimestampStream scan,
+        long additionalSolverAfterNMillis,
+        long abandonLeaderSolutionAfterNMillis,
+        long abandonSolutionAfterNMillis,
+        Optional<List<String>> solutionLog) {
+        return submit(() -> partitionClient.scanKeys(consistency,
+            compressed,
+            ranges,
+            scan,
+            additionalSolverAfterNMillis,
+            abandonLeaderSolutionAfterNMillis,
+            abandonSolutionAfterNMillis,
+            solutionLog));
+    }
+
+    @Override
+    public CompletableFuture<TakeResult> takeFromTransactionId(List<RingMember> membersInOrder,
+        Map<RingMember, Long> memberTxIds,
+        int limit,
+        Highwaters highwaters,
+        TxKeyValueStream stream,
+        long additionalSolverAfterNMillis,
+        long abandonSolutionAfterNMillis,
+        Optional<List<String>> solutionLog) {
+        return submit(() -> partitionClient.takeFromTransactionId(membersInOrder,
+            memberTxIds,
+            limit,
+            highwaters,
+            stream,
+            additionalSolverAfterNMillis,
+            abandonSolutionAfterNMillis,
+            solutionLog));
+    }
+
+    @Override
+    public CompletableFuture<TakeResult> takePrefixFromTransactionId(List<RingMember> membersInOrder,
+        byte[] prefix,
+        Map<RingMember, Long> memberTxIds,
+        int limit,
+        Highwaters highwaters,
+        TxKeyValueStream stream,
+        long additionalSolverAfterNMillis,
+        long abandonSolutionAfterNMillis,
+        Optional<List<String>> solutionLog) {
+        return submit(() -> partitionClient.takePrefixFromTransactionId(membersInOrder,
+            prefix,
+            memberTxIds,
+            limit,
+            highwaters,
+            stream,
+            additionalSolverAfterNMillis,
+            abandonSolutionAfterNMillis,
+            solutionLog));
+    }
+}
@@ -0,0 +1,391 @@
+package com.jivesoftware.os.amza.client.http;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.jivesoftware.os.amza.api.PartitionClient;
+import com.jivesoftware.os.amza.api.partition.Consistency;
+import com.jivesoftware.os.amza.api.partition.PartitionName;
+import com.jivesoftware.os.amza.api.ring.RingMember;
+import com.jivesoftware.os.amza.api.stream.ClientUpdates;
+import com.jivesoftware.os.amza.api.stream.KeyValueStream;
+import com.jivesoftware.os.amza.api.stream.KeyValueTimestampStream;
+import com.jivesoftware.os.amza.api.stream.OffsetUnprefixedWALKeys;
+import com.jivesoftware.os.amza.api.stream.PrefixedKeyRanges;
+import com.jivesoftware.os.amza.api.stream.TxKeyValueStream;
+import com.jivesoftware.os.amza.api.stream.TxKeyValueStream.TxResult;
+import com.jivesoftware.os.amza.api.stream.UnprefixedWALKeys;
+import com.jivesoftware.os.amza.api.take.Highwaters;
+import com.jivesoftware.os.amza.api.take.TakeResult;
+import com.jivesoftware.os.amza.api.wal.WALHighwater;
+import com.jivesoftware.os.amza.client.http.PartitionValueCache.CachedValue;
+import com.jivesoftware.os.mlogger.core.MetricLogger;
+import com.jivesoftware.os.mlogger.core.MetricLoggerFactory;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Serves {@link #get} and {@link #getRaw} from a {@link PartitionValueCache} and reads through to the delegate on a miss. Entries are
+ * invalidated by commits made through this client and by {@link #tail()}, which follows the partition's change feed. Misses are only
+ * cached while the feed has caught up within the cache ttl, so an entry is never older than the ttl. The feed starts from the beginning
+ * of the partition, so this is meant for small partitions of hot, rarely changing keys.
+ */
+public class CachingPartitionClient implements PartitionClient {
+
+    private static final MetricLogger LOG = MetricLoggerFactory.getLogger();
+
+    private final PartitionName partitionName;
+    private final PartitionClient delegate;
+    private final PartitionValueCache cache;
+    private final int tailBatchSize;
+    private final long additionalSolverAfterNMillis;
+    private final long abandonSolutionAfterNMillis;
+
+    private final Map<RingMember, Long> cursorMemberTxIds = Maps.newConcurrentMap();
+    private final AtomicLong invalidations = new AtomicLong();
+    private volatile long caughtUpTimestamp = 0;
+
+    public CachingPartitionClient(PartitionName partitionName,
+        PartitionClient delegate,
+        PartitionValueCache cache,
+        int tailBatchSize,
+        long additionalSolverAfterNMillis,
+        long abandonSolutionAfterNMillis) {
+        this.partitionName = partitionName;
+        this.delegate = delegate;
+        this.cache = cache;
+        this.tailBatchSize = tailBatchSize;
+        this.additionalSolverAfterNMillis = additionalSolverAfterNMillis;
+        this.abandonSolutionAfterNMillis = abandonSolutionAfterNMillis;
+    }
+
+    /**
+     * Takes everything committed since the last tail and invalidates the keys it touched. A failed tail drops the partition's entries and
+     * stops misses from being cached until a later tail catches up.
+     */
+    public synchronized void tail() throws Exception {
+        long start = System.currentTimeMillis();
+        try {
+            boolean taking = true;
+            while (taking) {
+                int[] took = { 0 };
+                TakeResult takeResult = delegate.takeFromTransactionId(null,
+                    cursorMemberTxIds,
+                    tailBatchSize,
+                    highwater -> mergeHighwater(highwater),
+                    (rowTxId, prefix, key, value, valueTimestamp, valueTombstoned, valueVersion) -> {
+                        invalidations.incrementAndGet();
+                        cache.invalidate(partitionName, prefix, key);
+                        took[0]++;
+                        return TxResult.MORE;
+                    },
+                    additionalSolverAfterNMillis,
+                    abandonSolutionAfterNMillis,
+                    Optional.empty());
+
+                if (takeResult.tookFrom != null) {
+                    cursorMemberTxIds.merge(takeResult.tookFrom, takeResult.lastTxId, Math::max);
+                }
+                if (takeResult.tookToEnd != null) {
+                    mergeHighwater(takeResult.tookToEnd);
+                    taking = false;
+                } else if (took[0] == 0) {
+                    taking = false;
+                }
+                LOG.inc("cache>tail>invalidated", took[0]);
+            }
+            caughtUpTimestamp = start;
+        } catch (Exception x) {
+            caughtUpTimestamp = 0;
+            invalidations.incrementAndGet();
+            cache.invalidate(partitionName);
+            LOG.inc("cache>tail>failed");
+            throw x;
+        }
+    }
+
+    private void mergeHighwater(WALHighwater highwater) {
+        if (highwater != null) {
+            for (WALHighwater.RingMemberHighwater memberHighwater : highwater.ringMemberHighwater) {
+                cursorMemberTxIds.merge(memberHighwater.ringMember, memberHighwater.transactionId, Math::max);
+            }
+        }
+    }
+
+    private boolean isCaughtUp() {
+        return System.currentTimeMillis() - caughtUpTimestamp < cache.getTtlMillis();
+    }
+
+    @Override
+    public void commit(Consistency consistency,
+        byte[] prefix,
+        ClientUpdates updates,
+        long additionalSolverAfterNMillis,
+        long abandonSolutionAfterNMillis,
+        Optional<List<String>> solutionLog) throws Exception {
+        List<byte[]> committed = Lists.newArrayList();
+        try {
+            delegate.commit(consistency,
+                prefix,
+                commitKeyValueStream -> updates.updates((key, value, valueTimestamp, valueTombstoned) -> {
+                    committed.add(key);
+                    return commitKeyValueStream.commit(key, value, valueTimestamp, valueTombstoned);
+                }),
+                additionalSolverAfterNMillis,
+                abandonSolutionAfterNMillis,
+                solutionLog);
+        } finally {
+            // a failed commit may still have landed on some of the ring
+            invalidations.incrementAndGet();
+            for (byte[] key : committed) {
+                cache.invalidate(partitionName, prefix, key);
+            }
+        }
+    }
+
+    @Override
+    public long getApproximateCount(Consistency consistency,
+        long additionalSolverAfterNMillis,
+        long abandonLeaderSolutionAfterNMillis,
+        long abandonSolutionAfterNMillis,
+        Optional<List<String>> solutionLog) throws Exception {
+        return delegate.getApproximateCount(consistency,
+            additionalSolverAfterNMillis,
+            abandonLeaderSolutionAfterNMillis,
+            abandonSolutionAfterNMillis,
+            solutionLog);
+    }
+
+    @Override
+    public boolean get(Consistency consistency,
+        byte[] prefix,
+        UnprefixedWALKeys keys,
+        KeyValueTimestampStream valuesStream,
+        long additionalSolverAfterNMillis,
+        long abandonLeaderSolutionAfterNMillis,
+        long abandonSolutionAfterNMillis,
+        Optional<List<String>> solutionLog) throws Exception {
+        return getCached(consistency,
+            prefix,
+            keys,
+            (prefix1, key, value, valueTimestamp, valueTombstoned, valueVersion) -> {
+                return valueTombstoned || valuesStream.stream(prefix1, key, value, valueTimestamp, valueVersion);
+            },
+            additionalSolverAfterNMillis,
+            abandonLeaderSolutionAfterNMillis,
+            abandonSolutionAfterNMillis,
+            solutionLog);
+    }
+
+    @Override
+    public boolean getOffset(Consistency consistency,
+        byte[] prefix,
+        OffsetUnprefixedWALKeys keys,
+        KeyValueTimestampStream valuesStream,
+        long additionalSolverAfterNMillis,
+        long abandonLeaderSolutionAfterNMillis,
+        long abandonSolutionAfterNMillis,
+        Optional<List<String>> solutionLog) throws Exception {
+        return delegate.getOffset(consistency,
+            prefix,
+            keys,
+            valuesStream,
+            additionalSolverAfterNMillis,
+            abandonLeaderSolutionAfterNMillis,
+            abandonSolutionAfterNMillis,
+            solutionLog);
+    }
+
+    @Override
+    public boolean getRaw(Consistency consistency,
+        byte[] prefix,
+        UnprefixedWALKeys keys,
+        KeyValueStream valuesStream,
+        long additionalSolverAfterNMillis,
+        long abandonLeaderSolutionAfterNMillis,
+        long abandonSolutionAfterNMillis,
+        Optional<List<String>> solutionLog) throws Exception {
+        return getCached(consistency,
+            prefix,
+            keys,
+            valuesStream,
+            additionalSolverAfterNMillis,
+            abandonLeaderSolutionAfterNMillis,
+            abandonSolutionAfterNMillis,
+            solutionLog);
+    }
+
+    private boolean getCached(Consistency consistency,
+        byte[] prefix,
+        UnprefixedWALKeys keys,
+        KeyValueStream stream,
+        long additionalSolverAfterNMillis,
+        long abandonLeaderSolutionAfterNMillis,
+        long abandonSolutionAfterNMillis,
+        Optional<List<String>> solutionLog) throws Exception {
+
+        List<byte[]> requested = Lists.newArrayList();
+        keys.consume(key -> {
+            requested.add(key);
+            return true;
+        });
+
+        CachedValue[] got = new CachedValue[requested.size()];
+        List<Integer> misses = Lists.newArrayList();
+        for (int i = 0; i < got.length; i++) {
+            got[i] = cache.get(partitionName, prefix, requested.get(i));
+            if (got[i] == null) {
+                misses.add(i);
+            }
+        }
+        LOG.inc("cache>hit", got.length - misses.size());
+        LOG.inc("cache>miss", misses.size());
+
+        if (!misses.isEmpty()) {
+            boolean caughtUp = isCaughtUp();
+            long invalidation = invalidations.get();
+            int[] answered = { 0 };
+            delegate.getRaw(consistency,
+                prefix,
+                keyStream -> {
+                    for (int i : misses) {
+                        if (!keyStream.stream(requested.get(i))) {
+                            return false;
+                        }
+                    }
+                    return true;
+                },
+                (prefix1, key, value, valueTimestamp, valueTombstoned, valueVersion) -> {
+                    got[misses.get(answered[0])] = new CachedValue(value, valueTimestamp, valueTombstoned, valueVersion);
+                    answered[0]++;
+                    return true;
+                },
+                additionalSolverAfterNMillis,
+                abandonLeaderSolutionAfterNMillis,
+                abandonSolutionAfterNMillis,
+                solutionLog);
+
+            if (caughtUp) {
+                for (int i = 0; i < answered[0]; i++) {
+                    int index = misses.get(i);
+                    cache.put(partitionName, prefix, requested.get(index), got[index]);
+                }
+                // an invalidation which raced the read may have preceded the puts, so back them out rather than risk caching a stale value
+                if (invalidations.get() != invalidation) {
+                    for (int i = 0; i < answered[0]; i++) {
+                        cache.invalidate(partitionName, prefix, requested.get(misses.get(i)));
+                    }
+                }
+            }
+        }
+
+        for (int i = 0; i < got.length; i++) {
+            CachedValue cachedValue = got[i];
+            if (cachedValue != null
+                && !stream.stream(prefix, requested.get(i), cachedValue.value, cachedValue.timestamp, cachedValue.tombstoned, cachedValue.version)) {
+                break;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public boolean scan(Consistency consistency,
+        boolean compressed,
+        PrefixedKeyRanges ranges,
+        KeyValueTimestampStream scan,
+        long additionalSolverAfterNMillis,
+        long abandonLeaderSolutionAfterNMillis,
+        long abandonSolutionAfterNMillis,
+        Optional<List<String>> solutionLog) throws Exception {
+        return delegate.scan(consistency,
+            compressed,
+            ranges,
+            scan,
+            additionalSolverAfterNMillis,
+            abandonLeaderSolutionAfterNMillis,
+            abandonSolutionAfterNMillis,
+            solutionLog);
+    }
+
+    @Override
+    public boolean scanFiltered(Consistency consistency,
+        boolean compressed,
+        PrefixedKeyRanges ranges,
+        KeyValueFilter filter,
+        KeyValueTimestampStream scan,
+        long additionalSolverAfterNMillis,
+        long abandonLeaderSolutionAfterNMillis,
+        long abandonSolutionAfterNMillis,
+        Optional<List<String>> solutionLog) throws Exception {
+        return delegate.scanFiltered(consistency,
+            compressed,
+            ranges,
+            filter,
+            scan,
+            additionalSolverAfterNMillis,
+            abandonLeaderSolutionAfterNMillis,
+            abandonSolutionAfterNMillis,
+            solutionLog);
+    }
+
+    @Override
+    public boolean scanKeys(Consistency consistency,
+        boolean compressed,
+        PrefixedKeyRanges ranges,
+        KeyValueTimestampStream scan,
+        long additionalSolverAfterNMillis,
+        long abandonLeaderSolutionAfterNMillis,
+        long abandonSolutionAfterNMillis,
+        Optional<List<String>> solutionLog) throws Exception {
+        return delegate.scanKeys(consistency,
+            compressed,
+            ranges,
+            scan,
+            additionalSolverAfterNMillis,
+            abandonLeaderSolutionAfterNMillis,
+            abandonSolutionAfterNMillis,
+            solutionLog);
+    }
+
+    @Override
+    public TakeResult takeFromTransactionId(List<RingMember> membersInOrder,
+        Map<RingMember, Long> memberTxIds,
+        int limit,
+        Highwaters highwaters,
+        TxKeyValueStream stream,
+        long additionalSolverAfterNMillis,
+        long abandonSolutionAfterNMillis,
+        Optional<List<String>> solutionLog) throws Exception {
+        return delegate.takeFromTransactionId(membersInOrder,
+            memberTxIds,
+            limit,
+            highwaters,
+            stream,
+            additionalSolverAfterNMillis,
+            abandonSolutionAfterNMillis,
+            solutionLog);
+    }
+
+    @Override
+    public TakeResult takePrefixFromTransactionId(List<RingMember> membersInOrder,
+        byte[] prefix,
+        Map<RingMember, Long> memberTxIds,
+        int limit,
+        Highwaters highwaters,
+        TxKeyValueStream stream,
+        long additionalSolverAfterNMillis,
+        long abandonSolutionAfterNMillis,
+        Optional<List<String>> solutionLog) throws Exception {
+        return delegate.takePrefixFromTransactionId(membersInOrder,
+            prefix,
+            memberTxIds,
+            limit,
+            highwaters,
+            stream,
+            additionalSolverAfterNMillis,
+            abandonSolutionAfterNMillis,
+            solutionLog);
+    }
+}
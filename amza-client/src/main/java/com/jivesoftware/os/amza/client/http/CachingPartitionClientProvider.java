@@ -0,0 +1,119 @@
+package com.jivesoftware.os.amza.client.http;
+
+import com.google.common.collect.Maps;
+import com.jivesoftware.os.amza.api.PartitionClient;
+import com.jivesoftware.os.amza.api.PartitionClientProvider;
+import com.jivesoftware.os.amza.api.RingPartitionProperties;
+import com.jivesoftware.os.amza.api.partition.PartitionName;
+import com.jivesoftware.os.amza.api.partition.PartitionProperties;
+import com.jivesoftware.os.mlogger.core.MetricLogger;
+import com.jivesoftware.os.mlogger.core.MetricLoggerFactory;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hands out {@link CachingPartitionClient}s which share one {@link PartitionValueCache}, and tails each of their partitions every
+ * {@code tailIntervalMillis} once started.
+ */
+public class CachingPartitionClientProvider implements PartitionClientProvider {
+
+    private static final MetricLogger LOG = MetricLoggerFactory.getLogger();
+
+    private final PartitionClientProvider delegate;
+    private final PartitionValueCache cache;
+    private final ScheduledExecutorService scheduledExecutorService;
+    private final long tailIntervalMillis;
+    private final int tailBatchSize;
+    private final long additionalSolverAfterNMillis;
+    private final long abandonSolutionAfterNMillis;
+    private final Map<PartitionName, CachingPartitionClient> clients = Maps.newConcurrentMap();
+
+    private ScheduledFuture<?> tailer;
+
+    public CachingPartitionClientProvider(PartitionClientProvider delegate,
+        PartitionValueCache cache,
+        ScheduledExecutorService scheduledExecutorService,
+        long tailIntervalMillis,
+        int tailBatchSize,
+        long additionalSolverAfterNMillis,
+        long abandonSolutionAfterNMillis) {
+        this.delegate = delegate;
+        this.cache = cache;
+        this.scheduledExecutorService = scheduledExecutorService;
+        this.tailIntervalMillis = tailIntervalMillis;
+        this.tailBatchSize = tailBatchSize;
+        this.additionalSolverAfterNMillis = additionalSolverAfterNMillis;
+        this.abandonSolutionAfterNMillis = abandonSolutionAfterNMillis;
+    }
+
+    public synchronized void start() {
+        if (tailer == null) {
+            tailer = scheduledExecutorService.scheduleWithFixedDelay(this::tailAll, 0, tailIntervalMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    public synchronized void stop() {
+        if (tailer != null) {
+            tailer.cancel(false);
+            tailer = null;
+        }
+    }
+
+    private void tailAll() {
+        for (Map.Entry<PartitionName, CachingPartitionClient> entry : clients.entrySet()) {
+            try {
+                entry.getValue().tail();
+            } catch (Exception x) {
+                LOG.warn("Failed to tail {}, cached values were dropped", new Object[] { entry.getKey() }, x);
+            }
+        }
+    }
+
+    @Override
+    public PartitionClient getPartition(PartitionName partitionName) throws Exception {
+        CachingPartitionClient got = clients.get(partitionName);
+        if (got != null) {
+            return got;
+        }
+        return clients.computeIfAbsent(partitionName, (key) -> {
+            try {
+                return caching(key, delegate.getPartition(key));
+            } catch (Exception x) {
+                throw new RuntimeException(x);
+            }
+        });
+    }
+
+    @Override
+    public PartitionClient getPartition(PartitionName partitionName,
+        int ringSize,
+        PartitionProperties partitionProperties) throws Exception {
+        CachingPartitionClient got = clients.get(partitionName);
+        if (got != null) {
+            return got;
+        }
+        return clients.computeIfAbsent(partitionName, (key) -> {
+            try {
+                return caching(key, delegate.getPartition(key, ringSize, partitionProperties));
+            } catch (Exception x) {
+                throw new RuntimeException(x);
+            }
+        });
+    }
+
+    private CachingPartitionClient caching(PartitionName partitionName, PartitionClient partitionClient) {
+        return new CachingPartitionClient(partitionName,
+            partitionClient,
+            cache,
+            tailBatchSize,
+            additionalSolverAfterNMillis,
+            abandonSolutionAfterNMillis);
+    }
+
+    @Override
+    public RingPartitionProperties getProperties(PartitionName partitionName) throws Exception {
+        return delegate.getProperties(partitionName);
+    }
+}
@@ -0,0 +1,202 @@
+package com.jivesoftware.os.amza.client.http;
+
+import com.google.common.collect.Maps;
+import com.jivesoftware.os.amza.api.ring.RingMemberAndHost;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Tracks how long calls to each {@link RingMemberAndHost} have recently taken, as an EWMA plus a window of samples for percentiles. The
+ * router uses it to try the hosts it expects to answer fastest first, and to hedge with another host once a call has run past what its
+ * host usually takes rather than after a fixed delay. Hosts are compared by the power of two their EWMA falls in, so load still spreads
+ * across hosts which are about as fast as each other, and an occasional call keeps the caller's order so slow hosts get a chance to
+ * show they have recovered. Hosts which haven't been called for {@code expireAfterMillis} are forgotten, so hosts which left the ring
+ * don't accumulate.
+ */
+public class HostLatencies {
+
+    private static final double ALPHA = 0.2d;
+
+    private final int windowSize;
+    private final int minSamples;
+    private final double hedgePercentile;
+    private final long minHedgeMillis;
+    private final int probeOneInN;
+    private final long expireAfterMillis;
+    private final LongSupplier clock;
+    private final Map<RingMemberAndHost, Latency> latencies = Maps.newConcurrentMap();
+    private final AtomicLong lastExpiredMillis;
+
+    /**
+     * For callers which don't configure it: hedge at the p99 of the last 128 calls, and forget hosts idle for ten minutes.
+     */
+    public static HostLatencies defaults() {
+        return new HostLatencies(128, 16, 0.99d, 1, 32, TimeUnit.MINUTES.toMillis(10));
+    }
+
+    public HostLatencies(int windowSize, int minSamples, double hedgePercentile, long minHedgeMillis, int probeOneInN, long expireAfterMillis) {
+        this(windowSize, minSamples, hedgePercentile, minHedgeMillis, probeOneInN, expireAfterMillis, System::currentTimeMillis);
+    }
+
+    HostLatencies(int windowSize,
+        int minSamples,
+        double hedgePercentile,
+        long minHedgeMillis,
+        int probeOneInN,
+        long expireAfterMillis,
+        LongSupplier clock) {
+        this.windowSize = windowSize;
+        this.minSamples = Math.min(minSamples, windowSize);
+        this.hedgePercentile = hedgePercentile;
+        this.minHedgeMillis = minHedgeMillis;
+        this.probeOneInN = probeOneInN;
+        this.expireAfterMillis = expireAfterMillis;
+        this.clock = clock;
+        this.lastExpiredMillis = new AtomicLong(clock.getAsLong());
+    }
+
+    void completed(RingMemberAndHost ringMemberAndHost, long latencyMillis) {
+        long now = clock.getAsLong();
+        latencies.computeIfAbsent(ringMemberAndHost, key -> new Latency(windowSize)).sample(latencyMillis, now);
+
+        long lastExpired = lastExpiredMillis.get();
+        if (now - lastExpired >= expireAfterMillis && lastExpiredMillis.compareAndSet(lastExpired, now)) {
+            latencies.values().removeIf(latency -> now - latency.lastSampleMillis >= expireAfterMillis);
+        }
+    }
+
+    int size() {
+        return latencies.size();
+    }
+
+    /**
+     * A failed or abandoned call took at least as long as it ran, and a failure counts as no faster than {@code penaltyMillis}.
+     */
+    void failed(RingMemberAndHost ringMemberAndHost, long elapsedMillis, long penaltyMillis) {
+        completed(ringMemberAndHost, Math.max(elapsedMillis, penaltyMillis));
+    }
+
+    /**
+     * @return the EWMA latency of the host, or -1 if it has never been called
+     */
+    long predictedMillis(RingMemberAndHost ringMemberAndHost) {
+        Latency latency = latencies.get(ringMemberAndHost);
+        return latency == null ? -1 : latency.ewma();
+    }
+
+    /**
+     * @return the hedge percentile of the host's recent latencies, or -1 if there are too few samples to tell
+     */
+    long percentileMillis(RingMemberAndHost ringMemberAndHost) {
+        Latency latency = latencies.get(ringMemberAndHost);
+        return latency == null ? -1 : latency.percentile(hedgePercentile, minSamples);
+    }
+
+    /**
+     * @return a copy of the hosts ordered by predicted latency, with hosts which have never been called first so they get measured
+     */
+    RingMemberAndHost[] order(RingMemberAndHost[] ringMemberAndHosts) {
+        if (probeOneInN > 0 && ThreadLocalRandom.current().nextInt(probeOneInN) == 0) {
+            return Arrays.copyOf(ringMemberAndHosts, ringMemberAndHosts.length);
+        }
+        // classify once up front so concurrent samples can't change the comparison mid sort
+        Integer[] indexes = new Integer[ringMemberAndHosts.length];
+        int[] classes = new int[ringMemberAndHosts.length];
+        for (int i = 0; i < ringMemberAndHosts.length; i++) {
+            indexes[i] = i;
+            classes[i] = latencyClass(ringMemberAndHosts[i]);
+        }
+        Arrays.sort(indexes, Comparator.comparingInt(i -> classes[i])); // stable, so equally fast hosts keep the caller's order
+        RingMemberAndHost[] ordered = new RingMemberAndHost[ringMemberAndHosts.length];
+        for (int i = 0; i < indexes.length; i++) {
+            ordered[i] = ringMemberAndHosts[indexes[i]];
+        }
+        return ordered;
+    }
+
+    /**
+     * @param ringMemberAndHosts the hosts in the order they will be called
+     * @param count how many hosts are called up front
+     * @param maxMillis the fixed delay to fall back to, which also bounds the result
+     * @return how long to wait for the first hosts before adding another solver
+     */
+    long hedgeAfterMillis(RingMemberAndHost[] ringMemberAndHosts, int count, long maxMillis) {
+        long hedgeAfterMillis = -1;
+        int counted = 0;
+        for (RingMemberAndHost ringMemberAndHost : ringMemberAndHosts) {
+            if (ringMemberAndHost == null) {
+                continue;
+            }
+            if (counted == count) {
+                break;
+            }
+            counted++;
+            long percentileMillis = percentileMillis(ringMemberAndHost);
+            if (percentileMillis < 0) {
+                return maxMillis;
+            }
+            hedgeAfterMillis = Math.max(hedgeAfterMillis, percentileMillis);
+        }
+        if (hedgeAfterMillis < 0) {
+            return maxMillis;
+        }
+        return Math.min(maxMillis, Math.max(minHedgeMillis, hedgeAfterMillis));
+    }
+
+    private int latencyClass(RingMemberAndHost ringMemberAndHost) {
+        if (ringMemberAndHost == null) {
+            return Integer.MAX_VALUE;
+        }
+        long predictedMillis = predictedMillis(ringMemberAndHost);
+        return predictedMillis < 0 ? -1 : 64 - Long.numberOfLeadingZeros(predictedMillis);
+    }
+
+    private static class Latency {
+
+        private final long[] window;
+        private int index;
+        private int count;
+        private double ewma = -1;
+        private long percentile = -1;
+        private double percentileOf = -1;
+        private int samplesSincePercentile;
+        private volatile long lastSampleMillis;
+
+        private Latency(int windowSize) {
+            this.window = new long[windowSize];
+        }
+
+        synchronized void sample(long millis, long now) {
+            lastSampleMillis = now;
+            window[index] = millis;
+            index = (index + 1) % window.length;
+            count = Math.min(count + 1, window.length);
+            ewma = ewma < 0 ? millis : ewma + ALPHA * (millis - ewma);
+            samplesSincePercentile++;
+        }
+
+        synchronized long ewma() {
+            return (long) ewma;
+        }
+
+        synchronized long percentile(double q, int minSamples) {
+            if (count < minSamples) {
+                return -1;
+            }
+            // sorting the window on every call would be wasteful, so only refresh after an eighth of it has turned over
+            if (percentile < 0 || percentileOf != q || samplesSincePercentile >= Math.max(1, window.length / 8)) {
+                long[] sorted = Arrays.copyOf(window, count);
+                Arrays.sort(sorted);
+                percentile = sorted[Math.max(0, Math.min(count - 1, (int) Math.ceil(q * count) - 1))];
+                percentileOf = q;
+                samplesSincePercentile = 0;
+            }
+            return percentile;
+        }
+    }
+}
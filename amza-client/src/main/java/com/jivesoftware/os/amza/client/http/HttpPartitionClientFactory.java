@@ -10,6 +10,19 @@ import com.jivesoftware.os.routing.bird.shared.HttpClientException;
  */
 public class HttpPartitionClientFactory implements PartitionClientFactory<HttpClient, HttpClientException> {
 
+    private final AmzaStreamClient streamClient;
+
+    public HttpPartitionClientFactory() {
+        this(null);
+    }
+
+    /**
+     * @param streamClient when non null, commits, gets and plain scans prefer each host's stream connection over http
+     */
+    public HttpPartitionClientFactory(AmzaStreamClient streamClient) {
+        this.streamClient = streamClient;
+    }
+
     @Override
     public PartitionClient create(PartitionName partitionName,
         AmzaClientCallRouter<HttpClient, HttpClientException> partitionCallRouter,
@@ -17,7 +30,10 @@ public class HttpPartitionClientFactory implements PartitionClientFactory<HttpCl
         long debugClientCount,
         long debugClientCountInterval) throws Exception {
 
-        HttpRemotePartitionCaller remotePartitionCaller = new HttpRemotePartitionCaller(partitionCallRouter, partitionName);
+        HttpRemotePartitionCaller httpPartitionCaller = new HttpRemotePartitionCaller(partitionCallRouter, partitionName);
+        RemotePartitionCaller<HttpClient, HttpClientException> remotePartitionCaller = streamClient == null
+            ? httpPartitionCaller
+            : new StreamingRemotePartitionCaller(partitionCallRouter, partitionName, httpPartitionCaller, streamClient);
         return new AmzaPartitionClient<>(partitionName, partitionCallRouter, remotePartitionCaller, awaitLeaderElectionForNMillis,
             debugClientCount, debugClientCountInterval);
     }
@@ -1,8 +1,12 @@
 package com.jivesoftware.os.amza.client.http;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.jivesoftware.os.amza.api.AmzaInterner;
 import com.jivesoftware.os.amza.api.RingPartitionProperties;
 import com.jivesoftware.os.amza.api.filer.FilerInputStream;
+import com.jivesoftware.os.amza.api.filer.FilerOutputStream;
 import com.jivesoftware.os.amza.api.filer.UIO;
 import com.jivesoftware.os.amza.api.partition.PartitionName;
 import com.jivesoftware.os.amza.api.partition.PartitionProperties;
@@ -23,6 +27,10 @@ import com.jivesoftware.os.routing.bird.shared.HostPort;
 import com.jivesoftware.os.routing.bird.shared.HttpClientException;
 import com.jivesoftware.os.routing.bird.shared.NextClientStrategy;
 import java.io.IOException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.concurrent.TimeoutException;
 import org.apache.http.HttpStatus;
@@ -38,6 +46,7 @@ public class HttpPartitionHostsProvider implements PartitionHostsProvider {
     private final ObjectMapper mapper;
 
     private final RoundRobinStrategy roundRobinStrategy = new RoundRobinStrategy();
+    private final AmzaInterner amzaInterner = new AmzaInterner();
     private final TailAtScaleStrategy tailAtScaleStrategy;
 
     public HttpPartitionHostsProvider(TenantAwareHttpClient<String> tenantAwareHttpClient, TailAtScaleStrategy tailAtScaleStrategy, ObjectMapper mapper) {
@@ -182,30 +191,96 @@ public class HttpPartitionHostsProvider implements PartitionHostsProvider {
         }
     }
 
-    private Ring consumeRing(PartitionName partitionName, HttpStreamResponse got, byte[] intBuffer) {
-        try {
-            if (got.getStatusCode() >= 200 && got.getStatusCode() < 300) {
-                FilerInputStream fis = null;
-                try {
-                    fis = new FilerInputStream(got.getInputStream());
-                    int ringSize = UIO.readInt(fis, "ringSize", intBuffer);
-                    int leaderIndex = -1;
-                    RingMemberAndHost[] ring = new RingMemberAndHost[ringSize];
-                    for (int i = 0; i < ringSize; i++) {
-                        byte[] ringMemberBytes = UIO.readByteArray(fis, "ringMember", intBuffer);
-                        RingMember ringMember = new RingMember(ringMemberBytes);
-                        RingHost ringHost = RingHost.fromBytes(UIO.readByteArray(fis, "ringHost", intBuffer));
-                        ring[i] = new RingMemberAndHost(ringMember, ringHost);
-                        if (UIO.readBoolean(fis, "leader")) {
-                            if (leaderIndex == -1) {
-                                leaderIndex = i;
-                            } else {
-                                throw new RuntimeException("We suck! Gave back more than one leader!");
+    @Override
+    public Map<PartitionName, Ring> getPartitionHosts(Collection<PartitionName> partitionNames) throws HttpClientException {
+        if (partitionNames.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        List<PartitionName> ordered = Lists.newArrayList(partitionNames);
+        return tenantAwareHttpClient.call("", tailAtScaleStrategy, "ringLeaders", (client) -> {
+            HttpStreamResponse got = client.streamingPostStreamableRequest("/amza/v1/ringLeaders",
+                (out) -> {
+                    try {
+                        byte[] intLongBuffer = new byte[8];
+                        FilerOutputStream fos = new FilerOutputStream(out);
+                        for (PartitionName partitionName : ordered) {
+                            UIO.write(fos, new byte[] { 0 }, "eos");
+                            UIO.writeByteArray(fos, partitionName.toBytes(), "partitionName", intLongBuffer);
+                        }
+                        UIO.write(fos, new byte[] { 1 }, "eos");
+                    } catch (Exception x) {
+                        throw new RuntimeException("Failed while streaming partition names.", x);
+                    } finally {
+                        out.close();
+                    }
+                }, null);
+            try {
+                if (got.getStatusCode() >= 200 && got.getStatusCode() < 300) {
+                    try {
+                        FilerInputStream fis = new FilerInputStream(got.getInputStream());
+                        byte[] intBuffer = new byte[4];
+                        Map<PartitionName, Ring> rings = Maps.newHashMapWithExpectedSize(ordered.size());
+                        for (PartitionName partitionName : ordered) {
+                            if (UIO.readBoolean(fis, "found")) {
+                                rings.put(partitionName, readRing(fis, intBuffer));
                             }
                         }
+                        return new ClientResponse<>(rings, true);
+                    } catch (Exception x) {
+                        throw new RuntimeException("Failed loading routes for " + ordered.size() + " partitions", x);
+                    }
+                }
+            } finally {
+                got.close();
+            }
+            throw new RuntimeException("Failed to get ring leaders for " + ordered.size() + " partitions statusCode:" + got.getStatusCode());
+        });
+    }
+
+    @Override
+    public LeaderChanges awaitLeaderChanges(RingHost ringHost,
+        long journalId,
+        long sinceSequence,
+        long waitForChangesMillis) throws HttpClientException {
+
+        HostPort[] hostPorts = { new HostPort(ringHost.getHost(), ringHost.getPort()) };
+        NextClientStrategy strategy = new ConnectionDescriptorSelectiveStrategy(hostPorts);
+        return tenantAwareHttpClient.call("", strategy, "leaderChanges", (client) -> {
+            HttpStreamResponse got = client.streamingPost("/amza/v1/leaderChanges/" + journalId + "/" + sinceSequence + "/" + waitForChangesMillis,
+                "", null);
+            try {
+                if (got.getStatusCode() >= 200 && got.getStatusCode() < 300) {
+                    try {
+                        FilerInputStream fis = new FilerInputStream(got.getInputStream());
+                        byte[] intLongBuffer = new byte[8];
+                        long gotJournalId = UIO.readLong(fis, "journalId", intLongBuffer);
+                        long nextSequence = UIO.readLong(fis, "nextSequence", intLongBuffer);
+                        boolean reset = UIO.readBoolean(fis, "reset");
+                        List<PartitionName> partitionNames = Lists.newArrayList();
+                        List<RingMember> leaders = Lists.newArrayList();
+                        while (!UIO.readBoolean(fis, "eos")) {
+                            byte[] partitionNameBytes = UIO.readByteArray(fis, "partitionName", intLongBuffer);
+                            byte[] leaderBytes = UIO.readByteArray(fis, "leader", intLongBuffer);
+                            partitionNames.add(amzaInterner.internPartitionName(partitionNameBytes, 0, partitionNameBytes.length));
+                            leaders.add(leaderBytes == null ? null : amzaInterner.internRingMember(leaderBytes, 0, leaderBytes.length));
+                        }
+                        return new ClientResponse<>(new LeaderChanges(gotJournalId, nextSequence, reset, partitionNames, leaders), true);
+                    } catch (Exception x) {
+                        throw new RuntimeException("Failed loading leader changes from " + ringHost, x);
                     }
-                    return new Ring(leaderIndex, ring);
+                }
+            } finally {
+                got.close();
+            }
+            throw new RuntimeException("Failed to get leader changes from " + ringHost + " statusCode:" + got.getStatusCode());
+        });
+    }
 
+    private Ring consumeRing(PartitionName partitionName, HttpStreamResponse got, byte[] intBuffer) {
+        try {
+            if (got.getStatusCode() >= 200 && got.getStatusCode() < 300) {
+                try {
+                    return readRing(new FilerInputStream(got.getInputStream()), intBuffer);
                 } catch (Exception x) {
                     throw new RuntimeException("Failed loading routes for " + partitionName, x);
                 }
@@ -215,4 +290,24 @@ public class HttpPartitionHostsProvider implements PartitionHostsProvider {
         }
         throw new RuntimeException("No routes to partition:" + partitionName + " statusCode:" + got.getStatusCode());
     }
+
+    private static Ring readRing(FilerInputStream fis, byte[] intBuffer) throws IOException {
+        int ringSize = UIO.readInt(fis, "ringSize", intBuffer);
+        int leaderIndex = -1;
+        RingMemberAndHost[] ring = new RingMemberAndHost[ringSize];
+        for (int i = 0; i < ringSize; i++) {
+            byte[] ringMemberBytes = UIO.readByteArray(fis, "ringMember", intBuffer);
+            RingMember ringMember = new RingMember(ringMemberBytes);
+            RingHost ringHost = RingHost.fromBytes(UIO.readByteArray(fis, "ringHost", intBuffer));
+            ring[i] = new RingMemberAndHost(ringMember, ringHost);
+            if (UIO.readBoolean(fis, "leader")) {
+                if (leaderIndex == -1) {
+                    leaderIndex = i;
+                } else {
+                    throw new RuntimeException("We suck! Gave back more than one leader!");
+                }
+            }
+        }
+        return new Ring(leaderIndex, ring);
+    }
 }
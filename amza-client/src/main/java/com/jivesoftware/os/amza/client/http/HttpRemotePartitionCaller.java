@@ -24,6 +24,7 @@ import com.jivesoftware.os.routing.bird.shared.HttpClientException;
 import java.io.ByteArrayOutputStream;
 import java.io.InputStream;
 import java.io.ObjectOutputStream;
+import java.io.OutputStream;
 import java.nio.charset.StandardCharsets;
 import java.util.Map;
 import javax.ws.rs.core.Response;
@@ -60,25 +61,11 @@ public class HttpRemotePartitionCaller implements RemotePartitionCaller<HttpClie
         ClientUpdates updates,
         long abandonSolutionAfterNMillis) throws HttpClientException {
 
-        byte[] lengthBuffer = new byte[8];
         boolean checkLeader = ringMember.equals(leader);
         HttpResponse got = client.postStreamableRequest("/amza/v1/commit/" + base64PartitionName + "/" + consistency.name() + "/" + checkLeader,
             (out) -> {
                 try {
-
-                    FilerOutputStream fos = new FilerOutputStream(out);
-                    UIO.writeByteArray(fos, prefix, "prefix", lengthBuffer);
-                    UIO.writeLong(fos, abandonSolutionAfterNMillis, "timeoutInMillis", lengthBuffer);
-
-                    updates.updates((key, value, valueTimestamp, valueTombstoned) -> {
-                        UIO.write(fos, new byte[]{0}, "eos");
-                        UIO.writeByteArray(fos, key, "key", lengthBuffer);
-                        UIO.writeByteArray(fos, value, "value", lengthBuffer);
-                        UIO.writeLong(fos, valueTimestamp, "valueTimestamp", lengthBuffer);
-                        UIO.write(fos, new byte[]{valueTombstoned ? (byte) 1 : (byte) 0}, "valueTombstoned");
-                        return true;
-                    });
-                    UIO.write(fos, new byte[]{1}, "eos");
+                    writeCommitBody(out, prefix, updates, abandonSolutionAfterNMillis);
                 } catch (Exception x) {
                     throw new RuntimeException("Failed while streaming commitable.", x);
                 } finally {
@@ -102,19 +89,11 @@ public class HttpRemotePartitionCaller implements RemotePartitionCaller<HttpClie
         byte[] prefix,
         UnprefixedWALKeys keys) throws HttpClientException {
 
-        byte[] intLongBuffer = new byte[8];
         HttpStreamResponse got = client.streamingPostStreamableRequest(
             "/amza/v1/get/" + base64PartitionName + "/" + consistency.name() + "/" + ringMember.equals(leader),
             (out) -> {
                 try {
-                    FilerOutputStream fos = new FilerOutputStream(out);
-                    UIO.writeByteArray(fos, prefix, "prefix", intLongBuffer);
-                    keys.consume((key) -> {
-                        UIO.write(fos, new byte[]{0}, "eos");
-                        UIO.writeByteArray(fos, key, "key", intLongBuffer);
-                        return true;
-                    });
-                    UIO.write(fos, new byte[]{1}, "eos");
+                    writeGetBody(out, prefix, keys);
                 } catch (Exception x) {
                     throw new RuntimeException("Failed while streaming keys.", x);
                 } finally {
@@ -134,21 +113,11 @@ public class HttpRemotePartitionCaller implements RemotePartitionCaller<HttpClie
         byte[] prefix,
         OffsetUnprefixedWALKeys keys) throws HttpClientException {
 
-        byte[] intLongBuffer = new byte[8];
         HttpStreamResponse got = client.streamingPostStreamableRequest(
             "/amza/v1/getOffset/" + base64PartitionName + "/" + consistency.name() + "/" + ringMember.equals(leader),
             (out) -> {
                 try {
-                    FilerOutputStream fos = new FilerOutputStream(out);
-                    UIO.writeByteArray(fos, prefix, "prefix", intLongBuffer);
-                    keys.consume((key, offset, length) -> {
-                        UIO.write(fos, new byte[]{0}, "eos");
-                        UIO.writeByteArray(fos, key, "key", intLongBuffer);
-                        UIO.writeInt(fos, offset, "offset", intLongBuffer);
-                        UIO.writeInt(fos, length, "length", intLongBuffer);
-                        return true;
-                    });
-                    UIO.write(fos, new byte[]{1}, "eos");
+                    writeGetOffsetBody(out, prefix, keys);
                 } catch (Exception x) {
                     throw new RuntimeException("Failed while streaming keys.", x);
                 } finally {
@@ -215,15 +184,7 @@ public class HttpRemotePartitionCaller implements RemotePartitionCaller<HttpClie
                         UIO.writeByteArray(fos, classMD5Bytes.bytes, "classBytes", intLongBuffer);
                         new ObjectOutputStream(out).writeObject(filter);
                     }
-                    ranges.consume((fromPrefix, fromKey, toPrefix, toKey) -> {
-                        UIO.writeByte(fos, (byte) 1, "eos");
-                        UIO.writeByteArray(fos, fromPrefix, "fromPrefix", intLongBuffer);
-                        UIO.writeByteArray(fos, fromKey, "fromKey", intLongBuffer);
-                        UIO.writeByteArray(fos, toPrefix, "toPrefix", intLongBuffer);
-                        UIO.writeByteArray(fos, toKey, "toKey", intLongBuffer);
-                        return true;
-                    });
-                    UIO.writeByte(fos, (byte) 0, "eos");
+                    writeRanges(fos, ranges);
                 } catch (Exception x) {
                     throw new RuntimeException("Failed while scanning ranges.", x);
                 } finally {
@@ -246,8 +207,7 @@ public class HttpRemotePartitionCaller implements RemotePartitionCaller<HttpClie
             "/amza/v1/takeFromTransactionId/" + base64PartitionName + '/' + limit,
             (out) -> {
                 try {
-                    FilerOutputStream fos = new FilerOutputStream(out);
-                    UIO.writeLong(fos, transactionId, "transactionId", new byte[8]);
+                    writeTakeBody(new FilerOutputStream(out), transactionId);
                 } finally {
                     out.close();
                 }
@@ -264,16 +224,12 @@ public class HttpRemotePartitionCaller implements RemotePartitionCaller<HttpClie
         Map<RingMember, Long> membersTxId,
         int limit) throws HttpClientException {
 
-        byte[] intLongBuffer = new byte[8];
-
         long transactionId = membersTxId.getOrDefault(ringMember, -1L);
         HttpStreamResponse got = client.streamingPostStreamableRequest(
             "/amza/v1/takePrefixFromTransactionId/" + base64PartitionName + '/' + limit,
             (out) -> {
                 try {
-                    FilerOutputStream fos = new FilerOutputStream(out);
-                    UIO.writeByteArray(fos, prefix, "prefix", intLongBuffer);
-                    UIO.writeLong(fos, transactionId, "transactionId", intLongBuffer);
+                    writeTakePrefixBody(new FilerOutputStream(out), prefix, transactionId);
                 } finally {
                     out.close();
                 }
@@ -282,7 +238,73 @@ public class HttpRemotePartitionCaller implements RemotePartitionCaller<HttpClie
         return new PartitionResponse<>(new CloseableHttpStreamResponse(got), got.getStatusCode() >= 200 && got.getStatusCode() < 300);
     }
 
-    private void handleLeaderStatusCodes(Consistency consistency, int statusCode, String statusReasonPhrase, Closeable closeable) {
+    static void writeCommitBody(OutputStream out, byte[] prefix, ClientUpdates updates, long abandonSolutionAfterNMillis) throws Exception {
+        byte[] lengthBuffer = new byte[8];
+        FilerOutputStream fos = new FilerOutputStream(out);
+        UIO.writeByteArray(fos, prefix, "prefix", lengthBuffer);
+        UIO.writeLong(fos, abandonSolutionAfterNMillis, "timeoutInMillis", lengthBuffer);
+
+        updates.updates((key, value, valueTimestamp, valueTombstoned) -> {
+            UIO.write(fos, new byte[]{0}, "eos");
+            UIO.writeByteArray(fos, key, "key", lengthBuffer);
+            UIO.writeByteArray(fos, value, "value", lengthBuffer);
+            UIO.writeLong(fos, valueTimestamp, "valueTimestamp", lengthBuffer);
+            UIO.write(fos, new byte[]{valueTombstoned ? (byte) 1 : (byte) 0}, "valueTombstoned");
+            return true;
+        });
+        UIO.write(fos, new byte[]{1}, "eos");
+    }
+
+    static void writeGetBody(OutputStream out, byte[] prefix, UnprefixedWALKeys keys) throws Exception {
+        byte[] intLongBuffer = new byte[8];
+        FilerOutputStream fos = new FilerOutputStream(out);
+        UIO.writeByteArray(fos, prefix, "prefix", intLongBuffer);
+        keys.consume((key) -> {
+            UIO.write(fos, new byte[]{0}, "eos");
+            UIO.writeByteArray(fos, key, "key", intLongBuffer);
+            return true;
+        });
+        UIO.write(fos, new byte[]{1}, "eos");
+    }
+
+    static void writeGetOffsetBody(OutputStream out, byte[] prefix, OffsetUnprefixedWALKeys keys) throws Exception {
+        byte[] intLongBuffer = new byte[8];
+        FilerOutputStream fos = new FilerOutputStream(out);
+        UIO.writeByteArray(fos, prefix, "prefix", intLongBuffer);
+        keys.consume((key, offset, length) -> {
+            UIO.write(fos, new byte[]{0}, "eos");
+            UIO.writeByteArray(fos, key, "key", intLongBuffer);
+            UIO.writeInt(fos, offset, "offset", intLongBuffer);
+            UIO.writeInt(fos, length, "length", intLongBuffer);
+            return true;
+        });
+        UIO.write(fos, new byte[]{1}, "eos");
+    }
+
+    static void writeTakeBody(FilerOutputStream fos, long transactionId) throws Exception {
+        UIO.writeLong(fos, transactionId, "transactionId", new byte[8]);
+    }
+
+    static void writeTakePrefixBody(FilerOutputStream fos, byte[] prefix, long transactionId) throws Exception {
+        byte[] intLongBuffer = new byte[8];
+        UIO.writeByteArray(fos, prefix, "prefix", intLongBuffer);
+        UIO.writeLong(fos, transactionId, "transactionId", intLongBuffer);
+    }
+
+    static void writeRanges(FilerOutputStream fos, PrefixedKeyRanges ranges) throws Exception {
+        byte[] intLongBuffer = new byte[8];
+        ranges.consume((fromPrefix, fromKey, toPrefix, toKey) -> {
+            UIO.writeByte(fos, (byte) 1, "eos");
+            UIO.writeByteArray(fos, fromPrefix, "fromPrefix", intLongBuffer);
+            UIO.writeByteArray(fos, fromKey, "fromKey", intLongBuffer);
+            UIO.writeByteArray(fos, toPrefix, "toPrefix", intLongBuffer);
+            UIO.writeByteArray(fos, toKey, "toKey", intLongBuffer);
+            return true;
+        });
+        UIO.writeByte(fos, (byte) 0, "eos");
+    }
+
+    void handleLeaderStatusCodes(Consistency consistency, int statusCode, String statusReasonPhrase, Closeable closeable) {
         if (statusCode == HttpStatus.SC_BAD_REQUEST) {
             try {
                 if (closeable != null) {
@@ -0,0 +1,172 @@
+package com.jivesoftware.os.amza.client.http;
+
+import com.google.common.collect.Maps;
+import com.jivesoftware.os.amza.api.ring.RingHost;
+import com.jivesoftware.os.mlogger.core.MetricLogger;
+import com.jivesoftware.os.mlogger.core.MetricLoggerFactory;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Follows the leader change journal of every host in a {@link PartitionRoutingCache} and applies the changes to the cached rings in place.
+ * Each host only reports the partitions it is a member of, and every member of a ring reports its elections, so losing one host's journal
+ * only delays the news. When a host restarts, falls too far behind, or is unreachable for a while its rings are dropped, since we can no
+ * longer tell which of its changes we missed. Routers still fall back to invalidating a leader which fails them.
+ * <p>
+ * Each followed host holds a thread from {@code pollerThreads} while it has cached rings, and parks a request thread on that host for up
+ * to {@code waitForChangesMillis}, which must stay below the http client's socket timeout. Hosts bound how many requests they park, and an
+ * empty answer which comes back early means the host turned us away, so we back off before asking again.
+ * <p>
+ * Neither the embedded service nor the deployables start one. A client which wants pushed leader changes builds one over its
+ * {@link AmzaClientProvider#getPartitionRoutingCache()}.
+ */
+public class LeaderChangeSubscriber {
+
+    private static final MetricLogger LOG = MetricLoggerFactory.getLogger();
+
+    private final PartitionHostsProvider partitionHostsProvider;
+    private final PartitionRoutingCache partitionRoutingCache;
+    private final ExecutorService pollerThreads;
+    private final ScheduledExecutorService scheduledExecutorService;
+    private final long checkForHostsIntervalMillis;
+    private final long waitForChangesMillis;
+    private final long failureBackoffMillis;
+    private final Map<RingHost, Subscription> subscriptions = Maps.newConcurrentMap();
+
+    private volatile boolean running;
+    private ScheduledFuture<?> supervisor;
+
+    public LeaderChangeSubscriber(PartitionHostsProvider partitionHostsProvider,
+        PartitionRoutingCache partitionRoutingCache,
+        ExecutorService pollerThreads,
+        ScheduledExecutorService scheduledExecutorService,
+        long checkForHostsIntervalMillis,
+        long waitForChangesMillis,
+        long failureBackoffMillis) {
+        this.partitionHostsProvider = partitionHostsProvider;
+        this.partitionRoutingCache = partitionRoutingCache;
+        this.pollerThreads = pollerThreads;
+        this.scheduledExecutorService = scheduledExecutorService;
+        this.checkForHostsIntervalMillis = checkForHostsIntervalMillis;
+        this.waitForChangesMillis = waitForChangesMillis;
+        this.failureBackoffMillis = failureBackoffMillis;
+    }
+
+    public synchronized void start() {
+        if (supervisor == null) {
+            running = true;
+            supervisor = scheduledExecutorService.scheduleWithFixedDelay(this::subscribeAll, 0, checkForHostsIntervalMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    public synchronized void stop() {
+        if (supervisor != null) {
+            running = false;
+            supervisor.cancel(false);
+            supervisor = null;
+            for (Subscription subscription : subscriptions.values()) {
+                subscription.cancel();
+            }
+            subscriptions.clear();
+        }
+    }
+
+    private void subscribeAll() {
+        try {
+            Set<RingHost> ringHosts = partitionRoutingCache.ringHosts();
+            for (RingHost ringHost : ringHosts) {
+                subscriptions.computeIfAbsent(ringHost, key -> {
+                    Subscription subscription = new Subscription();
+                    subscription.future = pollerThreads.submit(() -> follow(key, subscription));
+                    return subscription;
+                });
+            }
+            for (Iterator<Map.Entry<RingHost, Subscription>> iter = subscriptions.entrySet().iterator(); iter.hasNext();) {
+                Map.Entry<RingHost, Subscription> entry = iter.next();
+                if (!ringHosts.contains(entry.getKey())) {
+                    LOG.inc("leaderChanges>unfollowed");
+                    entry.getValue().cancel();
+                    iter.remove();
+                }
+            }
+        } catch (Exception x) {
+            LOG.error("Failed to subscribe to leader changes", x);
+        }
+    }
+
+    private void follow(RingHost ringHost, Subscription subscription) {
+        long journalId = -1;
+        long sinceSequence = -1;
+        boolean missedChanges = false;
+        while (running && subscription.following) {
+            try {
+                long start = System.currentTimeMillis();
+                LeaderChanges leaderChanges = partitionHostsProvider.awaitLeaderChanges(ringHost, journalId, sinceSequence, waitForChangesMillis);
+                boolean turnedAway = false;
+                if (leaderChanges.reset || missedChanges) {
+                    LOG.inc("leaderChanges>reset");
+                    partitionRoutingCache.invalidate(ringHost);
+                    missedChanges = false;
+                } else {
+                    for (int i = 0; i < leaderChanges.partitionNames.size(); i++) {
+                        partitionRoutingCache.leaderChanged(leaderChanges.partitionNames.get(i), leaderChanges.leaders.get(i));
+                    }
+                    LOG.inc("leaderChanges>applied", leaderChanges.partitionNames.size());
+                    turnedAway = sinceSequence >= 0
+                        && leaderChanges.partitionNames.isEmpty()
+                        && System.currentTimeMillis() - start < waitForChangesMillis / 2;
+                }
+                journalId = leaderChanges.journalId;
+                sinceSequence = leaderChanges.nextSequence;
+                if (turnedAway) {
+                    LOG.inc("leaderChanges>turnedAway");
+                    if (!backoff()) {
+                        return;
+                    }
+                }
+            } catch (Exception x) {
+                if (!running || !subscription.following) {
+                    return;
+                }
+                LOG.inc("leaderChanges>failed");
+                LOG.warn("Failed to get leader changes from {}, will resubscribe", new Object[] { ringHost }, x);
+                journalId = -1;
+                sinceSequence = -1;
+                missedChanges = true;
+                if (!backoff()) {
+                    return;
+                }
+            }
+        }
+    }
+
+    private boolean backoff() {
+        try {
+            Thread.sleep(failureBackoffMillis);
+            return true;
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private static class Subscription {
+
+        private volatile boolean following = true;
+        private volatile Future<?> future;
+
+        private void cancel() {
+            following = false;
+            Future<?> got = future;
+            if (got != null) {
+                got.cancel(true);
+            }
+        }
+    }
+}
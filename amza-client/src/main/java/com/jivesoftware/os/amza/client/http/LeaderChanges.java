@@ -0,0 +1,26 @@
+package com.jivesoftware.os.amza.client.http;
+
+import com.jivesoftware.os.amza.api.partition.PartitionName;
+import com.jivesoftware.os.amza.api.ring.RingMember;
+import java.util.List;
+
+/**
+ * The leader changes one host has observed since a sequence of its journal. A null leader means the partition has no online leader. When
+ * {@code reset} is set the changes we missed are gone, so anything learned from the host must be looked up again.
+ */
+public class LeaderChanges {
+
+    public final long journalId;
+    public final long nextSequence;
+    public final boolean reset;
+    public final List<PartitionName> partitionNames;
+    public final List<RingMember> leaders;
+
+    public LeaderChanges(long journalId, long nextSequence, boolean reset, List<PartitionName> partitionNames, List<RingMember> leaders) {
+        this.journalId = journalId;
+        this.nextSequence = nextSequence;
+        this.reset = reset;
+        this.partitionNames = partitionNames;
+        this.leaders = leaders;
+    }
+}
@@ -1,9 +1,13 @@
 package com.jivesoftware.os.amza.client.http;
 
+import com.google.common.collect.Maps;
 import com.jivesoftware.os.amza.api.RingPartitionProperties;
 import com.jivesoftware.os.amza.api.partition.PartitionName;
 import com.jivesoftware.os.amza.api.partition.PartitionProperties;
+import com.jivesoftware.os.amza.api.ring.RingHost;
 import com.jivesoftware.os.amza.api.ring.RingMemberAndHost;
+import java.util.Collection;
+import java.util.Map;
 import java.util.Optional;
 
 /**
@@ -17,4 +21,21 @@ public interface PartitionHostsProvider {
 
     Ring getPartitionHosts(PartitionName partitionName, Optional<RingMemberAndHost> useHost, long waitForLeaderElection) throws Exception;
 
+    /**
+     * Looks up the rings and current leaders of many partitions at once without waiting on elections. Partitions which are unknown are
+     * left out.
+     */
+    default Map<PartitionName, Ring> getPartitionHosts(Collection<PartitionName> partitionNames) throws Exception {
+        Map<PartitionName, Ring> rings = Maps.newHashMapWithExpectedSize(partitionNames.size());
+        for (PartitionName partitionName : partitionNames) {
+            rings.put(partitionName, getPartitionHosts(partitionName, Optional.empty(), 0));
+        }
+        return rings;
+    }
+
+    /**
+     * Waits up to {@code waitForChangesMillis} for the leader changes a host has observed since {@code sinceSequence} of its journal. A
+     * negative sequence only asks for the host's current journal position.
+     */
+    LeaderChanges awaitLeaderChanges(RingHost ringHost, long journalId, long sinceSequence, long waitForChangesMillis) throws Exception;
 }
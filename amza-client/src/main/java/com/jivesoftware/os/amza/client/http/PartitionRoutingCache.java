@@ -0,0 +1,123 @@
+package com.jivesoftware.os.amza.client.http;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.Sets;
+import com.jivesoftware.os.amza.api.partition.PartitionName;
+import com.jivesoftware.os.amza.api.ring.RingHost;
+import com.jivesoftware.os.amza.api.ring.RingMember;
+import com.jivesoftware.os.amza.api.ring.RingMemberAndHost;
+import com.jivesoftware.os.mlogger.core.MetricLogger;
+import com.jivesoftware.os.mlogger.core.MetricLoggerFactory;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The rings the routers of one client have looked up. Leader changes are applied to a cached ring in place, so only a change in membership
+ * costs another lookup.
+ */
+public class PartitionRoutingCache {
+
+    private static final MetricLogger LOG = MetricLoggerFactory.getLogger();
+
+    private final Cache<PartitionName, Ring> rings;
+
+    public PartitionRoutingCache(long maxSize, long expireAfterWriteMillis) {
+        this.rings = CacheBuilder.newBuilder()
+            .maximumSize(maxSize)
+            .expireAfterWrite(expireAfterWriteMillis, TimeUnit.MILLISECONDS)
+            .build();
+    }
+
+    public Ring getIfPresent(PartitionName partitionName) {
+        return rings.getIfPresent(partitionName);
+    }
+
+    public void put(PartitionName partitionName, Ring ring) {
+        rings.put(partitionName, ring);
+    }
+
+    public void invalidate(PartitionName partitionName) {
+        rings.invalidate(partitionName);
+    }
+
+    /**
+     * Drops the rings which route through the given host, for when we can no longer trust what we were told about them.
+     */
+    public void invalidate(RingHost ringHost) {
+        rings.asMap().values().removeIf(ring -> indexOf(ring, ringHost) != -1);
+    }
+
+    /**
+     * Forgets the cached leader but keeps the ring members, so the next call which needs a leader looks one up while all other calls
+     * keep routing.
+     */
+    public void invalidateLeader(PartitionName partitionName) {
+        rings.asMap().computeIfPresent(partitionName, (key, ring) -> ring.leader() == null ? ring : new Ring(-1, ring.members));
+    }
+
+    /**
+     * Forgets the cached leader only if it is still the member which failed us, so a newer leader we were already told about survives.
+     */
+    public void invalidateLeader(PartitionName partitionName, RingMember failedLeader) {
+        rings.asMap().computeIfPresent(partitionName, (key, ring) -> {
+            RingMemberAndHost leader = ring.leader();
+            return leader == null || !leader.ringMember.equals(failedLeader) ? ring : new Ring(-1, ring.members);
+        });
+    }
+
+    /**
+     * Applies a pushed leader change to the cached ring. A leader which is not a member of the cached ring means membership changed, so
+     * the ring is dropped and looked up again on next use.
+     */
+    public void leaderChanged(PartitionName partitionName, RingMember leader) {
+        rings.asMap().computeIfPresent(partitionName, (key, ring) -> {
+            if (leader == null) {
+                LOG.inc("routing>leaderChanged>none");
+                return ring.leader() == null ? ring : new Ring(-1, ring.members);
+            }
+            int leaderIndex = indexOf(ring, leader);
+            if (leaderIndex == -1) {
+                LOG.inc("routing>leaderChanged>invalidated");
+                return null;
+            }
+            LOG.inc("routing>leaderChanged>updated");
+            return new Ring(leaderIndex, ring.members);
+        });
+    }
+
+    /**
+     * Every host in a currently cached ring, so hosts whose rings were dropped or expired fall away.
+     */
+    public Set<RingHost> ringHosts() {
+        Set<RingHost> ringHosts = Sets.newHashSet();
+        for (Ring ring : rings.asMap().values()) {
+            for (RingMemberAndHost member : ring.members) {
+                ringHosts.add(member.ringHost);
+            }
+        }
+        return ringHosts;
+    }
+
+    public long size() {
+        return rings.size();
+    }
+
+    private static int indexOf(Ring ring, RingMember ringMember) {
+        for (int i = 0; i < ring.members.length; i++) {
+            if (ring.members[i].ringMember.equals(ringMember)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int indexOf(Ring ring, RingHost ringHost) {
+        for (int i = 0; i < ring.members.length; i++) {
+            if (ring.members[i].ringHost.equals(ringHost)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,99 @@
+package com.jivesoftware.os.amza.client.http;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.jivesoftware.os.amza.api.partition.PartitionName;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A bounded cache of the latest value, timestamp and version seen for a partition+prefix+key. Entries expire {@code ttlMillis} after they
+ * were loaded no matter how they were invalidated, which bounds staleness when a partition's change feed stalls.
+ */
+public class PartitionValueCache {
+
+    private final Cache<CacheKey, CachedValue> cache;
+    private final long ttlMillis;
+
+    public PartitionValueCache(long maxEntries, long ttlMillis) {
+        this.cache = CacheBuilder.newBuilder()
+            .maximumSize(maxEntries)
+            .expireAfterWrite(ttlMillis, TimeUnit.MILLISECONDS)
+            .build();
+        this.ttlMillis = ttlMillis;
+    }
+
+    public long getTtlMillis() {
+        return ttlMillis;
+    }
+
+    CachedValue get(PartitionName partitionName, byte[] prefix, byte[] key) {
+        return cache.getIfPresent(new CacheKey(partitionName, prefix, key));
+    }
+
+    void put(PartitionName partitionName, byte[] prefix, byte[] key, CachedValue value) {
+        cache.put(new CacheKey(partitionName, prefix, key), value);
+    }
+
+    void invalidate(PartitionName partitionName, byte[] prefix, byte[] key) {
+        cache.invalidate(new CacheKey(partitionName, prefix, key));
+    }
+
+    void invalidate(PartitionName partitionName) {
+        cache.asMap().keySet().removeIf(cacheKey -> cacheKey.partitionName.equals(partitionName));
+    }
+
+    public long size() {
+        return cache.size();
+    }
+
+    static class CachedValue {
+
+        final byte[] value;
+        final long timestamp;
+        final boolean tombstoned;
+        final long version;
+
+        CachedValue(byte[] value, long timestamp, boolean tombstoned, long version) {
+            this.value = value;
+            this.timestamp = timestamp;
+            this.tombstoned = tombstoned;
+            this.version = version;
+        }
+    }
+
+    private static class CacheKey {
+
+        private final PartitionName partitionName;
+        private final byte[] prefix;
+        private final byte[] key;
+        private final int hashCode;
+
+        CacheKey(PartitionName partitionName, byte[] prefix, byte[] key) {
+            this.partitionName = partitionName;
+            this.prefix = prefix;
+            this.key = key;
+            this.hashCode = 31 * (31 * partitionName.hashCode() + Arrays.hashCode(prefix)) + Arrays.hashCode(key);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            CacheKey cacheKey = (CacheKey) o;
+            return hashCode == cacheKey.hashCode
+                && Arrays.equals(key, cacheKey.key)
+                && Arrays.equals(prefix, cacheKey.prefix)
+                && partitionName.equals(cacheKey.partitionName);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+}
@@ -0,0 +1,228 @@
+package com.jivesoftware.os.amza.client.http;
+
+import com.jivesoftware.os.amza.api.AmzaStreamProtocol;
+import com.jivesoftware.os.amza.api.FailedToAchieveQuorumException;
+import com.jivesoftware.os.amza.api.PartitionClient.KeyValueFilter;
+import com.jivesoftware.os.amza.api.filer.FilerOutputStream;
+import com.jivesoftware.os.amza.api.filer.UIO;
+import com.jivesoftware.os.amza.api.partition.Consistency;
+import com.jivesoftware.os.amza.api.partition.PartitionName;
+import com.jivesoftware.os.amza.api.ring.RingHost;
+import com.jivesoftware.os.amza.api.ring.RingMember;
+import com.jivesoftware.os.amza.api.stream.ClientUpdates;
+import com.jivesoftware.os.amza.api.stream.OffsetUnprefixedWALKeys;
+import com.jivesoftware.os.amza.api.stream.PrefixedKeyRanges;
+import com.jivesoftware.os.amza.api.stream.UnprefixedWALKeys;
+import com.jivesoftware.os.amza.client.http.AmzaStreamConnection.ClientStream;
+import com.jivesoftware.os.amza.client.http.AmzaStreamConnection.RequestBody;
+import com.jivesoftware.os.mlogger.core.MetricLogger;
+import com.jivesoftware.os.mlogger.core.MetricLoggerFactory;
+import com.jivesoftware.os.routing.bird.http.client.HttpClient;
+import com.jivesoftware.os.routing.bird.shared.HttpClientException;
+import java.util.Map;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Sends commits, gets, plain scans and takes over a host's persistent stream connection and falls back to
+ * {@link HttpRemotePartitionCaller} for everything else, or whenever the host has no stream connection.
+ */
+public class StreamingRemotePartitionCaller implements RemotePartitionCaller<HttpClient, HttpClientException> {
+
+    private static final MetricLogger LOG = MetricLoggerFactory.getLogger();
+
+    private final AmzaClientCallRouter<HttpClient, HttpClientException> partitionCallRouter;
+    private final PartitionName partitionName;
+    private final byte[] partitionNameBytes;
+    private final HttpRemotePartitionCaller httpCaller;
+    private final AmzaStreamClient streamClient;
+
+    public StreamingRemotePartitionCaller(AmzaClientCallRouter<HttpClient, HttpClientException> partitionCallRouter,
+        PartitionName partitionName,
+        HttpRemotePartitionCaller httpCaller,
+        AmzaStreamClient streamClient) {
+        this.partitionCallRouter = partitionCallRouter;
+        this.partitionName = partitionName;
+        this.partitionNameBytes = partitionName.toBytes();
+        this.httpCaller = httpCaller;
+        this.streamClient = streamClient;
+    }
+
+    @Override
+    public PartitionResponse<NoOpCloseable> commit(RingMember leader,
+        RingMember ringMember,
+        HttpClient client,
+        Consistency consistency,
+        byte[] prefix,
+        ClientUpdates updates,
+        long abandonSolutionAfterNMillis) throws HttpClientException {
+
+        ClientStream stream = open(ringMember, client, AmzaStreamProtocol.OP_COMMIT, consistency, ringMember.equals(leader), false,
+            out -> HttpRemotePartitionCaller.writeCommitBody(out, prefix, updates, abandonSolutionAfterNMillis));
+        if (stream == null) {
+            return httpCaller.commit(leader, ringMember, client, consistency, prefix, updates, abandonSolutionAfterNMillis);
+        }
+
+        int status = awaitStatus(stream);
+        try {
+            stream.close();
+        } catch (Exception e) {
+            LOG.warn("Failed to close {}", stream);
+        }
+        if (status == AmzaStreamProtocol.STATUS_QUORUM_TIMEOUT) {
+            throw new FailedToAchieveQuorumException(
+                "The server could NOT achieve " + consistency.name() + " within " + abandonSolutionAfterNMillis + "millis");
+        }
+        httpCaller.handleLeaderStatusCodes(consistency, status, stream.getMessage(), null);
+        return new PartitionResponse<>(new NoOpCloseable(), status >= 200 && status < 300);
+    }
+
+    @Override
+    public PartitionResponse<CloseableStreamResponse> get(RingMember leader,
+        RingMember ringMember,
+        HttpClient client,
+        Consistency consistency,
+        byte[] prefix,
+        UnprefixedWALKeys keys) throws HttpClientException {
+
+        ClientStream stream = open(ringMember, client, AmzaStreamProtocol.OP_GET, consistency, ringMember.equals(leader), false,
+            out -> HttpRemotePartitionCaller.writeGetBody(out, prefix, keys));
+        if (stream == null) {
+            return httpCaller.get(leader, ringMember, client, consistency, prefix, keys);
+        }
+        return response(consistency, stream, true);
+    }
+
+    @Override
+    public PartitionResponse<CloseableStreamResponse> getOffset(RingMember leader,
+        RingMember ringMember,
+        HttpClient client,
+        Consistency consistency,
+        byte[] prefix,
+        OffsetUnprefixedWALKeys keys) throws HttpClientException {
+
+        ClientStream stream = open(ringMember, client, AmzaStreamProtocol.OP_GET_OFFSET, consistency, ringMember.equals(leader), false,
+            out -> HttpRemotePartitionCaller.writeGetOffsetBody(out, prefix, keys));
+        if (stream == null) {
+            return httpCaller.getOffset(leader, ringMember, client, consistency, prefix, keys);
+        }
+        return response(consistency, stream, true);
+    }
+
+    @Override
+    public PartitionResponse<CloseableLong> getApproximateCount(RingMember leader, RingMember ringMember, HttpClient client) throws
+        HttpClientException {
+        return httpCaller.getApproximateCount(leader, ringMember, client);
+    }
+
+    @Override
+    public PartitionResponse<CloseableStreamResponse> scan(RingMember leader,
+        RingMember ringMember,
+        HttpClient client,
+        Consistency consistency,
+        boolean compressed,
+        PrefixedKeyRanges ranges,
+        KeyValueFilter filter,
+        boolean hydrateValues) throws HttpClientException {
+
+        ClientStream stream = null;
+        if (!compressed && filter == null) {
+            stream = open(ringMember, client, AmzaStreamProtocol.OP_SCAN, consistency, ringMember.equals(leader), hydrateValues,
+                out -> HttpRemotePartitionCaller.writeRanges(new FilerOutputStream(out), ranges));
+        }
+        if (stream == null) {
+            return httpCaller.scan(leader, ringMember, client, consistency, compressed, ranges, filter, hydrateValues);
+        }
+        return response(consistency, stream, false);
+    }
+
+    @Override
+    public PartitionResponse<CloseableStreamResponse> takeFromTransactionId(RingMember leader,
+        RingMember ringMember,
+        HttpClient client,
+        Map<RingMember, Long> membersTxId,
+        int limit) throws HttpClientException {
+
+        long transactionId = membersTxId.getOrDefault(ringMember, -1L);
+        ClientStream stream = open(ringMember, client, AmzaStreamProtocol.OP_TAKE, Consistency.none, false, false,
+            out -> {
+                FilerOutputStream fos = new FilerOutputStream(out);
+                UIO.writeInt(fos, limit, "limit", new byte[4]);
+                HttpRemotePartitionCaller.writeTakeBody(fos, transactionId);
+            });
+        if (stream == null) {
+            return httpCaller.takeFromTransactionId(leader, ringMember, client, membersTxId, limit);
+        }
+        return response(Consistency.none, stream, false);
+    }
+
+    @Override
+    public PartitionResponse<CloseableStreamResponse> takePrefixFromTransactionId(RingMember leader,
+        RingMember ringMember,
+        HttpClient client,
+        byte[] prefix,
+        Map<RingMember, Long> membersTxId,
+        int limit) throws HttpClientException {
+
+        long transactionId = membersTxId.getOrDefault(ringMember, -1L);
+        ClientStream stream = open(ringMember, client, AmzaStreamProtocol.OP_TAKE_PREFIX, Consistency.none, false, false,
+            out -> {
+                FilerOutputStream fos = new FilerOutputStream(out);
+                UIO.writeInt(fos, limit, "limit", new byte[4]);
+                HttpRemotePartitionCaller.writeTakePrefixBody(fos, prefix, transactionId);
+            });
+        if (stream == null) {
+            return httpCaller.takePrefixFromTransactionId(leader, ringMember, client, prefix, membersTxId, limit);
+        }
+        return response(Consistency.none, stream, false);
+    }
+
+    private ClientStream open(RingMember ringMember,
+        HttpClient client,
+        byte op,
+        Consistency consistency,
+        boolean checkLeader,
+        boolean hydrateValues,
+        RequestBody body) {
+
+        RingHost ringHost = partitionCallRouter.ringHost(partitionName, ringMember);
+        if (ringHost == null) {
+            return null;
+        }
+        AmzaStreamConnection connection = streamClient.connection(ringHost, client);
+        if (connection == null) {
+            return null;
+        }
+        try {
+            return connection.open(op, partitionNameBytes, consistency.name(), checkLeader, hydrateValues, body);
+        } catch (Exception x) {
+            LOG.warn("Failed to open stream to {}, falling back to http", new Object[] { ringHost }, x);
+            LOG.inc("stream>fallback");
+            return null;
+        }
+    }
+
+    private PartitionResponse<CloseableStreamResponse> response(Consistency consistency, ClientStream stream, boolean checkLeaderStatus) {
+        int status = awaitStatus(stream);
+        if (checkLeaderStatus) {
+            httpCaller.handleLeaderStatusCodes(consistency, status, stream.getMessage(), stream);
+        }
+        return new PartitionResponse<>(stream, status >= 200 && status < 300);
+    }
+
+    private static int awaitStatus(ClientStream stream) {
+        try {
+            return stream.awaitStatus();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            try {
+                stream.abort();
+            } catch (Exception x) {
+                LOG.warn("Failed to abort {}", stream);
+            }
+            throw new RuntimeException("Interrupted while awaiting " + stream, e);
+        } catch (TimeoutException e) {
+            LOG.inc("stream>timeout");
+            throw new RuntimeException("Timed out awaiting " + stream, e);
+        }
+    }
+}
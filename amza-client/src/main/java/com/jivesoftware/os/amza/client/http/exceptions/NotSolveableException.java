@@ -25,4 +25,8 @@ public class NotSolveableException extends RuntimeException {
         super(message);
     }
 
+    public NotSolveableException(String message, Throwable cause) {
+        super(message, cause);
+    }
+
 }
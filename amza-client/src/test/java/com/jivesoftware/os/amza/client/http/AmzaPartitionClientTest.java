@@ -21,6 +21,8 @@ import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import org.testng.Assert;
 import org.testng.annotations.Test;
 import org.xerial.snappy.SnappyOutputStream;
 
@@ -73,6 +75,25 @@ public class AmzaPartitionClientTest {
             Optional.<List<String>>empty());
     }
 
+    @Test
+    public void testApproximateCountAsync() throws Exception {
+        byte[] partitionNameBytes = "abc".getBytes();
+        PartitionName partitionName = new PartitionName(false, partitionNameBytes, partitionNameBytes);
+        AmzaClientCallRouter<TestClient, Exception> router = new AmzaClientCallRouter<>(MoreExecutors.sameThreadExecutor(), new TestPartitionHostsProvider(3),
+            new TestRingHostClientProvider());
+        AmzaPartitionClient<TestClient, Exception> client = new AmzaPartitionClient<>(partitionName, router, new TestRemotePartitionCaller(),
+            10_000L, -1, -1);
+
+        for (Consistency consistency : new Consistency[] { Consistency.quorum, Consistency.none, Consistency.write_one_read_all }) {
+            long count = client.async().getApproximateCount(consistency,
+                1_000L,
+                10_000L,
+                30_000L,
+                Optional.<List<String>>empty()).get(10, TimeUnit.SECONDS);
+            Assert.assertEquals(count, 42L);
+        }
+    }
+
     private class TestClient {
 
     }
@@ -202,7 +223,7 @@ public class AmzaPartitionClientTest {
 
         @Override
         public PartitionResponse<CloseableLong> getApproximateCount(RingMember leader, RingMember ringMember, TestClient client) throws Exception {
-            throw new UnsupportedOperationException("blah");
+            return new PartitionResponse<>(new CloseableLong(42), true);
         }
     }
 }
@@ -0,0 +1,296 @@
+package com.jivesoftware.os.amza.client.http;
+
+import com.jivesoftware.os.amza.api.AmzaStreamProtocol;
+import com.jivesoftware.os.amza.api.AmzaStreamProtocol.Frame;
+import com.jivesoftware.os.amza.api.filer.UIO;
+import com.jivesoftware.os.amza.client.http.AmzaStreamConnection.ClientStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ *
+ */
+public class AmzaStreamConnectionNGTest {
+
+    private static final int READ_TIMEOUT_MILLIS = 500;
+
+    private final byte[] partitionNameBytes = "partition".getBytes(StandardCharsets.UTF_8);
+
+    private FakeHost host;
+    private AmzaStreamConnection connection;
+
+    @BeforeMethod
+    public void setUp() throws Exception {
+        host = new FakeHost();
+        connection = new AmzaStreamConnection("localhost", host.serverSocket.getLocalPort(), 1_000, READ_TIMEOUT_MILLIS);
+        host.accept();
+    }
+
+    @AfterMethod
+    public void tearDown() throws Exception {
+        connection.close();
+        host.close();
+    }
+
+    @Test
+    public void testRoundTripWithFlowControl() throws Exception {
+        byte[] body = new byte[AmzaStreamProtocol.INITIAL_WINDOW * 3 + 17];
+        for (int i = 0; i < body.length; i++) {
+            body[i] = (byte) i;
+        }
+        host.responder = request -> host.respond(request.streamId, request.body);
+
+        ClientStream stream = connection.open(AmzaStreamProtocol.OP_GET, partitionNameBytes, "none", false, false, out -> out.write(body));
+        Assert.assertEquals(stream.awaitStatus(), 200);
+        Assert.assertEquals(readAll(stream.getInputStream()), body);
+        Assert.assertTrue(host.granted.get(1) > 0, "host never received credit");
+        stream.close();
+        Assert.assertTrue(connection.isOpen());
+    }
+
+    @Test
+    public void testMultiplexedStreams() throws Exception {
+        host.responder = request -> host.respond(request.streamId, request.body);
+
+        ClientStream first = connection.open(AmzaStreamProtocol.OP_GET, partitionNameBytes, "none", false, false,
+            out -> out.write(bytes("first")));
+        ClientStream second = connection.open(AmzaStreamProtocol.OP_SCAN, partitionNameBytes, "none", false, true,
+            out -> out.write(bytes("second")));
+
+        Assert.assertEquals(second.awaitStatus(), 200);
+        Assert.assertEquals(readAll(second.getInputStream()), bytes("second"));
+        Assert.assertEquals(first.awaitStatus(), 200);
+        Assert.assertEquals(readAll(first.getInputStream()), bytes("first"));
+        Assert.assertEquals(host.requests.get(2).op, AmzaStreamProtocol.OP_SCAN);
+        Assert.assertTrue(host.requests.get(2).hydrateValues);
+    }
+
+    @Test
+    public void testErrorStatus() throws Exception {
+        host.responder = request -> host.error(request.streamId, AmzaStreamProtocol.STATUS_CONFLICT, "not the leader");
+
+        ClientStream stream = connection.open(AmzaStreamProtocol.OP_COMMIT, partitionNameBytes, "leader_quorum", true, false,
+            out -> out.write(bytes("commit")));
+        Assert.assertEquals(stream.awaitStatus(), AmzaStreamProtocol.STATUS_CONFLICT);
+        Assert.assertEquals(stream.getMessage(), "not the leader");
+        try {
+            stream.getInputStream().read();
+            Assert.fail("Expected the failed status to surface on read");
+        } catch (IOException x) {
+            // expected
+        }
+        Assert.assertTrue(host.requests.get(1).checkLeader);
+        Assert.assertTrue(connection.isOpen());
+    }
+
+    @Test
+    public void testAwaitStatusTimesOut() throws Exception {
+        // the host keeps the connection alive but never answers the stream
+        host.responder = request -> host.send(0, AmzaStreamProtocol.FRAME_CREDIT, AmzaStreamProtocol.credit(0));
+
+        ClientStream stream = connection.open(AmzaStreamProtocol.OP_GET, partitionNameBytes, "none", false, false,
+            out -> out.write(bytes("get")));
+        long start = System.currentTimeMillis();
+        try {
+            stream.awaitStatus();
+            Assert.fail("Expected a timeout");
+        } catch (TimeoutException x) {
+            // expected
+        }
+        Assert.assertTrue(System.currentTimeMillis() - start >= READ_TIMEOUT_MILLIS - 50);
+
+        Frame cancel = host.cancels.poll(10, TimeUnit.SECONDS);
+        Assert.assertNotNull(cancel, "timed out stream was not cancelled");
+        Assert.assertEquals(cancel.streamId, 1);
+        Assert.assertTrue(connection.isOpen());
+    }
+
+    @Test
+    public void testIdleConnectionOutlivesReadTimeout() throws Exception {
+        Thread.sleep(READ_TIMEOUT_MILLIS * 3);
+        Assert.assertTrue(connection.isOpen());
+
+        host.responder = request -> host.respond(request.streamId, request.body);
+        ClientStream stream = connection.open(AmzaStreamProtocol.OP_GET, partitionNameBytes, "none", false, false,
+            out -> out.write(bytes("still here")));
+        Assert.assertEquals(stream.awaitStatus(), 200);
+        Assert.assertEquals(readAll(stream.getInputStream()), bytes("still here"));
+    }
+
+    @Test
+    public void testSilentHostClosesConnection() throws Exception {
+        // the host starts answering and then goes quiet while the caller is still reading
+        host.responder = request -> host.send(request.streamId, AmzaStreamProtocol.FRAME_DATA, bytes("partial"));
+
+        ClientStream stream = connection.open(AmzaStreamProtocol.OP_GET, partitionNameBytes, "none", false, false,
+            out -> out.write(bytes("get")));
+        Assert.assertEquals(stream.awaitStatus(), 200);
+        InputStream in = stream.getInputStream();
+        byte[] partial = new byte[7];
+        Assert.assertEquals(in.read(partial), 7);
+        // start reading well after the connection last heard from the host, so its socket times out before the read does
+        Thread.sleep(READ_TIMEOUT_MILLIS / 5);
+        try {
+            in.read();
+            Assert.fail("Expected the read to fail");
+        } catch (IOException x) {
+            // expected
+        }
+        Assert.assertFalse(connection.isOpen());
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8_192];
+        int read;
+        while ((read = in.read(buffer)) > 0) {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private interface Responder {
+
+        void respond(Request request) throws Exception;
+    }
+
+    private static class Request {
+
+        private final int streamId;
+        private final byte op;
+        private final boolean checkLeader;
+        private final boolean hydrateValues;
+        private final ByteArrayOutputStream bodyBuilder = new ByteArrayOutputStream();
+        private byte[] body;
+
+        Request(int streamId, byte[] payload) {
+            this.streamId = streamId;
+            this.op = payload[0];
+            int o = 1;
+            o += 4 + AmzaStreamProtocol.getBytes(payload, o).length;
+            o += 4 + AmzaStreamProtocol.getBytes(payload, o).length;
+            this.checkLeader = payload[o] == 1;
+            this.hydrateValues = payload[o + 1] == 1;
+        }
+    }
+
+    /**
+     * Speaks just enough of the protocol to answer one connection, honoring the client's flow control.
+     */
+    private static class FakeHost {
+
+        private final ServerSocket serverSocket;
+        private final Map<Integer, Request> requests = new ConcurrentHashMap<>();
+        private final Map<Integer, Long> granted = new ConcurrentHashMap<>();
+        private final Map<Integer, Long> credit = new ConcurrentHashMap<>();
+        private final BlockingQueue<Frame> cancels = new LinkedBlockingQueue<>();
+        private volatile Responder responder;
+        private Socket socket;
+        private DataOutputStream out;
+
+        FakeHost() throws IOException {
+            this.serverSocket = new ServerSocket(0);
+        }
+
+        void accept() throws IOException {
+            socket = serverSocket.accept();
+            out = new DataOutputStream(socket.getOutputStream());
+            DataInputStream in = new DataInputStream(socket.getInputStream());
+            Thread reader = new Thread(() -> {
+                try {
+                    while (true) {
+                        Frame frame = AmzaStreamProtocol.readFrame(in);
+                        if (frame.type == AmzaStreamProtocol.FRAME_REQUEST) {
+                            requests.put(frame.streamId, new Request(frame.streamId, frame.payload));
+                            credit.put(frame.streamId, (long) AmzaStreamProtocol.INITIAL_WINDOW);
+                        } else if (frame.type == AmzaStreamProtocol.FRAME_DATA) {
+                            requests.get(frame.streamId).bodyBuilder.write(frame.payload);
+                        } else if (frame.type == AmzaStreamProtocol.FRAME_END) {
+                            Request request = requests.get(frame.streamId);
+                            request.body = request.bodyBuilder.toByteArray();
+                            Thread responderThread = new Thread(() -> {
+                                try {
+                                    responder.respond(request);
+                                } catch (Exception x) {
+                                    // the client went away
+                                }
+                            });
+                            responderThread.setDaemon(true);
+                            responderThread.start();
+                        } else if (frame.type == AmzaStreamProtocol.FRAME_CREDIT) {
+                            int bytes = UIO.bytesInt(frame.payload, 0);
+                            granted.merge(frame.streamId, (long) bytes, Long::sum);
+                            synchronized (credit) {
+                                credit.merge(frame.streamId, (long) bytes, Long::sum);
+                                credit.notifyAll();
+                            }
+                        } else if (frame.type == AmzaStreamProtocol.FRAME_ERROR) {
+                            cancels.add(frame);
+                        }
+                    }
+                } catch (IOException x) {
+                    // closed
+                }
+            });
+            reader.setDaemon(true);
+            reader.start();
+        }
+
+        void respond(int streamId, byte[] body) throws Exception {
+            int offset = 0;
+            while (offset < body.length) {
+                int length = Math.min(AmzaStreamProtocol.MAX_FRAME_PAYLOAD, body.length - offset);
+                synchronized (credit) {
+                    while (credit.get(streamId) < length) {
+                        credit.wait();
+                    }
+                    credit.merge(streamId, (long) -length, Long::sum);
+                }
+                synchronized (out) {
+                    AmzaStreamProtocol.writeFrame(out, streamId, AmzaStreamProtocol.FRAME_DATA, body, offset, length);
+                    out.flush();
+                }
+                offset += length;
+            }
+            send(streamId, AmzaStreamProtocol.FRAME_END, new byte[0]);
+        }
+
+        void error(int streamId, int status, String message) throws IOException {
+            send(streamId, AmzaStreamProtocol.FRAME_ERROR, AmzaStreamProtocol.error(status, message));
+        }
+
+        void send(int streamId, byte type, byte[] payload) throws IOException {
+            synchronized (out) {
+                AmzaStreamProtocol.writeFrame(out, streamId, type, payload, 0, payload.length);
+                out.flush();
+            }
+        }
+
+        void close() throws IOException {
+            if (socket != null) {
+                socket.close();
+            }
+            serverSocket.close();
+        }
+    }
+}
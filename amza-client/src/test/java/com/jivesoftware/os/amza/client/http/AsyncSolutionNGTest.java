@@ -0,0 +1,139 @@
+package com.jivesoftware.os.amza.client.http;
+
+import com.google.common.collect.Iterators;
+import com.jivesoftware.os.amza.api.ring.RingHost;
+import com.jivesoftware.os.amza.api.ring.RingMember;
+import com.jivesoftware.os.amza.api.ring.RingMemberAndHost;
+import com.jivesoftware.os.amza.client.http.exceptions.NotSolveableException;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.Test;
+
+/**
+ *
+ */
+public class AsyncSolutionNGTest {
+
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor();
+
+    @AfterClass
+    public void tearDown() {
+        executor.shutdownNow();
+        timer.shutdownNow();
+    }
+
+    @Test
+    public void testSolvesQuorum() throws Exception {
+        List<RingMemberAndHostAnswer<CloseableLong>> answers = solution(2, false, 10_000L,
+            answer(1, 0),
+            answer(2, 0),
+            answer(3, 0)).solve().get(10, TimeUnit.SECONDS);
+        Assert.assertEquals(answers.size(), 2);
+    }
+
+    @Test
+    public void testHedgesPastSlowSolver() throws Exception {
+        CountDownLatch never = new CountDownLatch(1);
+        List<RingMemberAndHostAnswer<CloseableLong>> answers = solution(1, true, 10_000L,
+            () -> {
+                never.await();
+                return null;
+            },
+            answer(2, 0)).solve().get(10, TimeUnit.SECONDS);
+        Assert.assertEquals(answers.size(), 1);
+        Assert.assertEquals(answers.get(0).getAnswer().getLong(), 2L);
+    }
+
+    @Test
+    public void testReplacesFailedSolver() throws Exception {
+        List<RingMemberAndHostAnswer<CloseableLong>> answers = solution(1, false, 10_000L,
+            () -> {
+                throw new IllegalStateException("down");
+            },
+            answer(2, 0)).solve().get(10, TimeUnit.SECONDS);
+        Assert.assertEquals(answers.get(0).getAnswer().getLong(), 2L);
+    }
+
+    @Test
+    public void testNotSolveable() throws Exception {
+        try {
+            solution(2, false, 10_000L,
+                answer(1, 0),
+                () -> {
+                    throw new IllegalStateException("down");
+                }).solve().get(10, TimeUnit.SECONDS);
+            Assert.fail();
+        } catch (ExecutionException x) {
+            Assert.assertTrue(x.getCause() instanceof NotSolveableException);
+            Assert.assertTrue(x.getCause().getCause() instanceof IllegalStateException);
+        }
+    }
+
+    @Test
+    public void testAbandons() throws Exception {
+        try {
+            solution(1, false, 100L, answer(1, 10_000)).solve().get(10, TimeUnit.SECONDS);
+            Assert.fail();
+        } catch (ExecutionException x) {
+            Assert.assertTrue(x.getCause() instanceof TimeoutException);
+        }
+    }
+
+    @Test
+    public void testNotEnoughSolvers() throws Exception {
+        try {
+            solution(3, false, 10_000L, answer(1, 0)).solve().get(10, TimeUnit.SECONDS);
+            Assert.fail();
+        } catch (ExecutionException x) {
+            Assert.assertTrue(x.getCause() instanceof NotSolveableException);
+        }
+    }
+
+    @Test
+    public void testCompletingSolverIsNotInterrupted() throws Exception {
+        CountDownLatch never = new CountDownLatch(1);
+        CompletableFuture<Boolean> merged = solution(1, false, 10_000L,
+            answer(1, 0),
+            () -> {
+                never.await();
+                return null;
+            }).solve().thenApply(answers -> {
+                // like the router's merge, which reads streams on the thread that completed the solution
+                try {
+                    Thread.sleep(100);
+                    return !Thread.currentThread().isInterrupted();
+                } catch (InterruptedException x) {
+                    return false;
+                }
+            });
+        Assert.assertTrue(merged.get(10, TimeUnit.SECONDS));
+    }
+
+    @SafeVarargs
+    private final AsyncSolution<CloseableLong> solution(int mandatory,
+        boolean addNewSolverOnTimeout,
+        long abandonSolutionAfterNMillis,
+        Callable<RingMemberAndHostAnswer<CloseableLong>>... solvers) {
+        return new AsyncSolution<>(null, executor, timer, Iterators.forArray(solvers), mandatory, addNewSolverOnTimeout, 10L,
+            abandonSolutionAfterNMillis);
+    }
+
+    private Callable<RingMemberAndHostAnswer<CloseableLong>> answer(int id, long delayMillis) {
+        return () -> {
+            Thread.sleep(delayMillis);
+            RingMemberAndHost ringMemberAndHost = new RingMemberAndHost(new RingMember("test" + id), new RingHost("", "", "host" + id, 1234));
+            return new RingMemberAndHostAnswer<>(ringMemberAndHost, new CloseableLong(id));
+        };
+    }
+}
@@ -0,0 +1,80 @@
+package com.jivesoftware.os.amza.client.http;
+
+import com.jivesoftware.os.amza.api.AsyncPartitionClient;
+import com.jivesoftware.os.amza.api.PartitionClient;
+import com.jivesoftware.os.amza.api.partition.Consistency;
+import java.lang.reflect.Proxy;
+import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ *
+ */
+public class BlockingAsyncPartitionClientNGTest {
+
+    private ExecutorService callerThreads;
+
+    @BeforeMethod
+    public void setUp() throws Exception {
+        callerThreads = Executors.newCachedThreadPool();
+    }
+
+    @AfterMethod
+    public void tearDown() throws Exception {
+        callerThreads.shutdownNow();
+    }
+
+    @Test
+    public void testCompletesWithTheAnswer() throws Exception {
+        Thread[] calledOn = new Thread[1];
+        AsyncPartitionClient client = new BlockingAsyncPartitionClient(partitionClient((method, args) -> {
+            calledOn[0] = Thread.currentThread();
+            return 7L;
+        }), callerThreads);
+
+        long count = client.getApproximateCount(Consistency.quorum, 0, 0, 0, Optional.empty()).get(10, TimeUnit.SECONDS);
+        Assert.assertEquals(count, 7L);
+        Assert.assertNotSame(calledOn[0], Thread.currentThread());
+    }
+
+    @Test
+    public void testCompletesExceptionally() throws Exception {
+        IllegalStateException failure = new IllegalStateException("down");
+        AsyncPartitionClient client = new BlockingAsyncPartitionClient(partitionClient((method, args) -> {
+            throw failure;
+        }), callerThreads);
+
+        try {
+            client.commit(Consistency.quorum, null, null, 0, 0, Optional.empty()).get(10, TimeUnit.SECONDS);
+            Assert.fail();
+        } catch (ExecutionException x) {
+            Assert.assertSame(x.getCause(), failure);
+        }
+    }
+
+    @Test
+    public void testRejectedCallCompletesExceptionally() throws Exception {
+        callerThreads.shutdownNow();
+        AsyncPartitionClient client = new BlockingAsyncPartitionClient(partitionClient((method, args) -> 7L), callerThreads);
+
+        Assert.assertTrue(client.getApproximateCount(Consistency.quorum, 0, 0, 0, Optional.empty()).isCompletedExceptionally());
+    }
+
+    private interface Answer {
+
+        Object answer(String method, Object[] args) throws Exception;
+    }
+
+    private static PartitionClient partitionClient(Answer answer) {
+        return (PartitionClient) Proxy.newProxyInstance(PartitionClient.class.getClassLoader(),
+            new Class<?>[] { PartitionClient.class },
+            (proxy, method, args) -> answer.answer(method.getName(), args));
+    }
+}
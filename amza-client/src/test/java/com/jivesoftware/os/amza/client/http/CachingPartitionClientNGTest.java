@@ -0,0 +1,153 @@
+package com.jivesoftware.os.amza.client.http;
+
+import com.jivesoftware.os.amza.api.PartitionClient;
+import com.jivesoftware.os.amza.api.partition.Consistency;
+import com.jivesoftware.os.amza.api.partition.PartitionName;
+import com.jivesoftware.os.amza.api.ring.RingMember;
+import com.jivesoftware.os.amza.api.stream.KeyValueStream;
+import com.jivesoftware.os.amza.api.stream.UnprefixedWALKeys;
+import com.jivesoftware.os.amza.api.wal.KeyUtil;
+import com.jivesoftware.os.amza.client.test.InMemoryPartitionClient;
+import com.jivesoftware.os.jive.utils.ordered.id.ConstantWriterIdProvider;
+import com.jivesoftware.os.jive.utils.ordered.id.OrderIdProviderImpl;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ *
+ */
+public class CachingPartitionClientNGTest {
+
+    private final PartitionName partitionName = new PartitionName(false, bytes("ring"), bytes("partition"));
+
+    @Test
+    public void testHitsAfterCaughtUp() throws Exception {
+        CountingPartitionClient delegate = new CountingPartitionClient();
+        CachingPartitionClient client = new CachingPartitionClient(partitionName, delegate, new PartitionValueCache(100, 60_000L), 10, 1_000L, 10_000L);
+        put(client, "a", "1");
+        client.tail();
+
+        Assert.assertEquals(get(client, "a"), "1");
+        Assert.assertEquals(get(client, "a"), "1");
+        Assert.assertEquals(delegate.gets.get(), 1);
+    }
+
+    @Test
+    public void testMissesBeforeCaughtUp() throws Exception {
+        CountingPartitionClient delegate = new CountingPartitionClient();
+        CachingPartitionClient client = new CachingPartitionClient(partitionName, delegate, new PartitionValueCache(100, 60_000L), 10, 1_000L, 10_000L);
+        put(client, "a", "1");
+
+        Assert.assertEquals(get(client, "a"), "1");
+        Assert.assertEquals(get(client, "a"), "1");
+        Assert.assertEquals(delegate.gets.get(), 2);
+    }
+
+    @Test
+    public void testTailInvalidatesOtherWriters() throws Exception {
+        CountingPartitionClient delegate = new CountingPartitionClient();
+        CachingPartitionClient client = new CachingPartitionClient(partitionName, delegate, new PartitionValueCache(100, 60_000L), 10, 1_000L, 10_000L);
+        put(client, "a", "1");
+        client.tail();
+        Assert.assertEquals(get(client, "a"), "1");
+
+        put(delegate, "a", "2");
+        Assert.assertEquals(get(client, "a"), "1");
+
+        client.tail();
+        Assert.assertEquals(get(client, "a"), "2");
+        Assert.assertEquals(delegate.gets.get(), 2);
+    }
+
+    @Test
+    public void testCommitInvalidates() throws Exception {
+        CountingPartitionClient delegate = new CountingPartitionClient();
+        CachingPartitionClient client = new CachingPartitionClient(partitionName, delegate, new PartitionValueCache(100, 60_000L), 10, 1_000L, 10_000L);
+        put(client, "a", "1");
+        client.tail();
+        Assert.assertEquals(get(client, "a"), "1");
+
+        put(client, "a", "2");
+        Assert.assertEquals(get(client, "a"), "2");
+    }
+
+    @Test
+    public void testCachesAbsentAndTombstoned() throws Exception {
+        CountingPartitionClient delegate = new CountingPartitionClient();
+        CachingPartitionClient client = new CachingPartitionClient(partitionName, delegate, new PartitionValueCache(100, 60_000L), 10, 1_000L, 10_000L);
+        put(client, "a", "1");
+        client.commit(Consistency.none, null, stream -> stream.commit(bytes("a"), null, -1, true), 1_000L, 10_000L, Optional.empty());
+        client.tail();
+
+        AtomicInteger streamed = new AtomicInteger();
+        for (int i = 0; i < 2; i++) {
+            client.get(Consistency.none, null, keys("a", "b"), (prefix, key, value, valueTimestamp, valueVersion) -> {
+                Assert.assertEquals(new String(key, StandardCharsets.UTF_8), "b");
+                Assert.assertNull(value);
+                streamed.incrementAndGet();
+                return true;
+            }, 1_000L, 5_000L, 10_000L, Optional.empty());
+        }
+        Assert.assertEquals(streamed.get(), 2);
+        Assert.assertEquals(delegate.gets.get(), 1);
+    }
+
+    private static void put(PartitionClient client, String key, String value) throws Exception {
+        client.commit(Consistency.none, null, stream -> stream.commit(bytes(key), bytes(value), -1, false), 1_000L, 10_000L, Optional.empty());
+    }
+
+    private static String get(CachingPartitionClient client, String key) throws Exception {
+        String[] got = new String[1];
+        client.get(Consistency.none, null, keys(key), (prefix, key1, value, valueTimestamp, valueVersion) -> {
+            got[0] = value == null ? null : new String(value, StandardCharsets.UTF_8);
+            return true;
+        }, 1_000L, 5_000L, 10_000L, Optional.empty());
+        return got[0];
+    }
+
+    private static UnprefixedWALKeys keys(String... keys) {
+        return stream -> {
+            for (String key : keys) {
+                if (!stream.stream(bytes(key))) {
+                    return false;
+                }
+            }
+            return true;
+        };
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static class CountingPartitionClient extends InMemoryPartitionClient {
+
+        private final AtomicInteger gets = new AtomicInteger();
+
+        CountingPartitionClient() {
+            super(new RingMember("member1"),
+                new ConcurrentSkipListMap<>(),
+                new ConcurrentSkipListMap<>(KeyUtil.lexicographicalComparator()),
+                new OrderIdProviderImpl(new ConstantWriterIdProvider(1)));
+        }
+
+        @Override
+        public boolean getRaw(Consistency consistency,
+            byte[] prefix,
+            UnprefixedWALKeys keys,
+            KeyValueStream valuesStream,
+            long additionalSolverAfterNMillis,
+            long abandonLeaderSolutionAfterNMillis,
+            long abandonSolutionAfterNMillis,
+            Optional<List<String>> solutionLog) throws Exception {
+            gets.incrementAndGet();
+            return super.getRaw(consistency, prefix, keys, valuesStream, additionalSolverAfterNMillis, abandonLeaderSolutionAfterNMillis,
+                abandonSolutionAfterNMillis, solutionLog);
+        }
+    }
+}
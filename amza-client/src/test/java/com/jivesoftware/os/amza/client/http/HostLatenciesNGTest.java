@@ -0,0 +1,70 @@
+package com.jivesoftware.os.amza.client.http;
+
+import com.jivesoftware.os.amza.api.ring.RingHost;
+import com.jivesoftware.os.amza.api.ring.RingMember;
+import com.jivesoftware.os.amza.api.ring.RingMemberAndHost;
+import java.util.concurrent.atomic.AtomicLong;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ *
+ */
+public class HostLatenciesNGTest {
+
+    private final RingMemberAndHost fast = new RingMemberAndHost(new RingMember("fast"), new RingHost("dc1", "rack1", "localhost", 1));
+    private final RingMemberAndHost slow = new RingMemberAndHost(new RingMember("slow"), new RingHost("dc1", "rack1", "localhost", 2));
+    private final RingMemberAndHost fresh = new RingMemberAndHost(new RingMember("fresh"), new RingHost("dc1", "rack1", "localhost", 3));
+
+    @Test
+    public void testOrdersByPredictedLatency() {
+        HostLatencies latencies = new HostLatencies(128, 16, 0.99d, 1, 0, 60_000);
+        for (int i = 0; i < 100; i++) {
+            latencies.completed(fast, 2);
+            latencies.completed(slow, 200);
+        }
+        Assert.assertEquals(latencies.order(new RingMemberAndHost[] { slow, fast, fresh }), new RingMemberAndHost[] { fresh, fast, slow });
+        Assert.assertEquals(latencies.predictedMillis(fast), 2);
+        Assert.assertEquals(latencies.predictedMillis(fresh), -1);
+    }
+
+    @Test
+    public void testHedgesAtThePercentile() {
+        HostLatencies latencies = new HostLatencies(128, 16, 0.99d, 1, 0, 60_000);
+        for (int i = 0; i < 100; i++) {
+            latencies.completed(fast, i % 50 == 0 ? 42 : 2);
+            latencies.completed(slow, 200);
+        }
+        Assert.assertEquals(latencies.percentileMillis(fast), 42);
+        Assert.assertEquals(latencies.hedgeAfterMillis(new RingMemberAndHost[] { fast, slow }, 1, 100), 42);
+        Assert.assertEquals(latencies.hedgeAfterMillis(new RingMemberAndHost[] { fast, slow }, 2, 100), 100, "bounded by the fixed delay");
+        Assert.assertEquals(latencies.hedgeAfterMillis(new RingMemberAndHost[] { fresh, fast }, 1, 100), 100, "no samples yet");
+    }
+
+    @Test
+    public void testFailuresCountAsSlow() {
+        HostLatencies latencies = new HostLatencies(128, 16, 0.99d, 1, 0, 60_000);
+        latencies.completed(fast, 2);
+        latencies.failed(fast, 5, 1_000);
+        Assert.assertTrue(latencies.predictedMillis(fast) > 100);
+    }
+
+    @Test
+    public void testIdleHostsExpire() {
+        AtomicLong now = new AtomicLong();
+        HostLatencies latencies = new HostLatencies(128, 16, 0.99d, 1, 0, 1_000, now::get);
+        latencies.completed(fast, 2);
+        latencies.completed(slow, 200);
+
+        now.set(600);
+        latencies.completed(fast, 2);
+        Assert.assertEquals(latencies.size(), 2);
+
+        // slow left the ring, so only fast keeps being called
+        now.set(1_200);
+        latencies.completed(fast, 2);
+        Assert.assertEquals(latencies.size(), 1);
+        Assert.assertEquals(latencies.predictedMillis(fast), 2);
+        Assert.assertEquals(latencies.predictedMillis(slow), -1);
+    }
+}
@@ -0,0 +1,234 @@
+package com.jivesoftware.os.amza.client.http;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.jivesoftware.os.amza.api.partition.PartitionName;
+import com.jivesoftware.os.amza.api.ring.RingHost;
+import com.jivesoftware.os.amza.api.ring.RingMember;
+import com.jivesoftware.os.amza.api.ring.RingMemberAndHost;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ *
+ */
+public class LeaderChangeSubscriberNGTest {
+
+    private static final long JOURNAL_ID = 7L;
+
+    private final PartitionName partitionName = new PartitionName(false, bytes("ring"), bytes("partition"));
+    private final PartitionName otherPartitionName = new PartitionName(false, bytes("ring"), bytes("other"));
+
+    private ExecutorService pollerThreads;
+    private ScheduledExecutorService scheduledExecutorService;
+    private ScriptedPartitionHostsProvider partitionHostsProvider;
+    private PartitionRoutingCache cache;
+
+    @BeforeMethod
+    public void setUp() throws Exception {
+        pollerThreads = Executors.newCachedThreadPool();
+        scheduledExecutorService = Executors.newSingleThreadScheduledExecutor();
+        partitionHostsProvider = new ScriptedPartitionHostsProvider();
+        cache = new PartitionRoutingCache(100, 60_000L);
+    }
+
+    @AfterMethod
+    public void tearDown() throws Exception {
+        pollerThreads.shutdownNow();
+        scheduledExecutorService.shutdownNow();
+    }
+
+    @Test
+    public void testAppliesLeaderChanges() throws Exception {
+        cache.put(partitionName, ring(0, 1, 2, 3));
+        LeaderChangeSubscriber subscriber = subscriber(100L, 10L);
+        subscriber.start();
+        try {
+            partitionHostsProvider.respond(host(1), changes(false, 1, partitionName, new RingMember("member3")));
+            awaitTrue(() -> {
+                Ring ring = cache.getIfPresent(partitionName);
+                return ring.leader() != null && ring.leader().ringMember.equals(new RingMember("member3"));
+            });
+
+            partitionHostsProvider.respond(host(1), changes(false, 2, partitionName, null));
+            awaitTrue(() -> cache.getIfPresent(partitionName).leader() == null);
+            Assert.assertEquals(cache.getIfPresent(partitionName).actualRing().length, 3);
+        } finally {
+            subscriber.stop();
+        }
+    }
+
+    @Test
+    public void testResetDropsTheHostsRings() throws Exception {
+        cache.put(partitionName, ring(0, 1, 2, 3));
+        cache.put(otherPartitionName, ring(0, 4, 5, 6));
+        LeaderChangeSubscriber subscriber = subscriber(100L, 10L);
+        subscriber.start();
+        try {
+            partitionHostsProvider.respond(host(2), changes(true, 5, null, null));
+            awaitTrue(() -> cache.getIfPresent(partitionName) == null);
+            Assert.assertNotNull(cache.getIfPresent(otherPartitionName));
+        } finally {
+            subscriber.stop();
+        }
+    }
+
+    @Test
+    public void testFailureResubscribesAndDropsTheHostsRings() throws Exception {
+        cache.put(partitionName, ring(0, 1, 2, 3));
+        LeaderChangeSubscriber subscriber = subscriber(100L, 10L);
+        subscriber.start();
+        try {
+            awaitTrue(() -> partitionHostsProvider.calls(host(1)).size() >= 2);
+            partitionHostsProvider.respond(host(1), new IllegalStateException("down"));
+            awaitTrue(() -> cache.getIfPresent(partitionName) == null);
+
+            // the changes we missed while down are unknown, so we start over from the journal's position
+            List<long[]> calls = partitionHostsProvider.calls(host(1));
+            boolean resubscribed = false;
+            for (long[] call : calls.subList(1, calls.size())) {
+                resubscribed |= call[0] == -1L && call[1] == -1L;
+            }
+            Assert.assertTrue(resubscribed);
+        } finally {
+            subscriber.stop();
+        }
+    }
+
+    @Test
+    public void testStopsFollowingHostsWithoutRings() throws Exception {
+        cache.put(partitionName, ring(0, 1, 2, 3));
+        cache.put(otherPartitionName, ring(0, 3, 4, 5));
+        LeaderChangeSubscriber subscriber = subscriber(20L, 10L);
+        subscriber.start();
+        try {
+            awaitTrue(() -> !partitionHostsProvider.calls(host(1)).isEmpty() && !partitionHostsProvider.calls(host(4)).isEmpty());
+
+            cache.invalidate(partitionName);
+            awaitTrue(() -> {
+                int calls = partitionHostsProvider.calls(host(1)).size();
+                Thread.sleep(200);
+                return partitionHostsProvider.calls(host(1)).size() == calls;
+            });
+            int followed = partitionHostsProvider.calls(host(3)).size();
+            awaitTrue(() -> partitionHostsProvider.calls(host(3)).size() > followed + 2);
+        } finally {
+            subscriber.stop();
+        }
+    }
+
+    @Test
+    public void testBacksOffWhenTurnedAway() throws Exception {
+        cache.put(partitionName, ring(0, 1));
+        LeaderChangeSubscriber subscriber = subscriber(10_000L, 200L);
+        subscriber.start();
+        try {
+            awaitTrue(() -> !partitionHostsProvider.calls(host(1)).isEmpty());
+            for (int i = 0; i < 20; i++) {
+                partitionHostsProvider.respond(host(1), changes(false, 0, null, null));
+            }
+            Thread.sleep(500);
+            Assert.assertTrue(partitionHostsProvider.calls(host(1)).size() < 10, "calls:" + partitionHostsProvider.calls(host(1)).size());
+        } finally {
+            subscriber.stop();
+        }
+    }
+
+    private LeaderChangeSubscriber subscriber(long waitForChangesMillis, long failureBackoffMillis) {
+        return new LeaderChangeSubscriber(partitionHostsProvider, cache, pollerThreads, scheduledExecutorService, 10L, waitForChangesMillis,
+            failureBackoffMillis);
+    }
+
+    private interface Condition {
+
+        boolean test() throws Exception;
+    }
+
+    private static void awaitTrue(Condition condition) throws Exception {
+        long end = System.currentTimeMillis() + 10_000;
+        while (!condition.test()) {
+            Assert.assertTrue(System.currentTimeMillis() < end, "timed out");
+            Thread.sleep(10);
+        }
+    }
+
+    private static LeaderChanges changes(boolean reset, long nextSequence, PartitionName partitionName, RingMember leader) {
+        if (partitionName == null) {
+            return new LeaderChanges(JOURNAL_ID, nextSequence, reset, Collections.emptyList(), Collections.emptyList());
+        }
+        return new LeaderChanges(JOURNAL_ID, nextSequence, reset, Collections.singletonList(partitionName), Collections.singletonList(leader));
+    }
+
+    private static Ring ring(int leaderIndex, int... members) {
+        RingMemberAndHost[] ringMemberAndHosts = new RingMemberAndHost[members.length];
+        for (int i = 0; i < members.length; i++) {
+            ringMemberAndHosts[i] = new RingMemberAndHost(new RingMember("member" + members[i]), host(members[i]));
+        }
+        return new Ring(leaderIndex, ringMemberAndHosts);
+    }
+
+    private static RingHost host(int i) {
+        return new RingHost("", "", "host" + i, 1234);
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Answers each host's polls from its script, and otherwise waits out the poll with no changes.
+     */
+    private static class ScriptedPartitionHostsProvider extends TestPartitionHostsProvider {
+
+        private final Map<RingHost, BlockingQueue<Object>> responses = Maps.newConcurrentMap();
+        private final Map<RingHost, List<long[]>> calls = Maps.newConcurrentMap();
+
+        ScriptedPartitionHostsProvider() {
+            super(0);
+        }
+
+        void respond(RingHost ringHost, Object response) {
+            responses.computeIfAbsent(ringHost, key -> new LinkedBlockingQueue<>()).add(response);
+        }
+
+        List<long[]> calls(RingHost ringHost) {
+            List<long[]> got = calls.get(ringHost);
+            if (got == null) {
+                return Collections.emptyList();
+            }
+            synchronized (got) {
+                return Lists.newArrayList(got);
+            }
+        }
+
+        @Override
+        public LeaderChanges awaitLeaderChanges(RingHost ringHost, long journalId, long sinceSequence, long waitForChangesMillis)
+            throws Exception {
+            List<long[]> hostCalls = calls.computeIfAbsent(ringHost, key -> Lists.newArrayList());
+            synchronized (hostCalls) {
+                hostCalls.add(new long[] { journalId, sinceSequence });
+            }
+            if (sinceSequence < 0) {
+                return changes(false, 0, null, null);
+            }
+            Object response = responses.computeIfAbsent(ringHost, key -> new LinkedBlockingQueue<>()).poll(waitForChangesMillis,
+                TimeUnit.MILLISECONDS);
+            if (response instanceof Exception) {
+                throw (Exception) response;
+            }
+            return response != null ? (LeaderChanges) response : changes(false, sinceSequence, null, null);
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package com.jivesoftware.os.amza.client.http;
+
+import com.jivesoftware.os.amza.api.partition.PartitionName;
+import com.jivesoftware.os.amza.api.ring.RingHost;
+import com.jivesoftware.os.amza.api.ring.RingMember;
+import com.jivesoftware.os.amza.api.ring.RingMemberAndHost;
+import java.nio.charset.StandardCharsets;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ *
+ */
+public class PartitionRoutingCacheNGTest {
+
+    private final PartitionName partitionName = new PartitionName(false, bytes("ring"), bytes("partition"));
+    private final PartitionName otherPartitionName = new PartitionName(false, bytes("ring"), bytes("other"));
+
+    @Test
+    public void testLeaderChangedInPlace() throws Exception {
+        PartitionRoutingCache cache = new PartitionRoutingCache(100, 60_000L);
+        cache.put(partitionName, ring(0, 1, 2, 3));
+
+        cache.leaderChanged(partitionName, new RingMember("member3"));
+        Assert.assertEquals(cache.getIfPresent(partitionName).leader().ringMember, new RingMember("member3"));
+
+        cache.leaderChanged(partitionName, null);
+        Assert.assertNotNull(cache.getIfPresent(partitionName));
+        Assert.assertNull(cache.getIfPresent(partitionName).leader());
+    }
+
+    @Test
+    public void testLeaderOutsideRingInvalidates() throws Exception {
+        PartitionRoutingCache cache = new PartitionRoutingCache(100, 60_000L);
+        cache.put(partitionName, ring(0, 1, 2, 3));
+
+        cache.leaderChanged(partitionName, new RingMember("member4"));
+        Assert.assertNull(cache.getIfPresent(partitionName));
+    }
+
+    @Test
+    public void testInvalidateLeaderKeepsNewerLeader() throws Exception {
+        PartitionRoutingCache cache = new PartitionRoutingCache(100, 60_000L);
+        cache.put(partitionName, ring(0, 1, 2, 3));
+        cache.leaderChanged(partitionName, new RingMember("member2"));
+
+        cache.invalidateLeader(partitionName, new RingMember("member1"));
+        Assert.assertEquals(cache.getIfPresent(partitionName).leader().ringMember, new RingMember("member2"));
+
+        cache.invalidateLeader(partitionName, new RingMember("member2"));
+        Assert.assertNull(cache.getIfPresent(partitionName).leader());
+        Assert.assertEquals(cache.getIfPresent(partitionName).actualRing().length, 3);
+    }
+
+    @Test
+    public void testInvalidateHost() throws Exception {
+        PartitionRoutingCache cache = new PartitionRoutingCache(100, 60_000L);
+        cache.put(partitionName, ring(0, 1, 2, 3));
+        cache.put(otherPartitionName, ring(0, 4, 5, 6));
+        Assert.assertEquals(cache.ringHosts().size(), 6);
+
+        cache.invalidate(new RingHost("", "", "host2", 1234));
+        Assert.assertNull(cache.getIfPresent(partitionName));
+        Assert.assertNotNull(cache.getIfPresent(otherPartitionName));
+        Assert.assertEquals(cache.ringHosts().size(), 3, "hosts only in dropped rings are forgotten");
+    }
+
+    private static Ring ring(int leaderIndex, int... members) {
+        RingMemberAndHost[] ringMemberAndHosts = new RingMemberAndHost[members.length];
+        for (int i = 0; i < members.length; i++) {
+            ringMemberAndHosts[i] = new RingMemberAndHost(new RingMember("member" + members[i]), new RingHost("", "", "host" + members[i], 1234));
+        }
+        return new Ring(leaderIndex, ringMemberAndHosts);
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -6,6 +6,7 @@ import com.jivesoftware.os.amza.api.partition.PartitionProperties;
 import com.jivesoftware.os.amza.api.ring.RingHost;
 import com.jivesoftware.os.amza.api.ring.RingMember;
 import com.jivesoftware.os.amza.api.ring.RingMemberAndHost;
+import java.util.Collections;
 import java.util.Optional;
 
 /**
@@ -37,4 +38,10 @@ public class TestPartitionHostsProvider implements PartitionHostsProvider {
         }
         return new Ring(0, ringMemberAndHosts);
     }
+
+    @Override
+    public LeaderChanges awaitLeaderChanges(RingHost ringHost, long journalId, long sinceSequence, long waitForChangesMillis) throws Exception {
+        Thread.sleep(waitForChangesMillis);
+        return new LeaderChanges(0, Math.max(sinceSequence, 0), false, Collections.emptyList(), Collections.emptyList());
+    }
 }
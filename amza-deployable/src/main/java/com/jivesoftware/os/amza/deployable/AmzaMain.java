@@ -137,6 +137,20 @@ public class AmzaMain {
             amzaServiceConfig.rowsTakerLimit = amzaConfig.getRowsTakerLimit();
             amzaServiceConfig.flushHighwatersAfterNUpdates = amzaConfig.getFlushHighwatersAfterNUpdates();
             amzaServiceConfig.deltaUseHighwaterTxId = amzaConfig.getDeltaUseHighwaterTxId();
+            String deflateDictionaryPaths = amzaConfig.getDeflateDictionaryPaths();
+            amzaServiceConfig.deflateDictionaryPaths = deflateDictionaryPaths.isEmpty() ? new String[0] : deflateDictionaryPaths.split(",");
+            amzaServiceConfig.clientStreamPort = amzaConfig.getClientStreamPort();
+            amzaServiceConfig.clientStreamMaxRequestBytes = amzaConfig.getClientStreamMaxRequestBytes();
+            amzaServiceConfig.clientStreamAwaitOnlineTimeoutMillis = amzaConfig.getClientStreamAwaitOnlineTimeoutMillis();
+            amzaServiceConfig.clientStreamConnectTimeoutMillis = amzaConfig.getClientStreamConnectTimeoutMillis();
+            amzaServiceConfig.clientStreamReadTimeoutMillis = amzaConfig.getClientStreamReadTimeoutMillis();
+            amzaServiceConfig.clientStreamRediscoverAfterMillis = amzaConfig.getClientStreamRediscoverAfterMillis();
+            amzaServiceConfig.clientHostLatencyWindowSize = amzaConfig.getClientHostLatencyWindowSize();
+            amzaServiceConfig.clientHostLatencyMinSamples = amzaConfig.getClientHostLatencyMinSamples();
+            amzaServiceConfig.clientHedgePercentile = amzaConfig.getClientHedgePercentile();
+            amzaServiceConfig.clientMinHedgeMillis = amzaConfig.getClientMinHedgeMillis();
+            amzaServiceConfig.clientHedgeProbeOneInN = amzaConfig.getClientHedgeProbeOneInN();
+            amzaServiceConfig.clientHostLatencyExpireAfterMillis = amzaConfig.getClientHostLatencyExpireAfterMillis();
 
             AmzaStats amzaSystemStats = new AmzaStats();
             AmzaStats amzaStats = new AmzaStats();
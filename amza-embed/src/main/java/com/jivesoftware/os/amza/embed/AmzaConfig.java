@@ -2,6 +2,7 @@ package com.jivesoftware.os.amza.embed;
 
 import org.merlin.config.Config;
 import org.merlin.config.defaults.BooleanDefault;
+import org.merlin.config.defaults.DoubleDefault;
 import org.merlin.config.defaults.IntDefault;
 import org.merlin.config.defaults.LongDefault;
 import org.merlin.config.defaults.StringDefault;
@@ -73,4 +74,43 @@ public interface AmzaConfig extends Config {
 
     @BooleanDefault(false)
     boolean getDeltaUseHighwaterTxId();
+
+    @StringDefault("")
+    String getDeflateDictionaryPaths();
+
+    @IntDefault(-1)
+    int getClientStreamPort();
+
+    @IntDefault(64 * 1024 * 1024)
+    int getClientStreamMaxRequestBytes();
+
+    @LongDefault(10_000)
+    long getClientStreamAwaitOnlineTimeoutMillis();
+
+    @IntDefault(10_000)
+    int getClientStreamConnectTimeoutMillis();
+
+    @IntDefault(60_000)
+    int getClientStreamReadTimeoutMillis();
+
+    @LongDefault(60_000)
+    long getClientStreamRediscoverAfterMillis();
+
+    @IntDefault(128)
+    int getClientHostLatencyWindowSize();
+
+    @IntDefault(16)
+    int getClientHostLatencyMinSamples();
+
+    @DoubleDefault(0.99d)
+    double getClientHedgePercentile();
+
+    @LongDefault(1)
+    long getClientMinHedgeMillis();
+
+    @IntDefault(32)
+    int getClientHedgeProbeOneInN();
+
+    @LongDefault(10 * 60_000)
+    long getClientHostLatencyExpireAfterMillis();
 }
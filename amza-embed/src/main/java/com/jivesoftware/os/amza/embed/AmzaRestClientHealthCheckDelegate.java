@@ -8,6 +8,7 @@ import com.jivesoftware.os.amza.api.partition.Consistency;
 import com.jivesoftware.os.amza.api.partition.PartitionName;
 import com.jivesoftware.os.amza.api.partition.PartitionProperties;
 import com.jivesoftware.os.amza.service.Partition.ScanRange;
+import com.jivesoftware.os.amza.service.replication.LeaderChangeJournal.LeaderChanges;
 import com.jivesoftware.os.amza.service.replication.http.AmzaRestClient;
 import com.jivesoftware.os.amza.service.ring.RingTopology;
 import com.jivesoftware.os.routing.bird.health.api.HealthFactory;
@@ -279,6 +280,44 @@ public class AmzaRestClientHealthCheckDelegate implements AmzaRestClient {
         }
     }
 
+    public static interface RingLeadersRequestLatency extends TimerHealthCheckConfig {
+
+        @StringDefault("client>ringLeaders>request>latency")
+        @Override
+        String getName();
+
+        @StringDefault("How long its taking to request ringLeaders.")
+        @Override
+        String getDescription();
+
+        @DoubleDefault(3600000d)
+        @Override
+        Double get95ThPecentileMax();
+    }
+
+    private static final HealthTimer ringLeadersRequestLatency = HealthFactory.getHealthTimer(RingLeadersRequestLatency.class, TimerHealthChecker.FACTORY);
+
+    @Override
+    public void ringLeaders(List<PartitionName> partitionNames, IWriteable writeable) throws Exception {
+        try {
+            ringLeadersRequestLatency.startTimer();
+            client.ringLeaders(partitionNames, writeable);
+        } finally {
+            ringLeadersRequestLatency.stopTimer("Ensure", "Check cluster health.");
+        }
+    }
+
+    @Override
+    public LeaderChanges leaderChanges(long journalId, long sinceSequence, long waitForChangesMillis) throws Exception {
+        // long polls, so there is no latency worth checking
+        return client.leaderChanges(journalId, sinceSequence, waitForChangesMillis);
+    }
+
+    @Override
+    public void leaderChanges(LeaderChanges leaderChanges, IWriteable writeable) throws IOException {
+        client.leaderChanges(leaderChanges, writeable);
+    }
+
     public static interface ScanResponseLatency extends TimerHealthCheckConfig {
 
         @StringDefault("client>scan>response>latency")
@@ -6,6 +6,7 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializationFeature;
 import com.google.common.base.Optional;
 import com.google.common.base.Strings;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.jivesoftware.os.amza.api.AmzaInterner;
 import com.jivesoftware.os.amza.api.partition.PartitionProperties;
 import com.jivesoftware.os.amza.api.ring.RingHost;
@@ -13,6 +14,8 @@ import com.jivesoftware.os.amza.api.ring.RingMember;
 import com.jivesoftware.os.amza.api.scan.RowChanges;
 import com.jivesoftware.os.amza.berkeleydb.BerkeleyDBWALIndexProvider;
 import com.jivesoftware.os.amza.client.http.AmzaClientProvider;
+import com.jivesoftware.os.amza.client.http.AmzaStreamClient;
+import com.jivesoftware.os.amza.client.http.HostLatencies;
 import com.jivesoftware.os.amza.client.http.HttpPartitionClientFactory;
 import com.jivesoftware.os.amza.client.http.HttpPartitionHostsProvider;
 import com.jivesoftware.os.amza.client.http.RingHostHttpClientProvider;
@@ -25,10 +28,12 @@ import com.jivesoftware.os.amza.service.AmzaServiceInitializer.AmzaServiceConfig
 import com.jivesoftware.os.amza.service.SickPartitions;
 import com.jivesoftware.os.amza.service.replication.TakeFailureListener;
 import com.jivesoftware.os.amza.service.replication.http.AmzaClientService;
+import com.jivesoftware.os.amza.service.replication.http.AmzaClientStreamServer;
 import com.jivesoftware.os.amza.service.replication.http.AmzaRestClient;
 import com.jivesoftware.os.amza.service.replication.http.HttpAvailableRowsTaker;
 import com.jivesoftware.os.amza.service.replication.http.HttpRowsTaker;
 import com.jivesoftware.os.amza.service.replication.http.endpoints.AmzaClientRestEndpoints;
+import com.jivesoftware.os.amza.service.replication.http.endpoints.AmzaClientStreamEndpoints;
 import com.jivesoftware.os.amza.service.replication.http.endpoints.AmzaReplicationRestEndpoints;
 import com.jivesoftware.os.amza.service.ring.AmzaRingReader;
 import com.jivesoftware.os.amza.service.ring.AmzaRingWriter;
@@ -66,6 +71,7 @@ import com.jivesoftware.os.routing.bird.server.util.Resource;
 import com.jivesoftware.os.routing.bird.shared.HttpClientException;
 import java.io.IOException;
 import java.util.Set;
+import java.util.concurrent.Executors;
 import java.util.concurrent.atomic.AtomicInteger;
 import org.merlin.config.defaults.DoubleDefault;
 import org.merlin.config.defaults.StringDefault;
@@ -177,7 +183,8 @@ public class EmbedAmzaServiceInitializer {
             }
         };
 
-        BinaryPrimaryRowMarshaller primaryRowMarshaller = new BinaryPrimaryRowMarshaller(); // hehe you cant change this :)
+        BinaryPrimaryRowMarshaller primaryRowMarshaller = new BinaryPrimaryRowMarshaller(
+            BinaryPrimaryRowMarshaller.readDeflateDictionaries(amzaServiceConfig.deflateDictionaryPaths)); // hehe you cant change this :)
         BinaryHighwaterRowMarshaller highwaterRowMarshaller = new BinaryHighwaterRowMarshaller(amzaInterner);
 
         TenantRoutingHttpClientInitializer<String> nonSigningClientInitializer = new TenantRoutingHttpClientInitializer<>(new OAuthSignerProvider(() -> null));
@@ -228,8 +235,15 @@ public class EmbedAmzaServiceInitializer {
                 systemTakeClient,
                 mapper,
                 amzaInterner,
-                deployable.newBoundedExecutor(1, "system-ack-queue"),
-                deployable.newBoundedExecutor(1024, "system-acks"));
+                deployable.newBoundedExecutor(1024, "system-acks"),
+                amzaServiceConfig.takeInitialWindowRows,
+                amzaServiceConfig.takeMinWindowRows,
+                amzaServiceConfig.takeWindowMaxMillis,
+                amzaServiceConfig.takeWindowMaxBytes,
+                amzaServiceConfig.takeWindowRttMultiple,
+                amzaServiceConfig.ackMinRetryMillis,
+                amzaServiceConfig.ackMaxRetryMillis,
+                amzaServiceConfig.ackMaxRetries);
         };
         RowsTakerFactory rowsTakerFactory = () -> {
             return new HttpRowsTaker("striped",
@@ -237,8 +251,15 @@ public class EmbedAmzaServiceInitializer {
                 stripedTakeClient,
                 mapper,
                 amzaInterner,
-                deployable.newBoundedExecutor(1, "striped-ack-queue"),
-                deployable.newBoundedExecutor(1024, "striped-acks"));
+                deployable.newBoundedExecutor(1024, "striped-acks"),
+                amzaServiceConfig.takeInitialWindowRows,
+                amzaServiceConfig.takeMinWindowRows,
+                amzaServiceConfig.takeWindowMaxMillis,
+                amzaServiceConfig.takeWindowMaxBytes,
+                amzaServiceConfig.takeWindowRttMultiple,
+                amzaServiceConfig.ackMinRetryMillis,
+                amzaServiceConfig.ackMaxRetryMillis,
+                amzaServiceConfig.ackMaxRetries);
         };
 
         AtomicInteger systemRingSize = new AtomicInteger(0);
@@ -311,10 +332,18 @@ public class EmbedAmzaServiceInitializer {
         );
 
         AmzaClientProvider<HttpClient, HttpClientException> clientProvider = new AmzaClientProvider<>(
-            new HttpPartitionClientFactory(),
+            new HttpPartitionClientFactory(new AmzaStreamClient(amzaServiceConfig.clientStreamConnectTimeoutMillis,
+                amzaServiceConfig.clientStreamReadTimeoutMillis,
+                amzaServiceConfig.clientStreamRediscoverAfterMillis)),
             new HttpPartitionHostsProvider(ringClient, tailAtScaleStrategy, mapper),
             new RingHostHttpClientProvider(ringClient),
             deployable.newBoundedExecutor(1024, "amza-client"),
+            new HostLatencies(amzaServiceConfig.clientHostLatencyWindowSize,
+                amzaServiceConfig.clientHostLatencyMinSamples,
+                amzaServiceConfig.clientHedgePercentile,
+                amzaServiceConfig.clientMinHedgeMillis,
+                amzaServiceConfig.clientHedgeProbeOneInN,
+                amzaServiceConfig.clientHostLatencyExpireAfterMillis),
             10_000, //TODO expose to conf
             -1,
             -1);
@@ -362,9 +391,24 @@ public class EmbedAmzaServiceInitializer {
         deployable.addInjectables(ObjectMapper.class, mapper);
 
         if (bindClientEndpoints) {
+            AmzaRestClient amzaRestClient = new AmzaRestClientHealthCheckDelegate(
+                new AmzaClientService(amzaService.getRingReader(),
+                    amzaService.getRingWriter(),
+                    amzaService,
+                    amzaService.getAquariumProvider().getLeaderChangeJournal()));
+            AmzaClientStreamServer clientStreamServer = new AmzaClientStreamServer(amzaServiceConfig.clientStreamPort,
+                amzaRestClient,
+                amzaInterner,
+                Executors.newCachedThreadPool(new ThreadFactoryBuilder().setNameFormat("amza-client-stream-%d").build()),
+                amzaServiceConfig.clientStreamMaxRequestBytes,
+                amzaServiceConfig.clientStreamAwaitOnlineTimeoutMillis);
+            if (amzaServiceConfig.clientStreamPort >= 0) {
+                clientStreamServer.start();
+            }
             deployable.addEndpoints(AmzaClientRestEndpoints.class);
-            deployable.addInjectables(AmzaRestClient.class, new AmzaRestClientHealthCheckDelegate(
-                new AmzaClientService(amzaService.getRingReader(), amzaService.getRingWriter(), amzaService)));
+            deployable.addInjectables(AmzaRestClient.class, amzaRestClient);
+            deployable.addEndpoints(AmzaClientStreamEndpoints.class);
+            deployable.addInjectables(AmzaClientStreamServer.class, clientStreamServer);
         }
 
         Resource staticResource = new Resource(null)
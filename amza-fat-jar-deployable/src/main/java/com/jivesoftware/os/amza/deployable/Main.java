@@ -28,6 +28,8 @@ import com.jivesoftware.os.amza.api.ring.RingHost;
 import com.jivesoftware.os.amza.api.ring.RingMember;
 import com.jivesoftware.os.amza.berkeleydb.BerkeleyDBWALIndexProvider;
 import com.jivesoftware.os.amza.client.http.AmzaClientProvider;
+import com.jivesoftware.os.amza.client.http.AmzaStreamClient;
+import com.jivesoftware.os.amza.client.http.HostLatencies;
 import com.jivesoftware.os.amza.client.http.HttpPartitionClientFactory;
 import com.jivesoftware.os.amza.client.http.HttpPartitionHostsProvider;
 import com.jivesoftware.os.amza.client.http.RingHostHttpClientProvider;
@@ -40,10 +42,12 @@ import com.jivesoftware.os.amza.service.AmzaServiceInitializer.AmzaServiceConfig
 import com.jivesoftware.os.amza.service.SickPartitions;
 import com.jivesoftware.os.amza.service.discovery.AmzaDiscovery;
 import com.jivesoftware.os.amza.service.replication.http.AmzaClientService;
+import com.jivesoftware.os.amza.service.replication.http.AmzaClientStreamServer;
 import com.jivesoftware.os.amza.service.replication.http.AmzaRestClient;
 import com.jivesoftware.os.amza.service.replication.http.HttpAvailableRowsTaker;
 import com.jivesoftware.os.amza.service.replication.http.HttpRowsTaker;
 import com.jivesoftware.os.amza.service.replication.http.endpoints.AmzaClientRestEndpoints;
+import com.jivesoftware.os.amza.service.replication.http.endpoints.AmzaClientStreamEndpoints;
 import com.jivesoftware.os.amza.service.replication.http.endpoints.AmzaReplicationRestEndpoints;
 import com.jivesoftware.os.amza.service.ring.AmzaRingReader;
 import com.jivesoftware.os.amza.service.ring.RingTopology;
@@ -117,6 +121,16 @@ public class Main {
                 System.out.println("    -Damza.id=<writerId>   default: random number 0-512");
                 System.out.println("    -Damza.working.dirs=<workingDirs>  default: ./data1,./data2,./data3");
                 System.out.println("    -Damza.system.ring.size=<systemRingSize>  default: -1");
+                System.out.println("    -Damza.client.stream.port=<clientStreamPort>  default: -1 (disabled)");
+                System.out.println("    -Damza.client.stream.max.request.bytes=<maxRequestBytes>  default: 67108864");
+                System.out.println("    -Damza.client.stream.connect.timeout.millis=<connectTimeoutMillis>  default: 10000");
+                System.out.println("    -Damza.client.stream.read.timeout.millis=<readTimeoutMillis>  default: 60000");
+                System.out.println("    -Damza.client.host.latency.window.size=<windowSize>  default: 128");
+                System.out.println("    -Damza.client.host.latency.min.samples=<minSamples>  default: 16");
+                System.out.println("    -Damza.client.hedge.percentile=<hedgePercentile>  default: 0.99");
+                System.out.println("    -Damza.client.min.hedge.millis=<minHedgeMillis>  default: 1");
+                System.out.println("    -Damza.client.hedge.probe.one.in.n=<probeOneInN>  default: 32");
+                System.out.println("    -Damza.client.host.latency.expire.after.millis=<expireAfterMillis>  default: 600000");
                 System.out.println("    -Damza.leap.cache.max.capacity=<leapCacheCapacity>  default: 1000000");
                 System.out.println("");
                 System.out.println("     Only applicable if you have specified a <clusterName>.");
@@ -178,6 +192,28 @@ public class Main {
         if (amzaServiceConfig.systemRingSize > 0) {
             systemRingSize.set(amzaServiceConfig.systemRingSize);
         }
+        amzaServiceConfig.clientStreamPort = Integer.parseInt(System.getProperty("amza.client.stream.port", "-1"));
+        amzaServiceConfig.clientStreamMaxRequestBytes = Integer.parseInt(System.getProperty("amza.client.stream.max.request.bytes",
+            String.valueOf(amzaServiceConfig.clientStreamMaxRequestBytes)));
+        amzaServiceConfig.clientStreamConnectTimeoutMillis = Integer.parseInt(
+            System.getProperty("amza.client.stream.connect.timeout.millis", String.valueOf(amzaServiceConfig.clientStreamConnectTimeoutMillis)));
+        amzaServiceConfig.clientStreamReadTimeoutMillis = Integer.parseInt(System.getProperty("amza.client.stream.read.timeout.millis",
+            String.valueOf(amzaServiceConfig.clientStreamReadTimeoutMillis)));
+        amzaServiceConfig.clientHostLatencyWindowSize = Integer.parseInt(System.getProperty("amza.client.host.latency.window.size",
+            String.valueOf(amzaServiceConfig.clientHostLatencyWindowSize)));
+        amzaServiceConfig.clientHostLatencyMinSamples = Integer.parseInt(System.getProperty("amza.client.host.latency.min.samples",
+            String.valueOf(amzaServiceConfig.clientHostLatencyMinSamples)));
+        amzaServiceConfig.clientHedgePercentile = Double.parseDouble(System.getProperty("amza.client.hedge.percentile",
+            String.valueOf(amzaServiceConfig.clientHedgePercentile)));
+        amzaServiceConfig.clientMinHedgeMillis = Long.parseLong(System.getProperty("amza.client.min.hedge.millis",
+            String.valueOf(amzaServiceConfig.clientMinHedgeMillis)));
+        amzaServiceConfig.clientHedgeProbeOneInN = Integer.parseInt(System.getProperty("amza.client.hedge.probe.one.in.n",
+            String.valueOf(amzaServiceConfig.clientHedgeProbeOneInN)));
+        amzaServiceConfig.clientHostLatencyExpireAfterMillis = Long.parseLong(System.getProperty(
+            "amza.client.host.latency.expire.after.millis",
+            String.valueOf(amzaServiceConfig.clientHostLatencyExpireAfterMillis)));
+        String deflateDictionaries = System.getProperty("amza.deflate.dictionaries", "");
+        amzaServiceConfig.deflateDictionaryPaths = deflateDictionaries.isEmpty() ? new String[0] : deflateDictionaries.split(",");
 
         AmzaInterner amzaInterner = new AmzaInterner();
 
@@ -205,7 +241,8 @@ public class Main {
         LABPointerIndexConfig labConfig = BindInterfaceToConfiguration.bindDefault(LABPointerIndexConfig.class);
         labConfig.setLeapCacheMaxCapacity(Integer.parseInt(System.getProperty("amza.leap.cache.max.capacity", "1000000")));
 
-        BinaryPrimaryRowMarshaller primaryRowMarshaller = new BinaryPrimaryRowMarshaller(); // hehe you cant change this :)
+        BinaryPrimaryRowMarshaller primaryRowMarshaller = new BinaryPrimaryRowMarshaller(
+            BinaryPrimaryRowMarshaller.readDeflateDictionaries(amzaServiceConfig.deflateDictionaryPaths)); // hehe you cant change this :)
         BinaryHighwaterRowMarshaller highwaterRowMarshaller = new BinaryHighwaterRowMarshaller(amzaInterner);
 
         AtomicReference<Callable<RingTopology>> topologyProvider = new AtomicReference<>(); // bit of a hack
@@ -288,8 +325,15 @@ public class Main {
                     httpClient,
                     mapper,
                     amzaInterner,
-                    Executors.newSingleThreadExecutor(),
-                    Executors.newCachedThreadPool());
+                    Executors.newCachedThreadPool(),
+                    amzaServiceConfig.takeInitialWindowRows,
+                    amzaServiceConfig.takeMinWindowRows,
+                    amzaServiceConfig.takeWindowMaxMillis,
+                    amzaServiceConfig.takeWindowMaxBytes,
+                    amzaServiceConfig.takeWindowRttMultiple,
+                    amzaServiceConfig.ackMinRetryMillis,
+                    amzaServiceConfig.ackMaxRetryMillis,
+                    amzaServiceConfig.ackMaxRetries);
             },
             () -> {
                 return new HttpRowsTaker("striped",
@@ -297,8 +341,15 @@ public class Main {
                     httpClient,
                     mapper,
                     amzaInterner,
-                    Executors.newSingleThreadExecutor(),
-                    Executors.newCachedThreadPool());
+                    Executors.newCachedThreadPool(),
+                    amzaServiceConfig.takeInitialWindowRows,
+                    amzaServiceConfig.takeMinWindowRows,
+                    amzaServiceConfig.takeWindowMaxMillis,
+                    amzaServiceConfig.takeWindowMaxBytes,
+                    amzaServiceConfig.takeWindowRttMultiple,
+                    amzaServiceConfig.ackMinRetryMillis,
+                    amzaServiceConfig.ackMaxRetryMillis,
+                    amzaServiceConfig.ackMaxRetries);
             },
             Optional.absent(),
             (changes) -> {
@@ -317,15 +368,37 @@ public class Main {
         );
 
         AmzaClientProvider<HttpClient, HttpClientException> clientProvider = new AmzaClientProvider<>(
-            new HttpPartitionClientFactory(),
+            new HttpPartitionClientFactory(new AmzaStreamClient(amzaServiceConfig.clientStreamConnectTimeoutMillis,
+                amzaServiceConfig.clientStreamReadTimeoutMillis,
+                amzaServiceConfig.clientStreamRediscoverAfterMillis)),
             new HttpPartitionHostsProvider(httpClient, tailAtScaleStrategy, mapper),
             new RingHostHttpClientProvider(httpClient),
             BoundedExecutor.newBoundedExecutor(1024, "amza-client"),
+            new HostLatencies(amzaServiceConfig.clientHostLatencyWindowSize,
+                amzaServiceConfig.clientHostLatencyMinSamples,
+                amzaServiceConfig.clientHedgePercentile,
+                amzaServiceConfig.clientMinHedgeMillis,
+                amzaServiceConfig.clientHedgeProbeOneInN,
+                amzaServiceConfig.clientHostLatencyExpireAfterMillis),
             10_000, //TODO expose to conf
             -1,
             -1);
 
 
+        AmzaRestClient amzaRestClient = new AmzaClientService(amzaService.getRingReader(),
+            amzaService.getRingWriter(),
+            amzaService,
+            amzaService.getAquariumProvider().getLeaderChangeJournal());
+        AmzaClientStreamServer clientStreamServer = new AmzaClientStreamServer(amzaServiceConfig.clientStreamPort,
+            amzaRestClient,
+            amzaInterner,
+            Executors.newCachedThreadPool(),
+            amzaServiceConfig.clientStreamMaxRequestBytes,
+            amzaServiceConfig.clientStreamAwaitOnlineTimeoutMillis);
+        if (amzaServiceConfig.clientStreamPort >= 0) {
+            clientStreamServer.start();
+        }
+
         final JerseyEndpoints jerseyEndpoints = new JerseyEndpoints()
             .addEndpoint(AmzaEndpoints.class)
             .addInjectable(AmzaService.class, amzaService)
@@ -334,7 +407,9 @@ public class Main {
             .addEndpoint(AmzaClientRestEndpoints.class)
             .addInjectable(AmzaInterner.class, amzaInterner)
             .addInjectable(ObjectMapper.class, mapper)
-            .addInjectable(AmzaRestClient.class, new AmzaClientService(amzaService.getRingReader(), amzaService.getRingWriter(), amzaService));
+            .addInjectable(AmzaRestClient.class, amzaRestClient)
+            .addEndpoint(AmzaClientStreamEndpoints.class)
+            .addInjectable(AmzaClientStreamServer.class, clientStreamServer);
 
         new AmzaUIInitializer().initialize(clusterName,
             ringHost,
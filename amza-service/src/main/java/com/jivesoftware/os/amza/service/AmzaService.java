@@ -203,14 +203,21 @@ public class AmzaService implements AmzaInstance, PartitionProvider {
             return -1;
         };
 
+        long start = System.currentTimeMillis();
         systemWALStorage.load(partitionCreator.getSystemPartitions(), takeHighestPartitionTx);
+        long systemLoaded = System.currentTimeMillis();
 
         // start the composter before loading partition stripes in case we need to repair any partitions
         partitionComposter.start();
 
         partitionStripeProvider.load();
+        long stripesLoaded = System.currentTimeMillis();
+
+        LOG.info("Startup loaded system partitions in {} ms, delta stripes in {} ms, total {} ms",
+            systemLoaded - start, stripesLoaded - systemLoaded, stripesLoaded - start);
 
         ringStoreWriter.register(ringMember, ringHost, -1, true);
+        partitionStripeProvider.startOpeningPartitions();
 
         partitionStripeProvider.start();
         changeTaker.start();
@@ -28,7 +28,9 @@ import com.jivesoftware.os.amza.api.scan.RowChanges;
 import com.jivesoftware.os.amza.api.wal.WALUpdated;
 import com.jivesoftware.os.amza.service.TakeFullySystemReady.SystemRingSizeProvider;
 import com.jivesoftware.os.amza.service.filer.DirectByteBufferFactory;
+import com.jivesoftware.os.amza.service.filer.DirectByteBufferPool;
 import com.jivesoftware.os.amza.service.replication.AmzaAquariumProvider;
+import com.jivesoftware.os.amza.service.replication.LeaderChangeJournal;
 import com.jivesoftware.os.amza.service.replication.AmzaAquariumProvider.AmzaLivelinessStorage;
 import com.jivesoftware.os.amza.service.replication.AsyncStripeFlusher;
 import com.jivesoftware.os.amza.service.replication.PartitionBackedHighwaterStorage;
@@ -37,6 +39,7 @@ import com.jivesoftware.os.amza.service.replication.PartitionStripeProvider;
 import com.jivesoftware.os.amza.service.replication.PartitionTombstoneCompactor;
 import com.jivesoftware.os.amza.service.replication.RowChangeTaker;
 import com.jivesoftware.os.amza.service.replication.StorageVersionProvider;
+import com.jivesoftware.os.amza.service.replication.StripeDurabilityMode;
 import com.jivesoftware.os.amza.service.replication.StripedPartitionCommitChanges;
 import com.jivesoftware.os.amza.service.replication.SystemPartitionCommitChanges;
 import com.jivesoftware.os.amza.service.replication.TakeFailureListener;
@@ -51,8 +54,11 @@ import com.jivesoftware.os.amza.service.storage.SystemWALStorage;
 import com.jivesoftware.os.amza.service.storage.binary.BinaryHighwaterRowMarshaller;
 import com.jivesoftware.os.amza.service.storage.binary.BinaryPrimaryRowMarshaller;
 import com.jivesoftware.os.amza.service.storage.binary.BinaryRowIOProvider;
+import com.jivesoftware.os.amza.service.storage.binary.DirectAppendRowIOProvider;
 import com.jivesoftware.os.amza.service.storage.binary.MemoryBackedRowIOProvider;
 import com.jivesoftware.os.amza.service.storage.binary.RowIOProvider;
+import com.jivesoftware.os.amza.service.storage.binary.WALCompactionPolicy;
+import com.jivesoftware.os.amza.service.storage.delta.DeltaPointerIndexType;
 import com.jivesoftware.os.amza.service.storage.delta.DeltaStripeWALStorage;
 import com.jivesoftware.os.amza.service.storage.delta.DeltaWALFactory;
 import com.jivesoftware.os.amza.service.take.AvailableRowsTaker;
@@ -97,23 +103,38 @@ public class AmzaServiceInitializer {
         public String[] workingDirectories = null;
 
         public long asyncFsyncIntervalMillis = 1_000;
+        public String stripeDurabilityMode = StripeDurabilityMode.every_commit.name();
+        public long groupFsyncIntervalMillis = 10;
+        public long groupFsyncBytes = 1_024 * 1_024;
 
         public int numberOfTakerThreads = 8;
 
         public int systemRingSize = -1;
         public int systemReadyInitConcurrencyLevel = 8;
+        public int startupOpenConcurrency = 0;
+        public long startupProgressIntervalMillis = 10_000;
 
         public int corruptionParanoiaFactor = 10;
         public int updatesBetweenLeaps = 4_096;
         public int maxLeaps = 64;
+        public int maxSparseTxFpPoints = 64;
 
         public long initialBufferSegmentSize = 1_024 * 1_024;
         public long maxBufferSegmentSize = 1_024 * 1_024 * 1_024;
+        public int writeBufferSize = 64 * 1_024;
+        public int writeBufferMaxPooled = 1_024;
 
         public int maxUpdatesBeforeDeltaStripeCompaction = 1_000_000;
         public int deltaStripeCompactionIntervalInMillis = 1_000 * 60;
         public int deltaMaxValueSizeInIndex = 8;
+        public String[] deltaPointerIndexTypes = { DeltaPointerIndexType.heap.name() };
+        public int deltaSlabMaxBufferedKeys = 4_096;
         public boolean deltaUseHighwaterTxId = false;
+        public boolean deltaDirectAppend = false;
+        public int deltaDirectAppendBlockSize = 4_096;
+        public int deltaDirectAppendStagingBlocks = 16;
+        public int deltaDirectAppendReadCacheBlocks = 256;
+        public int deltaDirectAppendPooledBlocks = 4_096;
         public int deltaMergeThreads = -1;
 
         public int ackWatersStripingLevel = 1024;
@@ -124,6 +145,7 @@ public class AmzaServiceInitializer {
         public long flushHighwatersAfterNUpdates = 10_000;
 
         public boolean useMemMap = true;
+        public String[] deflateDictionaryPaths = {};
 
         public long takeCyaIntervalInMillis = 1_000;
         public long takeSlowThresholdInMillis = 1_000 * 60;
@@ -134,11 +156,52 @@ public class AmzaServiceInitializer {
         public long hangupAvailableRowsAfterUnresponsiveMillis = 60_000;
         public long pongIntervalMillis = 10_000;
         public long rowsTakerLimit = 65_536L;
+        public int takePipelineDepth = 8;
+        public long takeOverCapacityWaitMillis = 1_000;
+        public int takeCoalesceMaxRows = 1_024;
+        public long takeCoalesceMaxBytes = 1_024 * 1_024;
+        public long takeInitialWindowRows = 4_096;
+        public long takeMinWindowRows = 256;
+        public long takeWindowMaxMillis = 2_000;
+        public long takeWindowMaxBytes = 64 * 1024 * 1024;
+        public double takeWindowRttMultiple = 4d;
+        public long ackMinRetryMillis = 10;
+        public long ackMaxRetryMillis = 1_000;
+        public int ackMaxRetries = 20;
+
+        public int clientStreamPort = -1;
+        public int clientStreamMaxRequestBytes = 64 * 1_024 * 1_024;
+        public long clientStreamAwaitOnlineTimeoutMillis = 10_000;
+        public int clientStreamConnectTimeoutMillis = 10_000;
+        public int clientStreamReadTimeoutMillis = 60_000;
+        public long clientStreamRediscoverAfterMillis = 60_000;
+        public int clientHostLatencyWindowSize = 128;
+        public int clientHostLatencyMinSamples = 16;
+        public double clientHedgePercentile = 0.99d;
+        public long clientMinHedgeMillis = 1;
+        public int clientHedgeProbeOneInN = 32;
+        public long clientHostLatencyExpireAfterMillis = 10 * 60_000;
 
         public long aquariumLeaderDeadAfterMillis = 60_000;
         public long aquariumLivelinessFeedEveryMillis = 500;
+        public int leaderChangeJournalCapacity = 100_000;
+        public int leaderChangeMaxWaiters = 256;
+        public long leaderChangeMaxWaitMillis = 30_000;
+        public int aquariumStateChangeThreads = 8;
+        public int aquariumStateWriteBatchSize = 1_000;
 
         public int tombstoneCompactionFactor = 2;
+        public long compactionBytesPerSecond = -1;
+        public long compactionMinBytesPerSecond = 4 * 1024 * 1024;
+        public double compactionBackoffLatencyFactor = 2.0d;
+        public double compactionBackoffLatencyPercentile = 0.99d;
+        public long compactionBackoffLatencyFloorMicros = 1_000;
+        public int tombstoneCompactionThreads = 2;
+        public long compactionSegmentSizeInBytes = 64 * 1024 * 1024;
+        public double compactionMinReclaimableRatio = 0.1d;
+        public long compactionReanalyzeAfterMillis = TimeUnit.HOURS.toMillis(1);
+        public double keyFilterFpp = 0.01d;
+        public int keyFilterRebuildThreads = 1;
         public long checkIfCompactionIsNeededIntervalInMillis = 60_000;
         public long rebalanceableEveryNMillis = TimeUnit.HOURS.toMillis(1);
         public long rebalanceIfImbalanceGreaterThanNBytes = 1024 * 1024 * 1024;
@@ -192,18 +255,24 @@ public class AmzaServiceInitializer {
 
         int numberOfStripes = config.workingDirectories.length;
 
+        DirectByteBufferPool writeBufferPool = new DirectByteBufferPool(config.writeBufferSize, config.writeBufferMaxPooled);
+
         //TODO configure
         MemoryBackedRowIOProvider ephemeralRowIOProvider = new MemoryBackedRowIOProvider(
             config.initialBufferSegmentSize,
             config.maxBufferSegmentSize,
             config.updatesBetweenLeaps,
             config.maxLeaps,
-            new DirectByteBufferFactory());
+            new DirectByteBufferFactory(),
+            writeBufferPool,
+            config.maxSparseTxFpPoints);
 
         BinaryRowIOProvider persistentRowIOProvider = new BinaryRowIOProvider(
             config.updatesBetweenLeaps,
             config.maxLeaps,
-            config.useMemMap);
+            config.useMemMap,
+            writeBufferPool,
+            config.maxSparseTxFpPoints);
 
         File[] workingWALDirectories = new File[config.workingDirectories.length];
         File[] workingIndexDirectories = new File[config.workingDirectories.length];
@@ -215,6 +284,10 @@ public class AmzaServiceInitializer {
         WALIndexProviderRegistry indexProviderRegistry = new WALIndexProviderRegistry(ephemeralRowIOProvider, persistentRowIOProvider);
         indexProviderRegistryCallback.call(workingIndexDirectories, indexProviderRegistry, ephemeralRowIOProvider, persistentRowIOProvider, numberOfStripes);
 
+        WALCompactionPolicy compactionPolicy = WALCompactionPolicy.create(config.compactionBytesPerSecond,
+            config.compactionSegmentSizeInBytes,
+            config.compactionMinReclaimableRatio,
+            config.compactionReanalyzeAfterMillis);
         IndexedWALStorageProvider walStorageProvider = new IndexedWALStorageProvider(amzaStats,
             workingWALDirectories,
             numberOfStripes,
@@ -224,7 +297,10 @@ public class AmzaServiceInitializer {
             orderIdProvider,
             sickPartitions,
             config.tombstoneCompactionFactor,
-            config.rebalanceIfImbalanceGreaterThanNBytes);
+            config.rebalanceIfImbalanceGreaterThanNBytes,
+            compactionPolicy,
+            config.keyFilterFpp,
+            amzaThreadPoolProvider.allocateThreadPool(config.keyFilterRebuildThreads, "key-filter-rebuilder"));
 
         int numProc = Runtime.getRuntime().availableProcessors();
 
@@ -233,10 +309,14 @@ public class AmzaServiceInitializer {
             orderIdProvider,
             walStorageProvider,
             numProc,
-            amzaThreadPoolProvider.allocateThreadPool(numProc, "partition-loader"));
+            amzaThreadPoolProvider.allocateThreadPool(Math.max(numProc, config.startupOpenConcurrency), "partition-loader"));
 
         AsyncStripeFlusher systemFlusher = new AsyncStripeFlusher(-1,
             config.asyncFsyncIntervalMillis,
+            StripeDurabilityMode.every_commit,
+            config.groupFsyncIntervalMillis,
+            config.groupFsyncBytes,
+            null,
             null);
 
         SystemWALStorage systemWALStorage = new SystemWALStorage(
@@ -328,10 +408,22 @@ public class AmzaServiceInitializer {
 
         DeltaStripeWALStorage[] deltaStripeWALStorages = new DeltaStripeWALStorage[numberOfStripes];
 
-        BinaryRowIOProvider deltaRowIOProvider = new BinaryRowIOProvider(
-            -1,
-            0,
-            config.useMemMap);
+        RowIOProvider deltaRowIOProvider = config.deltaDirectAppend
+            ? new DirectAppendRowIOProvider(
+                -1,
+                0,
+                config.deltaDirectAppendBlockSize,
+                config.deltaDirectAppendStagingBlocks,
+                config.deltaDirectAppendReadCacheBlocks,
+                config.deltaDirectAppendPooledBlocks,
+                writeBufferPool,
+                config.maxSparseTxFpPoints)
+            : new BinaryRowIOProvider(
+                -1,
+                0,
+                config.useMemMap,
+                writeBufferPool,
+                config.maxSparseTxFpPoints);
         int deltaMergeThreads = config.deltaMergeThreads;
         if (deltaMergeThreads <= 0) {
             deltaMergeThreads = numProc;
@@ -351,6 +443,8 @@ public class AmzaServiceInitializer {
                 highwaterStorage,
                 deltaWALFactory,
                 config.deltaMaxValueSizeInIndex,
+                DeltaPointerIndexType.valueOf(config.deltaPointerIndexTypes[i % config.deltaPointerIndexTypes.length]),
+                config.deltaSlabMaxBufferedKeys,
                 config.deltaUseHighwaterTxId,
                 indexProviderRegistry,
                 maxUpdatesBeforeCompaction,
@@ -419,7 +513,10 @@ public class AmzaServiceInitializer {
             liveliness,
             config.aquariumLivelinessFeedEveryMillis,
             awaitOnline,
-            sickThreads);
+            sickThreads,
+            new LeaderChangeJournal(config.leaderChangeJournalCapacity, config.leaderChangeMaxWaiters, config.leaderChangeMaxWaitMillis),
+            config.aquariumStateChangeThreads,
+            config.aquariumStateWriteBatchSize);
         amzaSystemPartitionWatcher.watch(PartitionCreator.AQUARIUM_STATE_INDEX.getPartitionName(), aquariumProvider);
 
         AmzaPartitionWatcher amzaStripedPartitionWatcher = new AmzaPartitionWatcher(false, allRowChanges);
@@ -429,6 +526,10 @@ public class AmzaServiceInitializer {
             int index = i;
             stripeFlusher[i] = new AsyncStripeFlusher(index,
                 config.asyncFsyncIntervalMillis,
+                StripeDurabilityMode.valueOf(config.stripeDurabilityMode),
+                config.groupFsyncIntervalMillis,
+                config.groupFsyncBytes,
+                () -> deltaStripeWALStorages[index].length(),
                 () -> {
                     deltaStripeWALStorages[index].flush(true);
                     return null;
@@ -453,6 +554,8 @@ public class AmzaServiceInitializer {
             systemFlusher,
             stripeFlusher,
             config.deltaStripeCompactionIntervalInMillis,
+            config.startupOpenConcurrency,
+            config.startupProgressIntervalMillis,
             amzaThreadPoolProvider.allocateThreadPool(deltaStripeWALStorages.length, "compact-deltas"),
             amzaThreadPoolProvider.allocateThreadPool(deltaStripeWALStorages.length + 1, "stripe-flusher")
         );
@@ -531,6 +634,10 @@ public class AmzaServiceInitializer {
             config.takeLongPollTimeoutMillis,
             config.pongIntervalMillis,
             config.rowsTakerLimit,
+            config.takePipelineDepth,
+            config.takeOverCapacityWaitMillis,
+            config.takeCoalesceMaxRows,
+            config.takeCoalesceMaxBytes,
             primaryRowMarshaller,
             highwaterRowMarshaller);
 
@@ -541,7 +648,13 @@ public class AmzaServiceInitializer {
             storageVersionProvider,
             config.checkIfCompactionIsNeededIntervalInMillis,
             config.rebalanceableEveryNMillis,
-            numberOfStripes);
+            numberOfStripes,
+            compactionPolicy,
+            config.tombstoneCompactionThreads,
+            config.compactionBackoffLatencyFactor,
+            config.compactionBackoffLatencyPercentile,
+            config.compactionBackoffLatencyFloorMicros,
+            config.compactionMinBytesPerSecond);
 
         return new AmzaService(orderIdProvider,
             amzaSystemStats,
@@ -10,12 +10,14 @@ import com.jivesoftware.os.amza.service.storage.WALStorage;
 import com.jivesoftware.os.amza.service.storage.binary.BinaryHighwaterRowMarshaller;
 import com.jivesoftware.os.amza.service.storage.binary.BinaryWALTx;
 import com.jivesoftware.os.amza.service.storage.binary.RowIOProvider;
+import com.jivesoftware.os.amza.service.storage.binary.WALCompactionPolicy;
 import com.jivesoftware.os.jive.utils.ordered.id.TimestampedOrderIdProvider;
 import com.jivesoftware.os.mlogger.core.MetricLogger;
 import com.jivesoftware.os.mlogger.core.MetricLoggerFactory;
 import java.io.File;
 import java.io.IOException;
 import java.util.Random;
+import java.util.concurrent.ExecutorService;
 import org.apache.commons.io.FileUtils;
 
 /**
@@ -36,6 +38,9 @@ public class IndexedWALStorageProvider {
     private final SickPartitions sickPartitions;
     private final int tombstoneCompactionFactor;
     private final long rebalanceIfImbalanceGreaterThanInBytes;
+    private final WALCompactionPolicy compactionPolicy;
+    private final double keyFilterFpp;
+    private final ExecutorService keyFilterRebuildExecutor;
 
     public IndexedWALStorageProvider(AmzaStats amzaStats,
         File[] workingDirectories,
@@ -46,7 +51,10 @@ public class IndexedWALStorageProvider {
         TimestampedOrderIdProvider orderIdProvider,
         SickPartitions sickPartitions,
         int tombstoneCompactionFactor,
-        long rebalanceIfImbalanceGreaterThanInBytes) throws IOException {
+        long rebalanceIfImbalanceGreaterThanInBytes,
+        WALCompactionPolicy compactionPolicy,
+        double keyFilterFpp,
+        ExecutorService keyFilterRebuildExecutor) throws IOException {
         this.amzaStats = amzaStats;
 
         this.workingDirectories = workingDirectories;
@@ -58,6 +66,9 @@ public class IndexedWALStorageProvider {
         this.sickPartitions = sickPartitions;
         this.tombstoneCompactionFactor = tombstoneCompactionFactor;
         this.rebalanceIfImbalanceGreaterThanInBytes = rebalanceIfImbalanceGreaterThanInBytes;
+        this.compactionPolicy = compactionPolicy;
+        this.keyFilterFpp = keyFilterFpp;
+        this.keyFilterRebuildExecutor = keyFilterRebuildExecutor;
 
         for (File workingDirectory : workingDirectories) {
             if (workingDirectory.exists()) {
@@ -210,7 +221,8 @@ public class IndexedWALStorageProvider {
             rowIOProvider,
             primaryRowMarshaller,
             partitionProperties.updatesBetweenLeaps,
-            partitionProperties.maxLeaps);
+            partitionProperties.maxLeaps,
+            compactionPolicy);
         boolean hardFsyncBeforeLeapBoundary = versionedPartitionName.getPartitionName().isSystemPartition();
         return new WALStorage<>(amzaStats,
             versionedPartitionName,
@@ -221,6 +233,8 @@ public class IndexedWALStorageProvider {
             walIndexProvider,
             sickPartitions,
             hardFsyncBeforeLeapBoundary,
-            tombstoneCompactionFactor);
+            tombstoneCompactionFactor,
+            keyFilterFpp,
+            keyFilterRebuildExecutor);
     }
 }
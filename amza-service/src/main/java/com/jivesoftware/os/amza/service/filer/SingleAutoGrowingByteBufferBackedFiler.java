@@ -1,6 +1,7 @@
 package com.jivesoftware.os.amza.service.filer;
 
 import com.jivesoftware.os.amza.api.filer.IFiler;
+import com.jivesoftware.os.amza.api.filer.ISliceable;
 import com.jivesoftware.os.amza.api.filer.UIO;
 import java.io.IOException;
 import java.nio.ByteBuffer;
@@ -8,7 +9,7 @@ import java.nio.ByteBuffer;
 /**
  *
  */
-public class SingleAutoGrowingByteBufferBackedFiler implements IFiler {
+public class SingleAutoGrowingByteBufferBackedFiler implements IFiler, ISliceable {
 
     public static final long MAX_BUFFER_SEGMENT_SIZE = UIO.chunkLength(30);
     public static long MAX_POSITION = MAX_BUFFER_SEGMENT_SIZE * 10_000;
@@ -205,6 +206,23 @@ public class SingleAutoGrowingByteBufferBackedFiler implements IFiler {
     }
 
 
+    @Override
+    public ByteBuffer slice(long position, int len) throws IOException {
+        if (position < 0 || len < 0 || position + len > length) {
+            return null;
+        }
+        int f = (int) (position >> fShift);
+        int fseek = (int) (position & fseekMask);
+        if (f >= filers.length || fseek + len > filers[f].buffer.capacity()) {
+            // spans segments
+            return null;
+        }
+        ByteBuffer slice = filers[f].buffer.duplicate();
+        slice.limit(fseek + len);
+        slice.position(fseek);
+        return slice.slice().asReadOnlyBuffer();
+    }
+
     @Override
     public void write(byte b) throws IOException {
         int len = 1;
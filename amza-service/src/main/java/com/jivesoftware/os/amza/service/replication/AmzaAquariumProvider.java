@@ -52,10 +52,10 @@ import com.jivesoftware.os.aquarium.interfaces.TransitionQuorum;
 import com.jivesoftware.os.jive.utils.ordered.id.OrderIdProvider;
 import com.jivesoftware.os.mlogger.core.MetricLogger;
 import com.jivesoftware.os.mlogger.core.MetricLoggerFactory;
+import com.jivesoftware.os.mlogger.core.ValueType;
 import com.jivesoftware.os.routing.bird.health.checkers.SickThreads;
 import java.util.Collections;
 import java.util.HashSet;
-import java.util.Iterator;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.Callable;
@@ -63,7 +63,6 @@ import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.concurrent.atomic.AtomicLong;
 
 /**
  *
@@ -90,14 +89,16 @@ public class AmzaAquariumProvider implements AquariumTransactor, TakeCoordinator
     private final long feedEveryMillis;
     private final AwaitNotify<PartitionName> awaitLivelyEndState;
     private final SickThreads sickThreads;
+    private final LeaderChangeJournal leaderChangeJournal;
 
     private final ConcurrentMap<VersionedPartitionName, Aquarium> aquariums = Maps.newConcurrentMap();
     private final ExecutorService livelynessExecutorService = Executors.newSingleThreadExecutor(
         new ThreadFactoryBuilder().setNameFormat("aquarium-livelyness-%d").build());
-    private final ExecutorService executorService = Executors.newSingleThreadExecutor(
-        new ThreadFactoryBuilder().setNameFormat("aquarium-scheduled-%d").build());
-    private final Set<PartitionName> smellsFishy = Collections.newSetFromMap(Maps.newConcurrentMap());
-    private final AtomicLong smellOVersion = new AtomicLong();
+    private final ExecutorService executorService;
+    private final StateChangeStripes stateChangeStripes;
+    private final AmzaStateWriter stateWriter;
+    private final Map<PartitionName, Long> electingSince = Maps.newConcurrentMap();
+    private final Map<PartitionName, Long> electionLatencies = Maps.newConcurrentMap();
     private final AtomicBoolean running = new AtomicBoolean();
 
     private final Map<VersionedPartitionName, LeadershipTokenAndTookFully> tookFullyWhileNominated = Maps.newConcurrentMap();
@@ -117,7 +118,10 @@ public class AmzaAquariumProvider implements AquariumTransactor, TakeCoordinator
         Liveliness liveliness,
         long feedEveryMillis,
         AwaitNotify<PartitionName> awaitLivelyEndState,
-        SickThreads sickThreads) {
+        SickThreads sickThreads,
+        LeaderChangeJournal leaderChangeJournal,
+        int stateChangeThreads,
+        int stateWriteBatchSize) {
 
         this.aquariumStats = aquariumStats;
         this.amzaInterner = amzaInterner;
@@ -134,7 +138,15 @@ public class AmzaAquariumProvider implements AquariumTransactor, TakeCoordinator
         this.feedEveryMillis = feedEveryMillis;
         this.awaitLivelyEndState = awaitLivelyEndState;
         this.sickThreads = sickThreads;
+        this.leaderChangeJournal = leaderChangeJournal;
+        this.executorService = Executors.newFixedThreadPool(stateChangeThreads,
+            new ThreadFactoryBuilder().setNameFormat("aquarium-scheduled-%d").build());
+        this.stateChangeStripes = new StateChangeStripes(stateChangeThreads);
+        this.stateWriter = new AmzaStateWriter(systemWALStorage, orderIdProvider, walUpdated, stateWriteBatchSize);
+    }
 
+    public LeaderChangeJournal getLeaderChangeJournal() {
+        return leaderChangeJournal;
     }
 
     public void start() {
@@ -162,61 +174,87 @@ public class AmzaAquariumProvider implements AquariumTransactor, TakeCoordinator
             return null;
         });
 
-        executorService.submit(() -> {
-            while (running.get()) {
-                try {
-                    long startVersion = smellOVersion.get();
-                    Iterator<PartitionName> iter = smellsFishy.iterator();
-                    while (iter.hasNext()) {
-                        PartitionName partitionName = iter.next();
-                        iter.remove();
-                        try {
-                            if (ringStoreReader.isMemberOfRing(partitionName.getRingName(), 0)) {
-
-                                StorageVersion storageVersion = storageVersionProvider.createIfAbsent(partitionName);
-                                if (storageVersion != null) {
-                                    VersionedPartitionName versionedPartitionName = storageVersionProvider.tx(partitionName, storageVersion,
-                                        (deltaIndex, stripeIndex, storageVersion1) -> new VersionedPartitionName(partitionName,
-                                            storageVersion1.partitionVersion));
-
-                                    Aquarium aquarium = getAquarium(versionedPartitionName);
-                                    aquarium.acknowledgeOther();
-                                    aquarium.tapTheGlass();
-                                    takeCoordinator.stateChanged(ringStoreReader, versionedPartitionName);
-                                }
-                            }
-                        } catch (PartitionIsDisposedException e) {
-                            LOG.info("Ignored disposed partition {}", partitionName);
-                        } catch (PropertiesNotPresentException | IllegalArgumentException e) {
-                            // somewhat expected
-                            smellsFishy.add(partitionName);
-                        } catch (Exception e) {
-                            smellsFishy.add(partitionName);
-                            throw e;
-                        }
-                    }
-                    sickThreads.recovered();
-                    synchronized (smellsFishy) {
-                        if (startVersion == smellOVersion.get()) {
-                            smellsFishy.wait(smellsFishy.isEmpty() ? 0 : feedEveryMillis);
-                        }
-                    }
-                    /*LOG.info("Smelled {} fish in {}", count, (System.currentTimeMillis() - start));*/
-                } catch (InterruptedException e) {
-                    break;
-                } catch (Throwable t) {
-                    sickThreads.sick(t);
-                    LOG.error("Failed to feed the fish", t);
-                    try {
-                        Thread.sleep(1000L);
-                    } catch (InterruptedException e) {
-                        break;
-                    }
+        for (int i = 0; i < stateChangeStripes.numberOfStripes(); i++) {
+            int stripe = i;
+            executorService.submit(() -> {
+                stateChangeStripes.smellTheFish(stripe, running, sickThreads, feedEveryMillis, this::smellTheFish);
+                return null;
+            });
+        }
+    }
+
+    /**
+     * Handles one changed partition on the thread of the {@link StateChangeStripes} stripe it hashes to. The stripes elect in parallel and
+     * share writes through the {@link AmzaStateWriter}.
+     */
+    private boolean smellTheFish(PartitionName partitionName) throws Exception {
+        try {
+            if (ringStoreReader.isMemberOfRing(partitionName.getRingName(), 0)) {
+
+                StorageVersion storageVersion = storageVersionProvider.createIfAbsent(partitionName);
+                if (storageVersion != null) {
+                    VersionedPartitionName versionedPartitionName = storageVersionProvider.tx(partitionName, storageVersion,
+                        (deltaIndex, stripeIndex, storageVersion1) -> new VersionedPartitionName(partitionName,
+                            storageVersion1.partitionVersion));
+
+                    Aquarium aquarium = getAquarium(versionedPartitionName);
+                    aquarium.acknowledgeOther();
+                    aquarium.tapTheGlass();
+                    takeCoordinator.stateChanged(ringStoreReader, versionedPartitionName);
+
+                    Waterline leader = aquarium.getLeader();
+                    boolean online = isOnline(leader);
+                    leaderChangeJournal.changed(partitionName, online ? RingMember.fromAquariumMember(leader.getMember()) : null);
+                    electionChanged(partitionName, online);
                 }
+            } else {
+                forgetElection(partitionName);
             }
-            sickThreads.recovered();
-            return null;
-        });
+            return true;
+        } catch (PartitionIsDisposedException e) {
+            forgetElection(partitionName);
+            LOG.info("Ignored disposed partition {}", partitionName);
+            return true;
+        } catch (PropertiesNotPresentException | IllegalArgumentException e) {
+            // somewhat expected
+            return false;
+        }
+    }
+
+    private void electionChanged(PartitionName partitionName, boolean online) {
+        if (online) {
+            Long since = electingSince.remove(partitionName);
+            if (since != null) {
+                long latency = System.currentTimeMillis() - since;
+                electionLatencies.put(partitionName, latency);
+                LOG.inc("aquarium>elected");
+                LOG.set(ValueType.VALUE, "aquarium>electionLatency", latency);
+            }
+        } else {
+            electingSince.putIfAbsent(partitionName, System.currentTimeMillis());
+        }
+        LOG.set(ValueType.COUNT, "aquarium>electing", electingSince.size());
+    }
+
+    private void forgetElection(PartitionName partitionName) {
+        electingSince.remove(partitionName);
+        electionLatencies.remove(partitionName);
+    }
+
+    /**
+     * @return how long it took this node to see an online leader for the partition the last time it had none, or -1 if it never waited
+     */
+    public long getElectionLatencyMillis(PartitionName partitionName) {
+        Long latency = electionLatencies.get(partitionName);
+        return latency != null ? latency : -1;
+    }
+
+    public int getElectingCount() {
+        return electingSince.size();
+    }
+
+    public long getSmellsFishyDepth() {
+        return stateChangeStripes.depth();
     }
 
     public void stop() {
@@ -586,6 +624,7 @@ public class AmzaAquariumProvider implements AquariumTransactor, TakeCoordinator
     public void delete(VersionedPartitionName versionedPartitionName) throws Exception {
         PartitionName partitionName = versionedPartitionName.getPartitionName();
         long partitionVersion = versionedPartitionName.getPartitionVersion();
+        forgetElection(partitionName);
 
         AmzaStateStorage currentStateStorage = currentStateStorage(partitionName);
         AmzaStateStorage desiredStateStorage = desiredStateStorage(partitionName);
@@ -605,11 +644,11 @@ public class AmzaAquariumProvider implements AquariumTransactor, TakeCoordinator
     }
 
     private AmzaStateStorage currentStateStorage(PartitionName partitionName) {
-        return new AmzaStateStorage(amzaInterner, systemWALStorage, orderIdProvider, walUpdated, partitionName, CURRENT);
+        return new AmzaStateStorage(amzaInterner, systemWALStorage, stateWriter, partitionName, CURRENT);
     }
 
     private AmzaStateStorage desiredStateStorage(PartitionName partitionName) {
-        return new AmzaStateStorage(amzaInterner, systemWALStorage, orderIdProvider, walUpdated, partitionName, DESIRED);
+        return new AmzaStateStorage(amzaInterner, systemWALStorage, stateWriter, partitionName, DESIRED);
     }
 
     static byte[] stateKey(PartitionName partitionName,
@@ -845,14 +884,11 @@ public class AmzaAquariumProvider implements AquariumTransactor, TakeCoordinator
             for (Map.Entry<WALKey, WALValue> change : changes.getApply().entrySet()) {
                 streamStateKey(change.getKey().key, amzaInterner,
                     (partitionName, context, rootRingMember, partitionVersion, isSelf, ackRingMember) -> {
-                        smellsFishy.add(partitionName);
+                        stateChangeStripes.changed(partitionName);
                         return true;
                     });
             }
-            synchronized (smellsFishy) {
-                smellOVersion.incrementAndGet();
-                smellsFishy.notifyAll();
-            }
+            stateChangeStripes.wake();
         }
     }
 
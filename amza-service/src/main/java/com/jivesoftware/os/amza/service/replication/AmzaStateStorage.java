@@ -2,17 +2,13 @@ package com.jivesoftware.os.amza.service.replication;
 
 import com.jivesoftware.os.amza.api.AmzaInterner;
 import com.jivesoftware.os.amza.api.partition.PartitionName;
-import com.jivesoftware.os.amza.api.scan.RowsChanged;
 import com.jivesoftware.os.amza.api.wal.WALKey;
-import com.jivesoftware.os.amza.api.wal.WALUpdated;
-import com.jivesoftware.os.amza.service.AmzaPartitionCommitable;
 import com.jivesoftware.os.amza.service.AmzaPartitionUpdates;
 import com.jivesoftware.os.amza.service.storage.PartitionCreator;
 import com.jivesoftware.os.amza.service.storage.SystemWALStorage;
 import com.jivesoftware.os.aquarium.Member;
 import com.jivesoftware.os.aquarium.State;
 import com.jivesoftware.os.aquarium.interfaces.StateStorage;
-import com.jivesoftware.os.jive.utils.ordered.id.OrderIdProvider;
 import com.jivesoftware.os.mlogger.core.MetricLogger;
 import com.jivesoftware.os.mlogger.core.MetricLoggerFactory;
 
@@ -25,21 +21,18 @@ class AmzaStateStorage implements StateStorage<Long> {
 
     private final AmzaInterner amzaInterner;
     private final SystemWALStorage systemWALStorage;
-    private final OrderIdProvider orderIdProvider;
-    private final WALUpdated walUpdated;
+    private final AmzaStateWriter stateWriter;
     private final PartitionName partitionName;
     private final byte context;
 
     public AmzaStateStorage(AmzaInterner amzaInterner,
         SystemWALStorage systemWALStorage,
-        OrderIdProvider orderIdProvider,
-        WALUpdated walUpdated,
+        AmzaStateWriter stateWriter,
         PartitionName partitionName,
         byte context) {
         this.amzaInterner = amzaInterner;
         this.systemWALStorage = systemWALStorage;
-        this.orderIdProvider = orderIdProvider;
-        this.walUpdated = walUpdated;
+        this.stateWriter = stateWriter;
         this.partitionName = partitionName;
         this.context = context;
     }
@@ -75,11 +68,7 @@ class AmzaStateStorage implements StateStorage<Long> {
                 return true;
             });
         if (result && amzaPartitionUpdates.size() > 0) {
-            RowsChanged rowsChanged = systemWALStorage.update(PartitionCreator.AQUARIUM_STATE_INDEX,
-                null,
-                new AmzaPartitionCommitable(amzaPartitionUpdates, orderIdProvider),
-                walUpdated);
-            return !rowsChanged.isEmpty();
+            return stateWriter.update(amzaPartitionUpdates);
         } else {
             return false;
         }
@@ -0,0 +1,160 @@
+package com.jivesoftware.os.amza.service.replication;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import com.jivesoftware.os.amza.api.scan.RowsChanged;
+import com.jivesoftware.os.amza.api.wal.WALKey;
+import com.jivesoftware.os.amza.api.wal.WALUpdated;
+import com.jivesoftware.os.amza.service.AmzaPartitionCommitable;
+import com.jivesoftware.os.amza.service.AmzaPartitionUpdates;
+import com.jivesoftware.os.amza.service.storage.PartitionCreator;
+import com.jivesoftware.os.amza.service.storage.SystemWALStorage;
+import com.jivesoftware.os.jive.utils.ordered.id.OrderIdProvider;
+import com.jivesoftware.os.mlogger.core.MetricLogger;
+import com.jivesoftware.os.mlogger.core.MetricLoggerFactory;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Group commits the aquarium state updates of concurrent callers, so many partitions electing at once share one write and flush of the
+ * aquarium state partition instead of paying for one each. Whoever finds no write in progress writes everything queued so far, and each
+ * caller returns once its own updates are durable. Updates which touch a key already in the batch wait for the next one, so every caller
+ * still learns whether its own updates were applied.
+ */
+class AmzaStateWriter {
+
+    private static final MetricLogger LOG = MetricLoggerFactory.getLogger();
+
+    private final SystemWALStorage systemWALStorage;
+    private final OrderIdProvider orderIdProvider;
+    private final WALUpdated walUpdated;
+    private final int maxBatchSize;
+
+    private final List<PendingUpdates> pending = Lists.newLinkedList();
+    private boolean writing;
+
+    AmzaStateWriter(SystemWALStorage systemWALStorage, OrderIdProvider orderIdProvider, WALUpdated walUpdated, int maxBatchSize) {
+        this.systemWALStorage = systemWALStorage;
+        this.orderIdProvider = orderIdProvider;
+        this.walUpdated = walUpdated;
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    /**
+     * @return true if any of the updates were applied
+     */
+    boolean update(AmzaPartitionUpdates updates) throws Exception {
+        PendingUpdates mine = new PendingUpdates(updates);
+        synchronized (pending) {
+            pending.add(mine);
+        }
+        while (true) {
+            List<PendingUpdates> batch;
+            synchronized (pending) {
+                while (writing && !mine.done) {
+                    pending.wait();
+                }
+                if (mine.done) {
+                    return mine.result();
+                }
+                writing = true;
+                batch = nextBatch();
+            }
+            try {
+                write(batch);
+            } finally {
+                synchronized (pending) {
+                    writing = false;
+                    pending.notifyAll();
+                }
+            }
+        }
+    }
+
+    private List<PendingUpdates> nextBatch() {
+        List<PendingUpdates> batch = Lists.newArrayList();
+        Set<WALKey> batchKeys = Sets.newHashSet();
+        Iterator<PendingUpdates> iter = pending.iterator();
+        while (iter.hasNext() && batch.size() < maxBatchSize) {
+            PendingUpdates next = iter.next();
+            if (Collections.disjoint(batchKeys, next.keys)) {
+                batchKeys.addAll(next.keys);
+                batch.add(next);
+                iter.remove();
+            }
+        }
+        return batch;
+    }
+
+    private void write(List<PendingUpdates> batch) {
+        try {
+            AmzaPartitionUpdates merged;
+            if (batch.size() == 1) {
+                merged = batch.get(0).updates;
+            } else {
+                merged = new AmzaPartitionUpdates();
+                for (PendingUpdates pendingUpdates : batch) {
+                    pendingUpdates.updates.updates((key, value, valueTimestamp, valueTombstoned) -> {
+                        if (valueTombstoned) {
+                            merged.remove(key, valueTimestamp);
+                        } else {
+                            merged.set(key, value, valueTimestamp);
+                        }
+                        return true;
+                    });
+                }
+            }
+            RowsChanged rowsChanged = systemWALStorage.update(PartitionCreator.AQUARIUM_STATE_INDEX,
+                null,
+                new AmzaPartitionCommitable(merged, orderIdProvider),
+                walUpdated);
+            LOG.inc("aquarium>state>writes");
+            LOG.inc("aquarium>state>batched", batch.size());
+
+            if (batch.size() == 1) {
+                batch.get(0).applied = !rowsChanged.isEmpty();
+            } else {
+                Map<WALKey, ?> applied = rowsChanged.getApply();
+                for (PendingUpdates pendingUpdates : batch) {
+                    pendingUpdates.applied = !Collections.disjoint(applied.keySet(), pendingUpdates.keys);
+                }
+            }
+            for (PendingUpdates pendingUpdates : batch) {
+                pendingUpdates.done = true;
+            }
+        } catch (Exception x) {
+            for (PendingUpdates pendingUpdates : batch) {
+                pendingUpdates.failure = x;
+                pendingUpdates.done = true;
+            }
+        }
+    }
+
+    private static class PendingUpdates {
+
+        private final AmzaPartitionUpdates updates;
+        private final Set<WALKey> keys = Sets.newHashSet();
+
+        private boolean done;
+        private boolean applied;
+        private Exception failure;
+
+        PendingUpdates(AmzaPartitionUpdates updates) throws Exception {
+            this.updates = updates;
+            updates.updates((key, value, valueTimestamp, valueTombstoned) -> {
+                keys.add(new WALKey(null, key));
+                return true;
+            });
+        }
+
+        boolean result() {
+            if (failure != null) {
+                throw new RuntimeException("Failed to write aquarium state", failure);
+            }
+            return applied;
+        }
+    }
+}
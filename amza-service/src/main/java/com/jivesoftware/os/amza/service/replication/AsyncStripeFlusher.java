@@ -6,7 +6,10 @@ import com.jivesoftware.os.amza.service.take.HighwaterStorage;
 import com.jivesoftware.os.mlogger.core.MetricLogger;
 import com.jivesoftware.os.mlogger.core.MetricLoggerFactory;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
@@ -18,57 +21,78 @@ public final class AsyncStripeFlusher implements Runnable {
 
     private static final MetricLogger LOG = MetricLoggerFactory.getLogger();
 
+    private static final CompletableFuture<Void> DURABLE = CompletableFuture.completedFuture(null);
+
     private final int id;
     private final AtomicBoolean running = new AtomicBoolean(false);
     private final AtomicLong asyncVersion = new AtomicLong(0);
     private final AtomicLong forceVersion = new AtomicLong(0);
-    private final AtomicLong asyncFlushedToVersion = new AtomicLong(0);
-    private final AtomicLong forceFlushedToVersion = new AtomicLong(0);
+    private final AtomicReference<CompletableFuture<Void>> nextFlush = new AtomicReference<>(new CompletableFuture<>());
     private final Object force = new Object();
     private final long asyncFlushIntervalMillis;
+    private final StripeDurabilityMode durabilityMode;
+    private final long groupFsyncIntervalMillis;
+    private final long groupFsyncBytes;
+    private final Callable<Long> deltaLength;
     private final Callable<Void> flushDelta;
 
     private final AtomicReference<HighwaterStorage> highwaterStorage = new AtomicReference<>();
+    private volatile long flushedLength = 0;
 
     public AsyncStripeFlusher(int id,
         long asyncFlushIntervalMillis,
+        StripeDurabilityMode durabilityMode,
+        long groupFsyncIntervalMillis,
+        long groupFsyncBytes,
+        Callable<Long> deltaLength,
         Callable<Void> flushDelta) {
 
         this.id = id;
         this.asyncFlushIntervalMillis = asyncFlushIntervalMillis;
+        this.durabilityMode = durabilityMode;
+        this.groupFsyncIntervalMillis = groupFsyncIntervalMillis;
+        this.groupFsyncBytes = groupFsyncBytes;
+        this.deltaLength = deltaLength;
         this.flushDelta = flushDelta;
     }
 
     public void forceFlush(Durability durability, long waitForFlushInMillis) throws Exception {
+        CompletableFuture<Void> durable = durable(durability);
+        if (durable != DURABLE
+            && durability == Durability.fsync_always
+            && durabilityMode != StripeDurabilityMode.async
+            && waitForFlushInMillis > 0) {
+            try {
+                durable.get(waitForFlushInMillis, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                throw new FailedToAchieveQuorumException("We couldn't fsync within " + waitForFlushInMillis + " millis.");
+            }
+        }
+    }
+
+    /**
+     * Must be called after the commit has been written to the stripe. The returned future completes once an fsync which started after this call,
+     * and therefore covers every fp written before it, has finished.
+     */
+    public CompletableFuture<Void> durable(Durability durability) throws Exception {
         if (durability == Durability.ephemeral || durability == Durability.fsync_never) {
-            return;
+            return DURABLE;
         }
-        long waitForVersion = 0;
-        AtomicLong flushedToVersion;
-        if (durability == Durability.fsync_async) {
-            waitForVersion = asyncVersion.incrementAndGet();
-            flushedToVersion = asyncFlushedToVersion;
+        CompletableFuture<Void> durable = nextFlush.get();
+        if (durability == Durability.fsync_async || durability == Durability.fsync_always && durabilityMode == StripeDurabilityMode.async) {
+            asyncVersion.incrementAndGet();
         } else if (durability == Durability.fsync_always) {
-            waitForVersion = forceVersion.incrementAndGet();
-            flushedToVersion = forceFlushedToVersion;
-            synchronized (force) {
-                force.notifyAll();
-            }
-
-            if (waitForFlushInMillis > 0) {
-                long end = System.currentTimeMillis() + waitForFlushInMillis;
-                while (waitForVersion > flushedToVersion.get()) {
-                    synchronized (flushedToVersion) {
-                        flushedToVersion.wait(Math.max(0, end - System.currentTimeMillis()));
-                    }
-                    if (end < System.currentTimeMillis()) {
-                        throw new FailedToAchieveQuorumException("We couldn't fsync within " + waitForFlushInMillis + " millis.");
-                    }
+            forceVersion.incrementAndGet();
+            if (durabilityMode == StripeDurabilityMode.every_commit || groupBytesExceeded()) {
+                synchronized (force) {
+                    force.notifyAll();
                 }
             }
         } else {
             LOG.warn("Unsupported force flush for durability {}", durability);
+            return DURABLE;
         }
+        return durable;
     }
 
     public void start(ExecutorService flusherExecutor, HighwaterStorage highwaterStorage) {
@@ -87,38 +111,41 @@ public final class AsyncStripeFlusher implements Runnable {
         try {
             long lastAsyncV = 0;
             long lastForcedV = 0;
+            long lastFlushTimestamp = System.currentTimeMillis();
             while (running.get()) {
                 long asyncV = asyncVersion.get();
                 long forcedV = forceVersion.get();
-
-                if (lastAsyncV != asyncV || lastForcedV != forcedV) {
+                long sinceFlush = System.currentTimeMillis() - lastFlushTimestamp;
+
+                // fsync_always commits honor the group schedule, fsync_async commits the async schedule, and one flush covers both
+                boolean forcedDue = lastForcedV != forcedV
+                    && (durabilityMode != StripeDurabilityMode.group || sinceFlush >= groupFsyncIntervalMillis || groupBytesExceeded());
+                boolean asyncDue = lastAsyncV != asyncV && sinceFlush >= asyncFlushIntervalMillis;
+                if (forcedDue || asyncDue) {
+                    CompletableFuture<Void> flushing = nextFlush.getAndSet(new CompletableFuture<>());
+                    lastFlushTimestamp = System.currentTimeMillis();
                     try {
+                        long length = deltaLength != null ? deltaLength.call() : 0;
                         flush();
+                        flushedLength = length;
                         lastAsyncV = asyncV;
                         lastForcedV = forcedV;
+                        flushing.complete(null);
                     } catch (Throwable t) {
                         LOG.error("Excountered the following while flushing.", t);
-                    }
-                }
-
-                if (lastAsyncV != asyncV) {
-                    asyncFlushedToVersion.set(asyncV);
-                    synchronized (asyncFlushedToVersion) {
-                        asyncFlushedToVersion.notifyAll();
-                    }
-
-                }
-                if (lastForcedV != forcedV) {
-                    forceFlushedToVersion.set(forcedV);
-                    synchronized (forceFlushedToVersion) {
-                        forceFlushedToVersion.notifyAll();
+                        nextFlush.get().whenComplete((result, error) -> flushing.complete(null));
                     }
                 }
 
                 synchronized (force) {
-                    if (forceVersion.get() == forcedV) {
+                    boolean forcedPending = forceVersion.get() != lastForcedV;
+                    boolean forced = forcedPending
+                        && (durabilityMode == StripeDurabilityMode.every_commit || groupBytesExceeded());
+                    if (!forced) {
                         try {
-                            force.wait(asyncFlushIntervalMillis);
+                            force.wait(waitMillis(asyncVersion.get() != lastAsyncV,
+                                forcedPending,
+                                System.currentTimeMillis() - lastFlushTimestamp));
                         } catch (InterruptedException ex) {
                             LOG.warn("Async flusher for {} was interrupted.", id);
                             return;
@@ -131,6 +158,35 @@ public final class AsyncStripeFlusher implements Runnable {
         }
     }
 
+    /**
+     * Group mode wakes every group interval because fsync_always commits only notify us once they exceed the group bytes.
+     */
+    private long waitMillis(boolean asyncPending, boolean forcedPending, long sinceFlush) {
+        long waitMillis = durabilityMode == StripeDurabilityMode.group ? groupFsyncIntervalMillis : asyncFlushIntervalMillis;
+        if (forcedPending && durabilityMode == StripeDurabilityMode.group) {
+            waitMillis = Math.min(waitMillis, groupFsyncIntervalMillis - sinceFlush);
+        }
+        if (asyncPending) {
+            waitMillis = Math.min(waitMillis, asyncFlushIntervalMillis - sinceFlush);
+        }
+        return Math.max(1, waitMillis);
+    }
+
+    private boolean groupBytesExceeded() {
+        if (durabilityMode != StripeDurabilityMode.group || groupFsyncBytes <= 0 || deltaLength == null) {
+            return false;
+        }
+        try {
+            long length = deltaLength.call();
+            // a smaller length means the delta was merged and a new wal was started
+            long unflushed = length < flushedLength ? length : length - flushedLength;
+            return unflushed >= groupFsyncBytes;
+        } catch (Exception x) {
+            LOG.warn("Failed to determine unflushed bytes for stripe {}", new Object[] { id }, x);
+            return false;
+        }
+    }
+
     private void flush() throws Exception {
         if (!highwaterStorage.get().flush(id, false, flushDelta)) {
             if (flushDelta != null) {
@@ -10,4 +10,9 @@ interface CommitChanges {
 
     void commit(VersionedPartitionName versionedPartitionName, CommitTx commitTx) throws Exception;
 
+    /**
+     * Called after a commit was rejected as over capacity, returns once the commit is worth retrying or the timeout elapses.
+     */
+    void awaitCapacity(VersionedPartitionName versionedPartitionName, long timeoutMillis) throws Exception;
+
 }
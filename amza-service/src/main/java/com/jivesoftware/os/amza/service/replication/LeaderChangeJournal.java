@@ -0,0 +1,110 @@
+package com.jivesoftware.os.amza.service.replication;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.jivesoftware.os.amza.api.partition.PartitionName;
+import com.jivesoftware.os.amza.api.ring.RingMember;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Random;
+
+/**
+ * The most recent leader changes this node has observed for the partitions it is a member of, so clients can follow elections instead of
+ * rediscovering leaders through failed calls. Changes are sequenced per journal, and a journal id which differs from the one a client last
+ * saw (the node restarted) or a sequence which has fallen out of the journal tells the client to reset.
+ * <p>
+ * Every waiting client parks a request thread, so at most {@code maxWaiters} wait at once and none for longer than {@code maxWaitMillis}.
+ * Past that a client is answered right away with whatever has changed, which may be nothing.
+ */
+public class LeaderChangeJournal {
+
+    private final long journalId = new Random().nextLong() & Long.MAX_VALUE;
+    private final Map<PartitionName, RingMember> leaders = Maps.newHashMap();
+    private final LeaderChange[] changes;
+    private final int maxWaiters;
+    private final long maxWaitMillis;
+    private long nextSequence = 0;
+    private int waiters = 0;
+
+    public LeaderChangeJournal(int capacity, int maxWaiters, long maxWaitMillis) {
+        this.changes = new LeaderChange[capacity];
+        this.maxWaiters = maxWaiters;
+        this.maxWaitMillis = maxWaitMillis;
+    }
+
+    public void changed(PartitionName partitionName, RingMember leader) {
+        synchronized (changes) {
+            RingMember was = leader == null ? leaders.remove(partitionName) : leaders.put(partitionName, leader);
+            if (Objects.equals(was, leader)) {
+                return;
+            }
+            changes[(int) (nextSequence % changes.length)] = new LeaderChange(partitionName, leader);
+            nextSequence++;
+            changes.notifyAll();
+        }
+    }
+
+    /**
+     * Waits up to {@code timeoutMillis} for changes from {@code sinceSequence} onward. A negative sequence only asks for the current
+     * position.
+     */
+    public LeaderChanges await(long journalId, long sinceSequence, long timeoutMillis) throws InterruptedException {
+        synchronized (changes) {
+            if (sinceSequence < 0) {
+                return new LeaderChanges(this.journalId, nextSequence, false, Collections.emptyList());
+            }
+            if (journalId != this.journalId || sinceSequence > nextSequence || sinceSequence < nextSequence - changes.length) {
+                return new LeaderChanges(this.journalId, nextSequence, true, Collections.emptyList());
+            }
+            if (sinceSequence == nextSequence && waiters < maxWaiters) {
+                long remaining = Math.min(timeoutMillis, maxWaitMillis);
+                long end = System.currentTimeMillis() + remaining;
+                waiters++;
+                try {
+                    while (sinceSequence == nextSequence && remaining > 0) {
+                        changes.wait(remaining);
+                        remaining = end - System.currentTimeMillis();
+                    }
+                } finally {
+                    waiters--;
+                }
+            }
+            if (sinceSequence < nextSequence - changes.length) {
+                return new LeaderChanges(this.journalId, nextSequence, true, Collections.emptyList());
+            }
+            List<LeaderChange> since = Lists.newArrayListWithCapacity((int) (nextSequence - sinceSequence));
+            for (long i = sinceSequence; i < nextSequence; i++) {
+                since.add(changes[(int) (i % changes.length)]);
+            }
+            return new LeaderChanges(this.journalId, nextSequence, false, since);
+        }
+    }
+
+    public static class LeaderChange {
+
+        public final PartitionName partitionName;
+        public final RingMember leader;
+
+        public LeaderChange(PartitionName partitionName, RingMember leader) {
+            this.partitionName = partitionName;
+            this.leader = leader;
+        }
+    }
+
+    public static class LeaderChanges {
+
+        public final long journalId;
+        public final long nextSequence;
+        public final boolean reset;
+        public final List<LeaderChange> changes;
+
+        public LeaderChanges(long journalId, long nextSequence, boolean reset, List<LeaderChange> changes) {
+            this.journalId = journalId;
+            this.nextSequence = nextSequence;
+            this.reset = reset;
+            this.changes = changes;
+        }
+    }
+}
@@ -30,6 +30,7 @@ import com.jivesoftware.os.aquarium.State;
 import com.jivesoftware.os.mlogger.core.MetricLogger;
 import com.jivesoftware.os.mlogger.core.MetricLoggerFactory;
 import java.util.Objects;
+import java.util.concurrent.TimeUnit;
 
 /**
  * @author jonathan.colt
@@ -147,7 +148,7 @@ public class PartitionStripe {
         if (partitionStore == null) {
             throw new IllegalStateException("No partition defined for " + versionedPartitionName);
         } else {
-            long start = System.currentTimeMillis();
+            long start = System.nanoTime();
             long disposalVersion = partitionCreator.getPartitionDisposal(versionedPartitionName.getPartitionName());
             boolean got = storage.get(amzaStats.getIoStats,
                 versionedPartitionName,
@@ -161,7 +162,9 @@ public class PartitionStripe {
                         return keyValueStream.stream(prefix1, key1, value, valueTimestamp, valueTombstoned, valueVersion);
                     }
                 });
-            amzaStats.gets(versionedPartitionName.getPartitionName(), 1, System.currentTimeMillis() - start);
+            long elapsedNanos = System.nanoTime() - start;
+            amzaStats.gets(versionedPartitionName.getPartitionName(), 1, TimeUnit.NANOSECONDS.toMillis(elapsedNanos));
+            amzaStats.getLatencies.record(elapsedNanos);
             return got;
         }
     }
@@ -181,7 +184,7 @@ public class PartitionStripe {
         if (partitionStore == null) {
             throw new IllegalStateException("No partition defined for " + versionedPartitionName);
         } else {
-            long start = System.currentTimeMillis();
+            long start = System.nanoTime();
             long disposalVersion = partitionCreator.getPartitionDisposal(versionedPartitionName.getPartitionName());
             boolean got = storage.get(amzaStats.getIoStats,
                 versionedPartitionName, partitionStore.getWalStorage(), prefix, keys,
@@ -192,7 +195,9 @@ public class PartitionStripe {
                         return stream.stream(prefix1, key, value, valueTimestamp, valueTombstoned, valueVersion);
                     }
                 });
-            amzaStats.gets(versionedPartitionName.getPartitionName(), 1, System.currentTimeMillis() - start);
+            long elapsedNanos = System.nanoTime() - start;
+            amzaStats.gets(versionedPartitionName.getPartitionName(), 1, TimeUnit.NANOSECONDS.toMillis(elapsedNanos));
+            amzaStats.getLatencies.record(elapsedNanos);
             return got;
         }
 
@@ -1,5 +1,6 @@
 package com.jivesoftware.os.amza.service.replication;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.jivesoftware.os.amza.api.partition.Durability;
 import com.jivesoftware.os.amza.api.partition.PartitionName;
 import com.jivesoftware.os.amza.api.partition.RemoteVersionedState;
@@ -11,12 +12,16 @@ import com.jivesoftware.os.amza.api.wal.PrimaryRowMarshaller;
 import com.jivesoftware.os.amza.service.AmzaPartitionWatcher;
 import com.jivesoftware.os.amza.service.AmzaRingStoreReader;
 import com.jivesoftware.os.amza.service.AwaitNotify;
+import com.jivesoftware.os.amza.service.NotARingMemberException;
+import com.jivesoftware.os.amza.service.PartitionIsDisposedException;
+import com.jivesoftware.os.amza.service.PropertiesNotPresentException;
 import com.jivesoftware.os.amza.service.partition.VersionedPartitionTransactor;
 import com.jivesoftware.os.amza.service.replication.StripeTx.TxPartitionStripe;
 import com.jivesoftware.os.amza.service.stats.AmzaStats;
 import com.jivesoftware.os.amza.service.storage.HighwaterRowMarshaller;
 import com.jivesoftware.os.amza.service.storage.PartitionCreator;
 import com.jivesoftware.os.amza.service.storage.PartitionIndex;
+import com.jivesoftware.os.amza.service.storage.PartitionStore;
 import com.jivesoftware.os.amza.service.storage.delta.DeltaStripeWALStorage;
 import com.jivesoftware.os.amza.service.take.HighwaterStorage;
 import com.jivesoftware.os.amza.service.take.TakeCoordinator;
@@ -28,7 +33,10 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * @author jonathan.colt
@@ -56,6 +64,10 @@ public class PartitionStripeProvider {
     private final AsyncStripeFlusher systemFlusher;
     private final AsyncStripeFlusher[] stripeFlusher;
     private final long deltaStripeCompactionIntervalInMillis;
+    private final int startupOpenConcurrency;
+    private final long startupProgressIntervalMillis;
+    private final ExecutorService partitionOpenerExecutor = Executors.newSingleThreadExecutor(
+        new ThreadFactoryBuilder().setNameFormat("partition-opener-%d").build());
 
     public PartitionStripeProvider(AmzaStats stats,
         PartitionCreator partitionCreator,
@@ -72,6 +84,8 @@ public class PartitionStripeProvider {
         AwaitNotify<PartitionName> awaitNotify,
         AmzaPartitionWatcher amzaStripedPartitionWatcher,
         AsyncStripeFlusher systemFlusher, AsyncStripeFlusher[] stripeFlusher, long deltaStripeCompactionIntervalInMillis,
+        int startupOpenConcurrency,
+        long startupProgressIntervalMillis,
         ExecutorService compactDeltasThreadPool,
         ExecutorService flusherExecutor) {
 
@@ -91,6 +105,8 @@ public class PartitionStripeProvider {
         this.systemFlusher = systemFlusher;
         this.stripeFlusher = stripeFlusher;
         this.deltaStripeCompactionIntervalInMillis = deltaStripeCompactionIntervalInMillis;
+        this.startupOpenConcurrency = startupOpenConcurrency;
+        this.startupProgressIntervalMillis = startupProgressIntervalMillis;
 
         int numberOfStripes = deltaStripeWALStorages.length;
         this.partitionStripes = new PartitionStripe[numberOfStripes][numberOfStripes];
@@ -113,8 +129,10 @@ public class PartitionStripeProvider {
     }
 
     public void load() throws Exception {
-        ExecutorService stripeLoaderThreadPool = BoundedExecutor.newBoundedExecutor(partitionStripes.length, "load-stripes");
+        long start = System.currentTimeMillis();
+        ExecutorService stripeLoaderThreadPool = BoundedExecutor.newBoundedExecutor(deltaStripeWALStorages.length, "load-stripes");
 
+        AtomicInteger loaded = new AtomicInteger();
         List<Future> futures = new ArrayList<>();
         for (DeltaStripeWALStorage deltaStripeWALStorage : deltaStripeWALStorages) {
             futures.add(stripeLoaderThreadPool.submit(() -> {
@@ -122,6 +140,8 @@ public class PartitionStripeProvider {
                     "delta-stripe-" + deltaStripeWALStorage.getId());
                 try {
                     deltaStripeWALStorage.load(stats.loadIoStats, partitionIndex, partitionCreator, storageVersionProvider, primaryRowMarshaller);
+                    LOG.info("Loaded delta stripe:{} progress:{}/{} elapsed:{} ms", deltaStripeWALStorage.getId(), loaded.incrementAndGet(),
+                        deltaStripeWALStorages.length, System.currentTimeMillis() - start);
                 } catch (Exception x) {
                     LOG.error("Failed while loading {} ", new Object[] { deltaStripeWALStorage }, x);
                     throw new RuntimeException(x);
@@ -131,18 +151,139 @@ public class PartitionStripeProvider {
             }));
         }
         int index = 0;
-        for (Future future : futures) {
-            LOG.info("Waiting for stripe:{} to load...", partitionStripes[index]);
+        try {
+            for (Future future : futures) {
+                try {
+                    future.get();
+                    index++;
+                } catch (InterruptedException | ExecutionException x) {
+                    LOG.error("Failed to load delta stripe:{}.", new Object[] { deltaStripeWALStorages[index].getId() }, x);
+                    throw x;
+                }
+            }
+        } finally {
+            stripeLoaderThreadPool.shutdown();
+        }
+        LOG.info("All stripes {} have been loaded in {} ms.", deltaStripeWALStorages.length, System.currentTimeMillis() - start);
+    }
+
+    /**
+     * Opens, and so validates, the WAL of every partition with a local storage version across a bounded pool, instead of leaving each one
+     * to be opened serially by whatever touches it first. Runs in the background so the node registers and comes online without waiting
+     * for it. A startup open concurrency of zero, the default, leaves partitions to be opened lazily.
+     */
+    public void startOpeningPartitions() {
+        if (startupOpenConcurrency <= 0) {
+            return;
+        }
+        partitionOpenerExecutor.submit(() -> {
             try {
+                openPartitions();
+            } catch (InterruptedException x) {
+                LOG.info("Stopped opening partitions on startup");
+            } catch (Exception x) {
+                LOG.error("Failed to open partitions on startup, they will be opened on first use.", x);
+            }
+            return null;
+        });
+    }
+
+    void openPartitions() throws Exception {
+        List<PartitionName> partitionNames = new ArrayList<>();
+        List<StorageVersion> storageVersions = new ArrayList<>();
+        storageVersionProvider.streamLocal((partitionName, ringMember, storageVersion) -> {
+            partitionNames.add(partitionName);
+            storageVersions.add(storageVersion);
+            return true;
+        });
+
+        AmzaStats.CompactionStats compactionStats = stats.beginCompaction(AmzaStats.CompactionFamily.load, "open-partitions");
+        try {
+            openPartitions(partitionNames, storageVersions, startupOpenConcurrency, startupProgressIntervalMillis,
+                (partitionName, storageVersion) -> storageVersionProvider.tx(partitionName, null, (deltaIndex, stripeIndex, current) -> {
+                    // the partition may have been disposed or moved to a new version since it was listed
+                    if (stripeIndex == -1 || current.partitionVersion != storageVersion.partitionVersion) {
+                        return false;
+                    }
+                    VersionedPartitionName versionedPartitionName = new VersionedPartitionName(partitionName, current.partitionVersion);
+                    return partitionCreator.get("startup", versionedPartitionName, stripeIndex) != null;
+                }));
+        } finally {
+            compactionStats.finished();
+        }
+    }
+
+    interface PartitionOpener {
+
+        /**
+         * @return false if there was nothing to open
+         */
+        boolean open(PartitionName partitionName, StorageVersion storageVersion) throws Exception;
+    }
+
+    static class OpenedPartitions {
+
+        final AtomicInteger opened = new AtomicInteger();
+        final AtomicInteger skipped = new AtomicInteger();
+        final AtomicInteger failed = new AtomicInteger();
+    }
+
+    static OpenedPartitions openPartitions(List<PartitionName> partitionNames,
+        List<StorageVersion> storageVersions,
+        int concurrency,
+        long progressIntervalMillis,
+        PartitionOpener partitionOpener) throws Exception {
+
+        long start = System.currentTimeMillis();
+        int total = partitionNames.size();
+        LOG.info("Opening {} partitions with concurrency:{}...", total, concurrency);
+
+        ExecutorService openerThreadPool = BoundedExecutor.newBoundedExecutor(concurrency, "open-partitions");
+        OpenedPartitions openedPartitions = new OpenedPartitions();
+        AtomicInteger opened = openedPartitions.opened;
+        AtomicInteger skipped = openedPartitions.skipped;
+        AtomicInteger failed = openedPartitions.failed;
+        AtomicLong lastProgress = new AtomicLong(start);
+        try {
+            List<Future<?>> futures = new ArrayList<>(total);
+            for (int i = 0; i < total; i++) {
+                PartitionName partitionName = partitionNames.get(i);
+                StorageVersion storageVersion = storageVersions.get(i);
+                futures.add(openerThreadPool.submit(() -> {
+                    try {
+                        if (partitionOpener.open(partitionName, storageVersion)) {
+                            opened.incrementAndGet();
+                        } else {
+                            skipped.incrementAndGet();
+                        }
+                    } catch (PartitionIsDisposedException | PropertiesNotPresentException | NotARingMemberException x) {
+                        skipped.incrementAndGet();
+                        LOG.info("Skipped opening partition:{} on startup because {}", partitionName, x.getMessage());
+                    } catch (InterruptedException x) {
+                        throw x;
+                    } catch (Exception x) {
+                        failed.incrementAndGet();
+                        LOG.error("Failed to open partition:{} on startup, it will be opened on first use.", new Object[] { partitionName }, x);
+                    }
+
+                    long now = System.currentTimeMillis();
+                    long last = lastProgress.get();
+                    if (now - last >= progressIntervalMillis && lastProgress.compareAndSet(last, now)) {
+                        LOG.info("Opening partitions progress:{}/{} skipped:{} failed:{} elapsed:{} ms",
+                            opened.get() + skipped.get() + failed.get(), total, skipped.get(), failed.get(), now - start);
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
                 future.get();
-                index++;
-            } catch (InterruptedException | ExecutionException x) {
-                LOG.error("Failed to load stripe:{}.", new Object[] { partitionStripes[index] }, x);
-                throw x;
             }
+        } finally {
+            openerThreadPool.shutdownNow();
         }
-        stripeLoaderThreadPool.shutdown();
-        LOG.info("All stripes {} have been loaded.", partitionStripes.length);
+        LOG.info("Opened {} of {} partitions skipped:{} failed:{} in {} ms", opened.get(), total, skipped.get(), failed.get(),
+            System.currentTimeMillis() - start);
+        return openedPartitions;
     }
 
     public void start() {
@@ -177,6 +318,7 @@ public class PartitionStripeProvider {
     }
 
     public void stop() {
+        partitionOpenerExecutor.shutdownNow();
         for (AsyncStripeFlusher flusher : stripeFlusher) {
             flusher.stop();
         }
@@ -217,6 +359,19 @@ public class PartitionStripeProvider {
             });
     }
 
+    public void awaitDeltaCapacity(PartitionName partitionName, long timeoutMillis) throws Exception {
+        StorageVersion storageVersion = storageVersionProvider.createIfAbsent(partitionName);
+        int deltaIndex = storageVersionProvider.tx(partitionName,
+            storageVersion,
+            (deltaIndex1, stripeIndex, storageVersion1) -> deltaIndex1);
+        if (deltaIndex == -1) {
+            Thread.sleep(timeoutMillis);
+        } else {
+            // wait outside the partition tx so the merge is free to take it
+            deltaStripeWALStorages[deltaIndex].awaitCapacity(timeoutMillis);
+        }
+    }
+
     public void mergeAll(boolean force) {
         for (DeltaStripeWALStorage deltaStripeWALStorage : deltaStripeWALStorages) {
             try {
@@ -2,21 +2,38 @@ package com.jivesoftware.os.amza.service.replication;
 
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.jivesoftware.os.amza.api.partition.PartitionName;
+import com.jivesoftware.os.amza.api.partition.VersionedPartitionName;
 import com.jivesoftware.os.amza.service.IndexedWALStorageProvider;
 import com.jivesoftware.os.amza.service.StripingLocksProvider;
 import com.jivesoftware.os.amza.service.stats.AmzaStats;
+import com.jivesoftware.os.amza.service.stats.AmzaStats.CompactionFamily;
 import com.jivesoftware.os.amza.service.storage.PartitionCreator;
 import com.jivesoftware.os.amza.service.storage.PartitionIndex;
 import com.jivesoftware.os.amza.service.storage.PartitionStore;
+import com.jivesoftware.os.amza.service.storage.binary.WALCompactionPolicy;
 import com.jivesoftware.os.mlogger.core.MetricLogger;
 import com.jivesoftware.os.mlogger.core.MetricLoggerFactory;
+import com.jivesoftware.os.mlogger.core.ValueType;
 import java.io.File;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.PriorityBlockingQueue;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
 
 /**
+ * Schedules tombstone compactions for the whole node. A single planner periodically collects the partitions which need compacting (or
+ * rebalancing) into a queue ordered by estimated reclaimable bytes, and a fixed number of workers drain it. When the shared
+ * {@link WALCompactionPolicy} has a byte budget, compaction I/O is charged against it. Once a second the percentile of the partition get
+ * latencies recorded during that second is compared to a baseline taken while no compactions were running. The budget is halved whenever
+ * the percentile exceeds the baseline by {@code backoffLatencyFactor}, and grows back gradually once it recovers. Seconds without gets
+ * carry no signal and only let the budget recover.
+ *
  * @author jonathan.colt
  */
 public class PartitionTombstoneCompactor {
@@ -24,6 +41,7 @@ public class PartitionTombstoneCompactor {
     private static final MetricLogger LOG = MetricLoggerFactory.getLogger();
 
     private ScheduledExecutorService scheduledThreadPool;
+    private ExecutorService compactorThreadPool;
 
     private final AmzaStats amzaStats;
     private final IndexedWALStorageProvider indexedWALStorageProvider;
@@ -35,6 +53,21 @@ public class PartitionTombstoneCompactor {
     private final int numberOfStripes;
     private final long[] rebalanceableAfterTimestamp;
     private final StripingLocksProvider<PartitionName> locksProvider = new StripingLocksProvider<>(1024);
+    private final WALCompactionPolicy compactionPolicy;
+    private final int compactionThreads;
+    private final double backoffLatencyFactor;
+    private final double backoffLatencyPercentile;
+    private final long backoffLatencyFloorMicros;
+    private final double minBytesPerSecond;
+    private final double maxBytesPerSecond;
+
+    private final PriorityBlockingQueue<Candidate> candidates = new PriorityBlockingQueue<>(1024,
+        (a, b) -> Long.compare(b.reclaimableBytes, a.reclaimableBytes));
+    private final Set<VersionedPartitionName> queued = ConcurrentHashMap.newKeySet();
+    private final AtomicIntegerArray queuedPerStripe;
+    private final AtomicIntegerArray rebalancedPerStripe;
+    private final boolean[] drainingPerStripe;
+    private volatile double baselineLatencyMicros = -1;
 
     public PartitionTombstoneCompactor(AmzaStats amzaStats,
         IndexedWALStorageProvider indexedWALStorageProvider,
@@ -43,7 +76,13 @@ public class PartitionTombstoneCompactor {
         StorageVersionProvider storageVersionProvider,
         long checkIfCompactionIsNeededIntervalInMillis,
         long rebalanceableEveryNMillis,
-        int numberOfStripes) {
+        int numberOfStripes,
+        WALCompactionPolicy compactionPolicy,
+        int compactionThreads,
+        double backoffLatencyFactor,
+        double backoffLatencyPercentile,
+        long backoffLatencyFloorMicros,
+        long minBytesPerSecond) {
 
         this.amzaStats = amzaStats;
         this.indexedWALStorageProvider = indexedWALStorageProvider;
@@ -54,111 +93,193 @@ public class PartitionTombstoneCompactor {
         this.rebalanceableEveryNMillis = rebalanceableEveryNMillis;
         this.numberOfStripes = numberOfStripes;
         this.rebalanceableAfterTimestamp = new long[numberOfStripes];
+        this.compactionPolicy = compactionPolicy;
+        this.compactionThreads = compactionThreads;
+        this.backoffLatencyFactor = backoffLatencyFactor;
+        this.backoffLatencyPercentile = backoffLatencyPercentile;
+        this.backoffLatencyFloorMicros = backoffLatencyFloorMicros;
+        this.maxBytesPerSecond = compactionPolicy.getBytesPerSecond();
+        this.minBytesPerSecond = Math.min(minBytesPerSecond, maxBytesPerSecond);
+        this.queuedPerStripe = new AtomicIntegerArray(numberOfStripes);
+        this.rebalancedPerStripe = new AtomicIntegerArray(numberOfStripes);
+        this.drainingPerStripe = new boolean[numberOfStripes];
     }
 
     public void start() throws Exception {
 
         final int silenceBackToBackErrors = 100;
         ThreadFactory threadFactory = new ThreadFactoryBuilder().setNameFormat("partition-tombstone-compactor-%d").build();
-        scheduledThreadPool = Executors.newScheduledThreadPool(numberOfStripes, threadFactory);
-        for (int i = 0; i < numberOfStripes; i++) {
-            int stripe = i;
-            int[] failedToCompact = { 0 };
+        scheduledThreadPool = Executors.newScheduledThreadPool(2, threadFactory);
+        int[] failedToPlan = { 0 };
+        scheduledThreadPool.scheduleWithFixedDelay(() -> {
+            try {
+                plan();
+                failedToPlan[0] = 0;
+            } catch (Exception x) {
+                LOG.debug("Failing to plan tombstone compactions.", x);
+                if (failedToPlan[0] % silenceBackToBackErrors == 0) {
+                    LOG.error("Failing to plan tombstone compactions.");
+                }
+                failedToPlan[0]++;
+            }
+        }, checkIfTombstoneCompactionIsNeededIntervalInMillis, checkIfTombstoneCompactionIsNeededIntervalInMillis, TimeUnit.MILLISECONDS);
+
+        if (maxBytesPerSecond > 0 && backoffLatencyFactor > 0) {
             scheduledThreadPool.scheduleWithFixedDelay(() -> {
                 try {
-                    failedToCompact[0] = 0;
-                    compactTombstone(false, stripe);
+                    adjustBudget();
                 } catch (Exception x) {
-                    LOG.debug("Failing to compact tombstones.", x);
-                    if (failedToCompact[0] % silenceBackToBackErrors == 0) {
-                        failedToCompact[0]++;
-                        LOG.error("Failing to compact tombstones.");
+                    LOG.warn("Failed to adjust compaction budget.", x);
+                }
+            }, 1, 1, TimeUnit.SECONDS);
+        }
+
+        ThreadFactory compactorThreadFactory = new ThreadFactoryBuilder().setNameFormat("partition-tombstone-compactor-worker-%d").build();
+        compactorThreadPool = Executors.newFixedThreadPool(compactionThreads, compactorThreadFactory);
+        for (int i = 0; i < compactionThreads; i++) {
+            compactorThreadPool.submit(() -> {
+                int failedToCompact = 0;
+                while (!Thread.currentThread().isInterrupted()) {
+                    Candidate candidate;
+                    try {
+                        candidate = nextCandidate();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        break;
+                    }
+                    try {
+                        if (compactPartition(candidate.versionedPartitionName, false, candidate.stripe)) {
+                            rebalancedPerStripe.incrementAndGet(candidate.stripe);
+                        }
+                        failedToCompact = 0;
+                    } catch (Exception x) {
+                        LOG.debug("Failing to compact tombstones.", x);
+                        if (failedToCompact % silenceBackToBackErrors == 0) {
+                            LOG.error("Failing to compact tombstones.");
+                        }
+                        failedToCompact++;
+                    } finally {
+                        completed(candidate);
                     }
                 }
-            }, checkIfTombstoneCompactionIsNeededIntervalInMillis, checkIfTombstoneCompactionIsNeededIntervalInMillis, TimeUnit.MILLISECONDS);
+                return null;
+            });
         }
     }
 
     public void stop() throws Exception {
-        this.scheduledThreadPool.shutdownNow();
-        this.scheduledThreadPool = null;
+        if (scheduledThreadPool != null) {
+            scheduledThreadPool.shutdownNow();
+            scheduledThreadPool = null;
+        }
+        if (compactorThreadPool != null) {
+            compactorThreadPool.shutdownNow();
+            compactorThreadPool = null;
+        }
+        candidates.clear();
+        queued.clear();
     }
 
-    public void compactTombstone(boolean force, int compactStripe) throws Exception {
+    private void plan() throws Exception {
+        for (int stripe = 0; stripe < numberOfStripes; stripe++) {
+            // a stripe whose last planned candidates all drained without rebalancing anything has nothing left to rebalance
+            if (drainingPerStripe[stripe] && queuedPerStripe.get(stripe) == 0) {
+                drainingPerStripe[stripe] = false;
+                if (rebalancedPerStripe.getAndSet(stripe, 0) == 0 && System.currentTimeMillis() > rebalanceableAfterTimestamp[stripe]) {
+                    rebalanceableAfterTimestamp[stripe] = System.currentTimeMillis() + rebalanceableEveryNMillis;
+                    LOG.info("Rebalancing for stripe {} has been paused until {}", stripe, rebalanceableAfterTimestamp[stripe]);
+                }
+            }
+        }
 
-        int[] rebalanced = new int[1];
+        boolean rebalancing = rebalancingIsActive();
+        int[] planned = { 0 };
         partitionIndex.streamActivePartitions((versionedPartitionName) -> {
-            PartitionName partitionName = versionedPartitionName.getPartitionName();
-            synchronized (locksProvider.lock(partitionName, 123)) {
-                storageVersionProvider.tx(partitionName,
-                    null,
-                    (deltaIndex, stripeIndex, storageVersion) -> {
-                        if (storageVersion != null
-                            && stripeIndex != -1
-                            && storageVersion.partitionVersion == versionedPartitionName.getPartitionVersion()
-                            && (compactStripe == -1 || stripeIndex == compactStripe)) {
-
-                            PartitionStore partitionStore = partitionCreator.get("compact", versionedPartitionName, stripeIndex);
-                            if (partitionStore == null) {
-                                return null;
+            if (queued.contains(versionedPartitionName)) {
+                return true;
+            }
+            storageVersionProvider.tx(versionedPartitionName.getPartitionName(),
+                null,
+                (deltaIndex, stripeIndex, storageVersion) -> {
+                    if (storageVersion != null
+                        && stripeIndex != -1
+                        && storageVersion.partitionVersion == versionedPartitionName.getPartitionVersion()) {
+
+                        PartitionStore partitionStore = partitionCreator.get("compact", versionedPartitionName, stripeIndex);
+                        if (partitionStore == null) {
+                            return null;
+                        }
+                        long disposalVersion = versionedPartitionName.getPartitionName().isSystemPartition()
+                            ? -1
+                            : partitionCreator.getPartitionDisposal(versionedPartitionName.getPartitionName());
+                        long reclaimableBytes = partitionStore.compactableTombstoneBytes(disposalVersion);
+                        if (reclaimableBytes >= 0 || rebalancing && !versionedPartitionName.getPartitionName().isSystemPartition()) {
+                            if (enqueue(versionedPartitionName, stripeIndex, reclaimableBytes)) {
+                                planned[0]++;
                             }
+                        }
+                    }
+                    return null;
+                });
+            return true;
+        });
+        Arrays.fill(drainingPerStripe, true);
+        LOG.set(ValueType.COUNT, "compaction>tombstone>queued", candidates.size());
+        LOG.inc("compaction>tombstone>planned", planned[0]);
+    }
 
-                            boolean forced = force;
-                            int compactToStripe = stripeIndex;
-                            File fromBaseKey = indexedWALStorageProvider.baseKey(versionedPartitionName, stripeIndex);
-                            File toBaseKey = fromBaseKey;
+    boolean enqueue(VersionedPartitionName versionedPartitionName, int stripe, long reclaimableBytes) {
+        if (queued.add(versionedPartitionName)) {
+            queuedPerStripe.incrementAndGet(stripe);
+            candidates.add(new Candidate(versionedPartitionName, stripe, reclaimableBytes));
+            return true;
+        }
+        return false;
+    }
 
-                            int rebalanceToStripe = -1;
-                            long disposalVersion = -1;
-                            if (!partitionName.isSystemPartition()) {
-                                disposalVersion = partitionCreator.getPartitionDisposal(versionedPartitionName.getPartitionName());
+    Candidate nextCandidate() throws InterruptedException {
+        return candidates.take();
+    }
 
-                                if (force || rebalancingIsActive()) {
-                                    rebalanceToStripe = indexedWALStorageProvider.rebalanceToStripe(versionedPartitionName,
-                                        stripeIndex,
-                                        partitionStore.getProperties());
-                                    if (rebalanceToStripe > -1) {
-                                        forced = true;
-                                        compactToStripe = rebalanceToStripe;
-                                        toBaseKey = indexedWALStorageProvider.baseKey(versionedPartitionName, compactToStripe);
-                                        LOG.info("Rebalancing by compacting {} from {}:{} to {}:{}",
-                                            partitionName,
-                                            stripeIndex,
-                                            fromBaseKey,
-                                            compactToStripe,
-                                            toBaseKey);
-                                    }
-                                }
-                            }
-                            int effectivelyFinalRebalanceToStripe = rebalanceToStripe;
-                            partitionStore.compactTombstone(
-                                forced,
-                                fromBaseKey,
-                                toBaseKey,
-                                compactToStripe,
-                                disposalVersion,
-                                (transitionToCompactedTx) -> {
-                                    return storageVersionProvider.replaceOneWithAll(partitionName,
-                                        () -> {
-                                            return transitionToCompactedTx.tx(() -> {
-                                                if (effectivelyFinalRebalanceToStripe != -1) {
-                                                    rebalanced[0]++;
-                                                    storageVersionProvider.transitionStripe(versionedPartitionName,
-                                                        storageVersion,
-                                                        effectivelyFinalRebalanceToStripe);
-
-                                                    LOG.info("Rebalancing transitioned {} to {}", partitionName, effectivelyFinalRebalanceToStripe);
-                                                }
-                                                return null;
-                                            });
-                                        });
-                                });
+    void completed(Candidate candidate) {
+        queued.remove(candidate.versionedPartitionName);
+        queuedPerStripe.decrementAndGet(candidate.stripe);
+    }
 
-                        }
-                        return null;
-                    });
-                return true;
+    void adjustBudget() {
+        long latencyMicros = amzaStats.getLatencies.drainPercentileMicros(backoffLatencyPercentile);
+        double budget = compactionPolicy.getBytesPerSecond();
+        if (amzaStats.ongoingCompaction(CompactionFamily.tombstone) == 0) {
+            if (latencyMicros >= 0) {
+                baselineLatencyMicros = baselineLatencyMicros < 0 ? latencyMicros : (baselineLatencyMicros * 0.9) + (latencyMicros * 0.1);
+            }
+            if (budget < maxBytesPerSecond) {
+                compactionPolicy.setBytesPerSecond(maxBytesPerSecond);
+            }
+        } else if (latencyMicros >= 0
+            && baselineLatencyMicros >= 0
+            && latencyMicros > Math.max(backoffLatencyFloorMicros, baselineLatencyMicros) * backoffLatencyFactor) {
+            double backedOff = Math.max(minBytesPerSecond, budget / 2);
+            if (backedOff < budget) {
+                compactionPolicy.setBytesPerSecond(backedOff);
+                amzaStats.compactionBackoffs.increment();
+                LOG.info("Compaction budget backed off to {} bytes/sec because p{} get latency {}us exceeds baseline {}us",
+                    (long) backedOff, backoffLatencyPercentile * 100, latencyMicros, (long) baselineLatencyMicros);
             }
+        } else if (budget < maxBytesPerSecond) {
+            compactionPolicy.setBytesPerSecond(Math.min(maxBytesPerSecond, budget * 1.1));
+        }
+        LOG.set(ValueType.COUNT, "compaction>tombstone>bytesPerSecond", (long) compactionPolicy.getBytesPerSecond());
+    }
+
+    public void compactTombstone(boolean force, int compactStripe) throws Exception {
+
+        int[] rebalanced = new int[1];
+        partitionIndex.streamActivePartitions((versionedPartitionName) -> {
+            if (compactPartition(versionedPartitionName, force, compactStripe)) {
+                rebalanced[0]++;
+            }
+            return true;
         });
 
         if (compactStripe != -1 && rebalanced[0] == 0 && System.currentTimeMillis() > rebalanceableAfterTimestamp[compactStripe]) {
@@ -177,4 +298,91 @@ public class PartitionTombstoneCompactor {
         return false;
     }
 
+    private boolean compactPartition(VersionedPartitionName versionedPartitionName, boolean force, int compactStripe) throws Exception {
+        PartitionName partitionName = versionedPartitionName.getPartitionName();
+        boolean[] rebalanced = { false };
+        synchronized (locksProvider.lock(partitionName, 123)) {
+            storageVersionProvider.tx(partitionName,
+                null,
+                (deltaIndex, stripeIndex, storageVersion) -> {
+                    if (storageVersion != null
+                        && stripeIndex != -1
+                        && storageVersion.partitionVersion == versionedPartitionName.getPartitionVersion()
+                        && (compactStripe == -1 || stripeIndex == compactStripe)) {
+
+                        PartitionStore partitionStore = partitionCreator.get("compact", versionedPartitionName, stripeIndex);
+                        if (partitionStore == null) {
+                            return null;
+                        }
+
+                        boolean forced = force;
+                        int compactToStripe = stripeIndex;
+                        File fromBaseKey = indexedWALStorageProvider.baseKey(versionedPartitionName, stripeIndex);
+                        File toBaseKey = fromBaseKey;
+
+                        int rebalanceToStripe = -1;
+                        long disposalVersion = -1;
+                        if (!partitionName.isSystemPartition()) {
+                            disposalVersion = partitionCreator.getPartitionDisposal(versionedPartitionName.getPartitionName());
+
+                            if (force || rebalancingIsActive()) {
+                                rebalanceToStripe = indexedWALStorageProvider.rebalanceToStripe(versionedPartitionName,
+                                    stripeIndex,
+                                    partitionStore.getProperties());
+                                if (rebalanceToStripe > -1) {
+                                    forced = true;
+                                    compactToStripe = rebalanceToStripe;
+                                    toBaseKey = indexedWALStorageProvider.baseKey(versionedPartitionName, compactToStripe);
+                                    LOG.info("Rebalancing by compacting {} from {}:{} to {}:{}",
+                                        partitionName,
+                                        stripeIndex,
+                                        fromBaseKey,
+                                        compactToStripe,
+                                        toBaseKey);
+                                }
+                            }
+                        }
+                        int effectivelyFinalRebalanceToStripe = rebalanceToStripe;
+                        partitionStore.compactTombstone(
+                            forced,
+                            fromBaseKey,
+                            toBaseKey,
+                            compactToStripe,
+                            disposalVersion,
+                            (transitionToCompactedTx) -> {
+                                return storageVersionProvider.replaceOneWithAll(partitionName,
+                                    () -> {
+                                        return transitionToCompactedTx.tx(() -> {
+                                            if (effectivelyFinalRebalanceToStripe != -1) {
+                                                rebalanced[0] = true;
+                                                storageVersionProvider.transitionStripe(versionedPartitionName,
+                                                    storageVersion,
+                                                    effectivelyFinalRebalanceToStripe);
+
+                                                LOG.info("Rebalancing transitioned {} to {}", partitionName, effectivelyFinalRebalanceToStripe);
+                                            }
+                                            return null;
+                                        });
+                                    });
+                            });
+
+                    }
+                    return null;
+                });
+        }
+        return rebalanced[0];
+    }
+
+    static class Candidate {
+
+        final VersionedPartitionName versionedPartitionName;
+        final int stripe;
+        final long reclaimableBytes;
+
+        private Candidate(VersionedPartitionName versionedPartitionName, int stripe, long reclaimableBytes) {
+            this.versionedPartitionName = versionedPartitionName;
+            this.stripe = stripe;
+            this.reclaimableBytes = reclaimableBytes;
+        }
+    }
 }
@@ -4,6 +4,7 @@ import com.google.common.base.Optional;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.jivesoftware.os.amza.api.CompareTimestampVersions;
 import com.jivesoftware.os.amza.api.DeltaOverCapacityException;
 import com.jivesoftware.os.amza.api.partition.PartitionName;
 import com.jivesoftware.os.amza.api.partition.VersionedAquarium;
@@ -18,6 +19,7 @@ import com.jivesoftware.os.amza.api.stream.RowType;
 import com.jivesoftware.os.amza.api.wal.MemoryWALUpdates;
 import com.jivesoftware.os.amza.api.wal.WALHighwater;
 import com.jivesoftware.os.amza.api.wal.WALHighwater.RingMemberHighwater;
+import com.jivesoftware.os.amza.api.wal.WALKey;
 import com.jivesoftware.os.amza.api.wal.WALRow;
 import com.jivesoftware.os.amza.service.AmzaRingStoreReader;
 import com.jivesoftware.os.amza.service.NotARingMemberException;
@@ -39,18 +41,23 @@ import com.jivesoftware.os.mlogger.core.MetricLogger;
 import com.jivesoftware.os.mlogger.core.MetricLoggerFactory;
 import java.security.SecureRandom;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
-import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Predicate;
 import org.apache.commons.lang.mutable.MutableLong;
 
@@ -81,6 +88,10 @@ public class RowChangeTaker implements RowChanges {
     private final long longPollTimeoutMillis;
     private final long pongIntervalMillis;
     private final long rowsTakerLimit;
+    private final int takePipelineDepth;
+    private final long takeOverCapacityWaitMillis;
+    private final int takeCoalesceMaxRows;
+    private final long takeCoalesceMaxBytes;
     private final BinaryPrimaryRowMarshaller primaryRowMarshaller;
     private final BinaryHighwaterRowMarshaller binaryHighwaterRowMarshaller;
 
@@ -88,6 +99,7 @@ public class RowChangeTaker implements RowChanges {
     private final ExecutorService availableRowsReceiverThreadPool;
     private final ExecutorService consumerThreadPool;
     private final ExecutorService cyaThreadPool;
+    private final ExecutorService takePipelineThreadPool;
 
     private final ExecutorService stripedRowTakerThreadPool;
 
@@ -117,6 +129,10 @@ public class RowChangeTaker implements RowChanges {
         long longPollTimeoutMillis,
         long pongIntervalMillis,
         long rowsTakerLimit,
+        int takePipelineDepth,
+        long takeOverCapacityWaitMillis,
+        int takeCoalesceMaxRows,
+        long takeCoalesceMaxBytes,
         BinaryPrimaryRowMarshaller primaryRowMarshaller,
         BinaryHighwaterRowMarshaller binaryHighwaterRowMarshaller) {
 
@@ -139,6 +155,10 @@ public class RowChangeTaker implements RowChanges {
         this.longPollTimeoutMillis = longPollTimeoutMillis;
         this.pongIntervalMillis = pongIntervalMillis;
         this.rowsTakerLimit = rowsTakerLimit;
+        this.takePipelineDepth = takePipelineDepth;
+        this.takeOverCapacityWaitMillis = takeOverCapacityWaitMillis;
+        this.takeCoalesceMaxRows = takeCoalesceMaxRows;
+        this.takeCoalesceMaxBytes = takeCoalesceMaxBytes;
         this.primaryRowMarshaller = primaryRowMarshaller;
         this.binaryHighwaterRowMarshaller = binaryHighwaterRowMarshaller;
 
@@ -146,6 +166,7 @@ public class RowChangeTaker implements RowChanges {
         this.availableRowsReceiverThreadPool = Executors.newCachedThreadPool(new ThreadFactoryBuilder().setNameFormat("availableRowsReceiver-%d").build());
         this.consumerThreadPool = Executors.newCachedThreadPool(new ThreadFactoryBuilder().setNameFormat("availableRowsConsumer-%d").build());
         this.cyaThreadPool = Executors.newFixedThreadPool(1, new ThreadFactoryBuilder().setNameFormat("cyaThreadPool-%d").build());
+        this.takePipelineThreadPool = Executors.newCachedThreadPool(new ThreadFactoryBuilder().setNameFormat("takePipeline-%d").build());
 
         this.stripedConsumerLocks = new Object[numberOfStripes];
         for (int i = 0; i < numberOfStripes; i++) {
@@ -229,6 +250,9 @@ public class RowChangeTaker implements RowChanges {
         consumerThreadPool.shutdownNow();
         stripedRowTakerThreadPool.shutdownNow();
         cyaThreadPool.shutdownNow();
+        takePipelineThreadPool.shutdownNow();
+        systemRowsTaker.stop();
+        stripedRowsTaker.stop();
     }
 
     private Object consumerLock(PartitionName partitionName) throws Exception {
@@ -690,8 +714,13 @@ public class RowChangeTaker implements RowChanges {
                             TakeRowStream takeRowStream = new TakeRowStream(stats,
                                 remoteVersionedPartitionName,
                                 commitTo,
+                                () -> commitChanges.awaitCapacity(localVersionedPartitionName, takeOverCapacityWaitMillis),
                                 remoteRingMember,
                                 initialHighwaterMark,
+                                takePipelineThreadPool,
+                                takePipelineDepth,
+                                takeCoalesceMaxRows,
+                                takeCoalesceMaxBytes,
                                 primaryRowMarshaller,
                                 binaryHighwaterRowMarshaller);
 
@@ -711,42 +740,56 @@ public class RowChangeTaker implements RowChanges {
                             } else {
                                 int updates = 0;
 
-                                StreamingRowsResult rowsResult = rowsTaker.rowsStream(amzaRingReader.getRingMember(),
-                                    remoteRingMember,
-                                    remoteRingHost,
-                                    remoteVersionedPartitionName,
-                                    takeSessionId,
-                                    takeSharedKey,
-                                    initialHighwaterMark,
-                                    leadershipToken,
-                                    rowsTakerLimit,
-                                    takeRowStream);
-
-                                if (rowsResult.error != null) {
-                                    LOG.inc("take>errors>all");
-                                    if (takeFailureListener.isPresent()) {
-                                        takeFailureListener.get().failedToTake(remoteRingMember, remoteRingHost, rowsResult.error);
-                                    }
-                                    if (stats.takeErrors.count(remoteRingMember) == 0) {
-                                        LOG.warn("Error while taking from member:{} host:{}", remoteRingMember, remoteRingHost);
-                                        LOG.trace("Error while taking from member:{} host:{} partition:{}",
-                                            new Object[] { remoteRingMember, remoteRingHost, remoteVersionedPartitionName }, rowsResult.error);
-                                    }
-                                    stats.takeErrors.add(remoteRingMember);
-                                } else if (rowsResult.unreachable != null) {
-                                    LOG.inc("take>unreachable>all");
-                                    if (takeFailureListener.isPresent()) {
-                                        takeFailureListener.get().failedToTake(remoteRingMember, remoteRingHost, rowsResult.unreachable);
+                                StreamingRowsResult rowsResult;
+                                try {
+                                    rowsResult = rowsTaker.rowsStream(amzaRingReader.getRingMember(),
+                                        remoteRingMember,
+                                        remoteRingHost,
+                                        remoteVersionedPartitionName,
+                                        takeSessionId,
+                                        takeSharedKey,
+                                        initialHighwaterMark,
+                                        leadershipToken,
+                                        rowsTakerLimit,
+                                        takeRowStream);
+
+                                    if (rowsResult.error != null || rowsResult.unreachable != null) {
+                                        Exception applyFailure = takeRowStream.awaitApplied();
+                                        if (applyFailure != null) {
+                                            LOG.warn("Failed to apply rows taken from member:{} host:{} partition:{}",
+                                                new Object[] { remoteRingMember, remoteRingHost, remoteVersionedPartitionName }, applyFailure);
+                                        }
                                     }
-                                    if (stats.takeErrors.count(remoteRingMember) == 0) {
-                                        LOG.debug("Unreachable while taking from member:{} host:{}", remoteRingMember, remoteRingHost);
-                                        LOG.trace("Unreachable while taking from member:{} host:{} partition:{}",
-                                            new Object[] { remoteRingMember, remoteRingHost, remoteVersionedPartitionName },
-                                            rowsResult.unreachable);
+
+                                    if (rowsResult.error != null) {
+                                        LOG.inc("take>errors>all");
+                                        if (takeFailureListener.isPresent()) {
+                                            takeFailureListener.get().failedToTake(remoteRingMember, remoteRingHost, rowsResult.error);
+                                        }
+                                        if (stats.takeErrors.count(remoteRingMember) == 0) {
+                                            LOG.warn("Error while taking from member:{} host:{}", remoteRingMember, remoteRingHost);
+                                            LOG.trace("Error while taking from member:{} host:{} partition:{}",
+                                                new Object[] { remoteRingMember, remoteRingHost, remoteVersionedPartitionName }, rowsResult.error);
+                                        }
+                                        stats.takeErrors.add(remoteRingMember);
+                                    } else if (rowsResult.unreachable != null) {
+                                        LOG.inc("take>unreachable>all");
+                                        if (takeFailureListener.isPresent()) {
+                                            takeFailureListener.get().failedToTake(remoteRingMember, remoteRingHost, rowsResult.unreachable);
+                                        }
+                                        if (stats.takeErrors.count(remoteRingMember) == 0) {
+                                            LOG.debug("Unreachable while taking from member:{} host:{}", remoteRingMember, remoteRingHost);
+                                            LOG.trace("Unreachable while taking from member:{} host:{} partition:{}",
+                                                new Object[] { remoteRingMember, remoteRingHost, remoteVersionedPartitionName },
+                                                rowsResult.unreachable);
+                                        }
+                                        stats.takeErrors.add(remoteRingMember);
+                                    } else {
+                                        updates = takeRowStream.flush();
                                     }
-                                    stats.takeErrors.add(remoteRingMember);
-                                } else {
-                                    updates = takeRowStream.flush();
+                                } finally {
+                                    // a take which threw before flushing must still stop the stages, or they park on their queues forever
+                                    takeRowStream.close();
                                 }
 
                                 for (Entry<RingMember, DeltaIndexAndTxId> entry : takeRowStream.flushedHighwatermarks.entrySet()) {
@@ -867,80 +910,105 @@ public class RowChangeTaker implements RowChanges {
 
     }
 
-    private static class DeltaIndexAndTxId {
-        private final int deltaIndex;
-        private long txId = -1;
+    static class DeltaIndexAndTxId {
+        final int deltaIndex;
+        long txId = -1;
 
         private DeltaIndexAndTxId(int deltaIndex) {
             this.deltaIndex = deltaIndex;
         }
     }
 
-    private static class TakeRowStream implements RowStream {
+    /**
+     * Streams a take through three stages so the network, row decoding and the local commit overlap: the receiving thread hands raw rows
+     * over in chunks, a decode stage groups them into one batch per txId, and an apply stage commits the batches in order. Both hand-offs are
+     * bounded so a slow disk pushes back on the network. Takes that fit in a single chunk are decoded and applied inline.
+     * <p>
+     * Consecutive txIds which share a prefix are coalesced into a single local commit until the batch reaches {@code coalesceMaxRows} or
+     * {@code coalesceMaxBytes}. When a key repeats across coalesced txIds only its newest timestamp and version is kept, which is what
+     * committing them one at a time would have left behind.
+     */
+    static class TakeRowStream implements RowStream {
+
+        static final int RAW_CHUNK_SIZE = 1_024;
+        private static final long OFFER_TIMEOUT_MILLIS = 100;
+        private static final List<RawRow> END_OF_ROWS = new ArrayList<>(0);
 
         private final AmzaStats amzaStats;
         private final VersionedPartitionName versionedPartitionName;
         private final CommitTo commitTo;
+        private final CapacityAwaiter capacityAwaiter;
         private final RingMember ringMember;
+        private final ExecutorService pipelineThreadPool;
+        private final int coalesceMaxRows;
+        private final long coalesceMaxBytes;
+        private final BlockingQueue<List<RawRow>> decodeQueue;
+        private final BlockingQueue<TakeBatch> applyQueue;
         private final MutableLong highWaterMark;
-        private final List<WALRow> batch = new ArrayList<>();
-        private final MutableLong oldestTxId = new MutableLong(Long.MAX_VALUE);
         private final MutableLong lastDeltaIndex;
-        private final MutableLong lastTxId;
-        private final MutableLong flushedTxId;
+        private final AtomicLong flushedTxId = new AtomicLong(-1);
         private final AtomicInteger streamed = new AtomicInteger(0);
         private final AtomicInteger flushed = new AtomicInteger(0);
-        private final AtomicReference<WALHighwater> highwater = new AtomicReference<>();
         private final BinaryPrimaryRowMarshaller primaryRowMarshaller;
         private final BinaryHighwaterRowMarshaller binaryHighwaterRowMarshaller;
-        private final Map<RingMember, DeltaIndexAndTxId> flushedHighwatermarks = new HashMap<>();
-
-        public TakeRowStream(AmzaStats amzaStats,
+        final Map<RingMember, DeltaIndexAndTxId> flushedHighwatermarks = new HashMap<>();
+
+        // receive stage
+        private List<RawRow> rawChunk = new ArrayList<>();
+        private Future<?> decoder;
+        private Future<?> applier;
+        private volatile Exception failure;
+        private volatile boolean applyLast;
+        private boolean awaited;
+
+        // decode stage
+        private List<WALRow> txRows = new ArrayList<>();
+        private long lastTxId = Long.MIN_VALUE;
+        private WALHighwater highwater;
+        private TakeBatch batch = new TakeBatch();
+
+        TakeRowStream(AmzaStats amzaStats,
             VersionedPartitionName versionedPartitionName,
             CommitTo commitTo,
+            CapacityAwaiter capacityAwaiter,
             RingMember ringMember,
             long lastHighwaterMark,
+            ExecutorService pipelineThreadPool,
+            int pipelineDepth,
+            int coalesceMaxRows,
+            long coalesceMaxBytes,
             BinaryPrimaryRowMarshaller primaryRowMarshaller,
             BinaryHighwaterRowMarshaller binaryHighwaterRowMarshaller) {
             this.amzaStats = amzaStats;
             this.versionedPartitionName = versionedPartitionName;
             this.commitTo = commitTo;
+            this.capacityAwaiter = capacityAwaiter;
             this.ringMember = ringMember;
+            this.pipelineThreadPool = pipelineThreadPool;
+            this.coalesceMaxRows = coalesceMaxRows;
+            this.coalesceMaxBytes = coalesceMaxBytes;
+            this.decodeQueue = new ArrayBlockingQueue<>(Math.max(pipelineDepth, 1));
+            this.applyQueue = new ArrayBlockingQueue<>(Math.max(pipelineDepth, 1));
             this.highWaterMark = new MutableLong(lastHighwaterMark);
             this.lastDeltaIndex = new MutableLong(-1);
-            this.lastTxId = new MutableLong(Long.MIN_VALUE);
             this.primaryRowMarshaller = primaryRowMarshaller;
             this.binaryHighwaterRowMarshaller = binaryHighwaterRowMarshaller;
-            this.flushedTxId = new MutableLong(-1);
         }
 
         @Override
         public boolean row(long rowFP, long txId, RowType rowType, byte[] row) throws Exception {
-            if (rowType.isPrimary()) {
-                if (lastTxId.longValue() == Long.MIN_VALUE) {
-                    lastTxId.setValue(txId);
-                } else if (lastTxId.longValue() != txId) {
-                    flush();
-                    lastTxId.setValue(txId);
-                    batch.clear();
-                    oldestTxId.setValue(Long.MAX_VALUE);
+            Exception failed = failure;
+            if (failed != null) {
+                throw failed;
+            }
+            rawChunk.add(new RawRow(rowFP, txId, rowType, row));
+            if (rawChunk.size() >= RAW_CHUNK_SIZE) {
+                if (decoder == null) {
+                    decoder = pipelineThreadPool.submit(this::decodeStage);
+                    applier = pipelineThreadPool.submit(this::applyStage);
                 }
-
-                primaryRowMarshaller.fromRows(txFpRowStream -> txFpRowStream.stream(txId, rowFP, rowType, row),
-                    (rowTxId, fp, rowType2, prefix, key, hasValue, value, valueTimestamp, valueTombstoned, valueVersion, _row) -> {
-                        streamed.incrementAndGet();
-                        if (highWaterMark.longValue() < txId) {
-                            highWaterMark.setValue(txId);
-                        }
-                        if (oldestTxId.longValue() > txId) {
-                            oldestTxId.setValue(txId);
-                        }
-                        batch.add(new WALRow(rowType2, prefix, key, value, valueTimestamp, valueTombstoned, valueVersion));
-                        return true;
-                    });
-
-            } else if (rowType == RowType.highwater) {
-                highwater.set(binaryHighwaterRowMarshaller.fromBytes(row));
+                offer(decodeQueue, rawChunk);
+                rawChunk = new ArrayList<>();
             }
             return true;
         }
@@ -949,41 +1017,230 @@ public class RowChangeTaker implements RowChanges {
             return flushed.get() > 0;
         }
 
+        /**
+         * Applies everything streamed so far, including the trailing txId.
+         */
         public int flush() throws Exception {
-            flushedTxId.setValue(lastTxId.longValue());
-            if (!batch.isEmpty()) {
-                byte[] prefix = batch.get(0).prefix; //TODO seems leaky
-                amzaStats.took(ringMember, versionedPartitionName.getPartitionName(), batch.size(), oldestTxId.longValue());
-                WALHighwater walh = highwater.get();
-                MemoryWALUpdates updates = new MemoryWALUpdates(batch, walh);
+            Exception failed = finish(true);
+            if (failed != null) {
+                throw failed;
+            }
+            return flushed.get();
+        }
+
+        /**
+         * Waits for the txIds which were streamed completely to be applied, and drops the trailing txId since the stream may have been cut
+         * short inside of it.
+         *
+         * @return the failure which stopped the pipeline, if any
+         */
+        public Exception awaitApplied() throws Exception {
+            return finish(false);
+        }
+
+        private Exception finish(boolean applyLast) throws Exception {
+            if (awaited) {
+                return failure;
+            }
+            awaited = true;
+            this.applyLast = applyLast;
+            List<RawRow> chunk = rawChunk;
+            rawChunk = null;
+            if (decoder == null) {
+                try {
+                    decode(chunk, this::apply);
+                    endOfStream(this::apply);
+                } catch (Exception x) {
+                    failure = x;
+                }
+                return failure;
+            }
+
+            try {
+                if (!chunk.isEmpty()) {
+                    offer(decodeQueue, chunk);
+                }
+                offer(decodeQueue, END_OF_ROWS);
+            } catch (Exception x) {
+                // the failed stage already recorded why
+            }
+            try {
+                decoder.get();
+                applier.get();
+            } catch (ExecutionException x) {
+                if (failure == null) {
+                    failure = x;
+                }
+            }
+            return failure;
+        }
+
+        /**
+         * Stops the pipeline stages when the take ended without a {@link #flush()} or {@link #awaitApplied()}, e.g. because streaming threw,
+         * and waits for a commit in progress to finish. Nothing more is applied.
+         */
+        public void close() throws InterruptedException {
+            if (awaited) {
+                return;
+            }
+            awaited = true;
+            rawChunk = null;
+            if (decoder != null) {
+                failed(new IllegalStateException("Take from " + ringMember + " for " + versionedPartitionName + " was abandoned"));
+                try {
+                    decoder.get();
+                    applier.get();
+                } catch (ExecutionException x) {
+                    // the failed stage already recorded why
+                }
+            }
+        }
+
+        private Void decodeStage() throws Exception {
+            try {
+                BatchConsumer toApply = takeBatch -> offer(applyQueue, takeBatch);
+                while (true) {
+                    List<RawRow> chunk = decodeQueue.take();
+                    if (failure != null) {
+                        return null;
+                    }
+                    if (chunk == END_OF_ROWS) {
+                        endOfStream(toApply);
+                        offer(applyQueue, TakeBatch.END);
+                        return null;
+                    }
+                    decode(chunk, toApply);
+                }
+            } catch (Exception x) {
+                failed(x);
+                throw x;
+            }
+        }
+
+        private Void applyStage() throws Exception {
+            try {
+                while (true) {
+                    TakeBatch takeBatch = applyQueue.take();
+                    if (takeBatch == TakeBatch.END || failure != null) {
+                        return null;
+                    }
+                    apply(takeBatch);
+                }
+            } catch (Exception x) {
+                failed(x);
+                throw x;
+            }
+        }
+
+        private void failed(Exception x) {
+            if (failure == null) {
+                failure = x;
+            }
+            // drop whatever is in flight, applying past a failed txId would leave a gap, and wake the other stage so it sees the failure
+            decodeQueue.clear();
+            decodeQueue.offer(END_OF_ROWS);
+            applyQueue.clear();
+            applyQueue.offer(TakeBatch.END);
+        }
+
+        private <T> void offer(BlockingQueue<T> queue, T t) throws Exception {
+            while (!queue.offer(t, OFFER_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+                Exception failed = failure;
+                if (failed != null) {
+                    throw failed;
+                }
+            }
+        }
+
+        private void decode(List<RawRow> chunk, BatchConsumer batchConsumer) throws Exception {
+            for (RawRow rawRow : chunk) {
+                long txId = rawRow.txId;
+                if (rawRow.rowType.isPrimary()) {
+                    if (lastTxId == Long.MIN_VALUE) {
+                        lastTxId = txId;
+                    } else if (lastTxId != txId) {
+                        endOfTxId(batchConsumer);
+                        lastTxId = txId;
+                    }
+
+                    primaryRowMarshaller.fromRows(txFpRowStream -> txFpRowStream.stream(txId, rawRow.rowFP, rawRow.rowType, rawRow.row),
+                        (rowTxId, fp, rowType2, prefix, key, hasValue, value, valueTimestamp, valueTombstoned, valueVersion, _row) -> {
+                            streamed.incrementAndGet();
+                            if (highWaterMark.longValue() < txId) {
+                                highWaterMark.setValue(txId);
+                            }
+                            txRows.add(new WALRow(rowType2, prefix, key, value, valueTimestamp, valueTombstoned, valueVersion));
+                            return true;
+                        });
+
+                } else if (rawRow.rowType == RowType.highwater) {
+                    highwater = binaryHighwaterRowMarshaller.fromBytes(rawRow.row);
+                }
+            }
+        }
+
+        private void endOfTxId(BatchConsumer batchConsumer) throws Exception {
+            if (!txRows.isEmpty() && !batch.accepts(txRows.get(0).prefix)) {
+                emit(batchConsumer);
+            }
+            batch.add(txRows, highwater, lastTxId, highWaterMark.longValue(), streamed.get());
+            txRows = new ArrayList<>();
+            highwater = null;
+            if (batch.rows.size() >= coalesceMaxRows || batch.bytes >= coalesceMaxBytes) {
+                emit(batchConsumer);
+            }
+        }
+
+        private void endOfStream(BatchConsumer batchConsumer) throws Exception {
+            if (applyLast) {
+                endOfTxId(batchConsumer);
+            }
+            if (batch.txIds > 0) {
+                emit(batchConsumer);
+            }
+        }
+
+        private void emit(BatchConsumer batchConsumer) throws Exception {
+            TakeBatch takeBatch = batch;
+            batch = new TakeBatch();
+            batchConsumer.batch(takeBatch);
+        }
+
+        private void apply(TakeBatch takeBatch) throws Exception {
+            if (!takeBatch.rows.isEmpty()) {
+                byte[] prefix = takeBatch.rows.get(0).prefix; //TODO seems leaky
+                amzaStats.took(ringMember, versionedPartitionName.getPartitionName(), takeBatch.rows.size(), takeBatch.oldestTxId);
+                List<WALHighwater> highwaters = takeBatch.highwaters;
+                WALHighwater walh = highwaters.isEmpty() ? null : highwaters.get(highwaters.size() - 1);
+                MemoryWALUpdates updates = new MemoryWALUpdates(takeBatch.rows, walh);
                 while (true) {
                     try {
                         RowsChanged changes = commitTo.commit(prefix, updates);
                         if (changes != null) {
-                            if (walh != null) {
-                                for (RingMemberHighwater memberHighwater : walh.ringMemberHighwater) {
+                            // every coalesced txId landed in this one commit, so each of their highwaters is now durable
+                            for (WALHighwater highwater : highwaters) {
+                                for (RingMemberHighwater memberHighwater : highwater.ringMemberHighwater) {
                                     mergeHighwater(changes.getDeltaIndex(), memberHighwater.ringMember, memberHighwater.transactionId);
                                 }
                             }
                             lastDeltaIndex.setValue(changes.getDeltaIndex());
-                            mergeHighwater(changes.getDeltaIndex(), ringMember, highWaterMark.longValue());
-                            flushed.set(streamed.get());
+                            mergeHighwater(changes.getDeltaIndex(), ringMember, takeBatch.highWaterMark);
+                            flushed.set(takeBatch.streamed);
                             int numFlushed = changes.getApply().size();
                             if (numFlushed > 0) {
-                                amzaStats.tookApplied(ringMember, versionedPartitionName.getPartitionName(), numFlushed, oldestTxId.longValue());
+                                amzaStats.tookApplied(ringMember, versionedPartitionName.getPartitionName(), numFlushed, takeBatch.oldestTxId);
                             }
                         }
                         amzaStats.backPressure.sumThenReset();
                         break;
                     } catch (DeltaOverCapacityException x) {
-                        Thread.sleep(100); // TODO configure!
                         amzaStats.backPressure.increment();
                         amzaStats.pushBacks.increment();
+                        capacityAwaiter.await();
                     }
                 }
             }
-            highwater.set(null);
-            return flushed.get();
+            flushedTxId.set(takeBatch.txId);
         }
 
         private void mergeHighwater(int deltaIndex, RingMember ringMember, long transactionId) {
@@ -992,7 +1249,90 @@ public class RowChangeTaker implements RowChanges {
         }
 
         public long largestFlushedTxId() {
-            return flushedTxId.longValue();
+            return flushedTxId.get();
+        }
+    }
+
+    interface CapacityAwaiter {
+
+        void await() throws Exception;
+    }
+
+    private interface BatchConsumer {
+
+        void batch(TakeBatch takeBatch) throws Exception;
+    }
+
+    private static class RawRow {
+
+        private final long rowFP;
+        private final long txId;
+        private final RowType rowType;
+        private final byte[] row;
+
+        private RawRow(long rowFP, long txId, RowType rowType, byte[] row) {
+            this.rowFP = rowFP;
+            this.txId = txId;
+            this.rowType = rowType;
+            this.row = row;
+        }
+    }
+
+    private static class TakeBatch {
+
+        private static final TakeBatch END = new TakeBatch();
+
+        private final List<WALRow> rows = new ArrayList<>();
+        private final List<WALHighwater> highwaters = new ArrayList<>(1);
+        private Map<WALKey, Integer> keyIndexes;
+        private byte[] prefix;
+        private long bytes;
+        private int txIds;
+        private long txId = Long.MIN_VALUE;
+        private long oldestTxId = Long.MAX_VALUE;
+        private long highWaterMark;
+        private int streamed;
+
+        private boolean accepts(byte[] prefix) {
+            return rows.isEmpty() || Arrays.equals(this.prefix, prefix);
+        }
+
+        private void add(List<WALRow> txRows, WALHighwater highwater, long txId, long highWaterMark, int streamed) {
+            if (!txRows.isEmpty()) {
+                if (rows.isEmpty()) {
+                    prefix = txRows.get(0).prefix;
+                    rows.addAll(txRows);
+                } else {
+                    if (keyIndexes == null) {
+                        keyIndexes = new HashMap<>();
+                        for (int i = 0; i < rows.size(); i++) {
+                            keyIndexes.put(new WALKey(prefix, rows.get(i).key), i);
+                        }
+                    }
+                    for (WALRow row : txRows) {
+                        Integer index = keyIndexes.putIfAbsent(new WALKey(prefix, row.key), rows.size());
+                        if (index == null) {
+                            rows.add(row);
+                        } else {
+                            WALRow existing = rows.get(index);
+                            if (CompareTimestampVersions.compare(existing.timestamp, existing.version, row.timestamp, row.version) < 0) {
+                                rows.set(index, row);
+                            }
+                        }
+                    }
+                }
+                for (WALRow row : txRows) {
+                    bytes += row.key.length + (row.value == null ? 0 : row.value.length);
+                }
+                oldestTxId = Math.min(oldestTxId, txId);
+            }
+            if (highwater != null) {
+                highwaters.add(highwater);
+            }
+            txIds++;
+            this.txId = txId;
+            this.highWaterMark = highWaterMark;
+            this.streamed = streamed;
         }
     }
 
@@ -0,0 +1,127 @@
+package com.jivesoftware.os.amza.service.replication;
+
+import com.google.common.collect.Maps;
+import com.jivesoftware.os.amza.api.partition.PartitionName;
+import com.jivesoftware.os.mlogger.core.MetricLogger;
+import com.jivesoftware.os.mlogger.core.MetricLoggerFactory;
+import com.jivesoftware.os.mlogger.core.ValueType;
+import com.jivesoftware.os.routing.bird.health.checkers.SickThreads;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The partitions whose aquarium state changed, hashed onto stripes. Each stripe is drained by one thread, so a partition's changes are
+ * handled in order and never concurrently, while the stripes run in parallel. Changes to a partition which is already queued coalesce.
+ */
+class StateChangeStripes {
+
+    private static final MetricLogger LOG = MetricLoggerFactory.getLogger();
+
+    interface StateChangeHandler {
+
+        /**
+         * @return false to handle the partition again after {@code retryAfterMillis}
+         */
+        boolean handle(PartitionName partitionName) throws Exception;
+    }
+
+    private final SmellsFishy[] smellsFishy;
+
+    StateChangeStripes(int numberOfStripes) {
+        this.smellsFishy = new SmellsFishy[numberOfStripes];
+        for (int i = 0; i < numberOfStripes; i++) {
+            smellsFishy[i] = new SmellsFishy();
+        }
+    }
+
+    int numberOfStripes() {
+        return smellsFishy.length;
+    }
+
+    int stripe(PartitionName partitionName) {
+        return Math.abs(partitionName.hashCode() % smellsFishy.length);
+    }
+
+    /**
+     * Queues the partition without waking its stripe, so a batch of changes wakes each stripe once through {@link #wake()}.
+     */
+    void changed(PartitionName partitionName) {
+        smellsFishy[stripe(partitionName)].partitionNames.add(partitionName);
+    }
+
+    void wake() {
+        for (SmellsFishy fishy : smellsFishy) {
+            if (!fishy.partitionNames.isEmpty()) {
+                synchronized (fishy) {
+                    fishy.smellOVersion.incrementAndGet();
+                    fishy.notifyAll();
+                }
+            }
+        }
+    }
+
+    long depth() {
+        long depth = 0;
+        for (SmellsFishy fishy : smellsFishy) {
+            depth += fishy.partitionNames.size();
+        }
+        return depth;
+    }
+
+    /**
+     * Drains the stripe until {@code running} is cleared or the thread is interrupted.
+     */
+    void smellTheFish(int stripe,
+        AtomicBoolean running,
+        SickThreads sickThreads,
+        long retryAfterMillis,
+        StateChangeHandler handler) {
+
+        SmellsFishy fishy = smellsFishy[stripe];
+        while (running.get()) {
+            try {
+                long startVersion = fishy.smellOVersion.get();
+                LOG.set(ValueType.COUNT, "aquarium>smellsFishy>" + stripe, fishy.partitionNames.size());
+                Iterator<PartitionName> iter = fishy.partitionNames.iterator();
+                while (iter.hasNext()) {
+                    PartitionName partitionName = iter.next();
+                    iter.remove();
+                    try {
+                        if (!handler.handle(partitionName)) {
+                            fishy.partitionNames.add(partitionName);
+                        }
+                    } catch (Exception e) {
+                        fishy.partitionNames.add(partitionName);
+                        throw e;
+                    }
+                }
+                sickThreads.recovered();
+                synchronized (fishy) {
+                    if (startVersion == fishy.smellOVersion.get()) {
+                        fishy.wait(fishy.partitionNames.isEmpty() ? 0 : retryAfterMillis);
+                    }
+                }
+            } catch (InterruptedException e) {
+                break;
+            } catch (Throwable t) {
+                sickThreads.sick(t);
+                LOG.error("Failed to feed the fish", t);
+                try {
+                    Thread.sleep(1000L);
+                } catch (InterruptedException e) {
+                    break;
+                }
+            }
+        }
+        sickThreads.recovered();
+    }
+
+    private static class SmellsFishy {
+
+        private final Set<PartitionName> partitionNames = Collections.newSetFromMap(Maps.newConcurrentMap());
+        private final AtomicLong smellOVersion = new AtomicLong();
+    }
+}
@@ -0,0 +1,19 @@
+package com.jivesoftware.os.amza.service.replication;
+
+/**
+ * How a stripe turns {@link com.jivesoftware.os.amza.api.partition.Durability#fsync_always} commits into fsyncs.
+ */
+public enum StripeDurabilityMode {
+    /**
+     * Every commit wakes the flusher and waits for an fsync which covers it.
+     */
+    every_commit,
+    /**
+     * Commits wait for the next group fsync, which happens every N millis or once N bytes are unflushed, whichever comes first.
+     */
+    group,
+    /**
+     * Commits are treated as fsync_async and never wait.
+     */
+    async;
+}
@@ -47,6 +47,11 @@ public class StripedPartitionCommitChanges implements CommitChanges {
         partitionStripeProvider.flush(partitionName, hardFlush ? Durability.fsync_always : Durability.fsync_async, 0);
     }
 
+    @Override
+    public void awaitCapacity(VersionedPartitionName versionedPartitionName, long timeoutMillis) throws Exception {
+        partitionStripeProvider.awaitDeltaCapacity(versionedPartitionName.getPartitionName(), timeoutMillis);
+    }
+
     @Override
     public String toString() {
         return "StripedPartitionCommitChanges{" + "partitionStripeProvider=" + partitionStripeProvider + '}';
@@ -36,6 +36,11 @@ public class SystemPartitionCommitChanges implements CommitChanges {
         //TODO reevaluate highwaterStorage.flush(-1, null);
     }
 
+    @Override
+    public void awaitCapacity(VersionedPartitionName versionedPartitionName, long timeoutMillis) throws Exception {
+        // system partitions are written straight to their WAL and never report being over capacity, so there is nothing to wait for
+    }
+
     @Override
     public String toString() {
         return "SystemPartitionCommitChanges{" + "systemWALStorage=" + systemWALStorage + '}';
@@ -23,6 +23,9 @@ import com.jivesoftware.os.amza.service.Partition;
 import com.jivesoftware.os.amza.service.Partition.ScanRange;
 import com.jivesoftware.os.amza.service.PartitionProvider;
 import com.jivesoftware.os.amza.service.PropertiesNotPresentException;
+import com.jivesoftware.os.amza.service.replication.LeaderChangeJournal;
+import com.jivesoftware.os.amza.service.replication.LeaderChangeJournal.LeaderChange;
+import com.jivesoftware.os.amza.service.replication.LeaderChangeJournal.LeaderChanges;
 import com.jivesoftware.os.amza.service.ring.AmzaRingReader;
 import com.jivesoftware.os.amza.service.ring.AmzaRingWriter;
 import com.jivesoftware.os.amza.service.ring.RingTopology;
@@ -33,6 +36,7 @@ import java.util.ArrayDeque;
 import java.util.Arrays;
 import java.util.Deque;
 import java.util.List;
+import java.util.concurrent.TimeoutException;
 
 /**
  * @author jonathan.colt
@@ -43,11 +47,16 @@ public class AmzaClientService implements AmzaRestClient {
     private final AmzaRingReader ringReader;
     private final AmzaRingWriter ringWriter;
     private final PartitionProvider partitionProvider;
+    private final LeaderChangeJournal leaderChangeJournal;
 
-    public AmzaClientService(AmzaRingReader ringReader, AmzaRingWriter ringWriter, PartitionProvider partitionProvider) {
+    public AmzaClientService(AmzaRingReader ringReader,
+        AmzaRingWriter ringWriter,
+        PartitionProvider partitionProvider,
+        LeaderChangeJournal leaderChangeJournal) {
         this.ringReader = ringReader;
         this.ringWriter = ringWriter;
         this.partitionProvider = partitionProvider;
+        this.leaderChangeJournal = leaderChangeJournal;
     }
 
     @Override
@@ -107,6 +116,49 @@ public class AmzaClientService implements AmzaRestClient {
         }
     }
 
+    @Override
+    public void ringLeaders(List<PartitionName> partitionNames, IWriteable writeable) throws Exception {
+        for (PartitionName partitionName : partitionNames) {
+            RingLeader ringLeader = null;
+            try {
+                RingMember leader = null;
+                if (!partitionName.isSystemPartition()) {
+                    try {
+                        leader = partitionProvider.awaitLeader(partitionName, 0);
+                    } catch (TimeoutException e) {
+                        // still electing, the client will await the leader if it needs one
+                    }
+                }
+                ringLeader = new RingLeader(ringReader.getRing(partitionName.getRingName(), 0), leader);
+            } catch (Exception x) {
+                LOG.warn("Failed to get ring leader for {}", new Object[] { partitionName }, x);
+            }
+            UIO.writeByte(writeable, ringLeader != null ? (byte) 1 : (byte) 0, "found");
+            if (ringLeader != null) {
+                ring(ringLeader, writeable);
+            }
+        }
+    }
+
+    @Override
+    public LeaderChanges leaderChanges(long journalId, long sinceSequence, long waitForChangesMillis) throws Exception {
+        return leaderChangeJournal.await(journalId, sinceSequence, waitForChangesMillis);
+    }
+
+    @Override
+    public void leaderChanges(LeaderChanges leaderChanges, IWriteable writeable) throws IOException {
+        byte[] intLongBuffer = new byte[8];
+        UIO.writeLong(writeable, leaderChanges.journalId, "journalId", intLongBuffer);
+        UIO.writeLong(writeable, leaderChanges.nextSequence, "nextSequence", intLongBuffer);
+        UIO.writeByte(writeable, leaderChanges.reset ? (byte) 1 : (byte) 0, "reset");
+        for (LeaderChange leaderChange : leaderChanges.changes) {
+            UIO.writeByte(writeable, (byte) 0, "eos");
+            UIO.writeByteArray(writeable, leaderChange.partitionName.toBytes(), "partitionName", intLongBuffer);
+            UIO.writeByteArray(writeable, leaderChange.leader == null ? null : leaderChange.leader.toBytes(), "leader", intLongBuffer);
+        }
+        UIO.writeByte(writeable, (byte) 1, "eos");
+    }
+
     @Override
     public StateMessageCause commit(PartitionName partitionName,
         Consistency consistency,
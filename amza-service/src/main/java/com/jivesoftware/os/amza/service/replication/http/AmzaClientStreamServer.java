@@ -0,0 +1,382 @@
+package com.jivesoftware.os.amza.service.replication.http;
+
+import com.jivesoftware.os.amza.api.AmzaInterner;
+import com.jivesoftware.os.amza.api.AmzaStreamProtocol;
+import com.jivesoftware.os.amza.api.AmzaStreamProtocol.Frame;
+import com.jivesoftware.os.amza.api.DeltaOverCapacityException;
+import com.jivesoftware.os.amza.api.FailedToAchieveQuorumException;
+import com.jivesoftware.os.amza.api.filer.FilerInputStream;
+import com.jivesoftware.os.amza.api.filer.FilerOutputStream;
+import com.jivesoftware.os.amza.api.filer.UIO;
+import com.jivesoftware.os.amza.api.partition.Consistency;
+import com.jivesoftware.os.amza.api.partition.PartitionName;
+import com.jivesoftware.os.amza.api.wal.KeyUtil;
+import com.jivesoftware.os.amza.api.wal.WALKey;
+import com.jivesoftware.os.amza.service.Partition.ScanRange;
+import com.jivesoftware.os.amza.service.replication.http.AmzaRestClient.StateMessageCause;
+import com.jivesoftware.os.mlogger.core.MetricLogger;
+import com.jivesoftware.os.mlogger.core.MetricLoggerFactory;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Serves get, getOffset, scan, commit and takes over persistent connections using {@link AmzaStreamProtocol}. Each request is handed to the
+ * same {@link AmzaRestClient} as the http endpoints, so responses are identical apart from the framing. Request bodies are buffered until
+ * the client ends them, so streams whose body grows beyond {@code maxRequestBytes} are failed rather than buffered.
+ */
+public class AmzaClientStreamServer {
+
+    private static final MetricLogger LOG = MetricLoggerFactory.getLogger();
+
+    private final int port;
+    private final AmzaRestClient client;
+    private final AmzaInterner amzaInterner;
+    private final ExecutorService requestThreads;
+    private final int maxRequestBytes;
+    private final long awaitOnlineTimeoutMillis;
+    private final AtomicBoolean running = new AtomicBoolean(false);
+
+    private volatile ServerSocket serverSocket;
+
+    public AmzaClientStreamServer(int port,
+        AmzaRestClient client,
+        AmzaInterner amzaInterner,
+        ExecutorService requestThreads,
+        int maxRequestBytes,
+        long awaitOnlineTimeoutMillis) {
+        this.port = port;
+        this.client = client;
+        this.amzaInterner = amzaInterner;
+        this.requestThreads = requestThreads;
+        this.maxRequestBytes = maxRequestBytes;
+        this.awaitOnlineTimeoutMillis = awaitOnlineTimeoutMillis;
+    }
+
+    public void start() throws IOException {
+        if (running.compareAndSet(false, true)) {
+            serverSocket = new ServerSocket();
+            serverSocket.setReuseAddress(true);
+            serverSocket.bind(new InetSocketAddress(port));
+            Thread acceptor = new Thread(this::accept, "amza-client-stream-acceptor");
+            acceptor.setDaemon(true);
+            acceptor.start();
+        }
+    }
+
+    public void stop() throws IOException {
+        if (running.compareAndSet(true, false)) {
+            serverSocket.close();
+        }
+    }
+
+    public int getPort() {
+        ServerSocket socket = serverSocket;
+        return running.get() && socket != null ? socket.getLocalPort() : -1;
+    }
+
+    private void accept() {
+        while (running.get()) {
+            try {
+                Socket socket = serverSocket.accept();
+                socket.setTcpNoDelay(true);
+                Connection connection = new Connection(socket);
+                Thread reader = new Thread(connection::read, "amza-client-stream-" + socket.getRemoteSocketAddress());
+                reader.setDaemon(true);
+                reader.start();
+            } catch (Exception x) {
+                if (running.get()) {
+                    LOG.warn("Failed to accept client stream connection", x);
+                }
+            }
+        }
+    }
+
+    private class Connection {
+
+        private final Socket socket;
+        private final DataInputStream in;
+        private final DataOutputStream out;
+        private final Map<Integer, ServerStream> streams = new ConcurrentHashMap<>();
+
+        Connection(Socket socket) throws IOException {
+            this.socket = socket;
+            this.in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), 64 * 1024));
+            this.out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), 64 * 1024));
+        }
+
+        void read() {
+            try {
+                while (running.get()) {
+                    Frame frame = AmzaStreamProtocol.readFrame(in);
+                    if (frame.type == AmzaStreamProtocol.FRAME_REQUEST) {
+                        streams.put(frame.streamId, new ServerStream(this, frame.streamId, frame.payload));
+                    } else {
+                        ServerStream stream = streams.get(frame.streamId);
+                        if (stream == null) {
+                            continue;
+                        }
+                        if (frame.type == AmzaStreamProtocol.FRAME_DATA) {
+                            if (stream.body.size() + frame.payload.length > maxRequestBytes) {
+                                LOG.inc("clientStream>tooLarge");
+                                streams.remove(frame.streamId);
+                                stream.error(AmzaStreamProtocol.STATUS_TOO_LARGE, "Request exceeds " + maxRequestBytes + " bytes");
+                            } else {
+                                stream.body.write(frame.payload);
+                            }
+                        } else if (frame.type == AmzaStreamProtocol.FRAME_END) {
+                            requestThreads.submit(stream::handle);
+                        } else if (frame.type == AmzaStreamProtocol.FRAME_CREDIT) {
+                            stream.grant(UIO.bytesInt(frame.payload, 0));
+                        } else if (frame.type == AmzaStreamProtocol.FRAME_ERROR) {
+                            stream.cancel();
+                        }
+                    }
+                }
+            } catch (Exception x) {
+                LOG.debug("Client stream connection closed {}", new Object[] { socket.getRemoteSocketAddress() }, x);
+            } finally {
+                for (ServerStream stream : streams.values()) {
+                    stream.cancel();
+                }
+                try {
+                    socket.close();
+                } catch (IOException e) {
+                    LOG.warn("Failed to close client stream socket");
+                }
+            }
+        }
+
+        void write(int streamId, byte type, byte[] payload, int offset, int length) throws IOException {
+            synchronized (out) {
+                AmzaStreamProtocol.writeFrame(out, streamId, type, payload, offset, length);
+                out.flush();
+            }
+        }
+    }
+
+    private class ServerStream {
+
+        private final Connection connection;
+        private final int streamId;
+        private final byte op;
+        private final byte[] partitionNameBytes;
+        private final String consistencyName;
+        private final boolean checkLeader;
+        private final boolean hydrateValues;
+        private final ByteArrayOutputStream body = new ByteArrayOutputStream();
+        private final Object creditLock = new Object();
+        private long credit = AmzaStreamProtocol.INITIAL_WINDOW;
+        private volatile boolean cancelled;
+
+        ServerStream(Connection connection, int streamId, byte[] request) {
+            this.connection = connection;
+            this.streamId = streamId;
+            int o = 0;
+            this.op = request[o];
+            o++;
+            this.partitionNameBytes = AmzaStreamProtocol.getBytes(request, o);
+            o += 4 + partitionNameBytes.length;
+            byte[] consistencyBytes = AmzaStreamProtocol.getBytes(request, o);
+            o += 4 + consistencyBytes.length;
+            this.consistencyName = new String(consistencyBytes, StandardCharsets.UTF_8);
+            this.checkLeader = request[o] == 1;
+            o++;
+            this.hydrateValues = request[o] == 1;
+        }
+
+        void grant(int bytes) {
+            synchronized (creditLock) {
+                credit += bytes;
+                creditLock.notifyAll();
+            }
+        }
+
+        void cancel() {
+            cancelled = true;
+            synchronized (creditLock) {
+                creditLock.notifyAll();
+            }
+        }
+
+        void handle() {
+            PartitionName partitionName = null;
+            try {
+                partitionName = amzaInterner.internPartitionName(partitionNameBytes, 0, partitionNameBytes.length);
+                Consistency consistency = Consistency.valueOf(consistencyName);
+                FilerInputStream in = new FilerInputStream(new ByteArrayInputStream(body.toByteArray()));
+
+                StateMessageCause stateMessageCause = op == AmzaStreamProtocol.OP_COMMIT
+                    ? client.commit(partitionName, consistency, checkLeader, awaitOnlineTimeoutMillis, in)
+                    : client.status(partitionName, consistency, checkLeader, awaitOnlineTimeoutMillis);
+                if (stateMessageCause != null) {
+                    error(statusCode(stateMessageCause), stateMessageCause.message);
+                    return;
+                }
+
+                FilerOutputStream fos = new FilerOutputStream(new FramedOutputStream());
+                if (op == AmzaStreamProtocol.OP_GET) {
+                    client.get(partitionName, Consistency.none, in, fos);
+                } else if (op == AmzaStreamProtocol.OP_GET_OFFSET) {
+                    client.getOffset(partitionName, Consistency.none, in, fos);
+                } else if (op == AmzaStreamProtocol.OP_SCAN) {
+                    List<ScanRange> ranges = readRanges(in);
+                    if (ranges == null) {
+                        error(AmzaStreamProtocol.STATUS_BAD_REQUEST, "Invalid range");
+                        return;
+                    }
+                    client.scan(partitionName, ranges, true, null, fos, hydrateValues);
+                } else if (op == AmzaStreamProtocol.OP_TAKE) {
+                    int limit = UIO.readInt(in, "limit", new byte[4]);
+                    client.takeFromTransactionId(partitionName, limit, in, fos);
+                } else if (op == AmzaStreamProtocol.OP_TAKE_PREFIX) {
+                    int limit = UIO.readInt(in, "limit", new byte[4]);
+                    client.takePrefixFromTransactionId(partitionName, limit, in, fos);
+                } else if (op != AmzaStreamProtocol.OP_COMMIT) {
+                    error(AmzaStreamProtocol.STATUS_BAD_REQUEST, "Unsupported op:" + op);
+                    return;
+                }
+                fos.close();
+            } catch (DeltaOverCapacityException x) {
+                LOG.warn("Delta over capacity for {} {}", partitionName, x);
+                error(AmzaStreamProtocol.STATUS_UNAVAILABLE, "Delta over capacity.");
+            } catch (FailedToAchieveQuorumException x) {
+                LOG.warn("FailedToAchieveQuorumException for {} {}", partitionName, x);
+                error(AmzaStreamProtocol.STATUS_QUORUM_TIMEOUT, "Failed to achieve quorum exception.");
+            } catch (Exception x) {
+                if (!cancelled) {
+                    LOG.warn("Failed to handle client stream op:{} for {}", new Object[] { op, partitionName }, x);
+                    error(AmzaStreamProtocol.STATUS_ERROR, x.getMessage());
+                }
+            } finally {
+                connection.streams.remove(streamId);
+            }
+        }
+
+        private List<ScanRange> readRanges(FilerInputStream in) throws Exception {
+            List<ScanRange> ranges = new ArrayList<>();
+            byte[] intLongBuffer = new byte[8];
+            while (UIO.readByte(in, "eos") == (byte) 1) {
+                byte[] fromPrefix = UIO.readByteArray(in, "fromPrefix", intLongBuffer);
+                byte[] fromKey = UIO.readByteArray(in, "fromKey", intLongBuffer);
+                byte[] toPrefix = UIO.readByteArray(in, "toPrefix", intLongBuffer);
+                byte[] toKey = UIO.readByteArray(in, "toKey", intLongBuffer);
+
+                byte[] from = fromKey != null ? WALKey.compose(fromPrefix, fromKey) : null;
+                byte[] to = toKey != null ? WALKey.compose(toPrefix, toKey) : null;
+                if (from != null && to != null && KeyUtil.compare(from, to) > 0) {
+                    return null;
+                }
+                ranges.add(new ScanRange(fromPrefix, fromKey, toPrefix, toKey));
+            }
+            return ranges;
+        }
+
+        private int statusCode(StateMessageCause stateMessageCause) {
+            if (stateMessageCause.state != null) {
+                switch (stateMessageCause.state) {
+                    case properties_not_present:
+                        return AmzaStreamProtocol.STATUS_NOT_FOUND;
+                    case not_a_ring_member:
+                    case failed_to_come_online:
+                    case lacks_leader:
+                        return AmzaStreamProtocol.STATUS_UNAVAILABLE;
+                    case not_the_leader:
+                        return AmzaStreamProtocol.STATUS_CONFLICT;
+                    default:
+                        break;
+                }
+            }
+            return AmzaStreamProtocol.STATUS_ERROR;
+        }
+
+        private void error(int status, String message) {
+            try {
+                byte[] payload = AmzaStreamProtocol.error(status, message);
+                connection.write(streamId, AmzaStreamProtocol.FRAME_ERROR, payload, 0, payload.length);
+            } catch (IOException x) {
+                LOG.warn("Failed to send error for client stream {}", streamId);
+            }
+        }
+
+        /**
+         * Chunks the response into data frames, blocking whenever the client has not granted enough credit.
+         */
+        private class FramedOutputStream extends OutputStream {
+
+            private final byte[] buffer = new byte[AmzaStreamProtocol.MAX_FRAME_PAYLOAD];
+            private int length;
+
+            @Override
+            public void write(int b) throws IOException {
+                if (length == buffer.length) {
+                    sendData();
+                }
+                buffer[length] = (byte) b;
+                length++;
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                while (len > 0) {
+                    if (length == buffer.length) {
+                        sendData();
+                    }
+                    int copy = Math.min(len, buffer.length - length);
+                    System.arraycopy(b, off, buffer, length, copy);
+                    length += copy;
+                    off += copy;
+                    len -= copy;
+                }
+            }
+
+            @Override
+            public void flush() throws IOException {
+                sendData();
+            }
+
+            @Override
+            public void close() throws IOException {
+                sendData();
+                connection.write(streamId, AmzaStreamProtocol.FRAME_END, null, 0, 0);
+            }
+
+            private void sendData() throws IOException {
+                if (length == 0) {
+                    return;
+                }
+                synchronized (creditLock) {
+                    while (credit < length) {
+                        if (cancelled) {
+                            throw new IOException("Client stream " + streamId + " was cancelled");
+                        }
+                        try {
+                            creditLock.wait();
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                            throw new IOException("Interrupted awaiting credit for client stream " + streamId, e);
+                        }
+                    }
+                    credit -= length;
+                }
+                connection.write(streamId, AmzaStreamProtocol.FRAME_DATA, buffer, 0, length);
+                length = 0;
+            }
+        }
+    }
+}
@@ -9,6 +9,7 @@ import com.jivesoftware.os.amza.api.partition.PartitionName;
 import com.jivesoftware.os.amza.api.partition.PartitionProperties;
 import com.jivesoftware.os.amza.api.ring.RingMember;
 import com.jivesoftware.os.amza.service.Partition.ScanRange;
+import com.jivesoftware.os.amza.service.replication.LeaderChangeJournal.LeaderChanges;
 import com.jivesoftware.os.amza.service.replication.http.endpoints.ChunkedOutputFiler;
 import com.jivesoftware.os.amza.service.ring.RingTopology;
 import java.io.IOException;
@@ -40,6 +41,15 @@ public interface AmzaRestClient {
 
     void ring(RingLeader ringLeader, IWriteable writeable) throws IOException;
 
+    /**
+     * Writes a found flag and then the ring with its current leader for each partition, without waiting on any election.
+     */
+    void ringLeaders(List<PartitionName> partitionNames, IWriteable writeable) throws Exception;
+
+    LeaderChanges leaderChanges(long journalId, long sinceSequence, long waitForChangesMillis) throws Exception;
+
+    void leaderChanges(LeaderChanges leaderChanges, IWriteable writeable) throws IOException;
+
     void scan(PartitionName partitionName,
         List<ScanRange> ranges,
         boolean rangeBoundaries,
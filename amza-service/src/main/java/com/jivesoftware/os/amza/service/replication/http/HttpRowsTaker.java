@@ -19,6 +19,7 @@ import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.jivesoftware.os.amza.api.AmzaInterner;
 import com.jivesoftware.os.amza.api.filer.UIO;
 import com.jivesoftware.os.amza.api.partition.VersionedPartitionName;
@@ -48,9 +49,13 @@ import java.io.Serializable;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 import org.nustaq.serialization.FSTConfiguration;
 import org.xerial.snappy.SnappyInputStream;
@@ -66,46 +71,62 @@ public class HttpRowsTaker implements RowsTaker {
     private final TenantAwareHttpClient<String> ringClient;
     private final ObjectMapper mapper;
     private final StreamingTakesConsumer streamingTakesConsumer;
+    private final ScheduledExecutorService ackScheduler;
     private final ExecutorService flushExecutor;
 
-    private final AtomicLong flushVersion = new AtomicLong();
     private final Map<RingHost, Ackable> hostQueue = Maps.newConcurrentMap();
+    private final Map<RingHost, PeerTakeWindow> takeWindows = Maps.newConcurrentMap();
 
+    private final long initialTakeRows;
+    private final long minTakeRows;
+    private final long maxTakeMillis;
+    private final long maxTakeBytes;
+    private final double takeRttMultiple;
+    private final long minAckRetryMillis;
+    private final long maxAckRetryMillis;
+    private final int maxAckRetries;
+
+    /**
+     * Each peer's ack flushes are scheduled independently, so a slow or unreachable peer only delays its own acks.
+     *
+     * @param flushExecutor delivers the acks, at most one batch in flight per peer
+     * @param maxAckRetries consecutive failed deliveries after which a peer's queued acks are dropped, the next take acks again anyway
+     */
     public HttpRowsTaker(String name,
         AmzaStats amzaStats,
         TenantAwareHttpClient<String> ringClient,
         ObjectMapper mapper,
         AmzaInterner amzaInterner,
-        ExecutorService queueExecutor,
-        ExecutorService flushExecutor) {
+        ExecutorService flushExecutor,
+        long initialTakeRows,
+        long minTakeRows,
+        long maxTakeMillis,
+        long maxTakeBytes,
+        double takeRttMultiple,
+        long minAckRetryMillis,
+        long maxAckRetryMillis,
+        int maxAckRetries) {
         this.name = name;
         this.amzaStats = amzaStats;
         this.ringClient = ringClient;
         this.mapper = mapper;
         this.streamingTakesConsumer = new StreamingTakesConsumer(amzaInterner);
+        this.ackScheduler = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder().setNameFormat(name + "-ack-scheduler-%d").build());
         this.flushExecutor = flushExecutor;
+        this.initialTakeRows = initialTakeRows;
+        this.minTakeRows = minTakeRows;
+        this.maxTakeMillis = maxTakeMillis;
+        this.maxTakeBytes = maxTakeBytes;
+        this.takeRttMultiple = takeRttMultiple;
+        this.minAckRetryMillis = minAckRetryMillis;
+        this.maxAckRetryMillis = maxAckRetryMillis;
+        this.maxAckRetries = maxAckRetries;
+    }
 
-        //TODO lifecycle
-        queueExecutor.submit(() -> {
-            while (true) {
-                try {
-                    long currentVersion = flushVersion.get();
-                    for (Entry<RingHost, Ackable> entry : hostQueue.entrySet()) {
-                        Ackable ackable = entry.getValue();
-                        if (ackable.running.compareAndSet(false, true)) {
-                            flushQueues(entry.getKey(), ackable, currentVersion);
-                        }
-                    }
-                    synchronized (flushVersion) {
-                        if (currentVersion == flushVersion.get()) {
-                            flushVersion.wait();
-                        }
-                    }
-                } catch (Throwable t) {
-                    LOG.error("HttpRowsTaker failure", t);
-                }
-            }
-        });
+    @Override
+    public void stop() {
+        ackScheduler.shutdownNow();
     }
 
     /**
@@ -114,6 +135,7 @@ public class HttpRowsTaker implements RowsTaker {
      * @param remoteRingHost
      * @param remoteVersionedPartitionName
      * @param remoteTxId
+     * @param limit the most rows to take, the peer's take window may ask for fewer
      * @param rowStream
      * @return Will return null if the other node was reachable but the partition on that node was NOT online.
      * @throws Exception
@@ -130,6 +152,11 @@ public class HttpRowsTaker implements RowsTaker {
         long limit,
         RowStream rowStream) {
 
+        PeerTakeWindow takeWindow = takeWindows.computeIfAbsent(remoteRingHost,
+            key -> new PeerTakeWindow(initialTakeRows, minTakeRows, maxTakeMillis, maxTakeBytes, takeRttMultiple));
+        long takeLimit = takeWindow.limit(limit);
+        long start = System.currentTimeMillis();
+
         HttpStreamResponse httpStreamResponse;
         try {
             String endpoint = "/amza/rows/stream/" + localRingMember.getMember()
@@ -137,7 +164,7 @@ public class HttpRowsTaker implements RowsTaker {
                 + "/" + takeSessionId
                 + "/" + remoteTxId
                 + "/" + localLeadershipToken
-                + "/" + limit;
+                + "/" + takeLimit;
             String sharedKeyJson = mapper.writeValueAsString(takeSharedKey); // lame
             httpStreamResponse = ringClient.call("",
                 new ConnectionDescriptorSelectiveStrategy(new HostPort[] { new HostPort(remoteRingHost.getHost(), remoteRingHost.getPort()) }),
@@ -150,16 +177,27 @@ public class HttpRowsTaker implements RowsTaker {
                     return new ClientResponse<>(response, true);
                 });
         } catch (IOException | HttpClientException e) {
+            takeWindow.failed();
             return new StreamingRowsResult(e, null, -1, -1, null);
         }
+        long rttMillis = System.currentTimeMillis() - start;
         try {
             BufferedInputStream bis = new BufferedInputStream(httpStreamResponse.getInputStream(), 8192); // TODO config??
             DataInputStream dis = new DataInputStream(new SnappyInputStream(bis));
-            StreamingTakeConsumed consumed = streamingTakesConsumer.consume(dis, rowStream);
+            long[] rows = { 0 };
+            StreamingTakeConsumed consumed = streamingTakesConsumer.consume(dis, (rowFP, rowTxId, rowType, row) -> {
+                rows[0]++;
+                return rowStream.row(rowFP, rowTxId, rowType, row);
+            });
             amzaStats.netStats.read.add(consumed.bytes);
+            takeWindow.completed(limit, takeLimit, rows[0], consumed.bytes, rttMillis, System.currentTimeMillis() - start);
+            String host = remoteRingHost.toCanonicalString();
+            LOG.set(ValueType.COUNT, "take>window>" + name + ">" + host, takeWindow.getWindowRows());
+            LOG.set(ValueType.COUNT, "take>rtt>" + name + ">" + host, takeWindow.getRttMillis());
             Map<RingMember, Long> otherHighwaterMarks = (consumed.streamedToEnd && consumed.isOnline) ? consumed.neighborsHighwaterMarks : null;
             return new StreamingRowsResult(null, null, consumed.leadershipToken, consumed.partitionVersion, otherHighwaterMarks);
         } catch (Exception e) {
+            takeWindow.failed();
             return new StreamingRowsResult(null, e, -1, -1, null);
         } finally {
             httpStreamResponse.close();
@@ -167,7 +205,8 @@ public class HttpRowsTaker implements RowsTaker {
     }
 
     private static class Ackable {
-        public final AtomicBoolean running = new AtomicBoolean(false);
+        public final AtomicBoolean scheduled = new AtomicBoolean(false);
+        public final AtomicInteger failures = new AtomicInteger();
         public final Semaphore semaphore = new Semaphore(Short.MAX_VALUE);
         public final AtomicReference<Map<VersionedPartitionName, RowsTakenPayload>> rowsTakenPayloads = new AtomicReference<>(Maps.newConcurrentMap());
         public final AtomicReference<PongPayload> pongPayloads = new AtomicReference<>();
@@ -246,10 +285,7 @@ public class HttpRowsTaker implements RowsTaker {
             ackable.semaphore.release();
         }
         LOG.inc("rowsTaken");
-        LOG.set(ValueType.COUNT, "flush>version>enqueue>" + name, flushVersion.incrementAndGet());
-        synchronized (flushVersion) {
-            flushVersion.notify();
-        }
+        schedule(remoteRingHost, ackable, 0);
         return true;
     }
 
@@ -268,112 +304,152 @@ public class HttpRowsTaker implements RowsTaker {
             ackable.semaphore.release();
         }
         LOG.inc("pong");
-        LOG.set(ValueType.COUNT, "flush>version>enqueue>" + name, flushVersion.incrementAndGet());
-        synchronized (flushVersion) {
-            flushVersion.notify();
-        }
+        schedule(remoteRingHost, ackable, 0);
         return true;
     }
 
-    private void flushQueues(RingHost ringHost, Ackable ackable, long currentVersion) throws Exception {
-        Map<VersionedPartitionName, RowsTakenPayload> rowsTaken;
-        PongPayload pong;
-        ackable.semaphore.acquire(Short.MAX_VALUE);
+    private void schedule(RingHost ringHost, Ackable ackable, long delayMillis) {
+        if (ackable.scheduled.compareAndSet(false, true)) {
+            try {
+                if (delayMillis > 0) {
+                    ackScheduler.schedule(() -> flushExecutor.submit(() -> flushQueues(ringHost, ackable)), delayMillis, TimeUnit.MILLISECONDS);
+                } else {
+                    flushExecutor.submit(() -> flushQueues(ringHost, ackable));
+                }
+            } catch (RejectedExecutionException x) {
+                // stopped
+                ackable.scheduled.set(false);
+            }
+        }
+    }
+
+    private void flushQueues(RingHost ringHost, Ackable ackable) {
+        long retryMillis = 0;
         try {
-            rowsTaken = ackable.rowsTakenPayloads.getAndSet(Maps.newConcurrentMap());
-            pong = ackable.pongPayloads.getAndSet(null);
+            Map<VersionedPartitionName, RowsTakenPayload> rowsTaken;
+            PongPayload pong;
+            ackable.semaphore.acquire(Short.MAX_VALUE);
+            try {
+                rowsTaken = ackable.rowsTakenPayloads.getAndSet(Maps.newConcurrentMap());
+                pong = ackable.pongPayloads.getAndSet(null);
+            } finally {
+                ackable.semaphore.release(Short.MAX_VALUE);
+            }
+
+            if (!rowsTaken.isEmpty() || pong != null) {
+                if (!rowsTaken.isEmpty()) {
+                    LOG.inc("flush>rowsTaken>pow>" + UIO.chunkPower(rowsTaken.size(), 0));
+                }
+                try {
+                    ackBatch(ringHost, rowsTaken, pong);
+                    ackable.failures.set(0);
+                } catch (Exception x) {
+                    int failures = ackable.failures.incrementAndGet();
+                    if (failures > maxAckRetries) {
+                        // the peer is likely gone, every take acks its latest txId again so nothing is lost by giving up
+                        LOG.warn("Dropped {} acks for remote:{} after {} failed deliveries",
+                            new Object[] { rowsTaken.size(), ringHost, failures }, x);
+                        LOG.inc("flush>ack>dropped>" + name);
+                        ackable.failures.set(0);
+                        retryMillis = maxAckRetryMillis;
+                    } else {
+                        LOG.warn("Failed to deliver acks for remote:{}", new Object[] { ringHost }, x);
+                        requeue(ackable, rowsTaken, pong);
+                        retryMillis = Math.min(maxAckRetryMillis, minAckRetryMillis << Math.min(failures, 20));
+                    }
+                }
+                LOG.inc("flush>ack>" + name);
+            }
+        } catch (InterruptedException x) {
+            Thread.currentThread().interrupt();
+        } catch (Throwable t) {
+            LOG.error("HttpRowsTaker failure", t);
         } finally {
-            ackable.semaphore.release(Short.MAX_VALUE);
+            ackable.scheduled.set(false);
+            // anything queued while this batch was in flight goes out in the next one
+            if (!ackable.rowsTakenPayloads.get().isEmpty() || ackable.pongPayloads.get() != null) {
+                schedule(ringHost, ackable, retryMillis);
+            }
         }
-        if (rowsTaken != null && !rowsTaken.isEmpty()) {
-            LOG.inc("flush>rowsTaken>pow>" + UIO.chunkPower(rowsTaken.size(), 0));
+    }
+
+    private void requeue(Ackable ackable, Map<VersionedPartitionName, RowsTakenPayload> rowsTaken, PongPayload pong) throws InterruptedException {
+        ackable.semaphore.acquire();
+        try {
+            // acks queued since are newer and win
+            Map<VersionedPartitionName, RowsTakenPayload> current = ackable.rowsTakenPayloads.get();
+            for (Entry<VersionedPartitionName, RowsTakenPayload> entry : rowsTaken.entrySet()) {
+                current.putIfAbsent(entry.getKey(), entry.getValue());
+            }
+            if (pong != null) {
+                ackable.pongPayloads.compareAndSet(null, pong);
+            }
+        } finally {
+            ackable.semaphore.release();
         }
+    }
 
-        if (rowsTaken != null && !rowsTaken.isEmpty() || pong != null) {
-            flushExecutor.submit(() -> {
-                try {
-                    String endpoint = "/amza/ackBatch";
-                    ringClient.call("",
-                        new ConnectionDescriptorSelectiveStrategy(new HostPort[] { new HostPort(ringHost.getHost(), ringHost.getPort()) }),
-                        "ackBatch",
-                        httpClient -> {
-
-                            HttpResponse response = httpClient.postStreamableRequest(endpoint, out -> {
-                                try {
-                                    DataOutputStream dos = new DataOutputStream(out);
-                                    if (rowsTaken.isEmpty()) {
-                                        dos.write((byte) 0); // hasMore for rowsTaken stream
-                                    } else {
-                                        for (Entry<VersionedPartitionName, RowsTakenPayload> e : rowsTaken.entrySet()) {
-                                            dos.write((byte) 1); // hasMore for rowsTaken stream
-                                            VersionedPartitionName versionedPartitionName = e.getKey();
-
-                                            byte[] bytes = versionedPartitionName.toBytes();
-                                            dos.writeShort(bytes.length);
-                                            dos.write(bytes);
-
-                                            RowsTakenPayload rowsTakenPayload = e.getValue();
-                                            bytes = rowsTakenPayload.ringMember.toBytes();
-                                            dos.writeShort(bytes.length);
-                                            dos.write(bytes);
-
-                                            dos.writeLong(rowsTakenPayload.takeSessionId);
-                                            dos.writeLong(rowsTakenPayload.takeSharedKey);
-                                            dos.writeLong(rowsTakenPayload.txId);
-                                            dos.writeLong(rowsTakenPayload.leadershipToken);
-                                        }
-                                        dos.write((byte) 0); // EOS for rowsTaken stream
-                                    }
-
-                                    if (pong == null) {
-                                        dos.write((byte) 0); // has pong
-                                    } else {
-                                        dos.write((byte) 1); // has pong
-                                        byte[] bytes = pong.ringMember.toBytes();
-                                        dos.writeShort(bytes.length);
-                                        dos.write(bytes);
-
-                                        dos.writeLong(pong.takeSessionId);
-                                        dos.writeLong(pong.takeSharedKey);
-
-                                    }
-                                } catch (Exception x) {
-                                    throw new RuntimeException("Failed while streaming ackBatch.", x);
-                                } finally {
-                                    out.flush();
-                                    out.close();
-                                }
-
-                            }, null);
-
-                            if (response.getStatusCode() < 200 || response.getStatusCode() >= 300) {
-                                throw new NonSuccessStatusCodeException(response.getStatusCode(), response.getStatusReasonPhrase());
+    private void ackBatch(RingHost ringHost, Map<VersionedPartitionName, RowsTakenPayload> rowsTaken, PongPayload pong) throws Exception {
+        String endpoint = "/amza/ackBatch";
+        ringClient.call("",
+            new ConnectionDescriptorSelectiveStrategy(new HostPort[] { new HostPort(ringHost.getHost(), ringHost.getPort()) }),
+            "ackBatch",
+            httpClient -> {
+
+                HttpResponse response = httpClient.postStreamableRequest(endpoint, out -> {
+                    try {
+                        DataOutputStream dos = new DataOutputStream(out);
+                        if (rowsTaken.isEmpty()) {
+                            dos.write((byte) 0); // hasMore for rowsTaken stream
+                        } else {
+                            for (Entry<VersionedPartitionName, RowsTakenPayload> e : rowsTaken.entrySet()) {
+                                dos.write((byte) 1); // hasMore for rowsTaken stream
+                                VersionedPartitionName versionedPartitionName = e.getKey();
+
+                                byte[] bytes = versionedPartitionName.toBytes();
+                                dos.writeShort(bytes.length);
+                                dos.write(bytes);
+
+                                RowsTakenPayload rowsTakenPayload = e.getValue();
+                                bytes = rowsTakenPayload.ringMember.toBytes();
+                                dos.writeShort(bytes.length);
+                                dos.write(bytes);
+
+                                dos.writeLong(rowsTakenPayload.takeSessionId);
+                                dos.writeLong(rowsTakenPayload.takeSharedKey);
+                                dos.writeLong(rowsTakenPayload.txId);
+                                dos.writeLong(rowsTakenPayload.leadershipToken);
                             }
-                            Boolean result = (Boolean) conf.asObject(response.getResponseBody());
-                            return new ClientResponse<>(result, true);
-                        });
+                            dos.write((byte) 0); // EOS for rowsTaken stream
+                        }
+
+                        if (pong == null) {
+                            dos.write((byte) 0); // has pong
+                        } else {
+                            dos.write((byte) 1); // has pong
+                            byte[] bytes = pong.ringMember.toBytes();
+                            dos.writeShort(bytes.length);
+                            dos.write(bytes);
+
+                            dos.writeLong(pong.takeSessionId);
+                            dos.writeLong(pong.takeSharedKey);
 
-                } catch (Exception x) {
-                    LOG.warn("Failed to deliver acks for remote:{}", new Object[] { ringHost }, x);
-                } finally {
-                    ackable.running.set(false);
-                    LOG.inc("flush>version>consume>" + name);
-                    synchronized (flushVersion) {
-                        if (currentVersion != flushVersion.get()) {
-                            flushVersion.notify();
                         }
+                    } catch (Exception x) {
+                        throw new RuntimeException("Failed while streaming ackBatch.", x);
+                    } finally {
+                        out.flush();
+                        out.close();
                     }
+
+                }, null);
+
+                if (response.getStatusCode() < 200 || response.getStatusCode() >= 300) {
+                    throw new NonSuccessStatusCodeException(response.getStatusCode(), response.getStatusReasonPhrase());
                 }
+                Boolean result = (Boolean) conf.asObject(response.getResponseBody());
+                return new ClientResponse<>(result, true);
             });
-        } else {
-            ackable.running.set(false);
-            LOG.inc("flush>version>consume>" + name);
-            synchronized (flushVersion) {
-                if (currentVersion != flushVersion.get()) {
-                    flushVersion.notify();
-                }
-            }
-        }
     }
 
     //TODO include in flush?
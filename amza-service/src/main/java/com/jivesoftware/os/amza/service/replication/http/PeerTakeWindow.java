@@ -0,0 +1,78 @@
+package com.jivesoftware.os.amza.service.replication.http;
+
+/**
+ * Sizes the takes from one peer the way a congestion window would. Takes which fill the window and finish within {@code maxTakeMillis}
+ * grow it, doubling while moving the rows takes less than {@code rttMultiple} round trips and by an eighth after that, so distant peers
+ * end up with larger takes that amortize their round trip. Takes which run longer than {@code maxTakeMillis}, either because the link is
+ * slow or because the local apply is pushing back on the stream, shrink it in proportion, and failed takes halve it. The window is also
+ * capped so a take moves about {@code maxTakeBytes} at the observed bytes per row.
+ */
+class PeerTakeWindow {
+
+    private static final double ALPHA = 0.2d;
+
+    private final long minRows;
+    private final long maxTakeMillis;
+    private final long maxTakeBytes;
+    private final double rttMultiple;
+
+    private long windowRows;
+    private double rttMillis = -1;
+    private double bytesPerRow = -1;
+
+    PeerTakeWindow(long initialRows, long minRows, long maxTakeMillis, long maxTakeBytes, double rttMultiple) {
+        this.windowRows = Math.max(initialRows, minRows);
+        this.minRows = minRows;
+        this.maxTakeMillis = maxTakeMillis;
+        this.maxTakeBytes = maxTakeBytes;
+        this.rttMultiple = rttMultiple;
+    }
+
+    /**
+     * @param maxRows the most rows the caller will accept in one take
+     * @return how many rows to ask this peer for
+     */
+    synchronized long limit(long maxRows) {
+        long limit = Math.min(windowRows, maxRows);
+        if (bytesPerRow > 0) {
+            limit = Math.min(limit, (long) (maxTakeBytes / bytesPerRow));
+        }
+        return Math.max(Math.min(minRows, maxRows), limit);
+    }
+
+    synchronized void completed(long maxRows, long requestedRows, long rows, long bytes, long rttMillis, long totalMillis) {
+        this.rttMillis = ewma(this.rttMillis, rttMillis);
+        if (rows > 0) {
+            bytesPerRow = ewma(bytesPerRow, (double) bytes / rows);
+        }
+
+        if (totalMillis > maxTakeMillis) {
+            windowRows = (long) (windowRows * Math.max(0.5d, (double) maxTakeMillis / totalMillis));
+        } else if (rows >= requestedRows) {
+            // only a take the window cut short says anything about a bigger window
+            double transferMillis = Math.max(0, totalMillis - this.rttMillis);
+            if (transferMillis < rttMultiple * this.rttMillis) {
+                windowRows *= 2;
+            } else {
+                windowRows += Math.max(1, windowRows / 8);
+            }
+        }
+        windowRows = Math.max(minRows, Math.min(windowRows, maxRows));
+    }
+
+    synchronized void failed() {
+        windowRows = Math.max(minRows, windowRows / 2);
+    }
+
+    synchronized long getWindowRows() {
+        return windowRows;
+    }
+
+    synchronized long getRttMillis() {
+        return (long) rttMillis;
+    }
+
+    private static double ewma(double current, double sample) {
+        return current < 0 ? sample : current + ALPHA * (sample - current);
+    }
+}
@@ -33,6 +33,7 @@ import com.jivesoftware.os.amza.api.wal.KeyUtil;
 import com.jivesoftware.os.amza.api.wal.WALKey;
 import com.jivesoftware.os.amza.service.NotARingMemberException;
 import com.jivesoftware.os.amza.service.Partition.ScanRange;
+import com.jivesoftware.os.amza.service.replication.LeaderChangeJournal.LeaderChanges;
 import com.jivesoftware.os.amza.service.replication.http.AmzaRestClient;
 import com.jivesoftware.os.amza.service.replication.http.AmzaRestClient.RingLeader;
 import com.jivesoftware.os.amza.service.replication.http.AmzaRestClient.StateMessageCause;
@@ -203,6 +204,67 @@ public class AmzaClientRestEndpoints {
         }
     }
 
+    @POST
+    @Consumes(MediaType.APPLICATION_OCTET_STREAM)
+    @Produces(MediaType.APPLICATION_OCTET_STREAM)
+    @Path("/ringLeaders")
+    public Object ringLeaders(InputStream inputStream) {
+
+        FilerInputStream fin = new FilerInputStream(inputStream);
+        try {
+            List<PartitionName> partitionNames = Lists.newArrayList();
+            byte[] intBuffer = new byte[4];
+            while (!UIO.readBoolean(fin, "eos")) {
+                byte[] partitionNameBytes = UIO.readByteArray(fin, "partitionName", intBuffer);
+                partitionNames.add(amzaInterner.internPartitionName(partitionNameBytes, 0, partitionNameBytes.length));
+            }
+            StreamingOutput stream = os -> {
+                os.flush();
+                FilerOutputStream fos = new FilerOutputStream(new BufferedOutputStream(os, 8192));
+                try {
+                    client.ringLeaders(partitionNames, fos);
+                } catch (Exception x) {
+                    LOG.warn("Failed to stream ring leaders", x);
+                } finally {
+                    fos.close();
+                }
+            };
+            return Response.ok(stream).build();
+        } catch (Exception e) {
+            LOG.error("Failed while attempting to get ring leaders", e);
+            return ResponseHelper.INSTANCE.errorResponse(Status.INTERNAL_SERVER_ERROR, "Failed while getting ring leaders.", e);
+        } finally {
+            closeStreams(null, "ringLeaders", fin, null);
+        }
+    }
+
+    @POST
+    @Produces(MediaType.APPLICATION_OCTET_STREAM)
+    @Path("/leaderChanges/{journalId}/{sinceSequence}/{waitForChangesMillis}")
+    public Object leaderChanges(@PathParam("journalId") long journalId,
+        @PathParam("sinceSequence") long sinceSequence,
+        @PathParam("waitForChangesMillis") long waitForChangesMillis) {
+
+        try {
+            LeaderChanges leaderChanges = client.leaderChanges(journalId, sinceSequence, waitForChangesMillis);
+            StreamingOutput stream = os -> {
+                os.flush();
+                FilerOutputStream fos = new FilerOutputStream(new BufferedOutputStream(os, 8192));
+                try {
+                    client.leaderChanges(leaderChanges, fos);
+                } catch (Exception x) {
+                    LOG.warn("Failed to stream leader changes", x);
+                } finally {
+                    fos.close();
+                }
+            };
+            return Response.ok(stream).build();
+        } catch (Exception e) {
+            LOG.error("Failed while awaiting leader changes since:{}", new Object[] { sinceSequence }, e);
+            return ResponseHelper.INSTANCE.errorResponse(Status.INTERNAL_SERVER_ERROR, "Failed while awaiting leader changes.", e);
+        }
+    }
+
     @POST
     @Consumes(MediaType.APPLICATION_OCTET_STREAM)
     @Produces(MediaType.TEXT_PLAIN)
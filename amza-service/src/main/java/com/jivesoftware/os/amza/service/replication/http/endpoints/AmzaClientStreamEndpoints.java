@@ -0,0 +1,31 @@
+package com.jivesoftware.os.amza.service.replication.http.endpoints;
+
+import com.jivesoftware.os.amza.service.replication.http.AmzaClientStreamServer;
+import javax.inject.Singleton;
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+
+/**
+ * Lets clients discover the {@link AmzaClientStreamServer} port; clients fall back to http when this endpoint is absent or returns -1.
+ */
+@Singleton
+@Path("/amza/v1/stream")
+public class AmzaClientStreamEndpoints {
+
+    private final AmzaClientStreamServer streamServer;
+
+    public AmzaClientStreamEndpoints(@Context AmzaClientStreamServer streamServer) {
+        this.streamServer = streamServer;
+    }
+
+    @GET
+    @Produces(MediaType.TEXT_PLAIN)
+    @Path("/port")
+    public Response port() {
+        return Response.ok(String.valueOf(streamServer.getPort())).build();
+    }
+}
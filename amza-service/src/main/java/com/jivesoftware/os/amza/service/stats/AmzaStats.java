@@ -51,6 +51,8 @@ public class AmzaStats {
     public final IoStats updateIoStats = new IoStats();
     public final IoStats compactTombstoneIoStats = new IoStats();
 
+    public final LatencyHistogram getLatencies = new LatencyHistogram();
+
 
     public final NetStats netStats = new NetStats();
 
@@ -74,6 +76,10 @@ public class AmzaStats {
 
     public final LongAdder backPressure = new LongAdder();
     public final LongAdder pushBacks = new LongAdder();
+    public final LongAdder compactionBackoffs = new LongAdder();
+
+    public final LongAdder keyFilterNegatives = new LongAdder();
+    public final LongAdder keyFilterFalsePositives = new LongAdder();
 
     public long[] deltaStripeMergeLoaded = new long[0];
     public double[] deltaStripeLoad = new double[0];
@@ -83,6 +89,8 @@ public class AmzaStats {
 
     public final LongAdder deltaFirstCheckRemoves = new LongAdder();
     public final LongAdder deltaSecondCheckRemoves = new LongAdder();
+    public final LongAdder deltaMergeAwaitedReaders = new LongAdder();
+    public final LongAdder deltaMergeAwaitedReadersMillis = new LongAdder();
 
     public final LongAdder takes = new LongAdder();
     public final LongAdder takeExcessRows = new LongAdder();
@@ -0,0 +1,66 @@
+package com.jivesoftware.os.amza.service.stats;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counts latencies into power of two microsecond buckets so percentiles can be read without keeping samples. Percentiles are reported as
+ * the upper bound of the bucket they fall in, so they are accurate to within a factor of two.
+ */
+public class LatencyHistogram {
+
+    private static final int NUM_BUCKETS = 40;
+
+    private final AtomicLongArray counts = new AtomicLongArray(NUM_BUCKETS);
+    private final long[] drained = new long[NUM_BUCKETS];
+
+    public void record(long nanos) {
+        long micros = Math.max(1, nanos / 1_000);
+        int bucket = Math.min(NUM_BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros - 1));
+        counts.incrementAndGet(bucket);
+    }
+
+    /**
+     * @return the percentile of every latency recorded so far, or -1 if nothing has been recorded
+     */
+    public long percentileMicros(double percentile) {
+        long[] snapshot = new long[NUM_BUCKETS];
+        for (int i = 0; i < NUM_BUCKETS; i++) {
+            snapshot[i] = counts.get(i);
+        }
+        return percentileMicros(snapshot, percentile);
+    }
+
+    /**
+     * Only meant for a single consumer, which sees each latency in exactly one interval.
+     *
+     * @return the percentile of the latencies recorded since the previous drain, or -1 if nothing was recorded
+     */
+    public synchronized long drainPercentileMicros(double percentile) {
+        long[] interval = new long[NUM_BUCKETS];
+        for (int i = 0; i < NUM_BUCKETS; i++) {
+            long count = counts.get(i);
+            interval[i] = count - drained[i];
+            drained[i] = count;
+        }
+        return percentileMicros(interval, percentile);
+    }
+
+    private static long percentileMicros(long[] buckets, double percentile) {
+        long total = 0;
+        for (long count : buckets) {
+            total += count;
+        }
+        if (total == 0) {
+            return -1;
+        }
+        long rank = Math.max(1, (long) Math.ceil(total * percentile));
+        long seen = 0;
+        for (int i = 0; i < buckets.length; i++) {
+            seen += buckets[i];
+            if (seen >= rank) {
+                return 1L << i;
+            }
+        }
+        return 1L << (buckets.length - 1);
+    }
+}
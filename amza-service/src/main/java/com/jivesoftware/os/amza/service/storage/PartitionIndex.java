@@ -1,6 +1,7 @@
 package com.jivesoftware.os.amza.service.storage;
 
 import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.jivesoftware.os.amza.api.partition.PartitionName;
 import com.jivesoftware.os.amza.api.partition.PartitionProperties;
@@ -13,9 +14,11 @@ import com.jivesoftware.os.jive.utils.ordered.id.TimestampedOrderIdProvider;
 import com.jivesoftware.os.mlogger.core.MetricLogger;
 import com.jivesoftware.os.mlogger.core.MetricLoggerFactory;
 import java.io.File;
+import java.util.List;
 import java.util.Map.Entry;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 /**
  * @author jonathan.colt
@@ -54,9 +57,43 @@ public class PartitionIndex {
     }
 
     public void stop() {
+        checkpointAll();
         partitionLoadExecutorService.shutdownNow();
     }
 
+    /**
+     * Leaves a checkpoint for every open partition so the next startup only has to validate what is written after this orderly stop.
+     */
+    private void checkpointAll() {
+        long start = System.currentTimeMillis();
+        List<Future<?>> futures = Lists.newArrayList();
+        for (Entry<PartitionName, ConcurrentLHash<PartitionStore>> entry : partitionStores.entrySet()) {
+            try {
+                entry.getValue().stream((key, partitionStore) -> {
+                    futures.add(partitionLoadExecutorService.submit(() -> {
+                        try {
+                            partitionStore.checkpoint();
+                        } catch (Exception x) {
+                            LOG.warn("Failed to checkpoint partition:{} version:{}", new Object[] { entry.getKey(), key }, x);
+                        }
+                    }));
+                    return true;
+                });
+            } catch (Exception x) {
+                LOG.warn("Failed to checkpoint partition:{}", new Object[] { entry.getKey() }, x);
+            }
+        }
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (Exception x) {
+                LOG.warn("Failed while waiting for partition checkpoints", x);
+                break;
+            }
+        }
+        LOG.info("Checkpointed {} partitions in {} ms", futures.size(), System.currentTimeMillis() - start);
+    }
+
     public PartitionStore getIfPresent(VersionedPartitionName versionedPartitionName) {
         ConcurrentLHash<PartitionStore> versionedStores = partitionStores.get(versionedPartitionName.getPartitionName());
         if (versionedStores != null) {
@@ -139,6 +139,10 @@ public class PartitionStore implements RangeScannable {
         walStorage.flush(fsync);
     }
 
+    public void checkpoint() throws Exception {
+        walStorage.checkpoint();
+    }
+
     @Override
     public boolean rowScan(KeyValueStream txKeyValueStream, boolean hydrateValues) throws Exception {
         return walStorage.rowScan(txKeyValueStream, hydrateValues);
@@ -157,40 +161,28 @@ public class PartitionStore implements RangeScannable {
         int stripe,
         long disposalVersion,
         TxTransitionToCompacted transitionToCompacted) {
-        // ageInMillis: 180 days
-        // intervalMillis: 10 days
-        // Do I have anything older than (180+10) days?
-        // If so, then compact everything older than 180 days.
-        long tombstoneCheckTimestamp = 0;
         long tombstoneCompactTimestamp = 0;
-        long tombstoneCheckVersion = 0;
         long tombstoneCompactVersion = 0;
-        long ttlCheckTimestamp = 0;
         long ttlCompactTimestamp = 0;
-        long ttlCheckVersion = 0;
         long ttlCompactVersion = 0;
         PartitionProperties stackProperties = this.properties;
         if (stackProperties != null) {
             if (stackProperties.tombstoneTimestampAgeInMillis > 0) {
-                tombstoneCheckTimestamp = getTimestampId(stackProperties.tombstoneTimestampAgeInMillis + stackProperties.tombstoneTimestampIntervalMillis);
                 tombstoneCompactTimestamp = getTimestampId(stackProperties.tombstoneTimestampAgeInMillis);
             }
             if (stackProperties.tombstoneVersionAgeInMillis > 0) {
-                tombstoneCheckVersion = getVersion(stackProperties.tombstoneVersionAgeInMillis + stackProperties.tombstoneVersionIntervalMillis);
                 tombstoneCompactVersion = getVersion(stackProperties.tombstoneVersionAgeInMillis);
             }
             if (stackProperties.ttlTimestampAgeInMillis > 0) {
-                ttlCheckTimestamp = getTimestampId(stackProperties.ttlTimestampAgeInMillis + stackProperties.ttlTimestampIntervalMillis);
                 ttlCompactTimestamp = getTimestampId(stackProperties.ttlTimestampAgeInMillis);
             }
             if (stackProperties.ttlVersionAgeInMillis > 0) {
-                ttlCheckVersion = getVersion(stackProperties.ttlVersionAgeInMillis + stackProperties.ttlVersionIntervalMillis);
                 ttlCompactVersion = getVersion(stackProperties.ttlVersionAgeInMillis);
             }
         }
 
         try {
-            if (force || walStorage.compactableTombstone(tombstoneCheckTimestamp, tombstoneCheckVersion, ttlCheckTimestamp, ttlCheckVersion, disposalVersion)) {
+            if (force || compactableTombstone(stackProperties, disposalVersion)) {
                 String dir = fromBaseKey.toString();
                 if (!fromBaseKey.equals(toBaseKey)) {
                     dir = " rebalance " + fromBaseKey + " to " + toBaseKey;
@@ -213,6 +205,7 @@ public class PartitionStore implements RangeScannable {
                         disposalVersion,
                         stackProperties.maxValueSizeInIndex,
                         stripe,
+                        force,
                         expectedEndOfMerge,
                         transitionToCompacted);
                 } finally {
@@ -228,6 +221,42 @@ public class PartitionStore implements RangeScannable {
 
     }
 
+    /**
+     * @return an estimate of the bytes a tombstone compaction would reclaim, or -1 if the partition does not need one
+     */
+    public long compactableTombstoneBytes(long disposalVersion) throws Exception {
+        if (!compactableTombstone(this.properties, disposalVersion)) {
+            return -1;
+        }
+        return walStorage.reclaimableBytesEstimate();
+    }
+
+    private boolean compactableTombstone(PartitionProperties stackProperties, long disposalVersion) throws Exception {
+        // ageInMillis: 180 days
+        // intervalMillis: 10 days
+        // Do I have anything older than (180+10) days?
+        // If so, then compact everything older than 180 days.
+        long tombstoneCheckTimestamp = 0;
+        long tombstoneCheckVersion = 0;
+        long ttlCheckTimestamp = 0;
+        long ttlCheckVersion = 0;
+        if (stackProperties != null) {
+            if (stackProperties.tombstoneTimestampAgeInMillis > 0) {
+                tombstoneCheckTimestamp = getTimestampId(stackProperties.tombstoneTimestampAgeInMillis + stackProperties.tombstoneTimestampIntervalMillis);
+            }
+            if (stackProperties.tombstoneVersionAgeInMillis > 0) {
+                tombstoneCheckVersion = getVersion(stackProperties.tombstoneVersionAgeInMillis + stackProperties.tombstoneVersionIntervalMillis);
+            }
+            if (stackProperties.ttlTimestampAgeInMillis > 0) {
+                ttlCheckTimestamp = getTimestampId(stackProperties.ttlTimestampAgeInMillis + stackProperties.ttlTimestampIntervalMillis);
+            }
+            if (stackProperties.ttlVersionAgeInMillis > 0) {
+                ttlCheckVersion = getVersion(stackProperties.ttlVersionAgeInMillis + stackProperties.ttlVersionIntervalMillis);
+            }
+        }
+        return walStorage.compactableTombstone(tombstoneCheckTimestamp, tombstoneCheckVersion, ttlCheckTimestamp, ttlCheckVersion, disposalVersion);
+    }
+
     private long getTimestampId(long timeAgoInMillis) {
         return System.currentTimeMillis() - timeAgoInMillis;
     }
@@ -0,0 +1,155 @@
+package com.jivesoftware.os.amza.service.storage;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * The state a {@link WALStorage} had verified through the end of its WAL at an orderly shutdown. The next open seeds its load from the
+ * checkpoint and only validates the rows written beyond {@link #endFp}, so startup I/O scales with what was written since rather than with
+ * the size of the WAL.
+ * <p>
+ * The checkpoint names the row which ends at {@link #endFp} and is only trusted while the WAL still frames that same row there.
+ */
+public class WALCheckpoint {
+
+    private static final byte VERSION = 1;
+
+    public final long endFp;
+    public final long lastRowFp;
+    public final long lastRowTxId;
+    public final long highestTxId;
+    public final long oldestTimestamp;
+    public final long oldestVersion;
+    public final long oldestTombstonedTimestamp;
+    public final long oldestTombstonedVersion;
+    public final long keyCount;
+    public final long clobberCount;
+    public final long fpOfLastLeap;
+    public final long updatesSinceLastLeap;
+    public final boolean hasEndOfMergeMarker;
+    public final long[] keyHighwaterTimestamps;
+
+    public WALCheckpoint(long endFp,
+        long lastRowFp,
+        long lastRowTxId,
+        long highestTxId,
+        long oldestTimestamp,
+        long oldestVersion,
+        long oldestTombstonedTimestamp,
+        long oldestTombstonedVersion,
+        long keyCount,
+        long clobberCount,
+        long fpOfLastLeap,
+        long updatesSinceLastLeap,
+        boolean hasEndOfMergeMarker,
+        long[] keyHighwaterTimestamps) {
+        this.endFp = endFp;
+        this.lastRowFp = lastRowFp;
+        this.lastRowTxId = lastRowTxId;
+        this.highestTxId = highestTxId;
+        this.oldestTimestamp = oldestTimestamp;
+        this.oldestVersion = oldestVersion;
+        this.oldestTombstonedTimestamp = oldestTombstonedTimestamp;
+        this.oldestTombstonedVersion = oldestTombstonedVersion;
+        this.keyCount = keyCount;
+        this.clobberCount = clobberCount;
+        this.fpOfLastLeap = fpOfLastLeap;
+        this.updatesSinceLastLeap = updatesSinceLastLeap;
+        this.hasEndOfMergeMarker = hasEndOfMergeMarker;
+        this.keyHighwaterTimestamps = keyHighwaterTimestamps;
+    }
+
+    /**
+     * @param lastRow the fp and txId of the row which ends at {@link #endFp}, as framed by the WAL being opened
+     */
+    public boolean matches(long[] lastRow) {
+        return lastRow != null && lastRow[0] == lastRowFp && lastRow[1] == lastRowTxId;
+    }
+
+    public static void write(File file, WALCheckpoint checkpoint) throws IOException {
+        File tmp = new File(file.getParentFile(), file.getName() + ".tmp");
+        try (FileOutputStream fos = new FileOutputStream(tmp)) {
+            DataOutputStream out = new DataOutputStream(fos);
+            out.writeByte(VERSION);
+            out.writeLong(checkpoint.endFp);
+            out.writeLong(checkpoint.lastRowFp);
+            out.writeLong(checkpoint.lastRowTxId);
+            out.writeLong(checkpoint.highestTxId);
+            out.writeLong(checkpoint.oldestTimestamp);
+            out.writeLong(checkpoint.oldestVersion);
+            out.writeLong(checkpoint.oldestTombstonedTimestamp);
+            out.writeLong(checkpoint.oldestTombstonedVersion);
+            out.writeLong(checkpoint.keyCount);
+            out.writeLong(checkpoint.clobberCount);
+            out.writeLong(checkpoint.fpOfLastLeap);
+            out.writeLong(checkpoint.updatesSinceLastLeap);
+            out.writeBoolean(checkpoint.hasEndOfMergeMarker);
+            long[] keyHighwaterTimestamps = checkpoint.keyHighwaterTimestamps;
+            out.writeInt(keyHighwaterTimestamps == null ? -1 : keyHighwaterTimestamps.length);
+            if (keyHighwaterTimestamps != null) {
+                for (long keyHighwaterTimestamp : keyHighwaterTimestamps) {
+                    out.writeLong(keyHighwaterTimestamp);
+                }
+            }
+            out.flush();
+            fos.getFD().sync();
+        }
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * @return the persisted checkpoint, or null if there is none
+     */
+    public static WALCheckpoint read(File file) throws IOException {
+        if (!file.exists()) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 64 * 1024))) {
+            if (in.readByte() != VERSION) {
+                return null;
+            }
+            long endFp = in.readLong();
+            long lastRowFp = in.readLong();
+            long lastRowTxId = in.readLong();
+            long highestTxId = in.readLong();
+            long oldestTimestamp = in.readLong();
+            long oldestVersion = in.readLong();
+            long oldestTombstonedTimestamp = in.readLong();
+            long oldestTombstonedVersion = in.readLong();
+            long keyCount = in.readLong();
+            long clobberCount = in.readLong();
+            long fpOfLastLeap = in.readLong();
+            long updatesSinceLastLeap = in.readLong();
+            boolean hasEndOfMergeMarker = in.readBoolean();
+            int numKeyHighwaterTimestamps = in.readInt();
+            long[] keyHighwaterTimestamps = null;
+            if (numKeyHighwaterTimestamps >= 0) {
+                keyHighwaterTimestamps = new long[numKeyHighwaterTimestamps];
+                for (int i = 0; i < numKeyHighwaterTimestamps; i++) {
+                    keyHighwaterTimestamps[i] = in.readLong();
+                }
+            }
+            return new WALCheckpoint(endFp,
+                lastRowFp,
+                lastRowTxId,
+                highestTxId,
+                oldestTimestamp,
+                oldestVersion,
+                oldestTombstonedTimestamp,
+                oldestTombstonedVersion,
+                keyCount,
+                clobberCount,
+                fpOfLastLeap,
+                updatesSinceLastLeap,
+                hasEndOfMergeMarker,
+                keyHighwaterTimestamps);
+        }
+    }
+}
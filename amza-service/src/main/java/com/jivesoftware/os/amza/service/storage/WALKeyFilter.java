@@ -0,0 +1,104 @@
+package com.jivesoftware.os.amza.service.storage;
+
+import com.google.common.hash.BloomFilter;
+import com.google.common.hash.Funnel;
+import com.jivesoftware.os.amza.api.wal.WALKey;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * A bloom filter over the prefixed keys of a single WAL, so lookups for keys which were never written can skip the index. Keys are only ever
+ * added, which is why the owning {@link WALStorage} replaces the filter once a compaction has dropped keys or the filter has outgrown the
+ * number of keys it was sized for.
+ * <p>
+ * The persisted form records the WAL length and highest txId it covers, and is only trusted when the WAL still matches both.
+ */
+public class WALKeyFilter {
+
+    private static final byte VERSION = 1;
+
+    private static final Funnel<WALKey> FUNNEL = (walKey, into) -> {
+        if (walKey.prefix == null) {
+            into.putInt(-1);
+        } else {
+            into.putInt(walKey.prefix.length);
+            into.putBytes(walKey.prefix);
+        }
+        into.putBytes(walKey.key);
+    };
+
+    private final BloomFilter<WALKey> bloomFilter;
+    private final long expectedKeys;
+    private volatile long puts;
+
+    private WALKeyFilter(BloomFilter<WALKey> bloomFilter, long expectedKeys, long puts) {
+        this.bloomFilter = bloomFilter;
+        this.expectedKeys = expectedKeys;
+        this.puts = puts;
+    }
+
+    public static WALKeyFilter create(long expectedKeys, double fpp) {
+        return new WALKeyFilter(BloomFilter.create(FUNNEL, expectedKeys, fpp), expectedKeys, 0);
+    }
+
+    public long getExpectedKeys() {
+        return expectedKeys;
+    }
+
+    public boolean mightContain(byte[] prefix, byte[] key) {
+        // the volatile read makes every completed put visible
+        return puts != 0 && bloomFilter.mightContain(new WALKey(prefix, key));
+    }
+
+    public synchronized void put(byte[] prefix, byte[] key) {
+        bloomFilter.put(new WALKey(prefix, key));
+        puts++;
+    }
+
+    public synchronized byte[] toBytes(long walLength, long highestTxId) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(VERSION);
+        out.writeLong(walLength);
+        out.writeLong(highestTxId);
+        out.writeLong(expectedKeys);
+        out.writeLong(puts);
+        bloomFilter.writeTo(out);
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    public static void write(File file, byte[] bytes) throws IOException {
+        File tmp = new File(file.getParentFile(), file.getName() + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(tmp)) {
+            out.write(bytes);
+            out.getFD().sync();
+        }
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * @return the persisted filter, or null if there is none or it does not cover exactly this WAL
+     */
+    public static WALKeyFilter read(File file, long walLength, long highestTxId) throws IOException {
+        if (!file.exists()) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 64 * 1024))) {
+            if (in.readByte() != VERSION || in.readLong() != walLength || in.readLong() != highestTxId) {
+                return null;
+            }
+            long expectedKeys = in.readLong();
+            long puts = in.readLong();
+            return new WALKeyFilter(BloomFilter.readFrom(in, FUNNEL), expectedKeys, puts);
+        }
+    }
+}
@@ -58,6 +58,7 @@ import com.jivesoftware.os.mlogger.core.MetricLoggerFactory;
 import java.io.File;
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.LinkedHashMap;
@@ -65,6 +66,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
@@ -78,6 +80,7 @@ public class WALStorage<I extends WALIndex> implements RangeScannable {
     private static final MetricLogger LOG = MetricLoggerFactory.getLogger();
     private static final int numTickleMeElmaphore = 1024; // TODO config
     private static final int numKeyHighwaterStripes = 1024; // TODO expose to config
+    private static final long keyFilterMinExpectedKeys = 64;
 
     private final AmzaStats amzaStats;
     private final VersionedPartitionName versionedPartitionName;
@@ -103,12 +106,22 @@ public class WALStorage<I extends WALIndex> implements RangeScannable {
     private final AtomicLong highestTxId = new AtomicLong(-1);
     private final AtomicBoolean hasEndOfMergeMarker = new AtomicBoolean(false);
     private final int tombstoneCompactionFactor;
+    private final double keyFilterFpp;
+    private final Executor keyFilterRebuildExecutor;
 
     private final ThreadLocal<Integer> reentrant = new ReentrantThreadLocal();
     private final AtomicBoolean sick = new AtomicBoolean();
 
     private volatile long mergedTxId = -1;
 
+    private final Object keyFilterLock = new Object();
+    private final AtomicBoolean keyFilterRebuilding = new AtomicBoolean();
+    private final AtomicBoolean keyFilterRebuildQueued = new AtomicBoolean();
+    private volatile WALKeyFilter keyFilter;
+    private volatile WALKeyFilter rebuildingKeyFilter;
+    private volatile File keyFilterBaseKey;
+    private volatile boolean keyFilterDirty;
+
     static class ReentrantThreadLocal extends ThreadLocal<Integer> {
 
         @Override
@@ -126,7 +139,9 @@ public class WALStorage<I extends WALIndex> implements RangeScannable {
         WALIndexProvider<I> walIndexProvider,
         SickPartitions sickPartitions,
         boolean hardFsyncBeforeLeapBoundary,
-        int tombstoneCompactionFactor) {
+        int tombstoneCompactionFactor,
+        double keyFilterFpp,
+        Executor keyFilterRebuildExecutor) {
         this.amzaStats = amzaStats;
 
         this.versionedPartitionName = versionedPartitionName;
@@ -138,6 +153,8 @@ public class WALStorage<I extends WALIndex> implements RangeScannable {
         this.sickPartitions = sickPartitions;
         this.hardFsyncBeforeLeapBoundary = hardFsyncBeforeLeapBoundary;
         this.tombstoneCompactionFactor = tombstoneCompactionFactor;
+        this.keyFilterFpp = keyFilterFpp;
+        this.keyFilterRebuildExecutor = keyFilterRebuildExecutor;
         this.stripedKeyHighwaterTimestamps = null;
     }
 
@@ -189,6 +206,12 @@ public class WALStorage<I extends WALIndex> implements RangeScannable {
         acquireAll();
         try {
             walTx.delete(baseKey);
+            synchronized (keyFilterLock) {
+                keyFilter = null;
+                keyFilterBaseKey = null;
+            }
+            Files.deleteIfExists(keyFilterFile(baseKey).toPath());
+            Files.deleteIfExists(checkpointFile(baseKey).toPath());
             I wali = walIndex.get();
             if (wali != null) {
                 wali.delete();
@@ -240,6 +263,7 @@ public class WALStorage<I extends WALIndex> implements RangeScannable {
         long disposalVersion,
         int maxValueSizeInIndex,
         int stripe,
+        boolean force,
         boolean expectedEndOfMerge,
         TxTransitionToCompacted transitionToCompacted) throws Exception {
 
@@ -258,11 +282,15 @@ public class WALStorage<I extends WALIndex> implements RangeScannable {
             ttlVersion,
             disposalVersion,
             got,
-            stripe);
+            stripe,
+            force);
+        if (compact == null) {
+            return 0;
+        }
 
         long[] compactKeyHighwaterTimestamps = findKeyHighwaterTimestamps(ioStats);
 
-        return transitionToCompacted.tx((completedCompactCommit) -> {
+        long sizeAfterCompaction = transitionToCompacted.tx((completedCompactCommit) -> {
 
             acquireAll();
             try {
@@ -320,6 +348,22 @@ public class WALStorage<I extends WALIndex> implements RangeScannable {
                 releaseAll();
             }
         });
+
+        if (sizeAfterCompaction >= 0) {
+            // the persisted filter describes the WAL we just replaced, and the live one still holds every dropped key
+            Files.deleteIfExists(keyFilterFile(fromBaseKey).toPath());
+            Files.deleteIfExists(checkpointFile(fromBaseKey).toPath());
+            keyFilterBaseKey = toBaseKey;
+            walCompactionStats.start("rebuildKeyFilter");
+            try {
+                rebuildKeyFilter();
+            } catch (Exception x) {
+                LOG.warn("Failed to rebuild key filter for {} after compaction", new Object[] { versionedPartitionName }, x);
+            } finally {
+                walCompactionStats.stop("rebuildKeyFilter");
+            }
+        }
+        return sizeAfterCompaction;
     }
 
     public void load(IoStats ioStats,
@@ -354,6 +398,16 @@ public class WALStorage<I extends WALIndex> implements RangeScannable {
                 throw new IllegalStateException("Load should have completed before highestTxId:" + initialHighestTxId + " is modified.");
             }
 
+            WALCheckpoint checkpoint = null;
+            if (!recovery && !truncateToEndOfMergeMarker) {
+                try {
+                    checkpoint = WALCheckpoint.read(checkpointFile(baseKey));
+                } catch (Exception x) {
+                    LOG.warn("Ignoring unreadable checkpoint for {}", new Object[] { versionedPartitionName }, x);
+                }
+            }
+            WALCheckpoint loadCheckpoint = checkpoint;
+
             walTx.open(baseKey, io -> {
                 boolean[] endOfMergeMarker = { false };
                 long[] lastTxId = { -1 };
@@ -370,9 +424,39 @@ public class WALStorage<I extends WALIndex> implements RangeScannable {
                 long[] loadClobberCount = { 0 };
                 long[] loadKeyHighwaterTimestamps = versionedPartitionName.getPartitionName().isSystemPartition() ? new long[numKeyHighwaterStripes] : null;
 
+                long fromFp = 0;
+                if (loadCheckpoint != null
+                    && loadCheckpoint.endFp <= io.sizeInBytes()
+                    && loadCheckpoint.matches(io.rowEndingAt(loadCheckpoint.endFp))
+                    && (loadKeyHighwaterTimestamps == null || (loadCheckpoint.keyHighwaterTimestamps != null
+                    && loadCheckpoint.keyHighwaterTimestamps.length == loadKeyHighwaterTimestamps.length))) {
+
+                    fromFp = loadCheckpoint.endFp;
+                    endOfMergeMarker[0] = loadCheckpoint.hasEndOfMergeMarker;
+                    lastTxId[0] = loadCheckpoint.highestTxId;
+                    fpOfLastLeap[0] = loadCheckpoint.fpOfLastLeap;
+                    updatesSinceLastLeap[0] = loadCheckpoint.updatesSinceLastLeap;
+                    loadOldestTimestamp[0] = loadCheckpoint.oldestTimestamp;
+                    loadOldestVersion[0] = loadCheckpoint.oldestVersion;
+                    loadOldestTombstonedTimestamp[0] = loadCheckpoint.oldestTombstonedTimestamp;
+                    loadOldestTombstonedVersion[0] = loadCheckpoint.oldestTombstonedVersion;
+                    loadKeyCount[0] = loadCheckpoint.keyCount;
+                    loadClobberCount[0] = loadCheckpoint.clobberCount;
+                    if (loadKeyHighwaterTimestamps != null) {
+                        System.arraycopy(loadCheckpoint.keyHighwaterTimestamps, 0, loadKeyHighwaterTimestamps, 0, loadKeyHighwaterTimestamps.length);
+                    }
+                    LOG.info("Loading {} from checkpoint at fp:{}, validating {} bytes of tail", versionedPartitionName, fromFp,
+                        io.sizeInBytes() - fromFp);
+                    LOG.inc("load>checkpoint");
+                } else if (loadCheckpoint != null) {
+                    LOG.warn("Ignoring checkpoint at fp:{} which no longer matches the WAL for {}", loadCheckpoint.endFp, versionedPartitionName);
+                }
+
                 long[] truncate = { 0 };
+                long validateFromFp = fromFp;
                 primaryRowMarshaller.fromRows(fpRowStream -> {
                     io.validate(ioStats,
+                        validateFromFp,
                         backwardScan,
                         truncateToEndOfMergeMarker,
                         (rowFP, rowTxId, rowType, row) -> {
@@ -507,9 +591,16 @@ public class WALStorage<I extends WALIndex> implements RangeScannable {
                 return null;
             });
 
+            if (checkpoint != null) {
+                // a checkpoint only describes the WAL as it was left by an orderly shutdown
+                Files.deleteIfExists(checkpointFile(baseKey).toPath());
+            }
+
             I index = walTx.openIndex(ioStats, baseKey, walIndexProvider, versionedPartitionName, maxValueSizeInIndex, stripe);
             walIndex.compareAndSet(null, index);
 
+            loadKeyFilter(baseKey);
+
         } catch (Exception e) {
             LOG.error("Partition {} could not be opened, intervention is required, partition will be parked, recovery:{}",
                 new Object[] { versionedPartitionName, recovery }, e);
@@ -564,6 +655,186 @@ public class WALStorage<I extends WALIndex> implements RangeScannable {
             return null;
         });
         hasEndOfMergeMarker.set(true);
+
+        // the filter is only persisted by checkpoint, since any later write invalidates the persisted copy anyway
+        WALKeyFilter filter = keyFilter;
+        if ((filter == null || keyCount.get() > filter.getExpectedKeys()) && keyFilterRebuildQueued.compareAndSet(false, true)) {
+            keyFilterRebuildExecutor.execute(() -> {
+                try {
+                    rebuildKeyFilter();
+                } catch (Exception x) {
+                    LOG.warn("Failed to rebuild key filter for {}", new Object[] { versionedPartitionName }, x);
+                } finally {
+                    keyFilterRebuildQueued.set(false);
+                }
+            });
+        }
+    }
+
+    private File keyFilterFile(File baseKey) throws IOException {
+        return new File(baseKey, versionedPartitionName.toBase64() + ".bloom");
+    }
+
+    private File checkpointFile(File baseKey) throws IOException {
+        return new File(baseKey, versionedPartitionName.toBase64() + ".checkpoint");
+    }
+
+    /**
+     * Records the state verified through the current end of the WAL so the next open only validates rows written after it. Meant for an
+     * orderly shutdown, since the next load consumes the checkpoint.
+     */
+    public void checkpoint() throws Exception {
+        File baseKey = keyFilterBaseKey; // tracks the live base key across compactions
+        if (baseKey == null || !baseKey.isDirectory() || sick.get()) {
+            return;
+        }
+        acquireAll();
+        try {
+            WALCheckpoint checkpoint = walTx.tx(io -> {
+                io.flush(true);
+                long endFp = io.sizeInBytes();
+                long[] lastRow = io.rowEndingAt(endFp);
+                if (lastRow == null) {
+                    return null;
+                }
+                long[] keyHighwaterTimestamps = null;
+                if (versionedPartitionName.getPartitionName().isSystemPartition()) {
+                    long[] striped = stripedKeyHighwaterTimestamps;
+                    if (striped == null) {
+                        return null;
+                    }
+                    keyHighwaterTimestamps = striped.clone();
+                }
+                return new WALCheckpoint(endFp,
+                    lastRow[0],
+                    lastRow[1],
+                    highestTxId.get(),
+                    oldestTimestamp.get(),
+                    oldestVersion.get(),
+                    oldestTombstonedTimestamp.get(),
+                    oldestTombstonedVersion.get(),
+                    keyCount.get(),
+                    clobberCount.get(),
+                    io.getFpOfLastLeap(),
+                    io.getUpdatesSinceLeap(),
+                    hasEndOfMergeMarker.get(),
+                    keyHighwaterTimestamps);
+            });
+            if (checkpoint != null) {
+                WALCheckpoint.write(checkpointFile(baseKey), checkpoint);
+                persistKeyFilter(checkpoint.highestTxId);
+            }
+        } finally {
+            releaseAll();
+        }
+    }
+
+    private void loadKeyFilter(File baseKey) throws Exception {
+        keyFilterBaseKey = baseKey;
+        WALKeyFilter loaded = null;
+        try {
+            loaded = WALKeyFilter.read(keyFilterFile(baseKey), walTx.length(), highestTxId.get());
+        } catch (Exception x) {
+            LOG.warn("Ignoring unreadable key filter for {}", new Object[] { versionedPartitionName }, x);
+        }
+        if (loaded != null) {
+            keyFilter = loaded;
+            keyFilterDirty = false;
+        } else if (versionedPartitionName.getPartitionName().isSystemPartition()) {
+            // system partitions are small and never see an end of merge, so build them up front
+            WALKeyFilter built = WALKeyFilter.create(Math.max(keyFilterMinExpectedKeys, keyCount.get() * 2), keyFilterFpp);
+            WALIndex wali = walIndex.get();
+            if (wali != null) {
+                wali.rowScan((prefix, key, timestamp, tombstoned, version, fp, hasValue, value) -> {
+                    built.put(prefix, key);
+                    return true;
+                }, false);
+            }
+            keyFilter = built;
+            keyFilterDirty = true;
+        } else {
+            // built in the background after the next end of merge so neither startup nor the merge pays for a full index scan
+            keyFilter = null;
+        }
+    }
+
+    private void rebuildKeyFilter() throws Exception {
+        if (!keyFilterRebuilding.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            WALKeyFilter rebuilding = WALKeyFilter.create(Math.max(keyFilterMinExpectedKeys, keyCount.get() * 2), keyFilterFpp);
+            // updates add their keys to the filter before indexing them, so wait out any which may have missed the new filter
+            acquireAll();
+            try {
+                rebuildingKeyFilter = rebuilding;
+            } finally {
+                releaseAll();
+            }
+            boolean rebuilt = false;
+            try {
+                acquireOne();
+                try {
+                    WALIndex wali = walIndex.get();
+                    if (wali != null) {
+                        wali.rowScan((prefix, key, timestamp, tombstoned, version, fp, hasValue, value) -> {
+                            rebuilding.put(prefix, key);
+                            return true;
+                        }, false);
+                        rebuilt = true;
+                    }
+                } finally {
+                    releaseOne();
+                }
+            } finally {
+                synchronized (keyFilterLock) {
+                    if (rebuilt) {
+                        keyFilter = rebuilding;
+                        keyFilterDirty = true;
+                    }
+                    rebuildingKeyFilter = null;
+                }
+            }
+        } finally {
+            keyFilterRebuilding.set(false);
+        }
+    }
+
+    private void persistKeyFilter(long highestTxId) throws Exception {
+        File baseKey = keyFilterBaseKey;
+        if (!keyFilterDirty || baseKey == null || !baseKey.isDirectory()) {
+            return;
+        }
+        byte[] bytes;
+        synchronized (keyFilterLock) {
+            WALKeyFilter filter = keyFilter;
+            if (filter == null) {
+                return;
+            }
+            // holding the lock keeps every row below this length covered by the filter
+            bytes = filter.toBytes(walTx.length(), highestTxId);
+            keyFilterDirty = false;
+        }
+        WALKeyFilter.write(keyFilterFile(baseKey), bytes);
+    }
+
+    private void addToKeyFilter(Iterable<WALKey> keys) {
+        synchronized (keyFilterLock) {
+            WALKeyFilter filter = keyFilter;
+            WALKeyFilter rebuilding = rebuildingKeyFilter;
+            if (filter == null && rebuilding == null) {
+                return;
+            }
+            for (WALKey walKey : keys) {
+                if (filter != null) {
+                    filter.put(walKey.prefix, walKey.key);
+                }
+                if (rebuilding != null) {
+                    rebuilding.put(walKey.prefix, walKey.key);
+                }
+            }
+            keyFilterDirty = true;
+        }
     }
 
     private static final int EOM_VERSION_INDEX = 0;
@@ -735,6 +1006,8 @@ public class WALStorage<I extends WALIndex> implements RangeScannable {
             } else {
                 int size = apply.size();
                 long[] keyHighwaterTimestamps = findKeyHighwaterTimestamps(ioStats);
+                // before the rows hit the WAL, so a persisted filter always covers the WAL it was taken against
+                addToKeyFilter(apply.keySet());
                 List<WALIndexable> indexables = new ArrayList<>(size);
                 walTx.tx((io) -> {
                     int estimatedSizeInBytes = 0;
@@ -922,8 +1195,16 @@ public class WALStorage<I extends WALIndex> implements RangeScannable {
             if (wali == null) {
                 return null;
             }
+            WALKeyFilter filter = keyFilter;
+            if (filter != null && !filter.mightContain(prefix, key)) {
+                amzaStats.keyFilterNegatives.increment();
+                return null;
+            }
             TimestampedValue[] values = new TimestampedValue[1];
             wali.getPointer(prefix, key, (_prefix, _key, timestamp, tombstoned, version, fp, hasValue, value) -> {
+                if (filter != null && fp == -1 && !hasValue) {
+                    amzaStats.keyFilterFalsePositives.increment();
+                }
                 if ((fp != -1 || hasValue) && !tombstoned) {
                     if (!hasValue) {
                         byte[] hydrateRowIndexValue = hydrateRowIndexValue(fp);
@@ -944,7 +1225,15 @@ public class WALStorage<I extends WALIndex> implements RangeScannable {
         acquireOne();
         try {
             WALIndex wali = walIndex.get();
-            return wali == null || wali.getPointers(prefix, keys,
+            WALKeyFilter filter = keyFilter;
+            UnprefixedWALKeys filteredKeys = filter == null ? keys : keyStream -> keys.consume(key -> {
+                if (filter.mightContain(prefix, key)) {
+                    return keyStream.stream(key);
+                }
+                amzaStats.keyFilterNegatives.increment();
+                return keyValueStream.stream(prefix, key, null, -1, false, -1);
+            });
+            return wali == null || wali.getPointers(prefix, filteredKeys,
                 (_prefix, key, pointerTimestamp, pointerTombstoned, pointerVersion, pointerFp, pointerHasValue, pointerValue) -> {
                     if (pointerFp != -1 || pointerHasValue) {
                         byte[] value;
@@ -967,6 +1256,9 @@ public class WALStorage<I extends WALIndex> implements RangeScannable {
                         );
 
                     } else {
+                        if (filter != null) {
+                            amzaStats.keyFilterFalsePositives.increment();
+                        }
                         return keyValueStream.stream(prefix, key, null, -1, false, -1);
                     }
                 });
@@ -980,11 +1272,12 @@ public class WALStorage<I extends WALIndex> implements RangeScannable {
         try {
             WALIndex wali = walIndex.get();
             long[] keyHighwaterTimestamps = findKeyHighwaterTimestamps(ioStats);
+            WALKeyFilter filter = keyFilter;
             return wali == null || wali.getPointers(
                 indexStream -> keyValues.consume(
                     (prefix, key, value, valueTimestamp, valueTombstone, valueVersion) -> {
                         long largestTimestamp = getLargestTimestampForKeyStripe(prefix, key, keyHighwaterTimestamps);
-                        if (valueTimestamp > largestTimestamp) {
+                        if (valueTimestamp > largestTimestamp || filter != null && !filter.mightContain(prefix, key)) {
                             return stream.stream(prefix, key, value, valueTimestamp, valueTombstone, valueVersion, -1, false, -1, -1, false, null);
                         } else {
                             return indexStream.stream(prefix, key, value, valueTimestamp, valueTombstone, valueVersion);
@@ -1000,7 +1293,24 @@ public class WALStorage<I extends WALIndex> implements RangeScannable {
         acquireOne();
         try {
             WALIndex wali = walIndex.get();
-            return wali != null && wali.containsKeys(prefix, keys, stream);
+            WALKeyFilter filter = keyFilter;
+            if (wali == null || filter == null) {
+                return wali != null && wali.containsKeys(prefix, keys, stream);
+            }
+            return wali.containsKeys(prefix,
+                keyStream -> keys.consume(key -> {
+                    if (filter.mightContain(prefix, key)) {
+                        return keyStream.stream(key);
+                    }
+                    amzaStats.keyFilterNegatives.increment();
+                    return stream.stream(prefix, key, false, -1, -1);
+                }),
+                (_prefix, key, contained, timestamp, version) -> {
+                    if (!contained) {
+                        amzaStats.keyFilterFalsePositives.increment();
+                    }
+                    return stream.stream(_prefix, key, contained, timestamp, version);
+                });
         } finally {
             releaseOne();
         }
@@ -1091,12 +1401,14 @@ public class WALStorage<I extends WALIndex> implements RangeScannable {
         try {
             long[] excessRows = new long[1];
             boolean readFromTransactionId = walIndex.get() == null || walTx.readFromTransactionId(sinceTransactionId,
-                (offset, reader) -> reader.scan(ioStats,
+                (offset, reader) -> reader.scanBuffers(ioStats,
                     offset,
-                    false,
                     (rowPointer, rowTxId, rowType, row) -> {
                         if (rowType != RowType.system && rowTxId > sinceTransactionId) {
-                            return rowStream.row(rowPointer, rowTxId, rowType, row);
+                            // only rows we hand out are copied off the mapped WAL
+                            byte[] rowBytes = new byte[row.remaining()];
+                            row.get(rowBytes);
+                            return rowStream.row(rowPointer, rowTxId, rowType, rowBytes);
                         } else {
                             excessRows[0]++;
                         }
@@ -1187,6 +1499,14 @@ public class WALStorage<I extends WALIndex> implements RangeScannable {
         return clobberCount.get();
     }
 
+    /**
+     * Assumes clobbered rows are about the same size as live rows.
+     */
+    public long reclaimableBytesEstimate() throws Exception {
+        long clobbers = clobberCount.get();
+        return (long) (walTx.length() * ((double) (clobbers + 1) / (keyCount.get() + clobbers + 1)));
+    }
+
     public long highestTxId() {
         return highestTxId.get();
     }
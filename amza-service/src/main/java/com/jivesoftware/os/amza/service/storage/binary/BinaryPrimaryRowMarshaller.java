@@ -22,14 +22,56 @@ import com.jivesoftware.os.amza.api.stream.TxKeyValueStream;
 import com.jivesoftware.os.amza.api.stream.UnprefixedTxKeyValueStream;
 import com.jivesoftware.os.amza.api.wal.PrimaryRowMarshaller;
 import com.jivesoftware.os.amza.api.wal.WALKey;
+import gnu.trove.map.hash.TIntObjectHashMap;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.zip.Adler32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
 import org.xerial.snappy.Snappy;
 
 public class BinaryPrimaryRowMarshaller implements PrimaryRowMarshaller {
 
+    private static final int DEFLATE_HEADER_SIZE = 8 + 1 + 8 + 4 + 4 + 4;
+
+    private static final ThreadLocal<Deflater> DEFLATER = ThreadLocal.withInitial(() -> new Deflater(Deflater.BEST_SPEED));
+    private static final ThreadLocal<Inflater> INFLATER = ThreadLocal.withInitial(Inflater::new);
+
+    private final byte[] deflateDictionary;
+    private final TIntObjectHashMap<byte[]> deflateDictionaries = new TIntObjectHashMap<>();
+
+    /**
+     * @param deflateDictionaries preset dictionaries for {@link RowType#deflate_primary}. The first is used when writing, all of them (keyed by their
+     * adler32 which deflate records in each block) remain readable so a dictionary can be retrained without rewriting existing rows.
+     */
+    public BinaryPrimaryRowMarshaller(byte[]... deflateDictionaries) {
+        this.deflateDictionary = deflateDictionaries.length > 0 ? deflateDictionaries[0] : null;
+        for (byte[] dictionary : deflateDictionaries) {
+            // deflate identifies a preset dictionary by its adler32
+            Adler32 adler32 = new Adler32();
+            adler32.update(dictionary, 0, dictionary.length);
+            this.deflateDictionaries.put((int) adler32.getValue(), dictionary);
+        }
+    }
+
+    /**
+     * Reads the preset deflate dictionaries at the given paths, in the order the constructor expects them.
+     */
+    public static byte[][] readDeflateDictionaries(String... paths) throws IOException {
+        byte[][] dictionaries = new byte[paths.length][];
+        for (int i = 0; i < paths.length; i++) {
+            dictionaries[i] = Files.readAllBytes(Paths.get(paths[i].trim()));
+        }
+        return dictionaries;
+    }
+
     @Override
     public byte[] toRow(RowType rowType, byte[] pk, byte[] value, long timestamp, boolean tombstoned, long version) throws Exception {
-
+        if (rowType == RowType.deflate_primary) {
+            return toDeflatedRowBytes(pk, value, timestamp, tombstoned, version);
+        }
         return toRowBytes(compress(rowType, pk), compress(rowType, value), timestamp, tombstoned, version);
     }
 
@@ -56,12 +98,96 @@ public class BinaryPrimaryRowMarshaller implements PrimaryRowMarshaller {
         return bytes;
     }
 
-    @Override
-    public byte[] convert(RowType fromType, byte[] row, RowType toType) throws Exception {
-        if (fromType == toType) {
-            return row;
+    /**
+     * Rows are framed as timestamp, tombstone, version, valueLength, pkLength, blockLength followed by one deflate block holding the value and
+     * then the pk, so small rows compress against each other's shared structure through the dictionary and a value read can stop inflating
+     * before it reaches the pk.
+     */
+    private byte[] toDeflatedRowBytes(byte[] pk, byte[] value, long timestamp, boolean tombstoned, long version) throws IOException {
+        int valueLength = value == null ? -1 : value.length;
+        byte[] block = new byte[Math.max(valueLength, 0) + pk.length];
+        if (value != null) {
+            System.arraycopy(value, 0, block, 0, value.length);
         }
+        System.arraycopy(pk, 0, block, Math.max(valueLength, 0), pk.length);
+
+        Deflater deflater = DEFLATER.get();
+        deflater.reset();
+        if (deflateDictionary != null) {
+            deflater.setDictionary(deflateDictionary);
+        }
+        deflater.setInput(block);
+        deflater.finish();
+        byte[] bytes = new byte[DEFLATE_HEADER_SIZE + deflateBound(block.length)];
+        int blockLength = 0;
+        while (!deflater.finished()) {
+            if (DEFLATE_HEADER_SIZE + blockLength == bytes.length) {
+                byte[] grown = new byte[bytes.length * 2];
+                System.arraycopy(bytes, 0, grown, 0, bytes.length);
+                bytes = grown;
+            }
+            blockLength += deflater.deflate(bytes, DEFLATE_HEADER_SIZE + blockLength, bytes.length - DEFLATE_HEADER_SIZE - blockLength);
+        }
+
         int o = 0;
+        UIO.longBytes(timestamp, bytes, o);
+        o += 8;
+        bytes[o] = tombstoned ? (byte) 1 : (byte) 0; // tombstone
+        o++;
+        UIO.longBytes(version, bytes, o);
+        o += 8;
+        UIO.intBytes(valueLength, bytes, o);
+        o += 4;
+        UIO.intBytes(pk.length, bytes, o);
+        o += 4;
+        UIO.intBytes(blockLength, bytes, o);
+
+        if (bytes.length == DEFLATE_HEADER_SIZE + blockLength) {
+            return bytes;
+        }
+        byte[] trimmed = new byte[DEFLATE_HEADER_SIZE + blockLength];
+        System.arraycopy(bytes, 0, trimmed, 0, trimmed.length);
+        return trimmed;
+    }
+
+    private static int deflateBound(int length) {
+        // zlib's deflateBound plus room for the preset dictionary id
+        return length + (length >> 12) + (length >> 14) + (length >> 25) + 13 + 4;
+    }
+
+    private byte[] inflate(byte[] row, int offset, int length, int inflateLength) throws IOException {
+        byte[] inflated = new byte[inflateLength];
+        if (inflateLength == 0) {
+            return inflated;
+        }
+        Inflater inflater = INFLATER.get();
+        inflater.reset();
+        inflater.setInput(row, offset, length);
+        try {
+            int inflatedLength = 0;
+            while (inflatedLength < inflateLength) {
+                int n = inflater.inflate(inflated, inflatedLength, inflateLength - inflatedLength);
+                if (n == 0) {
+                    if (inflater.needsDictionary()) {
+                        byte[] dictionary = deflateDictionaries.get(inflater.getAdler());
+                        if (dictionary == null) {
+                            throw new IOException("Missing deflate dictionary with adler32:" + inflater.getAdler());
+                        }
+                        inflater.setDictionary(dictionary);
+                    } else if (inflater.finished() || inflater.needsInput()) {
+                        throw new IOException("Truncated deflate block, inflated " + inflatedLength + " of " + inflateLength);
+                    }
+                }
+                inflatedLength += n;
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt deflate block", e);
+        }
+        return inflated;
+    }
+
+    private DecodedRow decode(RowType rowType, byte[] row, int offset, boolean decodePk) throws IOException {
+        int o = offset;
         long timestamp = UIO.bytesLong(row, o);
         o += 8;
         boolean tombstone = row[o] == 1;
@@ -71,22 +197,72 @@ public class BinaryPrimaryRowMarshaller implements PrimaryRowMarshaller {
         int valueLength = UIO.bytesInt(row, o);
         o += 4;
         byte[] value = null;
-        if (valueLength >= 0) {
-            value = new byte[valueLength];
-            UIO.readBytes(row, o, value);
-            o += valueLength;
+        byte[] pk = null;
+        if (rowType == RowType.deflate_primary) {
+            int pkLength = UIO.bytesInt(row, o);
+            o += 4;
+            int blockLength = UIO.bytesInt(row, o);
+            o += 4;
+            int blockValueLength = Math.max(valueLength, 0);
+            byte[] block = inflate(row, o, blockLength, blockValueLength + (decodePk ? pkLength : 0));
+            if (valueLength >= 0) {
+                value = new byte[valueLength];
+                System.arraycopy(block, 0, value, 0, valueLength);
+            }
+            if (decodePk) {
+                pk = new byte[pkLength];
+                System.arraycopy(block, blockValueLength, pk, 0, pkLength);
+            }
+        } else {
+            if (valueLength >= 0) {
+                value = new byte[valueLength];
+                UIO.readBytes(row, o, value);
+                o += valueLength;
+            }
+            if (decodePk) {
+                int pkLength = UIO.bytesInt(row, o);
+                o += 4;
+                pk = new byte[pkLength];
+                UIO.readBytes(row, o, pk);
+                pk = uncompress(rowType, pk);
+            }
+            value = uncompress(rowType, value);
+        }
+        return new DecodedRow(timestamp, tombstone, version, pk, value);
+    }
+
+    private static class DecodedRow {
+
+        private final long timestamp;
+        private final boolean tombstone;
+        private final long version;
+        private final byte[] pk;
+        private final byte[] value;
+
+        DecodedRow(long timestamp, boolean tombstone, long version, byte[] pk, byte[] value) {
+            this.timestamp = timestamp;
+            this.tombstone = tombstone;
+            this.version = version;
+            this.pk = pk;
+            this.value = value;
         }
-        int pkLength = UIO.bytesInt(row, o);
-        o += 4;
-        byte[] pk = new byte[pkLength];
-        UIO.readBytes(row, o, pk);
-        return toRow(toType, uncompress(fromType, pk), uncompress(fromType, value), timestamp, tombstone, version);
+    }
+
+    @Override
+    public byte[] convert(RowType fromType, byte[] row, RowType toType) throws Exception {
+        if (fromType == toType) {
+            return row;
+        }
+        DecodedRow decoded = decode(fromType, row, 0, true);
+        return toRow(toType, decoded.pk, decoded.value, decoded.timestamp, decoded.tombstone, decoded.version);
     }
 
     @Override
     public int maximumSizeInBytes(RowType rowType, int pkSizeInBytes, int valueSizeInBytes) {
         if (rowType == RowType.snappy_primary) {
             return 8 + 1 + 8 + 4 + Snappy.maxCompressedLength(valueSizeInBytes) + 4 + Snappy.maxCompressedLength(pkSizeInBytes);
+        } else if (rowType == RowType.deflate_primary) {
+            return DEFLATE_HEADER_SIZE + deflateBound(valueSizeInBytes + pkSizeInBytes);
         } else {
             return 8 + 1 + 8 + 4 + valueSizeInBytes + 4 + pkSizeInBytes;
         }
@@ -94,29 +270,11 @@ public class BinaryPrimaryRowMarshaller implements PrimaryRowMarshaller {
 
     @Override
     public boolean fromRows(FpRows fpRows, FpKeyValueStream fpKeyValueStream) throws Exception {
-        byte[] intLongBuffer = new byte[8];
         return WALKey.decompose(
             stream -> fpRows.consume((fp, rowType, row) -> {
-                int o = 0;
-                long timestamp = UIO.bytesLong(row, o);
-                o += 8;
-                boolean tombstone = row[o] == 1;
-                o++;
-                long version = UIO.bytesLong(row, o);
-                o += 8;
-                int valueLength = UIO.bytesInt(row, o);
-                o += 4;
-                byte[] value = null;
-                if (valueLength >= 0) {
-                    value = new byte[valueLength];
-                    UIO.readBytes(row, o, value);
-                    o += valueLength;
-                }
-                int pkLength = UIO.bytesInt(row, o);
-                o += 4;
-                byte[] pk = new byte[pkLength];
-                UIO.readBytes(row, o, pk);
-                return stream.stream(-1, fp, rowType, uncompress(rowType, pk), true, uncompress(rowType, value), timestamp, tombstone, version, row);
+                DecodedRow decoded = decode(rowType, row, 0, true);
+                return stream.stream(-1, fp, rowType, decoded.pk, true, decoded.value,
+                    decoded.timestamp, decoded.tombstone, decoded.version, row);
             }),
             (txId, fp, rowType, prefix, key, hasValue, value, valueTimestamp, valueTombstoned, valueVersion, row)
                 -> fpKeyValueStream.stream(fp, rowType, prefix, key, value, valueTimestamp, valueTombstoned, valueVersion));
@@ -124,29 +282,11 @@ public class BinaryPrimaryRowMarshaller implements PrimaryRowMarshaller {
 
     @Override
     public boolean fromRows(TxFpRows txFpRows, TxKeyValueStream txKeyValueStream) throws Exception {
-        byte[] intLongBuffer = new byte[8];
         return WALKey.decompose(
             stream -> txFpRows.consume((txId, fp, rowType, row) -> {
-                int o = 0;
-                long timestamp = UIO.bytesLong(row, o);
-                o += 8;
-                boolean tombstone = row[o] == 1;
-                o++;
-                long version = UIO.bytesLong(row, o);
-                o += 8;
-                int valueLength = UIO.bytesInt(row, o);
-                o += 4;
-                byte[] value = null;
-                if (valueLength >= 0) {
-                    value = new byte[valueLength];
-                    UIO.readBytes(row, o, value);
-                    o += valueLength;
-                }
-                int pkLength = UIO.bytesInt(row, o);
-                o += 4;
-                byte[] pk = new byte[pkLength];
-                UIO.readBytes(row, o, pk);
-                return stream.stream(txId, fp, rowType, uncompress(rowType, pk), true, uncompress(rowType, value), timestamp, tombstone, version, row);
+                DecodedRow decoded = decode(rowType, row, 0, true);
+                return stream.stream(txId, fp, rowType, decoded.pk, true, decoded.value,
+                    decoded.timestamp, decoded.tombstone, decoded.version, row);
             }),
             (txId, fp, rowType, prefix, key, hasValue, value, valueTimestamp, valueTombstoned, valueVersion, row)
                 -> txKeyValueStream.stream(txId, prefix, key, value, valueTimestamp, valueTombstoned, valueVersion).wantsMore());
@@ -154,29 +294,11 @@ public class BinaryPrimaryRowMarshaller implements PrimaryRowMarshaller {
 
     @Override
     public boolean fromRows(TxFpRows txFpRows, UnprefixedTxKeyValueStream txKeyValueStream) throws Exception {
-        byte[] intLongBuffer = new byte[8];
         return WALKey.decompose(
             stream -> txFpRows.consume((txId, fp, rowType, row) -> {
-                int o = 0;
-                long timestamp = UIO.bytesLong(row, o);
-                o += 8;
-                boolean tombstone = row[o] == 1;
-                o++;
-                long version = UIO.bytesLong(row, o);
-                o += 8;
-                int valueLength = UIO.bytesInt(row, o);
-                o += 4;
-                byte[] value = null;
-                if (valueLength >= 0) {
-                    value = new byte[valueLength];
-                    UIO.readBytes(row, o, value);
-                    o += valueLength;
-                }
-                int pkLength = UIO.bytesInt(row, o);
-                o += 4;
-                byte[] pk = new byte[pkLength];
-                UIO.readBytes(row, o, pk);
-                return stream.stream(txId, fp, rowType, uncompress(rowType, pk), true, uncompress(rowType, value), timestamp, tombstone, version, row);
+                DecodedRow decoded = decode(rowType, row, 0, true);
+                return stream.stream(txId, fp, rowType, decoded.pk, true, decoded.value,
+                    decoded.timestamp, decoded.tombstone, decoded.version, row);
             }),
             (txId, fp, rowType, prefix, key, hasValue, value, valueTimestamp, valueTombstoned, valueVersion, row)
                 -> txKeyValueStream.row(txId, key, value, valueTimestamp, valueTombstoned, valueVersion));
@@ -184,45 +306,18 @@ public class BinaryPrimaryRowMarshaller implements PrimaryRowMarshaller {
 
     @Override
     public boolean fromRows(TxFpRows txFpRows, WALKey.TxFpKeyValueEntryStream<byte[]> txFpKeyValueStream) throws Exception {
-        byte[] intLongBuffer = new byte[8];
         return WALKey.decompose(
             txFpRawKeyValueEntryStream -> txFpRows.consume((txId, fp, rowType, row) -> {
-                int o = 0;
-                long timestamp = UIO.bytesLong(row, o);
-                o += 8;
-                boolean tombstone = row[o] == 1;
-                o++;
-                long version = UIO.bytesLong(row, o);
-                o += 8;
-                int valueLength = UIO.bytesInt(row, o);
-                o += 4;
-                byte[] value = null;
-                if (valueLength >= 0) {
-                    value = new byte[valueLength];
-                    UIO.readBytes(row, o, value);
-                    o += valueLength;
-                }
-                int pkLength = UIO.bytesInt(row, o);
-                o += 4;
-                byte[] pk = new byte[pkLength];
-                UIO.readBytes(row, o, pk);
-                return txFpRawKeyValueEntryStream.stream(txId, fp, rowType, uncompress(rowType, pk), true, uncompress(rowType, value),
-                    timestamp, tombstone, version, row);
+                DecodedRow decoded = decode(rowType, row, 0, true);
+                return txFpRawKeyValueEntryStream.stream(txId, fp, rowType, decoded.pk, true, decoded.value,
+                    decoded.timestamp, decoded.tombstone, decoded.version, row);
             }),
             txFpKeyValueStream);
     }
 
     @Override
     public byte[] valueFromRow(RowType rowType, byte[] row, int offset) throws Exception {
-        int o = offset + 8 + 1 + 8;
-        int valueLength = UIO.bytesInt(row, o);
-        o += 4;
-        byte[] value = null;
-        if (valueLength >= 0) {
-            value = new byte[valueLength];
-            UIO.readBytes(row, o, value);
-        }
-        return uncompress(rowType, value);
+        return decode(rowType, row, offset, false).value;
     }
 
     @Override
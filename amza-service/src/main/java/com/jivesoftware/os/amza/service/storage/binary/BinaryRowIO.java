@@ -3,6 +3,7 @@ package com.jivesoftware.os.amza.service.storage.binary;
 import com.google.common.base.Preconditions;
 import com.jivesoftware.os.amza.api.IoStats;
 import com.jivesoftware.os.amza.api.filer.UIO;
+import com.jivesoftware.os.amza.api.scan.ByteBufferRowStream;
 import com.jivesoftware.os.amza.api.scan.RowStream;
 import com.jivesoftware.os.amza.api.stream.Fps;
 import com.jivesoftware.os.amza.api.stream.RowType;
@@ -33,13 +34,16 @@ public class BinaryRowIO implements RowIO {
     private final AtomicReference<LeapFrog> latestLeapFrog = new AtomicReference<>();
     private final AtomicLong updatesSinceLeap = new AtomicLong(0);
     private final AtomicBoolean initializedLeaps = new AtomicBoolean(false);
+    private final SparseTxFpIndex sparseTxFpIndex;
+    private volatile long bytesBetweenLeaps = 0;
 
     public BinaryRowIO(File key,
         String name,
         BinaryRowReader rowReader,
         BinaryRowWriter rowWriter,
         int updatesBetweenLeaps,
-        int maxLeaps) throws Exception {
+        int maxLeaps,
+        int maxSparseTxFpPoints) throws Exception {
 
         this.key = key;
         this.name = name;
@@ -47,6 +51,7 @@ public class BinaryRowIO implements RowIO {
         this.rowWriter = rowWriter;
         this.updatesBetweenLeaps = updatesBetweenLeaps;
         this.maxLeaps = maxLeaps;
+        this.sparseTxFpIndex = new SparseTxFpIndex(maxSparseTxFpPoints);
     }
 
     @Override
@@ -74,7 +79,9 @@ public class BinaryRowIO implements RowIO {
                             long key = UIO.bytesLong(keyBytes);
                             if (key == RowType.LEAP_KEY) {
                                 buf.rewind();
-                                latestLeapFrog.set(new LeapFrog(rowFP, Leaps.fromByteBuffer(buf)));
+                                LeapFrog leapFrog = new LeapFrog(rowFP, Leaps.fromByteBuffer(buf));
+                                latestLeapFrog.set(leapFrog);
+                                indexLeaps(leapFrog.fp, leapFrog.leaps);
                                 return false;
                             }
                         }
@@ -113,6 +120,22 @@ public class BinaryRowIO implements RowIO {
         rowReader.validate(ioStats, backwardScan, truncateToLastRowFp, backward, forward, preTruncationNotifier);
     }
 
+    @Override
+    public void validate(IoStats ioStats,
+        long fromFp,
+        boolean backwardScan,
+        boolean truncateToLastRowFp,
+        ValidationStream backward,
+        ValidationStream forward,
+        PreTruncationNotifier preTruncationNotifier) throws Exception {
+        rowReader.validate(ioStats, fromFp, backwardScan, truncateToLastRowFp, backward, forward, preTruncationNotifier);
+    }
+
+    @Override
+    public long[] rowEndingAt(long endFp) throws Exception {
+        return rowReader.rowEndingAt(endFp);
+    }
+
     @Override
     public void hackTruncation(int numBytes) {
         rowReader.hackTruncation(numBytes);
@@ -126,19 +149,30 @@ public class BinaryRowIO implements RowIO {
     @Override
     public long getInclusiveStartOfRow(long transactionId) throws Exception {
         Preconditions.checkState(updatesBetweenLeaps > 0);
+
+        // when the sparse points are already a leap apart, walking the persisted leaps could not narrow the scan any further
+        long[] bracket = sparseTxFpIndex.bracket(transactionId);
+        long leapSpacing = bytesBetweenLeaps;
+        if (bracket[1] == -1 || leapSpacing == 0 || bracket[1] - bracket[0] <= leapSpacing) {
+            LOG.inc("sparseTxFpIndex>hit");
+            return bracket[0];
+        }
+        LOG.inc("sparseTxFpIndex>miss");
+
         LeapFrog leapFrog = latestLeapFrog.get();
         Leaps leaps = (leapFrog != null) ? leapFrog.leaps : null;
 
-        long closestFP = 0;
+        long closestFP = bracket[0];
         while (leaps != null) {
             Leaps next = null;
             for (int i = 0; i < leaps.transactionIds.length; i++) {
                 if (leaps.transactionIds[i] < transactionId) {
                     closestFP = Math.max(closestFP, leaps.fpIndex[i]);
                 } else {
-                    byte[] typeByteTxIdAndRow = readTypeByteTxIdAndRow(leaps.fpIndex[i]);
-                    //TODO the leaps are basically fixed, so it would make sense to cache the fp -> leaps
+                    long leapFp = leaps.fpIndex[i];
+                    byte[] typeByteTxIdAndRow = readTypeByteTxIdAndRow(leapFp);
                     next = Leaps.fromBytes(typeByteTxIdAndRow, 1 + 8, typeByteTxIdAndRow.length - (1 + 8));
+                    indexLeaps(leapFp, next);
                     break;
                 }
             }
@@ -147,6 +181,29 @@ public class BinaryRowIO implements RowIO {
         return closestFP;
     }
 
+    private void indexLeaps(long leapFp, Leaps leaps) {
+        sparseTxFpIndex.add(leaps.lastTransactionId, leapFp);
+        for (int i = 0; i < leaps.fpIndex.length; i++) {
+            sparseTxFpIndex.add(leaps.transactionIds[i], leaps.fpIndex[i]);
+        }
+        if (leaps.fpIndex.length > 0 && bytesBetweenLeaps == 0) {
+            bytesBetweenLeaps = leapFp - leaps.fpIndex[leaps.fpIndex.length - 1];
+        }
+    }
+
+    private void wroteLeap(LeapFrog latest, long leapFp, Leaps leaps) {
+        latestLeapFrog.set(new LeapFrog(leapFp, leaps));
+        sparseTxFpIndex.add(leaps.lastTransactionId, leapFp);
+        if (latest != null) {
+            bytesBetweenLeaps = leapFp - latest.fp;
+        }
+    }
+
+    @Override
+    public boolean scanBuffers(IoStats ioStats, long offsetFp, ByteBufferRowStream rowStream) throws Exception {
+        return rowReader.scanBuffers(ioStats, offsetFp, rowStream);
+    }
+
     @Override
     public boolean reverseScan(IoStats ioStats, RowStream rowStream) throws Exception {
         return rowReader.reverseScan(ioStats, rowStream);
@@ -199,7 +256,38 @@ public class BinaryRowIO implements RowIO {
             LeapFrog latest = latestLeapFrog.get();
             Leaps leaps = computeNextLeaps(txId, latest, maxLeaps);
             long leapFp = rowWriter.writeSystem(ioStats, leaps.toBytes());
-            latestLeapFrog.set(new LeapFrog(leapFp, leaps));
+            wroteLeap(latest, leapFp, leaps);
+            updatesSinceLeap.set(0);
+        }
+        return count;
+    }
+
+    @Override
+    public int writeTxs(IoStats ioStats,
+        int estimatedNumberOfRows,
+        int estimatedSizeInBytes,
+        TxRawRows rows,
+        TxRowFpStream stream,
+        boolean addToLeapCount,
+        boolean hardFsyncBeforeLeapBoundary) throws Exception {
+        long[] lastTxId = { -1 };
+        int count = rowWriter.writeTxs(ioStats,
+            estimatedNumberOfRows,
+            estimatedSizeInBytes,
+            rows,
+            (txId, fp) -> {
+                lastTxId[0] = txId;
+                return stream.stream(txId, fp);
+            },
+            addToLeapCount,
+            hardFsyncBeforeLeapBoundary);
+        if (addToLeapCount && updatesBetweenLeaps > 0 && updatesSinceLeap.addAndGet(count) >= updatesBetweenLeaps) {
+            Preconditions.checkState(initializedLeaps.get(), "Leaps not yet initialized");
+            rowWriter.flush(hardFsyncBeforeLeapBoundary);
+            LeapFrog latest = latestLeapFrog.get();
+            Leaps leaps = computeNextLeaps(lastTxId[0], latest, maxLeaps);
+            long leapFp = rowWriter.writeSystem(ioStats, leaps.toBytes());
+            wroteLeap(latest, leapFp, leaps);
             updatesSinceLeap.set(0);
         }
         return count;
@@ -4,7 +4,9 @@ import com.google.common.collect.Lists;
 import com.google.common.io.Files;
 import com.jivesoftware.os.amza.api.wal.RowIO;
 import com.jivesoftware.os.amza.api.IoStats;
+import com.jivesoftware.os.amza.service.filer.DirectByteBufferPool;
 import com.jivesoftware.os.amza.service.storage.filer.DiskBackedWALFiler;
+import com.jivesoftware.os.amza.service.storage.filer.WALFiler;
 import java.io.File;
 import java.io.IOException;
 import java.util.Arrays;
@@ -20,15 +22,21 @@ public class BinaryRowIOProvider implements RowIOProvider {
     private final int defaultUpdatesBetweenLeaps;
     private final int defaultMaxLeaps;
     private final boolean useMemMap;
+    private final DirectByteBufferPool writeBufferPool;
+    private final int maxSparseTxFpPoints;
 
     public BinaryRowIOProvider(
         int defaultUpdatesBetweenLeaps,
         int defaultMaxLeaps,
-        boolean useMemMap) {
+        boolean useMemMap,
+        DirectByteBufferPool writeBufferPool,
+        int maxSparseTxFpPoints) {
 
         this.defaultUpdatesBetweenLeaps = defaultUpdatesBetweenLeaps;
         this.defaultMaxLeaps = defaultMaxLeaps;
         this.useMemMap = useMemMap;
+        this.writeBufferPool = writeBufferPool;
+        this.maxSparseTxFpPoints = maxSparseTxFpPoints;
     }
 
     @Override
@@ -40,15 +48,20 @@ public class BinaryRowIOProvider implements RowIOProvider {
         if (!createIfAbsent && !file.exists()) {
             return null;
         }
-        DiskBackedWALFiler filer = new DiskBackedWALFiler(file.getAbsolutePath(), "rw", useMemMap, 0);
+        WALFiler filer = createFiler(file);
         BinaryRowReader rowReader = new BinaryRowReader(filer);
-        BinaryRowWriter rowWriter = new BinaryRowWriter(filer);
+        BinaryRowWriter rowWriter = new BinaryRowWriter(filer, writeBufferPool);
         return new BinaryRowIO(dir,
             name,
             rowReader,
             rowWriter,
             updatesBetweenLeaps > 0 ? updatesBetweenLeaps : defaultUpdatesBetweenLeaps,
-            maxLeaps > 0 ? maxLeaps : defaultMaxLeaps);
+            maxLeaps > 0 ? maxLeaps : defaultMaxLeaps,
+            maxSparseTxFpPoints);
+    }
+
+    protected WALFiler createFiler(File file) throws IOException {
+        return new DiskBackedWALFiler(file.getAbsolutePath(), "rw", useMemMap, 0);
     }
 
     @Override
@@ -16,7 +16,9 @@
 package com.jivesoftware.os.amza.service.storage.binary;
 
 import com.jivesoftware.os.amza.api.filer.IReadable;
+import com.jivesoftware.os.amza.api.filer.ISliceable;
 import com.jivesoftware.os.amza.api.filer.UIO;
+import com.jivesoftware.os.amza.api.scan.ByteBufferRowStream;
 import com.jivesoftware.os.amza.api.scan.RowStream;
 import com.jivesoftware.os.amza.api.stream.Fps;
 import com.jivesoftware.os.amza.api.stream.RowType;
@@ -29,6 +31,7 @@ import com.jivesoftware.os.mlogger.core.MetricLogger;
 import com.jivesoftware.os.mlogger.core.MetricLoggerFactory;
 import java.io.EOFException;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 public class BinaryRowReader implements WALReader {
 
@@ -45,14 +48,30 @@ public class BinaryRowReader implements WALReader {
         ValidationStream backward,
         ValidationStream forward,
         PreTruncationNotifier preTruncationNotifier) throws Exception {
+        validate(ioStats, 0, backwardScan, truncateToLastRowFp, backward, forward, preTruncationNotifier);
+    }
+
+    /**
+     * Rows before {@code fromFp} are trusted as already validated, so neither scan visits them and truncation never goes below it.
+     */
+    void validate(IoStats ioStats,
+        long fromFp,
+        boolean backwardScan,
+        boolean truncateToLastRowFp,
+        ValidationStream backward,
+        ValidationStream forward,
+        PreTruncationNotifier preTruncationNotifier) throws Exception {
 
         byte[] intLongBuffer = new byte[8];
         synchronized (parent.lock()) {
             long filerLength = parent.length();
+            if (fromFp > 0 && fromFp >= filerLength) {
+                return;
+            }
             IReadable filer = parent.reader(null, filerLength, true, 0);
             if (backwardScan) {
                 long seekTo = filerLength;
-                while (seekTo > 0) {
+                while (seekTo > fromFp) {
                     if (seekTo < 4) {
                         LOG.error("Validation had insufficient bytes to read tail length at offset {} with file length {}", seekTo, filerLength);
                         break;
@@ -65,7 +84,7 @@ public class BinaryRowReader implements WALReader {
                         break;
                     }
                     seekTo = seekTo - tailLength - 8;
-                    if (seekTo < 0) {
+                    if (seekTo < fromFp) {
                         LOG.error("Validation required seek to {} with file length {}", seekTo, filerLength);
                         break;
                     } else {
@@ -103,10 +122,10 @@ public class BinaryRowReader implements WALReader {
                             return;
                         }
                     }
-                    if (seekTo == 0) {
+                    if (seekTo == fromFp) {
                         if (truncateToLastRowFp) {
-                            LOG.warn("Truncating entire WAL");
-                            truncate(preTruncationNotifier, 0);
+                            LOG.warn("Truncating WAL to fp {}", fromFp);
+                            truncate(preTruncationNotifier, fromFp);
                         }
                         return;
                     }
@@ -114,7 +133,7 @@ public class BinaryRowReader implements WALReader {
             }
 
             long[] truncateAfterRowAtFp = new long[] { Long.MIN_VALUE };
-            scan(ioStats, 0, true, true, 1024 * 1024, preTruncationNotifier, (rowFP, rowTxId, rowType, row) -> {
+            scan(ioStats, fromFp, true, true, 1024 * 1024, preTruncationNotifier, (rowFP, rowTxId, rowType, row) -> {
                 long result = forward.row(rowFP, rowTxId, rowType, row);
                 if (result != -1) {
                     if (result < -1) {
@@ -128,8 +147,8 @@ public class BinaryRowReader implements WALReader {
             });
             if (truncateAfterRowAtFp[0] == Long.MIN_VALUE) {
                 if (truncateToLastRowFp) {
-                    LOG.warn("Truncating entire WAL due to missing truncation feedback");
-                    truncate(preTruncationNotifier, 0);
+                    LOG.warn("Truncating WAL to fp {} due to missing truncation feedback", fromFp);
+                    truncate(preTruncationNotifier, fromFp);
                 }
             } else {
                 // Have to reacquire filer because scan may have truncated
@@ -145,6 +164,34 @@ public class BinaryRowReader implements WALReader {
         }
     }
 
+    /**
+     * @return the fp and txId of the row which ends at the given fp, or null if the bytes before it do not frame a row
+     */
+    long[] rowEndingAt(long endFp) throws Exception {
+        byte[] intLongBuffer = new byte[8];
+        synchronized (parent.lock()) {
+            long filerLength = parent.length();
+            if (endFp < 4 + 1 + 8 + 4 || endFp > filerLength) {
+                return null;
+            }
+            IReadable filer = parent.reader(null, filerLength, true, 0);
+            filer.seek(endFp - 4);
+            int tailLength = UIO.readInt(filer, "length", intLongBuffer);
+            long rowFp = endFp - tailLength - 8;
+            if (tailLength < 1 + 8 || rowFp < 0) {
+                return null;
+            }
+            filer.seek(rowFp);
+            int headLength = UIO.readInt(filer, "length", intLongBuffer);
+            if (headLength != tailLength) {
+                return null;
+            }
+            filer.read(); // rowType
+            long rowTxId = UIO.readLong(filer, "txId", intLongBuffer);
+            return new long[] { rowFp, rowTxId };
+        }
+    }
+
     @Override
     public boolean reverseScan(IoStats ioStats, RowStream stream) throws Exception {
         return reverseScan(ioStats, stream, false, 0); //TODO config
@@ -299,6 +346,65 @@ public class BinaryRowReader implements WALReader {
         }
     }
 
+    @Override
+    public boolean scanBuffers(IoStats ioStats, long offsetFp, ByteBufferRowStream stream) throws Exception {
+        long fileLength = 0;
+        long read = 0;
+        try {
+            IReadable filer = null;
+            byte[] rowTypeByte = new byte[1];
+            byte[] intLongBuffer = new byte[8];
+            while (fileLength < parent.length()) {
+                fileLength = parent.length();
+                filer = parent.reader(filer, fileLength, false, 1024 * 1024); //TODO config
+                while (offsetFp < fileLength) {
+                    long rowFP = offsetFp;
+                    filer.seek(offsetFp);
+                    int length = UIO.readInt(filer, "length", intLongBuffer);
+                    int lengthOfTypeAndTxId = 1 + 8;
+                    if (length < lengthOfTypeAndTxId || offsetFp + length + 8 > fileLength) {
+                        String msg = "Scan terminated prematurely due to a corruption at fp:" + offsetFp +
+                            " length:" + length +
+                            " available:" + fileLength +
+                            " in " + parent;
+                        LOG.error(msg);
+                        throw new EOFException(msg);
+                    }
+                    filer.read(rowTypeByte);
+                    RowType rowType = RowType.fromByte(rowTypeByte[0]);
+                    long rowTxId = UIO.readLong(filer, "txId", intLongBuffer);
+
+                    long rowStartFp = rowFP + 4 + lengthOfTypeAndTxId;
+                    int rowLength = length - lengthOfTypeAndTxId;
+                    ByteBuffer row = (filer instanceof ISliceable) ? ((ISliceable) filer).slice(rowStartFp, rowLength) : null;
+                    if (row == null) {
+                        byte[] rowBytes = new byte[rowLength];
+                        if (rowLength > 0) {
+                            filer.read(rowBytes);
+                        }
+                        row = ByteBuffer.wrap(rowBytes);
+                    } else {
+                        filer.seek(rowStartFp + rowLength);
+                    }
+                    int trailingLength = UIO.readInt(filer, "length", intLongBuffer);
+                    if (trailingLength != length) {
+                        throw new IOException("The lead length of " + length + " didn't equal trailing length of " + trailingLength);
+                    }
+                    long fp = filer.getFilePointer();
+                    read += (fp - offsetFp);
+                    offsetFp = fp;
+
+                    if (!stream.row(rowFP, rowTxId, rowType, row)) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        } finally {
+            ioStats.read.add(read);
+        }
+    }
+
     private boolean truncate(PreTruncationNotifier preTruncationNotifier, long offsetFp) throws Exception {
         if (preTruncationNotifier != null) {
             preTruncationNotifier.truncated(offsetFp);
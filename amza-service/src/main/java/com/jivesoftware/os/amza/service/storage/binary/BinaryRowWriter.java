@@ -16,22 +16,26 @@
 package com.jivesoftware.os.amza.service.storage.binary;
 
 import com.jivesoftware.os.amza.api.filer.IAppendOnly;
-import com.jivesoftware.os.amza.api.filer.UIO;
 import com.jivesoftware.os.amza.api.stream.RowType;
 import com.jivesoftware.os.amza.api.wal.WALWriter;
-import com.jivesoftware.os.amza.api.filer.HeapFiler;
 import com.jivesoftware.os.amza.api.IoStats;
+import com.jivesoftware.os.amza.service.filer.DirectByteBufferPool;
 import com.jivesoftware.os.amza.service.storage.filer.WALFiler;
 import gnu.trove.iterator.TLongIterator;
 import gnu.trove.list.array.TLongArrayList;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
 
 public class BinaryRowWriter implements WALWriter {
 
     private final IAppendOnly appendOnly;
+    private final DirectByteBufferPool bufferPool;
 
-    public BinaryRowWriter(WALFiler filer) throws IOException {
+    public BinaryRowWriter(WALFiler filer, DirectByteBufferPool bufferPool) throws IOException {
         this.appendOnly = filer.appender();
+        this.bufferPool = bufferPool;
     }
 
     @Override
@@ -46,27 +50,24 @@ public class BinaryRowWriter implements WALWriter {
         boolean addToLeapCount,
         boolean hardFsyncBeforeLeapBoundary) throws Exception {
 
-        byte[] lengthBuffer = new byte[8];
-        HeapFiler memoryFiler = new HeapFiler((estimatedNumberOfRows * (4 + 1 + 8 + 4)) + estimatedSizeInBytes);
+        FramedRows framedRows = new FramedRows(bufferPool);
         TLongArrayList offsets = new TLongArrayList();
-        rows.consume(row -> {
-            offsets.add(memoryFiler.getFilePointer());
-            int length = (1 + 8) + row.length;
-            UIO.writeInt(memoryFiler, length, "length", lengthBuffer);
-            UIO.writeByte(memoryFiler, rowType.toByte(), "rowType");
-            UIO.writeLong(memoryFiler, txId, "txId", lengthBuffer);
-            memoryFiler.write(row, 0, row.length);
-            UIO.writeInt(memoryFiler, length, "length", lengthBuffer);
-            return true;
-        });
-
-        long l = memoryFiler.length();
         long startFp;
-        ioStats.wrote.add(l);
-        synchronized (appendOnly.lock()) {
-            startFp = appendOnly.length();
-            appendOnly.write(memoryFiler.leakBytes(), 0, (int) l);
-            appendOnly.flush(false); // TODO expose to config
+        try {
+            rows.consume(row -> {
+                offsets.add(framedRows.length());
+                framedRows.frame(txId, rowType, row);
+                return true;
+            });
+
+            ioStats.wrote.add(framedRows.length());
+            synchronized (appendOnly.lock()) {
+                startFp = appendOnly.length();
+                appendOnly.write(framedRows.flip());
+                appendOnly.flush(false); // fsync is scheduled per stripe by AsyncStripeFlusher
+            }
+        } finally {
+            framedRows.release();
         }
 
         TLongIterator iter = offsets.iterator();
@@ -75,6 +76,108 @@ public class BinaryRowWriter implements WALWriter {
         return offsets.size();
     }
 
+    @Override
+    public int writeTxs(IoStats ioStats,
+        int estimatedNumberOfRows,
+        int estimatedSizeInBytes,
+        TxRawRows rows,
+        TxRowFpStream stream,
+        boolean addToLeapCount,
+        boolean hardFsyncBeforeLeapBoundary) throws Exception {
+
+        FramedRows framedRows = new FramedRows(bufferPool);
+        TLongArrayList txIds = new TLongArrayList();
+        TLongArrayList offsets = new TLongArrayList();
+        long startFp;
+        try {
+            rows.consume((txId, rowType, row) -> {
+                txIds.add(txId);
+                offsets.add(framedRows.length());
+                framedRows.frame(txId, rowType, row);
+                return true;
+            });
+
+            ioStats.wrote.add(framedRows.length());
+            synchronized (appendOnly.lock()) {
+                startFp = appendOnly.length();
+                appendOnly.write(framedRows.flip());
+                appendOnly.flush(false); // fsync is scheduled per stripe by AsyncStripeFlusher
+            }
+        } finally {
+            framedRows.release();
+        }
+
+        for (int i = 0; i < offsets.size(); i++) {
+            if (!stream.stream(txIds.get(i), startFp + offsets.get(i))) {
+                break;
+            }
+        }
+        return offsets.size();
+    }
+
+    /**
+     * Frames rows (length, rowType, txId, row, length) straight into pooled direct buffers which are then handed to the appender as a single
+     * gathering write.
+     */
+    private static class FramedRows {
+
+        private final DirectByteBufferPool bufferPool;
+        private final List<ByteBuffer> buffers = new ArrayList<>();
+        private ByteBuffer current;
+        private long length;
+
+        FramedRows(DirectByteBufferPool bufferPool) {
+            this.bufferPool = bufferPool;
+        }
+
+        long length() {
+            return length;
+        }
+
+        void frame(long txId, RowType rowType, byte[] row) {
+            int rowLength = (1 + 8) + row.length;
+            ensure(4 + 1 + 8);
+            current.putInt(rowLength);
+            current.put(rowType.toByte());
+            current.putLong(txId);
+            int offset = 0;
+            while (offset < row.length) {
+                ensure(1);
+                int len = Math.min(current.remaining(), row.length - offset);
+                current.put(row, offset, len);
+                offset += len;
+            }
+            ensure(4);
+            current.putInt(rowLength);
+            length += 4 + rowLength + 4;
+        }
+
+        private void ensure(int bytes) {
+            if (current == null || current.remaining() < bytes) {
+                current = bufferPool.acquire();
+                buffers.add(current);
+            }
+        }
+
+        ByteBuffer[] flip() {
+            ByteBuffer[] flipped = new ByteBuffer[buffers.size()];
+            for (int i = 0; i < flipped.length; i++) {
+                ByteBuffer buffer = buffers.get(i);
+                buffer.flip();
+                flipped[i] = buffer;
+            }
+            return flipped;
+        }
+
+        void release() {
+            for (ByteBuffer buffer : buffers) {
+                bufferPool.release(buffer);
+            }
+            buffers.clear();
+            current = null;
+        }
+    }
+
     @Override
     public long writeHighwater(IoStats ioStats, byte[] row) throws Exception {
         return writeRowInternal(ioStats, row, RowType.highwater);
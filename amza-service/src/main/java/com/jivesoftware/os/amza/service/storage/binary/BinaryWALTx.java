@@ -20,6 +20,7 @@ import com.jivesoftware.os.mlogger.core.MetricLogger;
 import com.jivesoftware.os.mlogger.core.MetricLoggerFactory;
 import java.io.File;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Set;
@@ -44,20 +45,39 @@ public class BinaryWALTx implements WALTx {
     private final int maxLeaps;
 
     private final RowIOProvider ioProvider;
+    private final WALCompactionPolicy compactionPolicy;
     private volatile RowIO rowIO;
 
+    private volatile long skippedCompactionAtTimestamp = -1;
+    private volatile long skippedCompactionAtEndOfLastRow = -1;
+
     public BinaryWALTx(
         String name,
         RowIOProvider ioProvider,
         PrimaryRowMarshaller rowMarshaller,
         int updatesBetweenLeaps,
         int maxLeaps) throws Exception {
+        this(name, ioProvider, rowMarshaller, updatesBetweenLeaps, maxLeaps, WALCompactionPolicy.NONE);
+    }
+
+    public BinaryWALTx(
+        String name,
+        RowIOProvider ioProvider,
+        PrimaryRowMarshaller rowMarshaller,
+        int updatesBetweenLeaps,
+        int maxLeaps,
+        WALCompactionPolicy compactionPolicy) throws Exception {
 
         this.name = name + SUFFIX;
         this.primaryRowMarshaller = rowMarshaller;
         this.updatesBetweenLeaps = updatesBetweenLeaps;
         this.maxLeaps = maxLeaps;
         this.ioProvider = ioProvider;
+        this.compactionPolicy = compactionPolicy;
+    }
+
+    boolean isCompactionLockHeld() {
+        return compactionLock.availablePermits() < NUM_PERMITS;
     }
 
     public static Set<String> listExisting(File baseKey, RowIOProvider ioProvider) throws Exception {
@@ -249,7 +269,8 @@ public class BinaryWALTx implements WALTx {
         long ttlVersion,
         long disposalVersion,
         I compactableWALIndex,
-        int stripe) throws Exception {
+        int stripe,
+        boolean force) throws Exception {
 
         File fromKey = ioProvider.versionedKey(fromBaseKey, AmzaVersionConstants.LATEST_VERSION);
         File toKey = ioProvider.versionedKey(toBaseKey, AmzaVersionConstants.LATEST_VERSION);
@@ -257,6 +278,19 @@ public class BinaryWALTx implements WALTx {
         long start = System.currentTimeMillis();
 
         Preconditions.checkNotNull(compactableWALIndex, "If you don't have one use NoOpWALIndex.");
+        if (!force && compactionPolicy.getMinReclaimableRatio() > 0 && fromBaseKey.equals(toBaseKey)
+            && !worthCompacting(ioStats,
+            compactionStats,
+            compactToRowType,
+            tombstoneTimestampId,
+            tombstoneVersion,
+            ttlTimestampId,
+            ttlVersion,
+            disposalVersion,
+            compactableWALIndex)) {
+            return null;
+        }
+
         CompactionWALIndex compactionRowIndex = compactableWALIndex.startCompaction(true, stripe);
 
         File compactingKey = ioProvider.buildKey(toKey, "compacting");
@@ -282,56 +316,65 @@ public class BinaryWALTx implements WALTx {
 
         byte[] carryOverEndOfMerge = null;
 
-        long endOfLastRow;
-        compactionLock.acquire();
-        try {
-            long prevEndOfLastRow = 0;
-            endOfLastRow = rowIO.getEndOfLastRow();
-
-            int compactionPass = 1;
-            while (prevEndOfLastRow < endOfLastRow) {
-                try {
-                    compactionStats.add("compact", 1);
-                    compactionStats.start("compact-" + compactionPass);
-                    carryOverEndOfMerge = compact(ioStats,
-                        compactToRowType,
-                        prevEndOfLastRow,
-                        endOfLastRow,
-                        carryOverEndOfMerge,
-                        compactableWALIndex,
-                        compactionRowIndex,
-                        compactionIO,
-                        oldestTimestamp,
-                        oldestVersion,
-                        oldestTombstonedTimestamp,
-                        oldestTombstonedVersion,
-                        keyCount,
-                        clobberCount,
-                        tombstoneCount,
-                        ttlCount,
-                        disposalCount,
-                        flushTxId,
-                        tombstoneTimestampId,
-                        tombstoneVersion,
-                        ttlTimestampId,
-                        ttlVersion,
-                        disposalVersion,
-                        null);
-                } catch (Exception x) {
-                    LOG.error("Failure while compacting fromKey:{} -> toKey:{} name:{} from:{} to:{}",
-                        new Object[]{fromKey, toKey, name, prevEndOfLastRow, endOfLastRow}, x);
-                    compactionRowIndex.abort();
-                    throw x;
-                } finally {
-                    compactionStats.stop("compact-" + compactionPass);
+        // Walk the WAL a segment at a time, releasing the lock and charging the byte budget between segments, then catch up with
+        // whatever was appended meanwhile until a pass finds nothing new. The remainder is compacted under the exclusive lock on commit.
+        long segmentSizeInBytes = compactionPolicy.getSegmentSizeInBytes();
+        MutableLong startOfNextRow = new MutableLong(0);
+        long endOfLastRow = endOfLastRow();
+        int compactionPass = 1;
+        while (startOfNextRow.longValue() < endOfLastRow) {
+            compactionStats.add("compact", 1);
+            compactionStats.start("compact-" + compactionPass);
+            try {
+                while (startOfNextRow.longValue() < endOfLastRow) {
+                    long startOfSegment = startOfNextRow.longValue();
+                    compactionLock.acquire();
+                    try {
+                        carryOverEndOfMerge = compact(ioStats,
+                            compactToRowType,
+                            startOfSegment,
+                            Math.min(startOfSegment + segmentSizeInBytes, endOfLastRow),
+                            endOfLastRow,
+                            startOfNextRow,
+                            carryOverEndOfMerge,
+                            compactableWALIndex,
+                            compactionRowIndex,
+                            compactionIO,
+                            oldestTimestamp,
+                            oldestVersion,
+                            oldestTombstonedTimestamp,
+                            oldestTombstonedVersion,
+                            keyCount,
+                            clobberCount,
+                            tombstoneCount,
+                            ttlCount,
+                            disposalCount,
+                            flushTxId,
+                            tombstoneTimestampId,
+                            tombstoneVersion,
+                            ttlTimestampId,
+                            ttlVersion,
+                            disposalVersion,
+                            null);
+                    } finally {
+                        compactionLock.release();
+                    }
+                    long segmentBytes = startOfNextRow.longValue() - startOfSegment;
+                    compactionStats.add("compact-segment", 1);
+                    compactionStats.add("compact-bytes", segmentBytes);
+                    compactionPolicy.throttle(segmentBytes);
                 }
-
-                prevEndOfLastRow = endOfLastRow;
-                endOfLastRow = rowIO.getEndOfLastRow();
-                compactionPass++;
+            } catch (Exception x) {
+                LOG.error("Failure while compacting fromKey:{} -> toKey:{} name:{} from:{} to:{}",
+                    new Object[]{fromKey, toKey, name, startOfNextRow.longValue(), endOfLastRow}, x);
+                compactionRowIndex.abort();
+                throw x;
+            } finally {
+                compactionStats.stop("compact-" + compactionPass);
             }
-        } finally {
-            compactionLock.release();
+
+            endOfLastRow = endOfLastRow();
+            compactionPass++;
         }
 
         long finalEndOfLastRow = endOfLastRow;
@@ -349,6 +392,8 @@ public class BinaryWALTx implements WALTx {
                         compactToRowType,
                         finalEndOfLastRow,
                         Long.MAX_VALUE,
+                        Long.MAX_VALUE,
+                        new MutableLong(),
                         finalCarryOverEndOfMerge,
                         compactableWALIndex,
                         compactionRowIndex,
@@ -461,10 +506,129 @@ public class BinaryWALTx implements WALTx {
 
     }
 
+    private long endOfLastRow() throws Exception {
+        compactionLock.acquire();
+        try {
+            return rowIO.getEndOfLastRow();
+        } finally {
+            compactionLock.release();
+        }
+    }
+
+    private static byte[] copy(ByteBuffer row) {
+        byte[] rowBytes = new byte[row.remaining()];
+        row.get(rowBytes);
+        return rowBytes;
+    }
+
+    /**
+     * Reads the WAL a segment at a time until it finds a segment worth rewriting. A WAL which is not worth rewriting is remembered so the
+     * periodic tombstone check does not re-read it until it grows by a segment or {@code reanalyzeAfterMillis} elapses.
+     */
+    private boolean worthCompacting(IoStats ioStats,
+        WALCompactionStats compactionStats,
+        RowType compactToRowType,
+        long tombstoneTimestampId,
+        long tombstoneVersion,
+        long ttlTimestampId,
+        long ttlVersion,
+        long disposalVersion,
+        CompactableWALIndex compactableWALIndex) throws Exception {
+
+        long segmentSizeInBytes = compactionPolicy.getSegmentSizeInBytes();
+        long endOfLastRow = endOfLastRow();
+        long now = System.currentTimeMillis();
+        if (skippedCompactionAtTimestamp != -1
+            && now < skippedCompactionAtTimestamp + compactionPolicy.getReanalyzeAfterMillis()
+            && endOfLastRow - skippedCompactionAtEndOfLastRow < segmentSizeInBytes) {
+            compactionStats.add("compact-skipped", 1);
+            return false;
+        }
+
+        compactionStats.start("analyze");
+        try {
+            long startOfSegment = 0;
+            while (startOfSegment < endOfLastRow) {
+                long[] startOfNextRow = { endOfLastRow };
+                long[] reclaimableBytes = { 0 };
+                boolean[] mustCompact = { false };
+                long endOfSegment = Math.min(startOfSegment + segmentSizeInBytes, endOfLastRow);
+                long scanFrom = startOfSegment;
+                compactionLock.acquire();
+                try {
+                    primaryRowMarshaller.fromRows(
+                        txFpRowStream -> rowIO.scanBuffers(ioStats, scanFrom,
+                            (rowFP, rowTxId, rowType, row) -> {
+                                if (rowFP >= endOfSegment) {
+                                    startOfNextRow[0] = rowFP;
+                                    return false;
+                                }
+                                // leaps, commit markers and hints are written out again, so only dead primary rows are reclaimed
+                                if (rowType.isPrimary()) {
+                                    if (rowType != compactToRowType) {
+                                        mustCompact[0] = true;
+                                        return false;
+                                    }
+                                    // only primary rows are copied off the mapped WAL, because the marshaller decodes from a byte[]
+                                    return txFpRowStream.stream(rowTxId, rowFP, rowType, copy(row));
+                                }
+                                return true;
+                            }),
+                        (txId, fp, rowType, prefix, key, hasValue, value, valueTimestamp, valueTombstoned, valueVersion, row) -> {
+                            return compactableWALIndex.getPointer(prefix, key,
+                                (_prefix, _key, pointerTimestamp, pointerTombstoned, pointerVersion, pointerFp, pointerHasValue, pointerValue) -> {
+                                    if ((pointerFp == -1 && !pointerHasValue)
+                                        || CompareTimestampVersions.compare(valueTimestamp, valueVersion, pointerTimestamp, pointerVersion) >= 0) {
+                                        if (valueTombstoned && (valueTimestamp < tombstoneTimestampId || valueVersion < tombstoneVersion)) {
+                                            reclaimableBytes[0] += row.length;
+                                        } else if (valueTimestamp < ttlTimestampId || valueVersion < ttlVersion || valueVersion < disposalVersion) {
+                                            // expired values must be purged no matter how little they reclaim
+                                            mustCompact[0] = true;
+                                            return false;
+                                        }
+                                    } else {
+                                        reclaimableBytes[0] += row.length;
+                                    }
+                                    return true;
+                                });
+                        });
+                } finally {
+                    compactionLock.release();
+                }
+
+                long segmentBytes = startOfNextRow[0] - startOfSegment;
+                compactionStats.add("analyze-segment", 1);
+                compactionStats.add("analyze-bytes", segmentBytes);
+                compactionPolicy.throttle(segmentBytes);
+                if (mustCompact[0]
+                    || segmentBytes > 0 && (double) reclaimableBytes[0] / segmentBytes >= compactionPolicy.getMinReclaimableRatio()) {
+                    LOG.info("Compacting {} because segment {}-{} reclaims {} bytes mustCompact:{}",
+                        name, startOfSegment, startOfNextRow[0], reclaimableBytes[0], mustCompact[0]);
+                    skippedCompactionAtTimestamp = -1;
+                    return true;
+                }
+                startOfSegment = startOfNextRow[0];
+            }
+        } finally {
+            compactionStats.stop("analyze");
+        }
+
+        skippedCompactionAtTimestamp = now;
+        skippedCompactionAtEndOfLastRow = endOfLastRow;
+        compactionStats.add("compact-skipped", 1);
+        return false;
+    }
+
+    /**
+     * Compacts rows starting at {@code startAtRow}. The scan stops at the first transaction boundary at or after {@code endOfSegment}, and
+     * never goes past {@code endOfLastRow}; the fp it stopped at is left in {@code startOfNextRow}.
+     */
     private byte[] compact(IoStats ioStats,
         RowType compactToRowType,
         long startAtRow,
+        long endOfSegment,
         long endOfLastRow,
+        MutableLong startOfNextRow,
         byte[] carryOverEndOfMerge,
         CompactableWALIndex compactableWALIndex,
         CompactionWALIndex compactionWALIndex,
@@ -492,12 +656,16 @@ public class BinaryWALTx implements WALTx {
         MutableInt estimatedSizeInBytes = new MutableInt(0);
         MutableLong flushTxId = new MutableLong(-1);
         byte[][] keepCarryingOver = {carryOverEndOfMerge};
+        long[] lastTxId = { -1 };
+        startOfNextRow.setValue(endOfLastRow);
         primaryRowMarshaller.fromRows(
-            txFpRowStream -> rowIO.scan(ioStats, startAtRow, false,
+            txFpRowStream -> rowIO.scanBuffers(ioStats, startAtRow,
                 (rowFP, rowTxId, rowType, row) -> {
-                    if (rowFP >= endOfLastRow) {
+                    if (rowFP >= endOfLastRow || rowFP >= endOfSegment && rowTxId != lastTxId[0]) {
+                        startOfNextRow.setValue(rowFP);
                         return false;
                     }
+                    lastTxId[0] = rowTxId;
                     if (rowType.isDiscardedDuringCompactions()) {
                         return true;
                     }
@@ -520,14 +688,14 @@ public class BinaryWALTx implements WALTx {
 
                     if (rowType.isPrimary()) {
                         highestTxId.setValue(Math.max(highestTxId.longValue(), rowTxId));
-                        byte[] convertedRow = primaryRowMarshaller.convert(rowType, row, compactToRowType);
+                        byte[] convertedRow = primaryRowMarshaller.convert(rowType, copy(row), compactToRowType);
                         if (!txFpRowStream.stream(rowTxId, rowFP, compactToRowType, convertedRow)) {
                             return false;
                         }
                     } else if (rowType == RowType.highwater) {
-                        compactionIO.writeHighwater(ioStats, row);
+                        compactionIO.writeHighwater(ioStats, copy(row));
                     } else if (rowType == RowType.end_of_merge) {
-                        keepCarryingOver[0] = row;
+                        keepCarryingOver[0] = copy(row);
                     } else {
                         // system is ignored
                     }
@@ -0,0 +1,56 @@
+package com.jivesoftware.os.amza.service.storage.binary;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Builds a preset deflate dictionary for {@link BinaryPrimaryRowMarshaller} from sample values. Deflate can only reference the dictionary
+ * through back references, so the dictionary is simply the most common substrings of the samples with the most valuable placed last where
+ * the distances are shortest.
+ */
+public class DeflateDictionaryTrainer {
+
+    private final int gramLength;
+    private final int maxDictionarySize;
+    private final Map<String, Integer> counts = new HashMap<>();
+
+    public DeflateDictionaryTrainer(int gramLength, int maxDictionarySize) {
+        this.gramLength = gramLength;
+        this.maxDictionarySize = maxDictionarySize;
+    }
+
+    public void sample(byte[] bytes) {
+        if (bytes == null) {
+            return;
+        }
+        String sample = new String(bytes, StandardCharsets.ISO_8859_1);
+        for (int i = 0; i + gramLength <= sample.length(); i += gramLength / 2) {
+            counts.merge(sample.substring(i, i + gramLength), 1, Integer::sum);
+        }
+    }
+
+    public byte[] train() {
+        List<Map.Entry<String, Integer>> entries = new ArrayList<>(counts.entrySet());
+        entries.removeIf(entry -> entry.getValue() < 2);
+        entries.sort((a, b) -> Integer.compare(b.getValue(), a.getValue()));
+
+        List<String> grams = new ArrayList<>();
+        int size = 0;
+        for (Map.Entry<String, Integer> entry : entries) {
+            if (size + gramLength > maxDictionarySize) {
+                break;
+            }
+            grams.add(entry.getKey());
+            size += gramLength;
+        }
+
+        StringBuilder dictionary = new StringBuilder(size);
+        for (int i = grams.size() - 1; i >= 0; i--) {
+            dictionary.append(grams.get(i));
+        }
+        return dictionary.toString().getBytes(StandardCharsets.ISO_8859_1);
+    }
+}
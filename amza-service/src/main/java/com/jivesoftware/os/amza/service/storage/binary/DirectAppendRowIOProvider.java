@@ -0,0 +1,40 @@
+package com.jivesoftware.os.amza.service.storage.binary;
+
+import com.jivesoftware.os.amza.service.filer.DirectByteBufferPool;
+import com.jivesoftware.os.amza.service.storage.filer.DirectAppendWALFiler;
+import com.jivesoftware.os.amza.service.storage.filer.WALFiler;
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Opens WALs with a {@link DirectAppendWALFiler}, intended for the write-once, read-once delta WALs.
+ */
+public class DirectAppendRowIOProvider extends BinaryRowIOProvider {
+
+    private final int blockSize;
+    private final int stagingBlocks;
+    private final int readCacheBlocks;
+    private final DirectByteBufferPool blockPool;
+
+    public DirectAppendRowIOProvider(
+        int defaultUpdatesBetweenLeaps,
+        int defaultMaxLeaps,
+        int blockSize,
+        int stagingBlocks,
+        int readCacheBlocks,
+        int maxPooledBlocks,
+        DirectByteBufferPool writeBufferPool,
+        int maxSparseTxFpPoints) {
+
+        super(defaultUpdatesBetweenLeaps, defaultMaxLeaps, false, writeBufferPool, maxSparseTxFpPoints);
+        this.blockSize = blockSize;
+        this.stagingBlocks = stagingBlocks;
+        this.readCacheBlocks = readCacheBlocks;
+        this.blockPool = new DirectByteBufferPool(blockSize, maxPooledBlocks);
+    }
+
+    @Override
+    protected WALFiler createFiler(File file) throws IOException {
+        return new DirectAppendWALFiler(file.getAbsolutePath(), "rw", blockSize, stagingBlocks, readCacheBlocks, blockPool);
+    }
+}
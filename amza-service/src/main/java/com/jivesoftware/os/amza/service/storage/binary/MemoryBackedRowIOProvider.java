@@ -3,6 +3,7 @@ package com.jivesoftware.os.amza.service.storage.binary;
 import com.google.common.collect.Maps;
 import com.jivesoftware.os.amza.api.wal.RowIO;
 import com.jivesoftware.os.amza.service.filer.ByteBufferFactory;
+import com.jivesoftware.os.amza.service.filer.DirectByteBufferPool;
 import com.jivesoftware.os.amza.service.filer.MultiAutoGrowingByteBufferBackedFiler;
 import com.jivesoftware.os.amza.service.storage.filer.MemoryBackedWALFiler;
 import java.io.File;
@@ -21,6 +22,8 @@ public class MemoryBackedRowIOProvider implements RowIOProvider {
     private final int defaultUpdatesBetweenLeaps;
     private final int defaultMaxLeaps;
     private final ByteBufferFactory byteBufferFactory;
+    private final DirectByteBufferPool writeBufferPool;
+    private final int maxSparseTxFpPoints;
 
     private final Map<File, MemoryBackedWALFiler> filers = Maps.newConcurrentMap();
 
@@ -29,12 +32,16 @@ public class MemoryBackedRowIOProvider implements RowIOProvider {
         long maxBufferSegmentSize,
         int defaultUpdatesBetweenLeaps,
         int defaultMaxLeaps,
-        ByteBufferFactory byteBufferFactory) {
+        ByteBufferFactory byteBufferFactory,
+        DirectByteBufferPool writeBufferPool,
+        int maxSparseTxFpPoints) {
         this.initialBufferSegmentSize = initialBufferSegmentSize;
         this.maxBufferSegmentSize = maxBufferSegmentSize;
         this.defaultUpdatesBetweenLeaps = defaultUpdatesBetweenLeaps;
         this.defaultMaxLeaps = defaultMaxLeaps;
         this.byteBufferFactory = byteBufferFactory;
+        this.writeBufferPool = writeBufferPool;
+        this.maxSparseTxFpPoints = maxSparseTxFpPoints;
     }
 
     private MemoryBackedWALFiler getFiler(File file) {
@@ -52,13 +59,14 @@ public class MemoryBackedRowIOProvider implements RowIOProvider {
         File file = new File(key, name);
         MemoryBackedWALFiler filer = getFiler(file);
         BinaryRowReader rowReader = new BinaryRowReader(filer);
-        BinaryRowWriter rowWriter = new BinaryRowWriter(filer);
+        BinaryRowWriter rowWriter = new BinaryRowWriter(filer, writeBufferPool);
         return new BinaryRowIO(key,
             name,
             rowReader,
             rowWriter,
             updatesBetweenLeaps > 0 ? updatesBetweenLeaps : defaultUpdatesBetweenLeaps,
-            maxLeaps > 0 ? maxLeaps : defaultMaxLeaps);
+            maxLeaps > 0 ? maxLeaps : defaultMaxLeaps,
+            maxSparseTxFpPoints);
     }
 
     @Override
@@ -0,0 +1,97 @@
+package com.jivesoftware.os.amza.service.storage.binary;
+
+/**
+ * Memory bounded set of (txId, fp) points for one WAL, kept in fp order, where each point means every row before fp has a txId no greater
+ * than txId. Once full, the point whose neighbours are closest together is dropped, so the points stay spread over the whole WAL.
+ */
+class SparseTxFpIndex {
+
+    private final int maxPoints;
+    private long[] fps = new long[8];
+    private long[] txIds = new long[8];
+    private int size;
+
+    SparseTxFpIndex(int maxPoints) {
+        this.maxPoints = Math.max(maxPoints, 3);
+    }
+
+    synchronized void add(long txId, long fp) {
+        int index = indexOf(fp);
+        if (index >= 0) {
+            txIds[index] = Math.max(txIds[index], txId);
+            return;
+        }
+        if (size == maxPoints) {
+            evictDensest();
+            index = indexOf(fp);
+        }
+        if (size == fps.length) {
+            int capacity = Math.min(maxPoints, fps.length * 2);
+            fps = copyOf(fps, capacity);
+            txIds = copyOf(txIds, capacity);
+        }
+        int insertAt = -(index + 1);
+        System.arraycopy(fps, insertAt, fps, insertAt + 1, size - insertAt);
+        System.arraycopy(txIds, insertAt, txIds, insertAt + 1, size - insertAt);
+        fps[insertAt] = fp;
+        txIds[insertAt] = txId;
+        size++;
+    }
+
+    /**
+     * @return { the furthest fp known to start at or before the first row at or after transactionId, the nearest fp beyond it or -1 }
+     */
+    synchronized long[] bracket(long transactionId) {
+        long startFp = 0;
+        int i = 0;
+        for (; i < size; i++) {
+            if (txIds[i] < transactionId) {
+                startFp = fps[i];
+            } else {
+                break;
+            }
+        }
+        return new long[] { startFp, i < size ? fps[i] : -1 };
+    }
+
+    synchronized int size() {
+        return size;
+    }
+
+    private int indexOf(long fp) {
+        int low = 0;
+        int high = size - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (fps[mid] < fp) {
+                low = mid + 1;
+            } else if (fps[mid] > fp) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -(low + 1);
+    }
+
+    private void evictDensest() {
+        int evict = 1;
+        long smallestSpan = Long.MAX_VALUE;
+        for (int i = 1; i < size - 1; i++) {
+            long span = fps[i + 1] - fps[i - 1];
+            if (span < smallestSpan) {
+                smallestSpan = span;
+                evict = i;
+            }
+        }
+        System.arraycopy(fps, evict + 1, fps, evict, size - evict - 1);
+        System.arraycopy(txIds, evict + 1, txIds, evict, size - evict - 1);
+        size--;
+    }
+
+    private static long[] copyOf(long[] array, int capacity) {
+        long[] copy = new long[capacity];
+        System.arraycopy(array, 0, copy, 0, array.length);
+        return copy;
+    }
+}
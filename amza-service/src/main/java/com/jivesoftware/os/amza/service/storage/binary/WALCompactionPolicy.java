@@ -0,0 +1,76 @@
+package com.jivesoftware.os.amza.service.storage.binary;
+
+import com.google.common.util.concurrent.RateLimiter;
+
+/**
+ * Controls how {@link BinaryWALTx} compacts. The WAL is walked in segments of {@code segmentSizeInBytes}; unforced compactions first measure
+ * how many bytes each segment would reclaim and only rewrite when at least one segment crosses {@code minReclaimableRatio}. Every segment
+ * read or rewritten outside the final exclusive pass is charged against a node wide byte budget.
+ */
+public class WALCompactionPolicy {
+
+    public static final WALCompactionPolicy NONE = new WALCompactionPolicy(null, 64 * 1024 * 1024, 0d, 0);
+
+    private final RateLimiter bytesPerSecond;
+    private final long segmentSizeInBytes;
+    private final double minReclaimableRatio;
+    private final long reanalyzeAfterMillis;
+
+    /**
+     * @param bytesPerSecond       shared across all WALs, or null for no limit
+     * @param segmentSizeInBytes   size of the ranges the WAL is analyzed and copied in
+     * @param minReclaimableRatio  dead bytes / segment bytes a segment must reach to justify a rewrite, or 0 to always rewrite
+     * @param reanalyzeAfterMillis how long a WAL which was found not worth compacting is left alone unless it grows by a segment
+     */
+    public WALCompactionPolicy(RateLimiter bytesPerSecond, long segmentSizeInBytes, double minReclaimableRatio, long reanalyzeAfterMillis) {
+        this.bytesPerSecond = bytesPerSecond;
+        this.segmentSizeInBytes = segmentSizeInBytes;
+        this.minReclaimableRatio = minReclaimableRatio;
+        this.reanalyzeAfterMillis = reanalyzeAfterMillis;
+    }
+
+    public static WALCompactionPolicy create(long bytesPerSecond, long segmentSizeInBytes, double minReclaimableRatio, long reanalyzeAfterMillis) {
+        return new WALCompactionPolicy(bytesPerSecond > 0 ? RateLimiter.create(bytesPerSecond) : null,
+            segmentSizeInBytes,
+            minReclaimableRatio,
+            reanalyzeAfterMillis);
+    }
+
+    /**
+     * @return the current byte budget, or -1 if compaction is not throttled
+     */
+    public double getBytesPerSecond() {
+        return bytesPerSecond == null ? -1 : bytesPerSecond.getRate();
+    }
+
+    public void setBytesPerSecond(double rate) {
+        if (bytesPerSecond != null) {
+            bytesPerSecond.setRate(rate);
+        }
+    }
+
+    public long getSegmentSizeInBytes() {
+        return segmentSizeInBytes;
+    }
+
+    public double getMinReclaimableRatio() {
+        return minReclaimableRatio;
+    }
+
+    public long getReanalyzeAfterMillis() {
+        return reanalyzeAfterMillis;
+    }
+
+    /**
+     * Blocks until {@code bytes} fit in the byte budget. Never call while holding a WAL's exclusive lock.
+     */
+    public void throttle(long bytes) {
+        if (bytesPerSecond != null && bytes > 0) {
+            while (bytes > 0) {
+                int permits = (int) Math.min(bytes, Integer.MAX_VALUE);
+                bytesPerSecond.acquire(permits);
+                bytes -= permits;
+            }
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package com.jivesoftware.os.amza.service.storage.delta;
+
+import com.jivesoftware.os.amza.api.wal.WALPointer;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Ordered index of composed wal keys to their latest pointer in a delta WAL.
+ */
+interface DeltaPointerIndex {
+
+    WALPointer get(byte[] walKey);
+
+    void put(byte[] walKey, WALPointer pointer);
+
+    long size();
+
+    /**
+     * Null bounds are unbounded. From is inclusive and to is exclusive.
+     */
+    Iterator<Map.Entry<byte[], WALPointer>> iterator(byte[] from, byte[] to);
+}
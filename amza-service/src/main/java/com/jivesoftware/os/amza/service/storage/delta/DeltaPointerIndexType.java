@@ -0,0 +1,22 @@
+package com.jivesoftware.os.amza.service.storage.delta;
+
+/**
+ *
+ */
+public enum DeltaPointerIndexType {
+
+    heap {
+        @Override
+        DeltaPointerIndex create(int slabMaxBufferedKeys) {
+            return new HeapDeltaPointerIndex();
+        }
+    },
+    slab {
+        @Override
+        DeltaPointerIndex create(int slabMaxBufferedKeys) {
+            return new SlabDeltaPointerIndex(slabMaxBufferedKeys);
+        }
+    };
+
+    abstract DeltaPointerIndex create(int slabMaxBufferedKeys);
+}
@@ -70,6 +70,7 @@ import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
 import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.concurrent.locks.LockSupport;
@@ -92,18 +93,22 @@ public class DeltaStripeWALStorage {
     private final HighwaterStorage highwaterStorage;
     private final DeltaWALFactory deltaWALFactory;
     private final int maxValueSizeInIndex;
+    private final DeltaPointerIndexType pointerIndexType;
+    private final int slabMaxBufferedKeys;
     private final boolean useHighwaterTxId;
     private final WALIndexProviderRegistry walIndexProviderRegistry;
     private final long mergeAfterNUpdates;
     private final ExecutorService mergeDeltaThreads;
 
     private final Object awakeCompactionsLock = new Object();
+    private final Object capacityLock = new Object();
     private final AtomicReference<DeltaWAL> deltaWAL = new AtomicReference<>();
     private final Map<VersionedPartitionName, PartitionDelta> partitionDeltas = Maps.newConcurrentMap();
     private final Object oneWriterAtATimeLock = new Object();
     private final Semaphore tickleMeElmophore = new Semaphore(numTickleMeElmaphore, true);
     private final AtomicLong updateSinceLastMerge = new AtomicLong();
     private final AtomicLong merging = new AtomicLong(0);
+    private final AtomicBoolean mergeInProgress = new AtomicBoolean(false);
 
     private final Reentrant reentrant = new Reentrant();
 
@@ -128,6 +133,8 @@ public class DeltaStripeWALStorage {
         HighwaterStorage highwaterStorage,
         DeltaWALFactory deltaWALFactory,
         int maxValueSizeInIndex,
+        DeltaPointerIndexType pointerIndexType,
+        int slabMaxBufferedKeys,
         boolean useHighwaterTxId,
         WALIndexProviderRegistry walIndexProviderRegistry,
         long mergeAfterNUpdates,
@@ -142,6 +149,8 @@ public class DeltaStripeWALStorage {
         this.highwaterStorage = highwaterStorage;
         this.deltaWALFactory = deltaWALFactory;
         this.maxValueSizeInIndex = maxValueSizeInIndex;
+        this.pointerIndexType = pointerIndexType;
+        this.slabMaxBufferedKeys = slabMaxBufferedKeys;
         this.useHighwaterTxId = useHighwaterTxId;
         this.walIndexProviderRegistry = walIndexProviderRegistry;
         this.mergeAfterNUpdates = mergeAfterNUpdates;
@@ -308,6 +317,11 @@ public class DeltaStripeWALStorage {
         }
     }
 
+    public long length() throws Exception {
+        DeltaWAL wal = deltaWAL.get();
+        return wal != null ? wal.length() : 0;
+    }
+
     public boolean hasChangesFor(VersionedPartitionName versionedPartitionName) {
         return partitionDeltas.containsKey(versionedPartitionName);
     }
@@ -357,7 +371,7 @@ public class DeltaStripeWALStorage {
                     throw new IllegalStateException("Delta WAL is currently unavailable.");
                 }
                 partitionDelta = partitionDeltas.computeIfAbsent(versionedPartitionName,
-                    vpn -> new PartitionDelta(versionedPartitionName, wal, maxValueSizeInIndex, null));
+                    vpn -> new PartitionDelta(versionedPartitionName, wal, maxValueSizeInIndex, pointerIndexType.create(slabMaxBufferedKeys), null));
             }
             partitionDelta.acquire();
         }
@@ -368,6 +382,38 @@ public class DeltaStripeWALStorage {
         }
     }
 
+    private boolean isOverCapacity() {
+        long mergeDebt = merging.get();
+        return (mergeDebt > 0 && mergeDebt + updateSinceLastMerge.get() > (2 * mergeAfterNUpdates))
+            || updateSinceLastMerge.get() > (2 * mergeAfterNUpdates);
+    }
+
+    private void capacityReleased() {
+        synchronized (capacityLock) {
+            capacityLock.notifyAll();
+        }
+    }
+
+    /**
+     * Blocks until a merge has released enough of this delta for {@link #update} to stop throwing {@link DeltaOverCapacityException}, or until
+     * the timeout elapses.
+     */
+    public void awaitCapacity(long timeoutMillis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        synchronized (capacityLock) {
+            while (isOverCapacity()) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    return;
+                }
+                synchronized (awakeCompactionsLock) {
+                    awakeCompactionsLock.notifyAll();
+                }
+                capacityLock.wait(remaining);
+            }
+        }
+    }
+
     public boolean mergeable() {
         return updateSinceLastMerge.get() > mergeAfterNUpdates;
     }
@@ -382,16 +428,18 @@ public class DeltaStripeWALStorage {
             return;
         }
 
-        long had = updateSinceLastMerge.get();
-        if (!merging.compareAndSet(0, had)) {
+        if (!mergeInProgress.compareAndSet(false, true)) {
             LOG.warn("Trying to merge DeltaStripe:" + partitionIndex + " while another merge is already in progress.");
             return;
         }
+        long had = updateSinceLastMerge.get();
+        merging.set(had);
         CompactionStats compactionStats = amzaStats.beginCompaction(CompactionFamily.merge, "merge-delta-stripe" + getId());
+        boolean mergeDelta = false;
         try {
             DeltaWAL wal = deltaWAL.get();
             updateSinceLastMerge.set(0);
-            boolean mergeDelta = mergeDelta(ioStats,
+            mergeDelta = mergeDelta(ioStats,
                 compactionStats,
                 partitionIndex,
                 versionedPartitionProvider,
@@ -400,12 +448,14 @@ public class DeltaStripeWALStorage {
                 false,
                 () -> deltaWALFactory.create(ioStats, wal.getId())
             );
+        } finally {
             if (!mergeDelta) {
                 updateSinceLastMerge.addAndGet(had);
             }
             merging.set(0);
-        } finally {
+            mergeInProgress.set(false);
             compactionStats.finished();
+            capacityReleased();
         }
     }
 
@@ -420,6 +470,7 @@ public class DeltaStripeWALStorage {
         Callable<DeltaWAL> newWAL) throws Exception {
 
         List<Future<MergeResult>> futures = new ArrayList<>();
+        long mergeDebt = merging.get();
         writeAcquireAll();
         try {
             synchronized (partitionDeltas) {
@@ -437,6 +488,7 @@ public class DeltaStripeWALStorage {
                 AtomicLong mergeable = new AtomicLong();
                 AtomicLong merged = new AtomicLong();
                 AtomicLong unmerged = new AtomicLong();
+                List<MergeTask> tasks = new ArrayList<>();
 
                 Iterator<Entry<VersionedPartitionName, PartitionDelta>> iter = partitionDeltas.entrySet().iterator();
                 while (iter.hasNext()) {
@@ -448,23 +500,11 @@ public class DeltaStripeWALStorage {
                         if (mergeableDelta.needsToMerge()) {
                             long mergeableCount = mergeableDelta.size();
                             unmerged.addAndGet(mergeableCount);
-                            PartitionDelta currentDelta = new PartitionDelta(versionedPartitionName, newDeltaWAL, maxValueSizeInIndex, mergeableDelta);
+                            PartitionDelta currentDelta = new PartitionDelta(versionedPartitionName, newDeltaWAL, maxValueSizeInIndex,
+                                pointerIndexType.create(slabMaxBufferedKeys), mergeableDelta);
                             entry.setValue(currentDelta);
                             mergeable.incrementAndGet();
-                            futures.add(mergeDeltaThreads.submit(() -> {
-                                return getMergeResult(ioStats,
-                                    walCompactionStats,
-                                    partitionIndex,
-                                    versionedPartitionProvider,
-                                    currentVersionProvider,
-                                    validate,
-                                    mergeable,
-                                    merged,
-                                    unmerged,
-                                    versionedPartitionName,
-                                    mergeableCount,
-                                    currentDelta);
-                            }));
+                            tasks.add(new MergeTask(versionedPartitionName, mergeableCount, currentDelta));
                         } else {
                             LOG.warn("Ignored merge for empty partition {}", versionedPartitionName);
                             iter.remove();
@@ -474,6 +514,32 @@ public class DeltaStripeWALStorage {
                         iter.remove();
                     }
                 }
+
+                // largest partitions first so the bulk of the merge debt is released as early as possible
+                Collections.sort(tasks, (o1, o2) -> Long.compare(o2.mergeableCount, o1.mergeableCount));
+                long totalMergeable = unmerged.get();
+                for (MergeTask task : tasks) {
+                    long releaseDebt = totalMergeable == 0 ? 0 : (long) (mergeDebt * (task.mergeableCount / (double) totalMergeable));
+                    futures.add(mergeDeltaThreads.submit(() -> {
+                        try {
+                            return getMergeResult(ioStats,
+                                walCompactionStats,
+                                partitionIndex,
+                                versionedPartitionProvider,
+                                currentVersionProvider,
+                                validate,
+                                mergeable,
+                                merged,
+                                unmerged,
+                                task.versionedPartitionName,
+                                task.mergeableCount,
+                                task.currentDelta);
+                        } finally {
+                            merging.updateAndGet(debt -> Math.max(0, debt - releaseDebt));
+                            capacityReleased();
+                        }
+                    }));
+                }
                 amzaStats.deltaStripeMerge(index, 0, 0);
             }
         } catch (Exception x) {
@@ -513,8 +579,10 @@ public class DeltaStripeWALStorage {
         }
 
         try {
-            wal.awaitDerefenced();
-            LOG.info("Awaited clear references for delta partitions.");
+            long awaitedMillis = wal.awaitDerefenced();
+            amzaStats.deltaMergeAwaitedReaders.increment();
+            amzaStats.deltaMergeAwaitedReadersMillis.add(awaitedMillis);
+            LOG.info("Awaited clear references for delta partitions in {} ms.", awaitedMillis);
         } catch (Exception x) {
             parkSick("This is catastrophic. Failure awaiting clear references.", x);
         }
@@ -546,6 +614,19 @@ public class DeltaStripeWALStorage {
         return true;
     }
 
+    private static class MergeTask {
+
+        private final VersionedPartitionName versionedPartitionName;
+        private final long mergeableCount;
+        private final PartitionDelta currentDelta;
+
+        private MergeTask(VersionedPartitionName versionedPartitionName, long mergeableCount, PartitionDelta currentDelta) {
+            this.versionedPartitionName = versionedPartitionName;
+            this.mergeableCount = mergeableCount;
+            this.currentDelta = currentDelta;
+        }
+    }
+
     private void parkSick(String message, Exception x) {
         sickThreads.sick(x);
         LOG.error(message
@@ -633,12 +714,12 @@ public class DeltaStripeWALStorage {
         Commitable updates,
         WALUpdated updated) throws Exception {
 
-        long mergeDebt = merging.get();
-        if ((mergeDebt > 0 && mergeDebt + updateSinceLastMerge.get() > (2 * mergeAfterNUpdates))
-            || updateSinceLastMerge.get() > (2 * mergeAfterNUpdates)) {
+        if (isOverCapacity()) {
             throw new DeltaOverCapacityException("Delta is full");
         }
 
+        long mergeDebt = merging.get();
+
         if (directApply && mergeDebt > 0) {
             long highestTxId = partitionStore.mergedTxId();
             int takeFromFactor = ringReader.getTakeFromFactor(versionedPartitionName.getPartitionName().getRingName(), 0);
@@ -719,7 +800,8 @@ public class DeltaStripeWALStorage {
                         partitionHighwater = highwaterStorage.getPartitionHighwater(versionedPartitionName, false);
                     }
                     DeltaWAL.DeltaWALApplied updateApplied;
-                    synchronized (oneWriterAtATimeLock) {
+                    // writers to different partitions no longer serialize here, which lets the delta WAL group commit them together
+                    synchronized (delta) {
                         Iterator<Entry<WALKey, WALValue>> iter = apply.entrySet().iterator();
                         while (iter.hasNext()) {
                             Entry<WALKey, WALValue> entry = iter.next();
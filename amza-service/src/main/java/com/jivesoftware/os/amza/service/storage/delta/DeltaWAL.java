@@ -16,10 +16,11 @@ import com.jivesoftware.os.amza.api.wal.WALValue;
 import com.jivesoftware.os.amza.service.storage.HighwaterRowMarshaller;
 import com.jivesoftware.os.jive.utils.ordered.id.OrderIdProvider;
 import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.atomic.AtomicLong;
-import org.apache.commons.lang.mutable.MutableInt;
-import org.apache.commons.lang.mutable.MutableLong;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * @author jonathan.colt
@@ -35,6 +36,10 @@ public class DeltaWAL implements WALRowHydrator, Comparable<DeltaWAL> {
     private final AtomicLong updateCount = new AtomicLong();
     private final Object oneTxAtATimeLock = new Object();
     private final AtomicLong referenceCount = new AtomicLong();
+    private final Object pendingTxsLock = new Object();
+    private final List<PendingTx> pendingTxs = new ArrayList<>();
+    private final LongAdder groupCommits = new LongAdder();
+    private final LongAdder groupCommitTxs = new LongAdder();
 
     public DeltaWAL(long id,
         long prevId,
@@ -58,6 +63,11 @@ public class DeltaWAL implements WALRowHydrator, Comparable<DeltaWAL> {
     void release() {
         long count = referenceCount.decrementAndGet();
         //System.out.println("released: " + count);
+        if (count == 0) {
+            synchronized (referenceCount) {
+                referenceCount.notifyAll();
+            }
+        }
     }
 
     @Override
@@ -65,14 +75,19 @@ public class DeltaWAL implements WALRowHydrator, Comparable<DeltaWAL> {
         release();
     }
 
-    void awaitDerefenced() throws InterruptedException {
-        long count = referenceCount.get();
-        //System.out.println("await: " + count);
-        while (count > 0) {
-            Thread.sleep(1000); //TODO config if we care
-            count = referenceCount.get();
-            //System.out.println("await: " + count);
+    /**
+     * Blocks until the last reader releases this WAL. The final release wakes the waiter immediately.
+     *
+     * @return how long we waited on readers in millis
+     */
+    long awaitDerefenced() throws InterruptedException {
+        long start = System.currentTimeMillis();
+        synchronized (referenceCount) {
+            while (referenceCount.get() > 0) {
+                referenceCount.wait();
+            }
         }
+        return System.currentTimeMillis() - start;
     }
 
     long getId() {
@@ -94,6 +109,10 @@ public class DeltaWAL implements WALRowHydrator, Comparable<DeltaWAL> {
         wal.flush(fsync);
     }
 
+    public long length() throws Exception {
+        return wal.length();
+    }
+
     // TODO IOC shift to using callback
     private byte[] appendHighwaterHints(byte[] value, byte[] hintsBytes) throws Exception {
         if (hintsBytes != null) {
@@ -131,69 +150,123 @@ public class DeltaWAL implements WALRowHydrator, Comparable<DeltaWAL> {
         Map<WALKey, WALValue> apply,
         WALHighwater highwaterHint) throws Exception {
 
-        MutableLong txId = new MutableLong();
         int numApplies = apply.size();
         KeyValueHighwater[] keyValueHighwaters = new KeyValueHighwater[numApplies];
-        long[] fps = new long[numApplies];
         int index = 0;
+        int estimatedSizeInBytes = 0;
         for (Map.Entry<WALKey, WALValue> entry : apply.entrySet()) {
             byte[] prefix = entry.getKey().prefix;
             byte[] key = entry.getKey().key;
             WALValue value = entry.getValue();
             WALHighwater highwater = (index == numApplies - 1) ? highwaterHint : null;
-            keyValueHighwaters[index] = new KeyValueHighwater(rowType, prefix, key,
+            KeyValueHighwater kvh = new KeyValueHighwater(rowType, prefix, key,
                 value.getValue(), value.getTimestampId(), value.getTombstoned(), value.getVersion(), highwater);
+            keyValueHighwaters[index] = kvh;
+            int pkSizeInBytes = WALKey.sizeOfComposed(versionedPartitionName.sizeInBytes(),
+                WALKey.sizeOfComposed(kvh.prefix != null ? kvh.prefix.length : 0, kvh.key.length));
+            int valueSizeInBytes = sizeWithAppendedHighwaterHints(kvh.value, kvh.highwater);
+            estimatedSizeInBytes += primaryRowMarshaller.maximumSizeInBytes(rowType, pkSizeInBytes, valueSizeInBytes);
             index++;
         }
-        wal.tx(io -> {
-            long transactionId;
-            MutableInt fpIndex = new MutableInt(0);
-            synchronized (oneTxAtATimeLock) {
-                transactionId = (orderIdProvider == null) ? 0 : orderIdProvider.nextId();
-                int estimatedSizeInBytes = 0;
-                for (KeyValueHighwater kvh : keyValueHighwaters) {
-                    int pkSizeInBytes = WALKey.sizeOfComposed(versionedPartitionName.sizeInBytes(),
-                        WALKey.sizeOfComposed(kvh.prefix != null ? kvh.prefix.length : 0, kvh.key.length));
-                    int valueSizeInBytes = sizeWithAppendedHighwaterHints(kvh.value, kvh.highwater);
-                    estimatedSizeInBytes += primaryRowMarshaller.maximumSizeInBytes(rowType, pkSizeInBytes, valueSizeInBytes);
+
+        PendingTx pending = new PendingTx(rowType, versionedPartitionName, keyValueHighwaters, estimatedSizeInBytes);
+        synchronized (pendingTxsLock) {
+            // txIds are handed out in queue order so that a group commit always lands txIds in ascending order
+            pending.txId = (orderIdProvider == null) ? 0 : orderIdProvider.nextId();
+            pendingTxs.add(pending);
+        }
+
+        synchronized (oneTxAtATimeLock) {
+            if (!pending.committed) {
+                List<PendingTx> group;
+                synchronized (pendingTxsLock) {
+                    group = new ArrayList<>(pendingTxs);
+                    pendingTxs.clear();
                 }
-                io.write(ioStats,
-                    transactionId,
-                    rowType,
-                    keyValueHighwaters.length,
-                    estimatedSizeInBytes,
+                groupCommit(ioStats, group);
+            }
+        }
+
+        if (pending.failure != null) {
+            throw new IllegalStateException("Failed to group commit txId:" + pending.txId + " for " + versionedPartitionName, pending.failure);
+        }
+        updateCount.addAndGet(numApplies);
+        return new DeltaWALApplied(pending.txId, keyValueHighwaters, pending.fps);
+    }
+
+    /**
+     * Must be called while holding oneTxAtATimeLock. Appends every pending tx with a single write and flush, then marks each as committed.
+     */
+    private void groupCommit(IoStats ioStats, List<PendingTx> group) {
+        try {
+            int estimatedNumberOfRows = 0;
+            int estimatedSizeInBytes = 0;
+            for (PendingTx tx : group) {
+                estimatedNumberOfRows += tx.keyValueHighwaters.length;
+                estimatedSizeInBytes += tx.estimatedSizeInBytes;
+            }
+            int numberOfRows = estimatedNumberOfRows;
+            int sizeInBytes = estimatedSizeInBytes;
+            wal.tx(io -> {
+                int[] txIndex = { 0 };
+                int[] fpIndex = { 0 };
+                io.writeTxs(ioStats,
+                    numberOfRows,
+                    sizeInBytes,
                     rowStream -> {
-                        for (KeyValueHighwater kvh : keyValueHighwaters) {
-                            byte[] pk = WALKey.compose(versionedPartitionName.toBytes(), WALKey.compose(kvh.prefix, kvh.key));
-                            byte[] value = appendHighwaterHints(kvh.value, highwaterRowMarshaller.toBytes(kvh.highwater));
-                            byte[] row = primaryRowMarshaller.toRow(rowType, pk, value, kvh.valueTimestamp, kvh.valueTombstone, kvh.valueVersion);
-                            if (!rowStream.stream(row)) {
-                                return false;
+                        for (PendingTx tx : group) {
+                            byte[] partitionNameBytes = tx.versionedPartitionName.toBytes();
+                            for (KeyValueHighwater kvh : tx.keyValueHighwaters) {
+                                byte[] pk = WALKey.compose(partitionNameBytes, WALKey.compose(kvh.prefix, kvh.key));
+                                byte[] value = appendHighwaterHints(kvh.value, highwaterRowMarshaller.toBytes(kvh.highwater));
+                                byte[] row = primaryRowMarshaller.toRow(tx.rowType, pk, value, kvh.valueTimestamp, kvh.valueTombstone, kvh.valueVersion);
+                                if (!rowStream.stream(tx.txId, tx.rowType, row)) {
+                                    return false;
+                                }
                             }
                         }
                         return true;
                     },
-                    indexKeyStream -> {
-                        for (KeyValueHighwater kvh : keyValueHighwaters) {
-                            if (!indexKeyStream.stream(kvh.prefix, kvh.key, kvh.value, kvh.valueTimestamp, kvh.valueTombstone, kvh.valueVersion)) {
-                                return false;
-                            }
+                    (rowTxId, fp) -> {
+                        PendingTx tx = group.get(txIndex[0]);
+                        while (tx.fps.length == fpIndex[0]) {
+                            txIndex[0]++;
+                            fpIndex[0] = 0;
+                            tx = group.get(txIndex[0]);
                         }
-                        return true;
-                    },
-                    (rowTxId, prefix, key, value, valueTimestamp, valueTombstoned, valueVersion, fp) -> {
-                        fps[fpIndex.intValue()] = fp;
-                        fpIndex.increment();
+                        tx.fps[fpIndex[0]] = fp;
+                        fpIndex[0]++;
                         return true;
                     },
                     true,
                     false);
+                return null;
+            });
+            groupCommits.increment();
+            groupCommitTxs.add(group.size());
+        } catch (Throwable t) {
+            for (PendingTx tx : group) {
+                tx.failure = t;
             }
-            txId.setValue(transactionId);
-            return null;
-        });
-        updateCount.addAndGet(numApplies);
-        return new DeltaWALApplied(txId.longValue(), keyValueHighwaters, fps);
+        } finally {
+            for (PendingTx tx : group) {
+                tx.committed = true;
+            }
+        }
+    }
+
+    int pendingTxCount() {
+        synchronized (pendingTxsLock) {
+            return pendingTxs.size();
+        }
+    }
+
+    public long getGroupCommits() {
+        return groupCommits.longValue();
+    }
+
+    public long getGroupCommitTxs() {
+        return groupCommitTxs.longValue();
     }
 
     public void hackTruncation(int numBytes) {
@@ -342,6 +415,30 @@ public class DeltaWAL implements WALRowHydrator, Comparable<DeltaWAL> {
         }
     }
 
+    private static class PendingTx {
+
+        private final RowType rowType;
+        private final VersionedPartitionName versionedPartitionName;
+        private final KeyValueHighwater[] keyValueHighwaters;
+        private final int estimatedSizeInBytes;
+        private final long[] fps;
+
+        private long txId;
+        private boolean committed;
+        private Throwable failure;
+
+        private PendingTx(RowType rowType,
+            VersionedPartitionName versionedPartitionName,
+            KeyValueHighwater[] keyValueHighwaters,
+            int estimatedSizeInBytes) {
+            this.rowType = rowType;
+            this.versionedPartitionName = versionedPartitionName;
+            this.keyValueHighwaters = keyValueHighwaters;
+            this.estimatedSizeInBytes = estimatedSizeInBytes;
+            this.fps = new long[keyValueHighwaters.length];
+        }
+    }
+
     public static class DeltaWALApplied {
 
         public final long txId;
@@ -0,0 +1,55 @@
+package com.jivesoftware.os.amza.service.storage.delta;
+
+import com.jivesoftware.os.amza.api.wal.KeyUtil;
+import com.jivesoftware.os.amza.api.wal.WALPointer;
+import com.jivesoftware.os.jive.utils.collections.bah.ConcurrentBAHash;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Keeps every pointer on heap in a hash for point lookups and a skip list for ordered scans.
+ */
+class HeapDeltaPointerIndex implements DeltaPointerIndex {
+
+    private final ConcurrentBAHash<WALPointer> pointerIndex = new ConcurrentBAHash<>(3, true, 4);
+    private final ConcurrentSkipListMap<byte[], WALPointer> orderedIndex = new ConcurrentSkipListMap<>(KeyUtil::compare);
+
+    @Override
+    public WALPointer get(byte[] walKey) {
+        return pointerIndex.get(walKey);
+    }
+
+    @Override
+    public void put(byte[] walKey, WALPointer pointer) {
+        pointerIndex.put(walKey, pointer);
+        orderedIndex.put(walKey, pointer);
+    }
+
+    @Override
+    public long size() {
+        return pointerIndex.size();
+    }
+
+    @Override
+    public Iterator<Map.Entry<byte[], WALPointer>> iterator(byte[] from, byte[] to) {
+        return subMap(orderedIndex, from, to).entrySet().iterator();
+    }
+
+    private static ConcurrentNavigableMap<byte[], WALPointer> subMap(ConcurrentSkipListMap<byte[], WALPointer> index, byte[] from, byte[] to) {
+        if (from != null && to != null) {
+            if (KeyUtil.compare(from, to) <= 0) {
+                return index.subMap(from, to);
+            } else {
+                return index.subMap(from, to).descendingMap();
+            }
+        } else if (from != null) {
+            return index.tailMap(from, true);
+        } else if (to != null) {
+            return index.headMap(to, false);
+        } else {
+            return index;
+        }
+    }
+}
@@ -12,7 +12,6 @@ import com.jivesoftware.os.amza.api.stream.KeyValuePointerStream;
 import com.jivesoftware.os.amza.api.stream.KeyValues;
 import com.jivesoftware.os.amza.api.stream.UnprefixedWALKeys;
 import com.jivesoftware.os.amza.api.stream.WALKeyPointerStream;
-import com.jivesoftware.os.amza.api.wal.KeyUtil;
 import com.jivesoftware.os.amza.api.wal.WALIndex;
 import com.jivesoftware.os.amza.api.wal.WALKey;
 import com.jivesoftware.os.amza.api.wal.WALPointer;
@@ -20,15 +19,12 @@ import com.jivesoftware.os.amza.api.wal.WALPrefix;
 import com.jivesoftware.os.amza.service.storage.PartitionIndex;
 import com.jivesoftware.os.amza.service.storage.PartitionStore;
 import com.jivesoftware.os.amza.service.take.HighwaterStorage;
-import com.jivesoftware.os.jive.utils.collections.bah.ConcurrentBAHash;
 import com.jivesoftware.os.mlogger.core.MetricLogger;
 import com.jivesoftware.os.mlogger.core.MetricLoggerFactory;
 import java.util.Arrays;
 import java.util.Comparator;
 import java.util.Iterator;
 import java.util.Map;
-import java.util.concurrent.ConcurrentNavigableMap;
-import java.util.concurrent.ConcurrentSkipListMap;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
@@ -46,8 +42,7 @@ class PartitionDelta {
     private final int maxValueSizeInIndex;
     private final AtomicReference<PartitionDelta> mergingDelta;
 
-    private final ConcurrentBAHash<WALPointer> pointerIndex = new ConcurrentBAHash<>(3, true, 4);
-    private final ConcurrentSkipListMap<byte[], WALPointer> orderedIndex = new ConcurrentSkipListMap<>(KeyUtil::compare);
+    private final DeltaPointerIndex pointerIndex;
     private final Map<WALPrefix, AppendOnlyConcurrentArrayList> prefixTxFpIndex = Maps.newConcurrentMap();
     private final AppendOnlyConcurrentArrayList txIdWAL = new AppendOnlyConcurrentArrayList(11); //TODO expose to config
     private final AtomicLong updatesSinceLastHighwaterFlush = new AtomicLong();
@@ -55,10 +50,12 @@ class PartitionDelta {
     PartitionDelta(VersionedPartitionName versionedPartitionName,
         DeltaWAL deltaWAL,
         int maxValueSizeInIndex,
+        DeltaPointerIndex pointerIndex,
         PartitionDelta merging) {
         this.versionedPartitionName = versionedPartitionName;
         this.deltaWAL = deltaWAL;
         this.maxValueSizeInIndex = maxValueSizeInIndex;
+        this.pointerIndex = pointerIndex;
         this.mergingDelta = new AtomicReference<>(merging);
     }
 
@@ -221,9 +218,7 @@ class PartitionDelta {
         } else {
             pointer = new WALPointer(fp, valueTimestamp, valueTombstone, valueVersion, false, null);
         }
-        byte[] walKey = WALKey.compose(prefix, key);
-        pointerIndex.put(walKey, pointer);
-        orderedIndex.put(walKey, pointer);
+        pointerIndex.put(WALKey.compose(prefix, key), pointer);
     }
 
     private final AtomicBoolean firstAndOnlyOnce = new AtomicBoolean(true);
@@ -241,7 +236,9 @@ class PartitionDelta {
     boolean keys(WALKeyPointerStream keyPointerStream) throws Exception {
         return WALKey.decompose(
             txFpRawKeyValueEntryStream -> {
-                for (Map.Entry<byte[], WALPointer> entry : orderedIndex.entrySet()) {
+                Iterator<Map.Entry<byte[], WALPointer>> iterator = pointerIndex.iterator(null, null);
+                while (iterator.hasNext()) {
+                    Map.Entry<byte[], WALPointer> entry = iterator.next();
                     WALPointer pointer = entry.getValue();
                     if (!txFpRawKeyValueEntryStream.stream(-1,
                         pointer.getFp(),
@@ -265,40 +262,24 @@ class PartitionDelta {
     DeltaPeekableElmoIterator rangeScanIterator(byte[] fromPrefix, byte[] fromKey, byte[] toPrefix, byte[] toKey, boolean hydrateValues) {
         byte[] from = fromKey != null ? WALKey.compose(fromPrefix, fromKey) : null;
         byte[] to = toKey != null ? WALKey.compose(toPrefix, toKey) : null;
-        Iterator<Map.Entry<byte[], WALPointer>> iterator = subMap(orderedIndex, from, to).entrySet().iterator();
+        Iterator<Map.Entry<byte[], WALPointer>> iterator = pointerIndex.iterator(from, to);
         Iterator<Map.Entry<byte[], WALPointer>> mergingIterator = Iterators.emptyIterator();
         DeltaWAL mergingDeltaWAL = null;
         PartitionDelta mergingPartitionDelta = acquireMerging();
         if (mergingPartitionDelta != null) {
-            mergingIterator = subMap(mergingPartitionDelta.orderedIndex, from, to).entrySet().iterator();
+            mergingIterator = mergingPartitionDelta.pointerIndex.iterator(from, to);
             mergingDeltaWAL = mergingPartitionDelta.deltaWAL;
         }
         return new DeltaPeekableElmoIterator(iterator, mergingIterator, deltaWAL, mergingDeltaWAL, hydrateValues);
     }
 
-    private static ConcurrentNavigableMap<byte[], WALPointer> subMap(ConcurrentSkipListMap<byte[], WALPointer> index, byte[] from, byte[] to) {
-        if (from != null && to != null) {
-            if (KeyUtil.compare(from, to) <= 0) {
-                return index.subMap(from, to);
-            } else {
-                return index.subMap(from, to).descendingMap();
-            }
-        } else if (from != null) {
-            return index.tailMap(from, true);
-        } else if (to != null) {
-            return index.headMap(to, false);
-        } else {
-            return index;
-        }
-    }
-
     DeltaPeekableElmoIterator rowScanIterator(boolean hydrateValues) {
-        Iterator<Map.Entry<byte[], WALPointer>> iterator = orderedIndex.entrySet().iterator();
+        Iterator<Map.Entry<byte[], WALPointer>> iterator = pointerIndex.iterator(null, null);
         Iterator<Map.Entry<byte[], WALPointer>> mergingIterator = Iterators.emptyIterator();
         DeltaWAL mergingDeltaWAL = null;
         PartitionDelta mergingPartitionDelta = acquireMerging();
         if (mergingPartitionDelta != null) {
-            mergingIterator = mergingPartitionDelta.orderedIndex.entrySet().iterator();
+            mergingIterator = mergingPartitionDelta.pointerIndex.iterator(null, null);
             mergingDeltaWAL = mergingPartitionDelta.deltaWAL;
         }
         return new DeltaPeekableElmoIterator(iterator, mergingIterator, deltaWAL, mergingDeltaWAL, hydrateValues);
@@ -488,7 +469,6 @@ class PartitionDelta {
                     }
                     long highestTxId = partitionStore.highestTxId();
                     LOG.info("Merging ({}) deltas for partition: {} from tx: {}", merge.pointerIndex.size(), merge.versionedPartitionName, highestTxId);
-                    LOG.debug("Merging keys: {}", merge.orderedIndex.keySet());
                     MutableBoolean eos = new MutableBoolean(false);
 
                     PartitionStore mergeToStore = partitionStore;
@@ -511,7 +491,7 @@ class PartitionDelta {
                                     },
                                     (fp, rowType, prefix, key, value, valueTimestamp, valueTombstone, valueVersion, highwater) -> {
                                         // prefix is the partitionName and is discarded
-                                        WALPointer pointer = merge.orderedIndex.get(key);
+                                        WALPointer pointer = merge.pointerIndex.get(key);
                                         if (pointer == null) {
                                             throw new RuntimeException("Delta WAL missing"
                                                 + " prefix: " + Arrays.toString(prefix)
@@ -0,0 +1,355 @@
+package com.jivesoftware.os.amza.service.storage.delta;
+
+import com.google.common.base.Preconditions;
+import com.google.common.primitives.UnsignedBytes;
+import com.jivesoftware.os.amza.api.filer.UIO;
+import com.jivesoftware.os.amza.api.wal.KeyUtil;
+import com.jivesoftware.os.amza.api.wal.WALPointer;
+import java.nio.ByteBuffer;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Buffers recent puts in a small on-heap skip list and flushes them into immutable, sorted, off-heap slabs. Key bytes and
+ * fp/timestamp/version/tombstone/value live inline in the slab, so a large delta costs a handful of direct buffers instead of a heap object,
+ * a skip list node and a byte[] per key. Newer slabs shadow older ones and slabs are merged in size tiers to keep lookups logarithmic.
+ *
+ * Puts are expected to come from a single writer at a time; reads are lock free against a volatile generation of immutable slabs.
+ */
+class SlabDeltaPointerIndex implements DeltaPointerIndex {
+
+    private static final int FLAG_TOMBSTONED = 1;
+    private static final int FLAG_HAS_VALUE = 2;
+
+    private final int maxBufferedKeys;
+    private final AtomicLong size = new AtomicLong();
+    private volatile Generation generation = new Generation(new Slab[0]);
+
+    SlabDeltaPointerIndex(int maxBufferedKeys) {
+        this.maxBufferedKeys = maxBufferedKeys;
+    }
+
+    @Override
+    public WALPointer get(byte[] walKey) {
+        Generation g = generation;
+        WALPointer got = g.buffer.get(walKey);
+        if (got != null) {
+            return got;
+        }
+        for (int i = g.slabs.length - 1; i >= 0; i--) {
+            Slab slab = g.slabs[i];
+            int index = slab.indexOf(walKey);
+            if (index >= 0) {
+                return slab.pointer(index);
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public synchronized void put(byte[] walKey, WALPointer pointer) {
+        Generation g = generation;
+        boolean exists = get(walKey) != null;
+        if (g.buffer.put(walKey, pointer) == null) {
+            g.buffered++;
+        }
+        if (!exists) {
+            size.incrementAndGet();
+        }
+        if (g.buffered >= maxBufferedKeys) {
+            flush(g);
+        }
+    }
+
+    private void flush(Generation g) {
+        long recordBytes = 0;
+        for (Map.Entry<byte[], WALPointer> entry : g.buffer.entrySet()) {
+            recordBytes += recordSize(entry.getKey(), entry.getValue());
+        }
+        List<Slab> slabs = new ArrayList<>(Arrays.asList(g.slabs));
+        slabs.add(Slab.build(g.buffered, recordBytes, g.buffer.entrySet().iterator()));
+
+        while (slabs.size() > 1) {
+            Slab newer = slabs.get(slabs.size() - 1);
+            Slab older = slabs.get(slabs.size() - 2);
+            if (older.count > newer.count * 2) {
+                break;
+            }
+            Slab merged = Slab.build(older.count + newer.count,
+                older.recordBytes + newer.recordBytes,
+                new MergingIterator(Arrays.asList(older.iterator(0, older.count), newer.iterator(0, newer.count))));
+            slabs.remove(slabs.size() - 1);
+            slabs.set(slabs.size() - 1, merged);
+        }
+        generation = new Generation(slabs.toArray(new Slab[slabs.size()]));
+    }
+
+    @Override
+    public long size() {
+        return size.get();
+    }
+
+    @Override
+    public Iterator<Map.Entry<byte[], WALPointer>> iterator(byte[] from, byte[] to) {
+        if (from != null && to != null && KeyUtil.compare(from, to) > 0) {
+            throw new IllegalArgumentException("inconsistent range");
+        }
+        Generation g = generation;
+        List<Iterator<Map.Entry<byte[], WALPointer>>> sources = new ArrayList<>(g.slabs.length + 1);
+        for (Slab slab : g.slabs) {
+            int start = from == null ? 0 : slab.ceilingIndex(from);
+            int end = to == null ? slab.count : slab.ceilingIndex(to);
+            sources.add(slab.iterator(start, end));
+        }
+        if (from != null && to != null) {
+            sources.add(g.buffer.subMap(from, to).entrySet().iterator());
+        } else if (from != null) {
+            sources.add(g.buffer.tailMap(from, true).entrySet().iterator());
+        } else if (to != null) {
+            sources.add(g.buffer.headMap(to, false).entrySet().iterator());
+        } else {
+            sources.add(g.buffer.entrySet().iterator());
+        }
+        return new MergingIterator(sources);
+    }
+
+    private static long recordSize(byte[] walKey, WALPointer pointer) {
+        byte[] value = pointer.getHasValue() ? pointer.getValue() : null;
+        return 4 + walKey.length + 8 + 8 + 8 + 1 + 4 + (value == null ? 0 : value.length);
+    }
+
+    private static class Generation {
+
+        private final ConcurrentSkipListMap<byte[], WALPointer> buffer = new ConcurrentSkipListMap<>(KeyUtil::compare);
+        private final Slab[] slabs;
+        private int buffered;
+
+        private Generation(Slab[] slabs) {
+            this.slabs = slabs;
+        }
+    }
+
+    /**
+     * Layout: int count, int[maxCount] record offsets in key order, then records of
+     * (int keyLength, key, long fp, long timestamp, long version, byte flags, int valueLength or -1, value).
+     */
+    private static class Slab {
+
+        private final ByteBuffer buffer;
+        private final int count;
+        private final long recordBytes;
+
+        private Slab(ByteBuffer buffer, int count, long recordBytes) {
+            this.buffer = buffer;
+            this.count = count;
+            this.recordBytes = recordBytes;
+        }
+
+        static Slab build(int maxCount, long maxRecordBytes, Iterator<Map.Entry<byte[], WALPointer>> entries) {
+            long capacity = 4L + 4L * maxCount + maxRecordBytes;
+            Preconditions.checkArgument(capacity <= Integer.MAX_VALUE, "Delta pointer slab exceeds max size: %s", capacity);
+            ByteBuffer buffer = ByteBuffer.allocateDirect((int) capacity);
+            ByteBuffer writer = buffer.duplicate();
+            int recordsStart = 4 + 4 * maxCount;
+            writer.position(recordsStart);
+            int count = 0;
+            while (entries.hasNext()) {
+                Map.Entry<byte[], WALPointer> entry = entries.next();
+                byte[] walKey = entry.getKey();
+                WALPointer pointer = entry.getValue();
+                byte[] value = pointer.getHasValue() ? pointer.getValue() : null;
+
+                buffer.putInt(4 + 4 * count, writer.position());
+                writer.putInt(walKey.length);
+                writer.put(walKey);
+                writer.putLong(pointer.getFp());
+                writer.putLong(pointer.getTimestampId());
+                writer.putLong(pointer.getVersion());
+                writer.put((byte) ((pointer.getTombstoned() ? FLAG_TOMBSTONED : 0) | (pointer.getHasValue() ? FLAG_HAS_VALUE : 0)));
+                if (value == null) {
+                    writer.putInt(-1);
+                } else {
+                    writer.putInt(value.length);
+                    writer.put(value);
+                }
+                count++;
+            }
+            buffer.putInt(0, count);
+            return new Slab(buffer, count, writer.position() - recordsStart);
+        }
+
+        int indexOf(byte[] walKey) {
+            int index = ceilingIndex(walKey);
+            if (index < count && compare(index, walKey) == 0) {
+                return index;
+            }
+            return -1;
+        }
+
+        /**
+         * @return the index of the first key greater than or equal to walKey, or count if there is none
+         */
+        int ceilingIndex(byte[] walKey) {
+            int low = 0;
+            int high = count;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (compare(mid, walKey) < 0) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+
+        private int compare(int index, byte[] walKey) {
+            int offset = buffer.getInt(4 + 4 * index);
+            int keyLength = buffer.getInt(offset);
+            int keyOffset = offset + 4;
+
+            int prefixLength = buffer.getShort(keyOffset);
+            int otherPrefixLength = UIO.bytesShort(walKey);
+            int c = compare(keyOffset + 2, prefixLength, walKey, 2, otherPrefixLength);
+            if (c != 0) {
+                return c;
+            }
+            return compare(keyOffset + 2 + prefixLength,
+                keyLength - 2 - prefixLength,
+                walKey,
+                2 + otherPrefixLength,
+                walKey.length - 2 - otherPrefixLength);
+        }
+
+        private int compare(int offset, int length, byte[] other, int otherOffset, int otherLength) {
+            int min = Math.min(length, otherLength);
+            for (int i = 0; i < min; i++) {
+                int c = UnsignedBytes.compare(buffer.get(offset + i), other[otherOffset + i]);
+                if (c != 0) {
+                    return c;
+                }
+            }
+            return length - otherLength;
+        }
+
+        byte[] key(int index) {
+            int offset = buffer.getInt(4 + 4 * index);
+            byte[] walKey = new byte[buffer.getInt(offset)];
+            ByteBuffer reader = buffer.duplicate();
+            reader.position(offset + 4);
+            reader.get(walKey);
+            return walKey;
+        }
+
+        WALPointer pointer(int index) {
+            int offset = buffer.getInt(4 + 4 * index);
+            int p = offset + 4 + buffer.getInt(offset);
+            long fp = buffer.getLong(p);
+            long timestamp = buffer.getLong(p + 8);
+            long version = buffer.getLong(p + 16);
+            byte flags = buffer.get(p + 24);
+            int valueLength = buffer.getInt(p + 25);
+            byte[] value = null;
+            if (valueLength >= 0) {
+                value = new byte[valueLength];
+                ByteBuffer reader = buffer.duplicate();
+                reader.position(p + 29);
+                reader.get(value);
+            }
+            return new WALPointer(fp, timestamp, (flags & FLAG_TOMBSTONED) != 0, version, (flags & FLAG_HAS_VALUE) != 0, value);
+        }
+
+        Iterator<Map.Entry<byte[], WALPointer>> iterator(int start, int end) {
+            if (start >= end) {
+                return Collections.emptyIterator();
+            }
+            return new Iterator<Map.Entry<byte[], WALPointer>>() {
+                private int index = start;
+
+                @Override
+                public boolean hasNext() {
+                    return index < end;
+                }
+
+                @Override
+                public Map.Entry<byte[], WALPointer> next() {
+                    if (index >= end) {
+                        throw new NoSuchElementException();
+                    }
+                    Map.Entry<byte[], WALPointer> entry = new AbstractMap.SimpleImmutableEntry<>(key(index), pointer(index));
+                    index++;
+                    return entry;
+                }
+            };
+        }
+    }
+
+    /**
+     * Merges ascending sources ordered oldest to newest. When several sources hold the same key only the newest entry is returned.
+     */
+    private static class MergingIterator implements Iterator<Map.Entry<byte[], WALPointer>> {
+
+        private final PriorityQueue<Head> heads;
+
+        MergingIterator(List<Iterator<Map.Entry<byte[], WALPointer>>> sources) {
+            this.heads = new PriorityQueue<>(Math.max(1, sources.size()), (a, b) -> {
+                int c = KeyUtil.compare(a.entry.getKey(), b.entry.getKey());
+                return c != 0 ? c : Integer.compare(b.source, a.source);
+            });
+            for (int i = 0; i < sources.size(); i++) {
+                Iterator<Map.Entry<byte[], WALPointer>> iterator = sources.get(i);
+                if (iterator.hasNext()) {
+                    heads.add(new Head(i, iterator, iterator.next()));
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return !heads.isEmpty();
+        }
+
+        @Override
+        public Map.Entry<byte[], WALPointer> next() {
+            Head head = heads.poll();
+            if (head == null) {
+                throw new NoSuchElementException();
+            }
+            Map.Entry<byte[], WALPointer> result = head.entry;
+            advance(head);
+            while (!heads.isEmpty() && KeyUtil.compare(heads.peek().entry.getKey(), result.getKey()) == 0) {
+                advance(heads.poll());
+            }
+            return result;
+        }
+
+        private void advance(Head head) {
+            if (head.iterator.hasNext()) {
+                head.entry = head.iterator.next();
+                heads.add(head);
+            }
+        }
+
+        private static class Head {
+
+            private final int source;
+            private final Iterator<Map.Entry<byte[], WALPointer>> iterator;
+            private Map.Entry<byte[], WALPointer> entry;
+
+            private Head(int source, Iterator<Map.Entry<byte[], WALPointer>> iterator, Map.Entry<byte[], WALPointer> entry) {
+                this.source = source;
+                this.iterator = iterator;
+                this.entry = entry;
+            }
+        }
+    }
+}
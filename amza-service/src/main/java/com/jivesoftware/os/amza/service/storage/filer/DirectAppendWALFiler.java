@@ -0,0 +1,517 @@
+package com.jivesoftware.os.amza.service.storage.filer;
+
+import com.jivesoftware.os.amza.api.filer.IAppendOnly;
+import com.jivesoftware.os.amza.api.filer.IReadable;
+import com.jivesoftware.os.amza.service.filer.DirectByteBufferPool;
+import com.jivesoftware.os.mlogger.core.MetricLogger;
+import com.jivesoftware.os.mlogger.core.MetricLoggerFactory;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * An append-only WAL filer for write-once, read-once files such as the delta WALs. Appends are staged in a direct buffer and only ever hit
+ * the channel at block aligned offsets, the trailing partial block is rewritten in place until it fills. Nothing is memory mapped, reads go
+ * through a small per filer cache of sealed blocks so that delta WAL churn does not compete with the mem-mapped partition WALs. Cached
+ * blocks come from a shared pool and are recycled on eviction, and reads of the unsealed tail are served from the staging buffer.
+ */
+public class DirectAppendWALFiler implements WALFiler {
+
+    private static final MetricLogger LOG = MetricLoggerFactory.getLogger();
+
+    private final String fileName;
+    private final String mode;
+    private final int blockSize;
+    private final BlockCache blockCache;
+    private RandomAccessFile randomAccessFile;
+    private FileChannel channel;
+    private final AtomicLong size;
+    private final IAppendOnly appendOnly;
+
+    private final ByteBuffer staging;
+    private volatile long stagingFp;
+
+    private final Object fileLock = new Object();
+    private final AtomicBoolean closed = new AtomicBoolean(false);
+
+    public DirectAppendWALFiler(String fileName,
+        String mode,
+        int blockSize,
+        int stagingBlocks,
+        int readCacheBlocks,
+        DirectByteBufferPool blockPool) throws IOException {
+        if (blockPool.getBufferSize() != blockSize) {
+            throw new IllegalArgumentException("Block pool buffers are " + blockPool.getBufferSize() + " bytes but blocks are " + blockSize);
+        }
+        this.fileName = fileName;
+        this.mode = mode;
+        this.blockSize = blockSize;
+        this.blockCache = new BlockCache(readCacheBlocks, blockPool);
+        this.randomAccessFile = new RandomAccessFile(fileName, mode);
+        this.channel = randomAccessFile.getChannel();
+        this.size = new AtomicLong(randomAccessFile.length());
+        this.staging = ByteBuffer.allocateDirect(blockSize * Math.max(stagingBlocks, 1));
+        loadTail(size.get());
+        this.appendOnly = createAppendOnly();
+    }
+
+    public String getFileName() {
+        return fileName;
+    }
+
+    @Override
+    public IReadable reader(IReadable current, long requiredLength, boolean fallBackToChannelReader, int bufferSize) throws IOException {
+        if (current != null) {
+            return current;
+        }
+        return new BlockCachedReadable();
+    }
+
+    @Override
+    public IAppendOnly appender() throws IOException {
+        return appendOnly;
+    }
+
+    private IAppendOnly createAppendOnly() {
+        return new IAppendOnly() {
+
+            private final byte[] single = new byte[1];
+
+            @Override
+            public void write(byte b) throws IOException {
+                single[0] = b;
+                write(single, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] b, int _offset, int _len) throws IOException {
+                stage(ByteBuffer.wrap(b, _offset, _len));
+            }
+
+            @Override
+            public void write(ByteBuffer[] buffers) throws IOException {
+                for (ByteBuffer buffer : buffers) {
+                    stage(buffer);
+                }
+            }
+
+            @Override
+            public void flush(boolean fsync) throws IOException {
+                // flushes are not always called under the append lock, and staging must not move while a write or tail read uses it
+                synchronized (DirectAppendWALFiler.this) {
+                    writeStaged();
+                }
+                DirectAppendWALFiler.this.flush(fsync);
+            }
+
+            @Override
+            public void close() throws IOException {
+                closed.compareAndSet(false, true);
+            }
+
+            @Override
+            public Object lock() {
+                return DirectAppendWALFiler.this;
+            }
+
+            @Override
+            public long length() throws IOException {
+                return stagingFp + staging.position();
+            }
+
+            @Override
+            public long getFilePointer() throws IOException {
+                return length();
+            }
+        };
+    }
+
+    private void stage(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (!staging.hasRemaining()) {
+                writeStaged();
+            }
+            int len = Math.min(staging.remaining(), buffer.remaining());
+            ByteBuffer slice = buffer.duplicate();
+            slice.limit(slice.position() + len);
+            staging.put(slice);
+            buffer.position(buffer.position() + len);
+        }
+    }
+
+    /**
+     * Writes everything staged at the aligned staging fp, then drops the sealed blocks so only the trailing partial block is kept for the
+     * next rewrite.
+     */
+    private void writeStaged() throws IOException {
+        int staged = staging.position();
+        if (stagingFp + staged > size.get()) {
+            ByteBuffer write = staging.duplicate();
+            write.flip();
+            while (!closed.get()) {
+                try {
+                    long fp = stagingFp;
+                    while (write.hasRemaining()) {
+                        fp += channel.write(write, fp);
+                    }
+                    size.set(fp);
+                    break;
+                } catch (ClosedChannelException e) {
+                    ensureOpen();
+                    write.position(0);
+                }
+            }
+        }
+
+        int sealed = (staged / blockSize) * blockSize;
+        if (sealed > 0) {
+            staging.flip();
+            staging.position(sealed);
+            staging.compact();
+            stagingFp += sealed;
+        }
+    }
+
+    private void loadTail(long length) throws IOException {
+        stagingFp = (length / blockSize) * blockSize;
+        staging.clear();
+        staging.limit((int) (length - stagingFp));
+        while (staging.hasRemaining()) {
+            if (channel.read(staging, stagingFp + staging.position()) < 0) {
+                throw new IOException("Failed to load tail block for " + fileName);
+            }
+        }
+        staging.limit(staging.capacity());
+    }
+
+    private void flush(boolean fsync) throws IOException {
+        if (fsync) {
+            while (!closed.get()) {
+                try {
+                    channel.force(false);
+                    break;
+                } catch (ClosedChannelException e) {
+                    ensureOpen();
+                }
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "DirectAppendWALFiler{"
+            + "fileName=" + fileName
+            + ", blockSize=" + blockSize
+            + ", size=" + size
+            + '}';
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed.compareAndSet(false, true);
+        randomAccessFile.close();
+        blockCache.release();
+    }
+
+    @Override
+    public long length() throws IOException {
+        return size.get();
+    }
+
+    @Override
+    public void truncate(long truncatedSize) throws IOException {
+        // should only be called with a write AND a read lock
+        synchronized (this) {
+            while (!closed.get()) {
+                try {
+                    writeStaged();
+                    channel.truncate(truncatedSize);
+                    size.set(channel.size());
+                    blockCache.clear();
+                    loadTail(size.get());
+                    break;
+                } catch (ClosedChannelException e) {
+                    ensureOpen();
+                }
+            }
+        }
+    }
+
+    private void ensureOpen() throws IOException {
+        if (Thread.currentThread().isInterrupted()) {
+            throw new InterruptedIOException();
+        }
+        if (!channel.isOpen()) {
+            if (closed.get()) {
+                throw new IOException("The WAL filer has been closed");
+            }
+            synchronized (fileLock) {
+                if (!channel.isOpen()) {
+                    LOG.warn("File channel is closed and must be reopened for {}", fileName);
+                    try {
+                        randomAccessFile.close();
+                    } catch (IOException e) {
+                        LOG.error("Failed to close existing random access file while reacquiring channel");
+                    }
+                    randomAccessFile = new RandomAccessFile(fileName, mode);
+                    channel = randomAccessFile.getChannel();
+                }
+            }
+        }
+    }
+
+    private void read(ByteBuffer into, long fp) throws IOException {
+        while (!closed.get()) {
+            try {
+                long at = fp + into.position();
+                while (into.hasRemaining()) {
+                    int read = channel.read(into, at);
+                    if (read < 0) {
+                        throw new IOException("Read past end of " + fileName + " at " + at);
+                    }
+                    at += read;
+                }
+                return;
+            } catch (ClosedChannelException e) {
+                ensureOpen();
+            }
+        }
+        throw new IOException("The WAL filer has been closed");
+    }
+
+    /**
+     * Copies up to len bytes at fp without crossing a block boundary, and returns how many were copied.
+     */
+    private int readAt(long fp, byte[] b, int offset, int len) throws IOException {
+        long blockFp = (fp / blockSize) * blockSize;
+        int offsetInBlock = (int) (fp - blockFp);
+        int copyLength = Math.min(len, blockSize - offsetInBlock);
+        while (true) {
+            // only blocks below the staging fp are sealed, the trailing partial block may still be rewritten
+            if (blockFp + blockSize <= stagingFp) {
+                if (!blockCache.enabled()) {
+                    read(ByteBuffer.wrap(b, offset, copyLength), fp);
+                    return copyLength;
+                }
+                Block block = blockCache.get(blockFp);
+                if (block == null) {
+                    block = blockCache.load(blockFp);
+                }
+                int copied = block.copy(blockFp, offsetInBlock, b, offset, copyLength);
+                if (copied >= 0) {
+                    return copied;
+                }
+                // the block was recycled before we got to it
+            } else {
+                synchronized (this) {
+                    if (blockFp + blockSize > stagingFp) {
+                        ByteBuffer tail = staging.duplicate();
+                        tail.position((int) (fp - stagingFp));
+                        tail.get(b, offset, copyLength);
+                        return copyLength;
+                    }
+                }
+            }
+        }
+    }
+
+    @Override
+    public Object lock() {
+        return this;
+    }
+
+    private static class Block {
+
+        private final ReadWriteLock lock = new ReentrantReadWriteLock();
+        private ByteBuffer buffer;
+        private volatile long blockFp = -1;
+        private volatile boolean referenced;
+
+        /**
+         * @return the number of bytes copied, or -1 if this block no longer holds blockFp
+         */
+        int copy(long expectedBlockFp, int offsetInBlock, byte[] b, int offset, int len) {
+            lock.readLock().lock();
+            try {
+                if (blockFp != expectedBlockFp) {
+                    return -1;
+                }
+                referenced = true;
+                ByteBuffer read = buffer.duplicate();
+                read.position(offsetInBlock);
+                int copyLength = Math.min(read.remaining(), len);
+                read.get(b, offset, copyLength);
+                return copyLength;
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * A clock cache of sealed blocks. Buffers are taken from the pool as the cache fills, reused for whatever block is loaded next when
+     * evicted, and handed back to the pool when the filer closes. Readers copy out under a block's read lock, so a block is never recycled
+     * mid copy.
+     */
+    private class BlockCache {
+
+        private final DirectByteBufferPool blockPool;
+        private final Block[] blocks;
+        private final ConcurrentMap<Long, Block> index = new ConcurrentHashMap<>();
+        private final Object evictLock = new Object();
+        private int hand;
+
+        BlockCache(int maxBlocks, DirectByteBufferPool blockPool) {
+            this.blockPool = blockPool;
+            this.blocks = new Block[Math.max(maxBlocks, 0)];
+            for (int i = 0; i < blocks.length; i++) {
+                blocks[i] = new Block();
+            }
+        }
+
+        boolean enabled() {
+            return blocks.length > 0;
+        }
+
+        Block get(long blockFp) {
+            return index.get(blockFp);
+        }
+
+        Block load(long blockFp) throws IOException {
+            Block victim;
+            synchronized (evictLock) {
+                Block existing = index.get(blockFp);
+                if (existing != null) {
+                    return existing;
+                }
+                victim = nextVictim();
+                victim.lock.writeLock().lock();
+                index.remove(victim.blockFp, victim);
+                victim.blockFp = -1;
+            }
+            try {
+                if (victim.buffer == null) {
+                    victim.buffer = blockPool.acquire();
+                }
+                victim.buffer.clear();
+                read(victim.buffer, blockFp);
+                victim.buffer.flip();
+                victim.blockFp = blockFp;
+                victim.referenced = true;
+                index.put(blockFp, victim);
+                return victim;
+            } finally {
+                victim.lock.writeLock().unlock();
+            }
+        }
+
+        private Block nextVictim() {
+            while (true) {
+                Block block = blocks[hand];
+                hand = (hand + 1) % blocks.length;
+                if (block.blockFp == -1 || !block.referenced) {
+                    return block;
+                }
+                block.referenced = false;
+            }
+        }
+
+        void clear() {
+            for (Block block : blocks) {
+                block.lock.writeLock().lock();
+                try {
+                    index.remove(block.blockFp, block);
+                    block.blockFp = -1;
+                } finally {
+                    block.lock.writeLock().unlock();
+                }
+            }
+        }
+
+        void release() {
+            for (Block block : blocks) {
+                block.lock.writeLock().lock();
+                try {
+                    index.remove(block.blockFp, block);
+                    block.blockFp = -1;
+                    if (block.buffer != null) {
+                        blockPool.release(block.buffer);
+                        block.buffer = null;
+                    }
+                } finally {
+                    block.lock.writeLock().unlock();
+                }
+            }
+        }
+    }
+
+    private class BlockCachedReadable implements IReadable {
+
+        private final byte[] single = new byte[1];
+        private long fp;
+
+        @Override
+        public Object lock() {
+            return this;
+        }
+
+        @Override
+        public void seek(long position) throws IOException {
+            if (position < 0 || position > size.get()) {
+                throw new IOException("seek overflow " + position + " " + this);
+            }
+            fp = position;
+        }
+
+        @Override
+        public long length() throws IOException {
+            return size.get();
+        }
+
+        @Override
+        public long getFilePointer() throws IOException {
+            return fp;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (read(single, 0, 1) == -1) {
+                return -1;
+            }
+            return single[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b) throws IOException {
+            return read(b, 0, b.length);
+        }
+
+        @Override
+        public int read(byte[] b, int _offset, int _len) throws IOException {
+            int read = 0;
+            while (read < _len) {
+                long length = size.get();
+                if (fp >= length) {
+                    break;
+                }
+                int len = readAt(fp, b, _offset + read, (int) Math.min(_len - read, length - fp));
+                read += len;
+                fp += len;
+            }
+            return read == 0 && _len > 0 ? -1 : read;
+        }
+
+        @Override
+        public void close() throws IOException {
+        }
+    }
+}
@@ -26,6 +26,7 @@ import java.io.File;
 import java.io.IOException;
 import java.io.InterruptedIOException;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
 import java.nio.channels.ClosedChannelException;
 import java.nio.channels.FileChannel;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -135,6 +136,16 @@ public class DiskBackedWALFiler implements WALFiler {
                 }
             }
 
+            @Override
+            public void write(ByteBuffer[] buffers) throws IOException {
+                if (filer != null && filer.length() > 0) {
+                    long length = filer.length();
+                    DiskBackedWALFiler.this.write(filer.leakBytes(), 0, (int) length);
+                    filer.reset();
+                }
+                DiskBackedWALFiler.this.write(buffers);
+            }
+
             @Override
             public void flush(boolean fsync) throws IOException {
                 if (filer != null && filer.length() > 0) {
@@ -226,6 +237,24 @@ public class DiskBackedWALFiler implements WALFiler {
         }
     }
 
+    private void write(ByteBuffer[] buffers) throws IOException {
+        int index = 0;
+        while (!closed.get()) {
+            while (index < buffers.length && !buffers[index].hasRemaining()) {
+                index++;
+            }
+            if (index == buffers.length) {
+                break;
+            }
+            try {
+                long wrote = channel.write(buffers, index, buffers.length - index);
+                size.addAndGet(wrote);
+            } catch (ClosedChannelException e) {
+                ensureOpen();
+            }
+        }
+    }
+
     private void flush(boolean fsync) throws IOException {
         if (fsync) {
             while (!closed.get()) {
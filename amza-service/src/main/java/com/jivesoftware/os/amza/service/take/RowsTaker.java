@@ -73,4 +73,6 @@ public interface RowsTaker {
         long takeSharedKey,
         VersionedPartitionName remoteVersionedPartitionName);
 
+    void stop();
+
 }
@@ -264,6 +264,10 @@ public class AmzaTestCluster {
                 VersionedPartitionName remoteVersionedPartitionName) {
                 return true;
             }
+
+            @Override
+            public void stop() {
+            }
         };
 
         final ObjectMapper mapper = new ObjectMapper();
@@ -1,6 +1,7 @@
 package com.jivesoftware.os.amza.service.replication;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.Lists;
 import com.google.common.io.Files;
 import com.jivesoftware.os.amza.api.AmzaInterner;
 import com.jivesoftware.os.amza.api.partition.PartitionName;
@@ -9,6 +10,7 @@ import com.jivesoftware.os.amza.api.wal.WALUpdated;
 import com.jivesoftware.os.amza.service.IndexedWALStorageProvider;
 import com.jivesoftware.os.amza.service.SickPartitions;
 import com.jivesoftware.os.amza.service.WALIndexProviderRegistry;
+import com.jivesoftware.os.amza.service.filer.DirectByteBufferPool;
 import com.jivesoftware.os.amza.service.filer.HeapByteBufferFactory;
 import com.jivesoftware.os.amza.service.stats.AmzaStats;
 import com.jivesoftware.os.amza.api.IoStats;
@@ -20,6 +22,7 @@ import com.jivesoftware.os.amza.service.storage.binary.BinaryHighwaterRowMarshal
 import com.jivesoftware.os.amza.service.storage.binary.BinaryPrimaryRowMarshaller;
 import com.jivesoftware.os.amza.service.storage.binary.BinaryRowIOProvider;
 import com.jivesoftware.os.amza.service.storage.binary.MemoryBackedRowIOProvider;
+import com.jivesoftware.os.amza.service.storage.binary.WALCompactionPolicy;
 import com.jivesoftware.os.aquarium.Member;
 import com.jivesoftware.os.aquarium.State;
 import com.jivesoftware.os.jive.utils.ordered.id.ConstantWriterIdProvider;
@@ -28,7 +31,10 @@ import com.jivesoftware.os.jive.utils.ordered.id.OrderIdProviderImpl;
 import com.jivesoftware.os.jive.utils.ordered.id.SnowflakeIdPacker;
 import com.jivesoftware.os.jive.utils.ordered.id.TimestampedOrderIdProvider;
 import java.io.File;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import org.testng.Assert;
 import org.testng.annotations.Test;
@@ -44,66 +50,11 @@ public class AmzaStateStorageNGTest {
     @Test
     public void testUpdate() throws Exception {
         AmzaInterner amzaInterner = new AmzaInterner();
-        OrderIdProviderImpl ids = new OrderIdProviderImpl(new ConstantWriterIdProvider(1));
-        ObjectMapper mapper = new ObjectMapper();
-        JacksonPartitionPropertyMarshaller partitionPropertyMarshaller = new JacksonPartitionPropertyMarshaller(mapper);
-
-        File partitionTmpDir = Files.createTempDir();
-        File[] workingDirectories = { partitionTmpDir };
-        IoStats ioStats = new IoStats();
-        MemoryBackedRowIOProvider ephemeralRowIOProvider = new MemoryBackedRowIOProvider(
-            1_024,
-            1_024 * 1_024,
-            4_096,
-            64,
-            new HeapByteBufferFactory());
-        BinaryRowIOProvider persistentRowIOProvider = new BinaryRowIOProvider(
-            4_096,
-            64,
-            false);
-        WALIndexProviderRegistry walIndexProviderRegistry = new WALIndexProviderRegistry(ephemeralRowIOProvider, persistentRowIOProvider);
-
-        AmzaStats amzaSystemStats = new AmzaStats();
-        AmzaStats amzaStats = new AmzaStats();
-        IndexedWALStorageProvider indexedWALStorageProvider = new IndexedWALStorageProvider(amzaStats,
-            workingDirectories,
-            workingDirectories.length,
-            walIndexProviderRegistry,
-            primaryRowMarshaller,
-            highwaterRowMarshaller,
-            ids,
-            new SickPartitions(),
-            -1,
-            TimeUnit.DAYS.toMillis(1));
-
         TimestampedOrderIdProvider orderIdProvider = new OrderIdProviderImpl(new ConstantWriterIdProvider(1), new SnowflakeIdPacker(),
             new JiveEpochTimestampProvider());
-        PartitionIndex partitionIndex = new PartitionIndex(amzaSystemStats, amzaStats,
-            orderIdProvider,
-            indexedWALStorageProvider,
-            4,
-            Executors.newCachedThreadPool());
-
-        AsyncStripeFlusher systemFlusher = new AsyncStripeFlusher(-1,
-            1_000,
-            null);
-
-        SystemWALStorage systemWALStorage = new SystemWALStorage(amzaSystemStats,
-            partitionIndex,
-            primaryRowMarshaller,
-            highwaterRowMarshaller,
-            null,
-            systemFlusher,
-            false);
-
         WALUpdated updated = (versionedPartitionName, txId) -> {
         };
-        RowChanges rowChanges = changes -> {
-        };
-        PartitionCreator partitionCreator = new PartitionCreator(orderIdProvider, partitionPropertyMarshaller, partitionIndex, systemWALStorage,
-            updated, rowChanges, amzaInterner);
-
-        partitionCreator.init((partitionName) -> 0);
+        SystemWALStorage systemWALStorage = systemWALStorage(amzaInterner, orderIdProvider, updated);
 
         Member root = new Member(new byte[] { 1 });
         Member other1 = new Member(new byte[] { 2 });
@@ -111,7 +62,8 @@ public class AmzaStateStorageNGTest {
 
         PartitionName partitionName = new PartitionName(false, new byte[] { 20 }, new byte[] { 30 });
         byte context = 1;
-        AmzaStateStorage stateStorage = new AmzaStateStorage(amzaInterner, systemWALStorage, orderIdProvider, updated, partitionName, context);
+        AmzaStateWriter stateWriter = new AmzaStateWriter(systemWALStorage, orderIdProvider, updated, 100);
+        AmzaStateStorage stateStorage = new AmzaStateStorage(amzaInterner, systemWALStorage, stateWriter, partitionName, context);
 
         Long lifecycle1 = 1L;
         Long lifecycle2 = 2L;
@@ -163,4 +115,126 @@ public class AmzaStateStorageNGTest {
 
     }
 
+    @Test
+    public void testConcurrentUpdatesShareWriter() throws Exception {
+        AmzaInterner amzaInterner = new AmzaInterner();
+        TimestampedOrderIdProvider orderIdProvider = new OrderIdProviderImpl(new ConstantWriterIdProvider(1), new SnowflakeIdPacker(),
+            new JiveEpochTimestampProvider());
+        WALUpdated updated = (versionedPartitionName, txId) -> {
+        };
+        SystemWALStorage systemWALStorage = systemWALStorage(amzaInterner, orderIdProvider, updated);
+        AmzaStateWriter stateWriter = new AmzaStateWriter(systemWALStorage, orderIdProvider, updated, 4);
+
+        Member root = new Member(new byte[] { 1 });
+        Member other = new Member(new byte[] { 2 });
+        int numPartitions = 16;
+        AmzaStateStorage[] stateStorages = new AmzaStateStorage[numPartitions];
+        for (int i = 0; i < numPartitions; i++) {
+            PartitionName partitionName = new PartitionName(false, new byte[] { 20 }, new byte[] { (byte) i });
+            stateStorages[i] = new AmzaStateStorage(amzaInterner, systemWALStorage, stateWriter, partitionName, (byte) 1);
+        }
+
+        ExecutorService executorService = Executors.newFixedThreadPool(numPartitions);
+        try {
+            List<Future<Boolean>> futures = Lists.newArrayList();
+            for (AmzaStateStorage stateStorage : stateStorages) {
+                futures.add(executorService.submit(() -> stateStorage.update((setLiveliness) -> {
+                    setLiveliness.set(root, root, 1L, State.leader, 1);
+                    setLiveliness.set(root, other, 1L, State.follower, 1);
+                    return true;
+                })));
+            }
+            for (Future<Boolean> future : futures) {
+                Assert.assertTrue(future.get());
+            }
+        } finally {
+            executorService.shutdownNow();
+        }
+
+        for (AmzaStateStorage stateStorage : stateStorages) {
+            int[] count = new int[1];
+            stateStorage.scan(root, null, 1L, (rootMember, isSelf, ackMember, lifecycle, state, timestamp, version) -> {
+                count[0]++;
+                return true;
+            });
+            Assert.assertEquals(count[0], 2);
+
+            Assert.assertFalse(stateStorage.update((setLiveliness) -> {
+                setLiveliness.set(root, root, 1L, State.leader, 0);
+                return true;
+            }));
+        }
+    }
+
+    private SystemWALStorage systemWALStorage(AmzaInterner amzaInterner, TimestampedOrderIdProvider orderIdProvider, WALUpdated updated)
+        throws Exception {
+        OrderIdProviderImpl ids = new OrderIdProviderImpl(new ConstantWriterIdProvider(1));
+        ObjectMapper mapper = new ObjectMapper();
+        JacksonPartitionPropertyMarshaller partitionPropertyMarshaller = new JacksonPartitionPropertyMarshaller(mapper);
+
+        File partitionTmpDir = Files.createTempDir();
+        File[] workingDirectories = { partitionTmpDir };
+        IoStats ioStats = new IoStats();
+        MemoryBackedRowIOProvider ephemeralRowIOProvider = new MemoryBackedRowIOProvider(
+            1_024,
+            1_024 * 1_024,
+            4_096,
+            64,
+            new HeapByteBufferFactory(),
+            new DirectByteBufferPool(64 * 1024, 16),
+            64);
+        BinaryRowIOProvider persistentRowIOProvider = new BinaryRowIOProvider(
+            4_096,
+            64,
+            false,
+            new DirectByteBufferPool(64 * 1024, 16),
+            64);
+        WALIndexProviderRegistry walIndexProviderRegistry = new WALIndexProviderRegistry(ephemeralRowIOProvider, persistentRowIOProvider);
+
+        AmzaStats amzaSystemStats = new AmzaStats();
+        AmzaStats amzaStats = new AmzaStats();
+        IndexedWALStorageProvider indexedWALStorageProvider = new IndexedWALStorageProvider(amzaStats,
+            workingDirectories,
+            workingDirectories.length,
+            walIndexProviderRegistry,
+            primaryRowMarshaller,
+            highwaterRowMarshaller,
+            ids,
+            new SickPartitions(),
+            -1,
+            TimeUnit.DAYS.toMillis(1),
+            WALCompactionPolicy.NONE,
+            0.01d,
+            Executors.newSingleThreadExecutor());
+
+        PartitionIndex partitionIndex = new PartitionIndex(amzaSystemStats, amzaStats,
+            orderIdProvider,
+            indexedWALStorageProvider,
+            4,
+            Executors.newCachedThreadPool());
+
+        AsyncStripeFlusher systemFlusher = new AsyncStripeFlusher(-1,
+            1_000,
+            StripeDurabilityMode.every_commit,
+            10,
+            1_024 * 1_024,
+            null,
+            null);
+
+        SystemWALStorage systemWALStorage = new SystemWALStorage(amzaSystemStats,
+            partitionIndex,
+            primaryRowMarshaller,
+            highwaterRowMarshaller,
+            null,
+            systemFlusher,
+            false);
+
+        RowChanges rowChanges = changes -> {
+        };
+        PartitionCreator partitionCreator = new PartitionCreator(orderIdProvider, partitionPropertyMarshaller, partitionIndex, systemWALStorage,
+            updated, rowChanges, amzaInterner);
+
+        partitionCreator.init((partitionName) -> 0);
+        return systemWALStorage;
+    }
 }
@@ -0,0 +1,255 @@
+package com.jivesoftware.os.amza.service.replication;
+
+import com.jivesoftware.os.amza.api.FailedToAchieveQuorumException;
+import com.jivesoftware.os.amza.api.partition.Durability;
+import com.jivesoftware.os.amza.api.partition.VersionedPartitionName;
+import com.jivesoftware.os.amza.api.ring.RingMember;
+import com.jivesoftware.os.amza.api.wal.WALHighwater;
+import com.jivesoftware.os.amza.service.take.HighwaterStorage;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ *
+ */
+public class AsyncStripeFlusherNGTest {
+
+    private ExecutorService flusherExecutor;
+    private AsyncStripeFlusher flusher;
+    private final AtomicInteger flushes = new AtomicInteger();
+    private final AtomicLong deltaLength = new AtomicLong();
+
+    @BeforeMethod
+    public void setUp() throws Exception {
+        flusherExecutor = Executors.newCachedThreadPool();
+        flushes.set(0);
+        deltaLength.set(0);
+    }
+
+    @AfterMethod
+    public void tearDown() throws Exception {
+        if (flusher != null) {
+            flusher.stop();
+        }
+        flusherExecutor.shutdownNow();
+    }
+
+    @Test
+    public void testNoFlushRequired() throws Exception {
+        flusher = start(StripeDurabilityMode.every_commit, 60_000, 60_000, 0, () -> {
+            flushes.incrementAndGet();
+            return null;
+        });
+
+        Assert.assertTrue(flusher.durable(Durability.ephemeral).isDone());
+        Assert.assertTrue(flusher.durable(Durability.fsync_never).isDone());
+        Assert.assertEquals(flushes.get(), 0);
+    }
+
+    @Test
+    public void testEveryCommit() throws Exception {
+        flusher = start(StripeDurabilityMode.every_commit, 60_000, 60_000, 0, () -> {
+            flushes.incrementAndGet();
+            return null;
+        });
+
+        for (int i = 1; i <= 3; i++) {
+            flusher.durable(Durability.fsync_always).get(10, TimeUnit.SECONDS);
+            Assert.assertTrue(flushes.get() >= i);
+        }
+    }
+
+    @Test
+    public void testGroupKeepsAsyncSchedule() throws Exception {
+        flusher = start(StripeDurabilityMode.group, 60_000, 10, 0, () -> {
+            flushes.incrementAndGet();
+            return null;
+        });
+
+        CompletableFuture<Void> async = flusher.durable(Durability.fsync_async);
+        Thread.sleep(200);
+        Assert.assertFalse(async.isDone(), "fsync_async commits must wait for the async interval, not the group interval");
+        Assert.assertEquals(flushes.get(), 0);
+
+        // a forced commit flushes on the group interval, and that flush covers the waiting async commit
+        CompletableFuture<Void> forced = flusher.durable(Durability.fsync_always);
+        forced.get(10, TimeUnit.SECONDS);
+        Assert.assertTrue(async.isDone());
+        Assert.assertEquals(flushes.get(), 1);
+    }
+
+    @Test
+    public void testGroupFlushesWhenBytesExceeded() throws Exception {
+        flusher = start(StripeDurabilityMode.group, 60_000, 60_000, 1_024, () -> {
+            flushes.incrementAndGet();
+            return null;
+        });
+
+        deltaLength.set(512);
+        CompletableFuture<Void> forced = flusher.durable(Durability.fsync_always);
+        Thread.sleep(200);
+        Assert.assertFalse(forced.isDone());
+
+        deltaLength.set(2_048);
+        flusher.durable(Durability.fsync_always).get(10, TimeUnit.SECONDS);
+        Assert.assertTrue(forced.isDone());
+        Assert.assertEquals(flushes.get(), 1);
+    }
+
+    @Test
+    public void testAsyncTreatsForcedAsAsync() throws Exception {
+        flusher = start(StripeDurabilityMode.async, 500, 10, 0, () -> {
+            flushes.incrementAndGet();
+            return null;
+        });
+
+        long start = System.currentTimeMillis();
+        CompletableFuture<Void> forced = flusher.durable(Durability.fsync_always);
+        Thread.sleep(100);
+        Assert.assertFalse(forced.isDone());
+
+        forced.get(10, TimeUnit.SECONDS);
+        Assert.assertTrue(System.currentTimeMillis() - start >= 400);
+        Assert.assertEquals(flushes.get(), 1);
+
+        // async mode never makes a caller wait on the fsync
+        flusher.forceFlush(Durability.fsync_always, 1);
+    }
+
+    @Test
+    public void testFlushFutureCompletesAfterFlush() throws Exception {
+        CountDownLatch flushStarted = new CountDownLatch(1);
+        CountDownLatch releaseFlush = new CountDownLatch(1);
+        flusher = start(StripeDurabilityMode.every_commit, 60_000, 60_000, 0, () -> {
+            flushStarted.countDown();
+            releaseFlush.await();
+            flushes.incrementAndGet();
+            return null;
+        });
+
+        CompletableFuture<Void> first = flusher.durable(Durability.fsync_always);
+        Assert.assertTrue(flushStarted.await(10, TimeUnit.SECONDS));
+
+        // committed while the first fsync is running, so only the next fsync covers it
+        CompletableFuture<Void> second = flusher.durable(Durability.fsync_always);
+        Assert.assertNotSame(second, first);
+        try {
+            flusher.forceFlush(Durability.fsync_always, 100);
+            Assert.fail("Expected the fsync to time out");
+        } catch (FailedToAchieveQuorumException x) {
+            // expected
+        }
+        Assert.assertFalse(first.isDone());
+
+        releaseFlush.countDown();
+        first.get(10, TimeUnit.SECONDS);
+        second.get(10, TimeUnit.SECONDS);
+        Assert.assertTrue(flushes.get() >= 2);
+    }
+
+    @Test
+    public void testFailedFlushCompletesWithNextFlush() throws Exception {
+        AtomicInteger attempts = new AtomicInteger();
+        flusher = start(StripeDurabilityMode.every_commit, 60_000, 60_000, 0, () -> {
+            if (attempts.incrementAndGet() == 1) {
+                throw new IllegalStateException("fsync failed");
+            }
+            flushes.incrementAndGet();
+            return null;
+        });
+
+        CompletableFuture<Void> failed = flusher.durable(Durability.fsync_always);
+        failed.get(10, TimeUnit.SECONDS);
+        Assert.assertEquals(flushes.get(), 1);
+    }
+
+    @Test(expectedExceptions = TimeoutException.class)
+    public void testStoppedFlusherNeverCompletes() throws Exception {
+        flusher = start(StripeDurabilityMode.every_commit, 60_000, 60_000, 0, () -> {
+            flushes.incrementAndGet();
+            return null;
+        });
+        flusher.stop();
+        Thread.sleep(100);
+
+        flusher.durable(Durability.fsync_always).get(100, TimeUnit.MILLISECONDS);
+    }
+
+    private AsyncStripeFlusher start(StripeDurabilityMode durabilityMode,
+        long asyncFlushIntervalMillis,
+        long groupFsyncIntervalMillis,
+        long groupFsyncBytes,
+        Callable<Void> flushDelta) {
+        AsyncStripeFlusher asyncStripeFlusher = new AsyncStripeFlusher(0,
+            asyncFlushIntervalMillis,
+            durabilityMode,
+            groupFsyncIntervalMillis,
+            groupFsyncBytes,
+            deltaLength::get,
+            flushDelta);
+        asyncStripeFlusher.start(flusherExecutor, new NoHighwaterStorage());
+        return asyncStripeFlusher;
+    }
+
+    private static class NoHighwaterStorage implements HighwaterStorage {
+
+        @Override
+        public void clearRing(RingMember ringMember) throws Exception {
+        }
+
+        @Override
+        public void setIfLarger(RingMember ringMember,
+            VersionedPartitionName versionedPartitionName,
+            long highwaterTxId,
+            int deltaIndex,
+            int updates) throws Exception {
+        }
+
+        @Override
+        public void clear(RingMember ringMember, VersionedPartitionName versionedPartitionName) throws Exception {
+        }
+
+        @Override
+        public long get(RingMember ringMember, VersionedPartitionName versionedPartitionName) throws Exception {
+            return -1;
+        }
+
+        @Override
+        public WALHighwater getPartitionHighwater(VersionedPartitionName versionedPartitionName, boolean includeLocal) throws Exception {
+            return null;
+        }
+
+        @Override
+        public boolean flush(int deltaIndex, boolean force, Callable<Void> preFlush) throws Exception {
+            return false;
+        }
+
+        @Override
+        public void delete(VersionedPartitionName versionedPartitionName) throws Exception {
+        }
+
+        @Override
+        public void setLocal(VersionedPartitionName versionedPartitionName, long txId) throws Exception {
+        }
+
+        @Override
+        public long getLocal(VersionedPartitionName versionedPartitionName) throws Exception {
+            return -1;
+        }
+
+        @Override
+        public void flushLocal() throws Exception {
+        }
+    }
+}
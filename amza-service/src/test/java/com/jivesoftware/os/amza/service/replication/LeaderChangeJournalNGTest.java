@@ -0,0 +1,148 @@
+package com.jivesoftware.os.amza.service.replication;
+
+import com.jivesoftware.os.amza.api.partition.PartitionName;
+import com.jivesoftware.os.amza.api.ring.RingMember;
+import com.jivesoftware.os.amza.service.replication.LeaderChangeJournal.LeaderChanges;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ *
+ */
+public class LeaderChangeJournalNGTest {
+
+    @Test
+    public void testChangesSinceSequence() throws Exception {
+        LeaderChangeJournal journal = new LeaderChangeJournal(10, 10, 10_000L);
+        LeaderChanges position = journal.await(-1, -1, 0);
+        Assert.assertFalse(position.reset);
+        Assert.assertEquals(position.nextSequence, 0);
+
+        journal.changed(partition(1), member(1));
+        journal.changed(partition(1), member(1));
+        journal.changed(partition(2), member(2));
+        journal.changed(partition(1), null);
+
+        LeaderChanges leaderChanges = journal.await(position.journalId, 0, 0);
+        Assert.assertFalse(leaderChanges.reset);
+        Assert.assertEquals(leaderChanges.nextSequence, 3, "repeating the current leader is not a change");
+        Assert.assertEquals(leaderChanges.changes.size(), 3);
+        Assert.assertEquals(leaderChanges.changes.get(1).partitionName, partition(2));
+        Assert.assertEquals(leaderChanges.changes.get(1).leader, member(2));
+        Assert.assertNull(leaderChanges.changes.get(2).leader);
+
+        Assert.assertTrue(journal.await(position.journalId, 3, 0).changes.isEmpty());
+    }
+
+    @Test
+    public void testSequenceWrapsAround() throws Exception {
+        LeaderChangeJournal journal = new LeaderChangeJournal(4, 10, 10_000L);
+        long journalId = journal.await(-1, -1, 0).journalId;
+        for (int i = 0; i < 10; i++) {
+            journal.changed(partition(i), member(i));
+        }
+
+        LeaderChanges leaderChanges = journal.await(journalId, 6, 0);
+        Assert.assertFalse(leaderChanges.reset);
+        Assert.assertEquals(leaderChanges.nextSequence, 10);
+        Assert.assertEquals(leaderChanges.changes.size(), 4);
+        for (int i = 0; i < 4; i++) {
+            Assert.assertEquals(leaderChanges.changes.get(i).partitionName, partition(6 + i));
+        }
+    }
+
+    @Test
+    public void testStaleCursorResets() throws Exception {
+        LeaderChangeJournal journal = new LeaderChangeJournal(4, 10, 10_000L);
+        long journalId = journal.await(-1, -1, 0).journalId;
+        for (int i = 0; i < 10; i++) {
+            journal.changed(partition(i), member(i));
+        }
+
+        // fell out of the journal
+        LeaderChanges leaderChanges = journal.await(journalId, 5, 0);
+        Assert.assertTrue(leaderChanges.reset);
+        Assert.assertTrue(leaderChanges.changes.isEmpty());
+        Assert.assertEquals(leaderChanges.nextSequence, 10);
+
+        // ahead of the journal
+        Assert.assertTrue(journal.await(journalId, 11, 0).reset);
+    }
+
+    @Test
+    public void testStaleJournalIdResets() throws Exception {
+        LeaderChangeJournal journal = new LeaderChangeJournal(4, 10, 10_000L);
+        long journalId = journal.await(-1, -1, 0).journalId;
+        journal.changed(partition(1), member(1));
+
+        // a restarted node has a new journal
+        LeaderChanges leaderChanges = journal.await(journalId + 1, 0, 0);
+        Assert.assertTrue(leaderChanges.reset);
+        Assert.assertEquals(leaderChanges.journalId, journalId);
+    }
+
+    @Test
+    public void testLongPollWakesOnChange() throws Exception {
+        LeaderChangeJournal journal = new LeaderChangeJournal(4, 10, 60_000L);
+        long journalId = journal.await(-1, -1, 0).journalId;
+
+        CompletableFuture<LeaderChanges> waiting = CompletableFuture.supplyAsync(() -> {
+            try {
+                return journal.await(journalId, 0, 60_000L);
+            } catch (InterruptedException x) {
+                throw new RuntimeException(x);
+            }
+        });
+        Thread.sleep(100);
+        Assert.assertFalse(waiting.isDone());
+
+        journal.changed(partition(1), member(1));
+        LeaderChanges leaderChanges = waiting.get(10, TimeUnit.SECONDS);
+        Assert.assertEquals(leaderChanges.changes.size(), 1);
+        Assert.assertEquals(leaderChanges.nextSequence, 1);
+    }
+
+    @Test
+    public void testWaitIsBounded() throws Exception {
+        LeaderChangeJournal journal = new LeaderChangeJournal(4, 1, 100L);
+        long journalId = journal.await(-1, -1, 0).journalId;
+
+        long start = System.currentTimeMillis();
+        Assert.assertTrue(journal.await(journalId, 0, 60_000L).changes.isEmpty());
+        Assert.assertTrue(System.currentTimeMillis() - start < 10_000, "waited past maxWaitMillis");
+    }
+
+    @Test
+    public void testWaitersAreBounded() throws Exception {
+        LeaderChangeJournal journal = new LeaderChangeJournal(4, 1, 60_000L);
+        long journalId = journal.await(-1, -1, 0).journalId;
+
+        CompletableFuture<LeaderChanges> waiting = CompletableFuture.supplyAsync(() -> {
+            try {
+                return journal.await(journalId, 0, 60_000L);
+            } catch (InterruptedException x) {
+                throw new RuntimeException(x);
+            }
+        });
+        Thread.sleep(100);
+        Assert.assertFalse(waiting.isDone());
+
+        // the only waiter slot is taken, so this answers right away
+        long start = System.currentTimeMillis();
+        Assert.assertTrue(journal.await(journalId, 0, 60_000L).changes.isEmpty());
+        Assert.assertTrue(System.currentTimeMillis() - start < 10_000, "parked past maxWaiters");
+
+        journal.changed(partition(1), member(1));
+        Assert.assertEquals(waiting.get(10, TimeUnit.SECONDS).changes.size(), 1);
+    }
+
+    private static PartitionName partition(int i) {
+        return new PartitionName(false, "ring".getBytes(), ("partition-" + i).getBytes());
+    }
+
+    private static RingMember member(int i) {
+        return new RingMember("member" + i);
+    }
+}
@@ -0,0 +1,89 @@
+package com.jivesoftware.os.amza.service.replication;
+
+import com.google.common.collect.Lists;
+import com.jivesoftware.os.amza.api.partition.PartitionName;
+import com.jivesoftware.os.amza.api.partition.StorageVersion;
+import com.jivesoftware.os.amza.service.NotARingMemberException;
+import com.jivesoftware.os.amza.service.PartitionIsDisposedException;
+import com.jivesoftware.os.amza.service.PropertiesNotPresentException;
+import com.jivesoftware.os.amza.service.replication.PartitionStripeProvider.OpenedPartitions;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ *
+ */
+public class PartitionStripeProviderNGTest {
+
+    @Test
+    public void testOpensEveryPartitionWithBoundedConcurrency() throws Exception {
+        List<PartitionName> partitionNames = partitionNames(100);
+        Set<PartitionName> openedNames = ConcurrentHashMap.newKeySet();
+        AtomicInteger concurrent = new AtomicInteger();
+        AtomicInteger maxConcurrent = new AtomicInteger();
+
+        OpenedPartitions openedPartitions = PartitionStripeProvider.openPartitions(partitionNames, storageVersions(100), 4, 0,
+            (partitionName, storageVersion) -> {
+                int now = concurrent.incrementAndGet();
+                maxConcurrent.accumulateAndGet(now, Math::max);
+                Thread.sleep(1);
+                concurrent.decrementAndGet();
+                openedNames.add(partitionName);
+                return true;
+            });
+
+        Assert.assertEquals(openedPartitions.opened.get(), 100);
+        Assert.assertEquals(openedPartitions.skipped.get(), 0);
+        Assert.assertEquals(openedPartitions.failed.get(), 0);
+        Assert.assertEquals(openedNames.size(), 100);
+        Assert.assertTrue(maxConcurrent.get() <= 4, "max concurrent opens:" + maxConcurrent.get());
+    }
+
+    @Test
+    public void testOnlyExpectedFailuresAreSkipped() throws Exception {
+        List<PartitionName> partitionNames = partitionNames(6);
+        OpenedPartitions openedPartitions = PartitionStripeProvider.openPartitions(partitionNames, storageVersions(6), 2, 0,
+            (partitionName, storageVersion) -> {
+                switch (partitionNames.indexOf(partitionName)) {
+                    case 0:
+                        return true;
+                    case 1:
+                        // disposed or re-versioned since it was listed
+                        return false;
+                    case 2:
+                        throw new PartitionIsDisposedException("disposed");
+                    case 3:
+                        throw new PropertiesNotPresentException("no properties");
+                    case 4:
+                        throw new NotARingMemberException("not a member");
+                    default:
+                        throw new IllegalArgumentException("Missing stripe index");
+                }
+            });
+
+        Assert.assertEquals(openedPartitions.opened.get(), 1);
+        Assert.assertEquals(openedPartitions.skipped.get(), 4);
+        // a bug, not an expected race, so it's counted and logged as a failure
+        Assert.assertEquals(openedPartitions.failed.get(), 1);
+    }
+
+    private static List<PartitionName> partitionNames(int count) {
+        List<PartitionName> partitionNames = Lists.newArrayList();
+        for (int i = 0; i < count; i++) {
+            partitionNames.add(new PartitionName(false, "ring".getBytes(), ("partition-" + i).getBytes()));
+        }
+        return partitionNames;
+    }
+
+    private static List<StorageVersion> storageVersions(int count) {
+        List<StorageVersion> storageVersions = Lists.newArrayList();
+        for (int i = 0; i < count; i++) {
+            storageVersions.add(new StorageVersion(i, 0));
+        }
+        return storageVersions;
+    }
+}
@@ -0,0 +1,161 @@
+package com.jivesoftware.os.amza.service.replication;
+
+import com.jivesoftware.os.amza.api.partition.PartitionName;
+import com.jivesoftware.os.amza.api.partition.VersionedPartitionName;
+import com.jivesoftware.os.amza.service.replication.PartitionTombstoneCompactor.Candidate;
+import com.jivesoftware.os.amza.service.stats.AmzaStats;
+import com.jivesoftware.os.amza.service.stats.AmzaStats.CompactionFamily;
+import com.jivesoftware.os.amza.service.stats.AmzaStats.CompactionStats;
+import com.jivesoftware.os.amza.service.storage.binary.WALCompactionPolicy;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ *
+ */
+public class PartitionTombstoneCompactorNGTest {
+
+    private static final long MAX_BYTES_PER_SECOND = 64 * 1024 * 1024;
+    private static final long MIN_BYTES_PER_SECOND = 4 * 1024 * 1024;
+
+    private AmzaStats amzaStats;
+    private WALCompactionPolicy compactionPolicy;
+    private PartitionTombstoneCompactor compactor;
+
+    @BeforeMethod
+    public void setUp() throws Exception {
+        amzaStats = new AmzaStats();
+        compactionPolicy = WALCompactionPolicy.create(MAX_BYTES_PER_SECOND, 64 * 1024 * 1024, 0.1d, 60_000);
+        compactor = new PartitionTombstoneCompactor(amzaStats,
+            null,
+            null,
+            null,
+            null,
+            60_000,
+            60_000,
+            2,
+            compactionPolicy,
+            1,
+            2.0d,
+            0.99d,
+            1_000,
+            MIN_BYTES_PER_SECOND);
+    }
+
+    @Test
+    public void testQueueOrderedByReclaimableBytes() throws Exception {
+        Assert.assertTrue(compactor.enqueue(partition("small"), 0, 10));
+        Assert.assertTrue(compactor.enqueue(partition("large"), 1, 1_000));
+        Assert.assertTrue(compactor.enqueue(partition("rebalance"), 0, -1));
+        Assert.assertTrue(compactor.enqueue(partition("medium"), 1, 100));
+
+        Assert.assertEquals(next().reclaimableBytes, 1_000);
+        Assert.assertEquals(next().reclaimableBytes, 100);
+        Assert.assertEquals(next().reclaimableBytes, 10);
+        Assert.assertEquals(next().reclaimableBytes, -1);
+    }
+
+    @Test
+    public void testQueuedPartitionIsNotPlannedTwice() throws Exception {
+        Assert.assertTrue(compactor.enqueue(partition("a"), 0, 10));
+        Assert.assertFalse(compactor.enqueue(partition("a"), 0, 20));
+
+        Candidate candidate = compactor.nextCandidate();
+        Assert.assertFalse(compactor.enqueue(partition("a"), 0, 20), "still queued until the worker completes it");
+        compactor.completed(candidate);
+        Assert.assertTrue(compactor.enqueue(partition("a"), 0, 20));
+    }
+
+    @Test
+    public void testBudgetBacksOffWhenLatencyRises() throws Exception {
+        recordGets(100, 2_000);
+        compactor.adjustBudget();
+        Assert.assertEquals(compactionPolicy.getBytesPerSecond(), (double) MAX_BYTES_PER_SECOND, 1d);
+
+        CompactionStats compaction = amzaStats.beginCompaction(CompactionFamily.tombstone, "test");
+        recordGets(100, 20_000);
+        compactor.adjustBudget();
+        Assert.assertEquals(compactionPolicy.getBytesPerSecond(), MAX_BYTES_PER_SECOND / 2d, 1d);
+        Assert.assertEquals(amzaStats.compactionBackoffs.longValue(), 1);
+
+        for (int i = 0; i < 10; i++) {
+            recordGets(100, 20_000);
+            compactor.adjustBudget();
+        }
+        Assert.assertEquals(compactionPolicy.getBytesPerSecond(), (double) MIN_BYTES_PER_SECOND, 1d);
+
+        // latency recovered, so the budget grows back gradually while compacting
+        recordGets(100, 2_000);
+        compactor.adjustBudget();
+        double recovering = compactionPolicy.getBytesPerSecond();
+        Assert.assertTrue(recovering > MIN_BYTES_PER_SECOND && recovering < MAX_BYTES_PER_SECOND);
+
+        compaction.finished();
+        compactor.adjustBudget();
+        Assert.assertEquals(compactionPolicy.getBytesPerSecond(), (double) MAX_BYTES_PER_SECOND, 1d);
+    }
+
+    @Test
+    public void testOnlyTheLatencyPercentileTriggersBackoff() throws Exception {
+        recordGets(1_000, 2_000);
+        compactor.adjustBudget();
+
+        amzaStats.beginCompaction(CompactionFamily.tombstone, "test");
+        // fewer than 1% slow gets leave the p99 alone
+        recordGets(995, 2_000);
+        recordGets(5, 100_000);
+        compactor.adjustBudget();
+        Assert.assertEquals(compactionPolicy.getBytesPerSecond(), (double) MAX_BYTES_PER_SECOND, 1d);
+        Assert.assertEquals(amzaStats.compactionBackoffs.longValue(), 0);
+    }
+
+    @Test
+    public void testNoGetsCarryNoSignal() throws Exception {
+        recordGets(100, 2_000);
+        compactor.adjustBudget();
+
+        amzaStats.beginCompaction(CompactionFamily.tombstone, "test");
+        recordGets(100, 20_000);
+        compactor.adjustBudget();
+        Assert.assertEquals(amzaStats.compactionBackoffs.longValue(), 1);
+
+        // the slow gets were already accounted for, so a quiet second lets the budget recover instead of backing off again
+        compactor.adjustBudget();
+        Assert.assertEquals(amzaStats.compactionBackoffs.longValue(), 1);
+        Assert.assertTrue(compactionPolicy.getBytesPerSecond() > MAX_BYTES_PER_SECOND / 2d);
+    }
+
+    @Test
+    public void testLatencyFloorIgnoresFastBaselines() throws Exception {
+        recordGets(100, 10);
+        compactor.adjustBudget();
+
+        amzaStats.beginCompaction(CompactionFamily.tombstone, "test");
+        // 10x the baseline but still under twice the 1ms floor
+        recordGets(100, 100);
+        compactor.adjustBudget();
+        Assert.assertEquals(amzaStats.compactionBackoffs.longValue(), 0);
+    }
+
+    @Test
+    public void testStopWithoutStart() throws Exception {
+        compactor.stop();
+    }
+
+    private Candidate next() throws InterruptedException {
+        Candidate candidate = compactor.nextCandidate();
+        compactor.completed(candidate);
+        return candidate;
+    }
+
+    private void recordGets(int count, long micros) {
+        for (int i = 0; i < count; i++) {
+            amzaStats.getLatencies.record(micros * 1_000);
+        }
+    }
+
+    private static VersionedPartitionName partition(String name) {
+        return new VersionedPartitionName(new PartitionName(false, "ring".getBytes(), name.getBytes()), 1);
+    }
+}
@@ -0,0 +1,169 @@
+package com.jivesoftware.os.amza.service.replication;
+
+import com.google.common.collect.Maps;
+import com.jivesoftware.os.amza.api.partition.PartitionName;
+import com.jivesoftware.os.amza.service.replication.StateChangeStripes.StateChangeHandler;
+import com.jivesoftware.os.routing.bird.health.checkers.SickThreads;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ *
+ */
+public class StateChangeStripesNGTest {
+
+    private final AtomicBoolean running = new AtomicBoolean();
+    private ExecutorService executorService;
+
+    @BeforeMethod
+    public void setUp() throws Exception {
+        running.set(true);
+        executorService = Executors.newCachedThreadPool();
+    }
+
+    @AfterMethod
+    public void tearDown() throws Exception {
+        running.set(false);
+        executorService.shutdownNow();
+    }
+
+    @Test
+    public void testPartitionIsHandledInOrderByOneThread() throws Exception {
+        StateChangeStripes stripes = new StateChangeStripes(4);
+        AtomicLong generation = new AtomicLong();
+        ConcurrentMap<PartitionName, Long> seenGeneration = Maps.newConcurrentMap();
+        ConcurrentMap<PartitionName, AtomicInteger> concurrent = Maps.newConcurrentMap();
+        ConcurrentMap<PartitionName, Set<String>> threads = Maps.newConcurrentMap();
+        AtomicInteger overlapped = new AtomicInteger();
+
+        start(stripes, partitionName -> {
+            long seen = generation.get();
+            if (concurrent.computeIfAbsent(partitionName, key -> new AtomicInteger()).incrementAndGet() > 1) {
+                overlapped.incrementAndGet();
+            }
+            threads.computeIfAbsent(partitionName, key -> Collections.newSetFromMap(Maps.newConcurrentMap()))
+                .add(Thread.currentThread().getName());
+            seenGeneration.put(partitionName, seen);
+            concurrent.get(partitionName).decrementAndGet();
+            return true;
+        });
+
+        for (int round = 1; round <= 50; round++) {
+            generation.set(round);
+            for (int i = 0; i < 100; i++) {
+                stripes.changed(partition(i));
+            }
+            stripes.wake();
+        }
+
+        // every partition is handled after its last change
+        awaitTrue(() -> seenGeneration.size() == 100 && seenGeneration.values().stream().allMatch(seen -> seen == 50));
+        Assert.assertEquals(overlapped.get(), 0);
+        for (Map.Entry<PartitionName, Set<String>> entry : threads.entrySet()) {
+            Assert.assertEquals(entry.getValue().size(), 1, "handled on more than one thread:" + entry.getKey());
+        }
+        Assert.assertEquals(stripes.depth(), 0);
+    }
+
+    @Test
+    public void testStripesWakeIndependently() throws Exception {
+        StateChangeStripes stripes = new StateChangeStripes(2);
+        PartitionName blocked = partition(0);
+        PartitionName sameStripe = partitionOnStripe(stripes, stripes.stripe(blocked), blocked);
+        PartitionName otherStripe = partitionOnStripe(stripes, 1 - stripes.stripe(blocked), blocked);
+
+        CountDownLatch handlingBlocked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ConcurrentMap<PartitionName, AtomicInteger> handled = Maps.newConcurrentMap();
+        start(stripes, partitionName -> {
+            if (partitionName.equals(blocked)) {
+                handlingBlocked.countDown();
+                release.await();
+            }
+            handled.computeIfAbsent(partitionName, key -> new AtomicInteger()).incrementAndGet();
+            return true;
+        });
+
+        stripes.changed(blocked);
+        stripes.wake();
+        Assert.assertTrue(handlingBlocked.await(10, TimeUnit.SECONDS));
+
+        for (int i = 0; i < 3; i++) {
+            stripes.changed(sameStripe);
+            stripes.changed(otherStripe);
+            stripes.wake();
+        }
+
+        // the other stripe isn't held up by the blocked one
+        awaitTrue(() -> handled.containsKey(otherStripe));
+        Assert.assertFalse(handled.containsKey(sameStripe), "handled while its stripe was busy");
+
+        release.countDown();
+        awaitTrue(() -> handled.containsKey(sameStripe));
+        Thread.sleep(100);
+        Assert.assertEquals(handled.get(sameStripe).get(), 1, "queued changes coalesce");
+    }
+
+    @Test
+    public void testUnhandledPartitionIsRetried() throws Exception {
+        StateChangeStripes stripes = new StateChangeStripes(1);
+        AtomicInteger attempts = new AtomicInteger();
+        start(stripes, partitionName -> attempts.incrementAndGet() >= 3);
+
+        stripes.changed(partition(0));
+        stripes.wake();
+
+        // retried without another wake
+        awaitTrue(() -> attempts.get() == 3);
+        awaitTrue(() -> stripes.depth() == 0);
+        Thread.sleep(100);
+        Assert.assertEquals(attempts.get(), 3);
+    }
+
+    private void start(StateChangeStripes stripes, StateChangeHandler handler) {
+        SickThreads sickThreads = new SickThreads();
+        for (int i = 0; i < stripes.numberOfStripes(); i++) {
+            int stripe = i;
+            executorService.submit(() -> stripes.smellTheFish(stripe, running, sickThreads, 10L, handler));
+        }
+    }
+
+    private interface Condition {
+
+        boolean test() throws Exception;
+    }
+
+    private static void awaitTrue(Condition condition) throws Exception {
+        long end = System.currentTimeMillis() + 10_000;
+        while (!condition.test()) {
+            Assert.assertTrue(System.currentTimeMillis() < end, "timed out");
+            Thread.sleep(10);
+        }
+    }
+
+    private static PartitionName partitionOnStripe(StateChangeStripes stripes, int stripe, PartitionName not) {
+        for (int i = 1; ; i++) {
+            PartitionName partitionName = partition(i);
+            if (stripes.stripe(partitionName) == stripe && !partitionName.equals(not)) {
+                return partitionName;
+            }
+        }
+    }
+
+    private static PartitionName partition(int i) {
+        return new PartitionName(false, "ring".getBytes(), ("partition-" + i).getBytes());
+    }
+}
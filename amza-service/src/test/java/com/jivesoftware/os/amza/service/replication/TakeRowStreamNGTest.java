@@ -0,0 +1,354 @@
+package com.jivesoftware.os.amza.service.replication;
+
+import com.google.common.collect.Lists;
+import com.jivesoftware.os.amza.api.AmzaInterner;
+import com.jivesoftware.os.amza.api.DeltaOverCapacityException;
+import com.jivesoftware.os.amza.api.filer.UIO;
+import com.jivesoftware.os.amza.api.partition.PartitionName;
+import com.jivesoftware.os.amza.api.partition.VersionedPartitionName;
+import com.jivesoftware.os.amza.api.ring.RingMember;
+import com.jivesoftware.os.amza.api.scan.CommitTo;
+import com.jivesoftware.os.amza.api.scan.RowsChanged;
+import com.jivesoftware.os.amza.api.stream.RowType;
+import com.jivesoftware.os.amza.api.wal.WALHighwater;
+import com.jivesoftware.os.amza.api.wal.WALHighwater.RingMemberHighwater;
+import com.jivesoftware.os.amza.api.wal.WALKey;
+import com.jivesoftware.os.amza.api.wal.WALRow;
+import com.jivesoftware.os.amza.service.replication.RowChangeTaker.TakeRowStream;
+import com.jivesoftware.os.amza.service.stats.AmzaStats;
+import com.jivesoftware.os.amza.service.storage.binary.BinaryHighwaterRowMarshaller;
+import com.jivesoftware.os.amza.service.storage.binary.BinaryPrimaryRowMarshaller;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ *
+ */
+public class TakeRowStreamNGTest {
+
+    private static final int PIPELINED_TX_IDS = RowChangeTaker.TakeRowStream.RAW_CHUNK_SIZE * 3 + 7;
+
+    private final BinaryPrimaryRowMarshaller primaryRowMarshaller = new BinaryPrimaryRowMarshaller();
+    private final BinaryHighwaterRowMarshaller highwaterRowMarshaller = new BinaryHighwaterRowMarshaller(new AmzaInterner());
+    private final VersionedPartitionName versionedPartitionName = new VersionedPartitionName(
+        new PartitionName(false, "ring".getBytes(), "partition".getBytes()), 1);
+    private final RingMember remoteMember = new RingMember("remote");
+    private final byte[] prefix = "prefix".getBytes();
+
+    private ExecutorService pipelineThreadPool;
+    private List<List<WALRow>> commits;
+    private List<WALHighwater> committedHighwaters;
+
+    @BeforeMethod
+    public void setUp() throws Exception {
+        pipelineThreadPool = Executors.newCachedThreadPool();
+        commits = Collections.synchronizedList(Lists.newArrayList());
+        committedHighwaters = Collections.synchronizedList(Lists.newArrayList());
+    }
+
+    @AfterMethod
+    public void tearDown() throws Exception {
+        pipelineThreadPool.shutdownNow();
+    }
+
+    @Test
+    public void testInlineTakeAppliesEveryTxId() throws Exception {
+        TakeRowStream takeRowStream = takeRowStream(recordingCommitTo(), () -> { }, 1);
+        for (int txId = 1; txId <= 3; txId++) {
+            row(takeRowStream, txId, txId, txId);
+        }
+
+        Assert.assertEquals(takeRowStream.flush(), 3);
+        assertAppliedInOrder(1, 3);
+        Assert.assertEquals(takeRowStream.largestFlushedTxId(), 3);
+    }
+
+    @Test
+    public void testPipelinedTakeAppliesInTxIdOrder() throws Exception {
+        TakeRowStream takeRowStream = takeRowStream(recordingCommitTo(), () -> { }, 1);
+        for (int txId = 1; txId <= PIPELINED_TX_IDS; txId++) {
+            row(takeRowStream, txId, txId, txId);
+        }
+
+        Assert.assertEquals(takeRowStream.flush(), PIPELINED_TX_IDS);
+        assertAppliedInOrder(1, PIPELINED_TX_IDS);
+        Assert.assertEquals(takeRowStream.largestFlushedTxId(), PIPELINED_TX_IDS);
+        Assert.assertEquals(takeRowStream.flushedHighwatermarks.get(remoteMember).txId, PIPELINED_TX_IDS);
+    }
+
+    @Test
+    public void testAwaitAppliedDropsTheTrailingTxId() throws Exception {
+        TakeRowStream takeRowStream = takeRowStream(recordingCommitTo(), () -> { }, 1);
+        for (int txId = 1; txId <= 3; txId++) {
+            row(takeRowStream, txId, txId, txId);
+        }
+
+        // the stream may have been cut short inside of txId 3
+        Assert.assertNull(takeRowStream.awaitApplied());
+        assertAppliedInOrder(1, 2);
+        Assert.assertEquals(takeRowStream.largestFlushedTxId(), 2);
+    }
+
+    @Test
+    public void testPipelinedAwaitAppliedDropsTheTrailingTxId() throws Exception {
+        TakeRowStream takeRowStream = takeRowStream(recordingCommitTo(), () -> { }, 1);
+        for (int txId = 1; txId <= PIPELINED_TX_IDS; txId++) {
+            row(takeRowStream, txId, txId, txId);
+        }
+
+        Assert.assertNull(takeRowStream.awaitApplied());
+        assertAppliedInOrder(1, PIPELINED_TX_IDS - 1);
+        Assert.assertEquals(takeRowStream.largestFlushedTxId(), PIPELINED_TX_IDS - 1);
+    }
+
+    @Test
+    public void testApplyFailureStopsTheStream() throws Exception {
+        int failAt = RowChangeTaker.TakeRowStream.RAW_CHUNK_SIZE + 10;
+        CommitTo recording = recordingCommitTo();
+        TakeRowStream takeRowStream = takeRowStream((prefix, commitable) -> {
+            if (commits.size() + 1 == failAt) {
+                throw new IllegalStateException("disk is gone");
+            }
+            return recording.commit(prefix, commitable);
+        }, () -> { }, 1);
+
+        Exception failure = null;
+        try {
+            for (int txId = 1; txId <= PIPELINED_TX_IDS * 4; txId++) {
+                row(takeRowStream, txId, txId, txId);
+            }
+            takeRowStream.flush();
+        } catch (IllegalStateException x) {
+            failure = x;
+        }
+
+        Assert.assertNotNull(failure, "the receiving thread never saw the apply failure");
+        Assert.assertEquals(failure.getMessage(), "disk is gone");
+        // nothing past the failed txId is applied, which would leave a gap
+        assertAppliedInOrder(1, failAt - 1);
+        Assert.assertEquals(takeRowStream.largestFlushedTxId(), failAt - 1);
+        Assert.assertEquals(takeRowStream.awaitApplied(), failure);
+    }
+
+    @Test
+    public void testDecodeFailureStopsApply() throws Exception {
+        TakeRowStream takeRowStream = takeRowStream(recordingCommitTo(), () -> { }, 1);
+        int corruptTxId = RowChangeTaker.TakeRowStream.RAW_CHUNK_SIZE + 10;
+        for (int txId = 1; txId <= PIPELINED_TX_IDS; txId++) {
+            if (txId == corruptTxId) {
+                takeRowStream.row(txId, txId, RowType.primary, new byte[3]);
+            } else {
+                row(takeRowStream, txId, txId, txId);
+            }
+        }
+
+        Exception failure = takeRowStream.awaitApplied();
+        Assert.assertNotNull(failure);
+        try {
+            takeRowStream.flush();
+            Assert.fail("flush should rethrow the decode failure");
+        } catch (Exception x) {
+            Assert.assertEquals(x, failure);
+        }
+        List<WALRow> applied = appliedRows();
+        Assert.assertTrue(applied.size() <= corruptTxId - 1, "applied " + applied.size() + " rows");
+        for (int i = 0; i < applied.size(); i++) {
+            Assert.assertEquals(UIO.bytesInt(applied.get(i).key), i + 1);
+        }
+    }
+
+    @Test
+    public void testOverCapacityAwaitsAndRetries() throws Exception {
+        AtomicInteger awaits = new AtomicInteger();
+        AtomicInteger attempts = new AtomicInteger();
+        CommitTo recording = recordingCommitTo();
+        TakeRowStream takeRowStream = takeRowStream((prefix, commitable) -> {
+            if (attempts.incrementAndGet() <= 2) {
+                throw new DeltaOverCapacityException("Delta is full");
+            }
+            return recording.commit(prefix, commitable);
+        }, awaits::incrementAndGet, 1);
+        row(takeRowStream, 1, 1, 1);
+
+        Assert.assertEquals(takeRowStream.flush(), 1);
+        Assert.assertEquals(awaits.get(), 2);
+        assertAppliedInOrder(1, 1);
+    }
+
+    @Test
+    public void testCloseReleasesAnAbandonedPipeline() throws Exception {
+        TakeRowStream takeRowStream = takeRowStream(recordingCommitTo(), () -> { }, 1);
+        for (int txId = 1; txId <= PIPELINED_TX_IDS; txId++) {
+            row(takeRowStream, txId, txId, txId);
+        }
+
+        // streaming threw, so neither flush nor awaitApplied was called
+        takeRowStream.close();
+        pipelineThreadPool.shutdown();
+        Assert.assertTrue(pipelineThreadPool.awaitTermination(10, TimeUnit.SECONDS), "a pipeline stage is still parked");
+
+        int applied = appliedRows().size();
+        Assert.assertTrue(applied < PIPELINED_TX_IDS);
+        takeRowStream.close();
+        Assert.assertEquals(takeRowStream.awaitApplied().getClass(), IllegalStateException.class);
+        Assert.assertEquals(appliedRows().size(), applied);
+    }
+
+    @Test
+    public void testCloseAfterFlushIsANoop() throws Exception {
+        TakeRowStream takeRowStream = takeRowStream(recordingCommitTo(), () -> { }, 1);
+        for (int txId = 1; txId <= PIPELINED_TX_IDS; txId++) {
+            row(takeRowStream, txId, txId, txId);
+        }
+
+        Assert.assertEquals(takeRowStream.flush(), PIPELINED_TX_IDS);
+        takeRowStream.close();
+        Assert.assertNull(takeRowStream.awaitApplied());
+        assertAppliedInOrder(1, PIPELINED_TX_IDS);
+    }
+
+    @Test
+    public void testCoalescedDuplicateKeysKeepTheNewest() throws Exception {
+        TakeRowStream takeRowStream = takeRowStream(recordingCommitTo(), () -> { }, 100);
+        row(takeRowStream, prefix, 1, 7, 10, false);
+        row(takeRowStream, prefix, 1, 8, 10, false);
+        row(takeRowStream, prefix, 2, 7, 30, false);
+        // replayed out of timestamp order, which committing one txId at a time would also have ignored
+        row(takeRowStream, prefix, 3, 7, 20, false);
+        row(takeRowStream, prefix, 3, 9, 20, false);
+
+        Assert.assertEquals(takeRowStream.flush(), 5);
+        Assert.assertEquals(commits.size(), 1);
+        List<WALRow> applied = appliedRows();
+        Assert.assertEquals(applied.size(), 3);
+        Assert.assertEquals(UIO.bytesInt(applied.get(0).key), 7);
+        Assert.assertEquals(applied.get(0).timestamp, 30);
+        Assert.assertEquals(UIO.bytesInt(applied.get(1).key), 8);
+        Assert.assertEquals(UIO.bytesInt(applied.get(2).key), 9);
+        Assert.assertEquals(takeRowStream.largestFlushedTxId(), 3);
+    }
+
+    @Test
+    public void testCoalescedTombstoneAfterSetWins() throws Exception {
+        TakeRowStream takeRowStream = takeRowStream(recordingCommitTo(), () -> { }, 100);
+        row(takeRowStream, prefix, 1, 7, 10, false);
+        row(takeRowStream, prefix, 2, 7, 20, true);
+        // an older set can't resurrect the key
+        row(takeRowStream, prefix, 3, 7, 15, false);
+
+        takeRowStream.flush();
+        List<WALRow> applied = appliedRows();
+        Assert.assertEquals(applied.size(), 1);
+        Assert.assertTrue(applied.get(0).tombstoned);
+        Assert.assertEquals(applied.get(0).timestamp, 20);
+    }
+
+    @Test
+    public void testCoalescedHighwatersAreAllMerged() throws Exception {
+        RingMember a = new RingMember("a");
+        RingMember b = new RingMember("b");
+        TakeRowStream takeRowStream = takeRowStream(recordingCommitTo(), () -> { }, 100);
+        row(takeRowStream, prefix, 1, 1, 1, false);
+        highwater(takeRowStream, 1, new WALHighwater(Lists.newArrayList(new RingMemberHighwater(a, 5))));
+        row(takeRowStream, prefix, 2, 2, 2, false);
+        highwater(takeRowStream, 2, new WALHighwater(Lists.newArrayList(new RingMemberHighwater(a, 3), new RingMemberHighwater(b, 7))));
+        row(takeRowStream, prefix, 3, 3, 3, false);
+
+        takeRowStream.flush();
+        Assert.assertEquals(commits.size(), 1);
+        // only the newest highwater goes along with the commit, but every coalesced one is merged
+        Assert.assertEquals(committedHighwaters.size(), 1);
+        Assert.assertEquals(committedHighwaters.get(0).ringMemberHighwater.size(), 2);
+        Assert.assertEquals(takeRowStream.flushedHighwatermarks.get(a).txId, 5);
+        Assert.assertEquals(takeRowStream.flushedHighwatermarks.get(b).txId, 7);
+        Assert.assertEquals(takeRowStream.flushedHighwatermarks.get(remoteMember).txId, 3);
+    }
+
+    @Test
+    public void testCoalescingStopsAtPrefixesAndLimits() throws Exception {
+        byte[] otherPrefix = "other".getBytes();
+        TakeRowStream takeRowStream = takeRowStream(recordingCommitTo(), () -> { }, 3);
+        row(takeRowStream, prefix, 1, 1, 1, false);
+        row(takeRowStream, prefix, 2, 2, 2, false);
+        row(takeRowStream, otherPrefix, 3, 3, 3, false);
+        row(takeRowStream, otherPrefix, 4, 4, 4, false);
+        row(takeRowStream, otherPrefix, 5, 5, 5, false);
+        row(takeRowStream, otherPrefix, 6, 6, 6, false);
+
+        Assert.assertEquals(takeRowStream.flush(), 6);
+        Assert.assertEquals(commits.size(), 3);
+        Assert.assertEquals(commits.get(0).size(), 2);
+        Assert.assertEquals(commits.get(0).get(0).prefix, prefix);
+        Assert.assertEquals(commits.get(1).size(), 3);
+        Assert.assertEquals(commits.get(1).get(0).prefix, otherPrefix);
+        Assert.assertEquals(commits.get(2).size(), 1);
+        assertAppliedInOrder(1, 6);
+    }
+
+    private TakeRowStream takeRowStream(CommitTo commitTo, RowChangeTaker.CapacityAwaiter capacityAwaiter, int coalesceMaxRows) {
+        return new TakeRowStream(new AmzaStats(),
+            versionedPartitionName,
+            commitTo,
+            capacityAwaiter,
+            remoteMember,
+            0,
+            pipelineThreadPool,
+            2,
+            coalesceMaxRows,
+            Long.MAX_VALUE,
+            primaryRowMarshaller,
+            highwaterRowMarshaller);
+    }
+
+    private CommitTo recordingCommitTo() {
+        return (prefix, commitable) -> {
+            List<WALRow> rows = Lists.newArrayList();
+            commitable.commitable(committedHighwaters::add, (rowTxId, key, value, valueTimestamp, valueTombstoned, valueVersion) -> {
+                rows.add(new WALRow(RowType.primary, prefix, key, value, valueTimestamp, valueTombstoned, valueVersion));
+                return true;
+            });
+            commits.add(rows);
+            return new RowsChanged(versionedPartitionName, Collections.emptyMap(), null, null, -1, -1, 0);
+        };
+    }
+
+    private void row(TakeRowStream takeRowStream, long txId, int key, long timestamp) throws Exception {
+        row(takeRowStream, prefix, txId, key, timestamp, false);
+    }
+
+    private void row(TakeRowStream takeRowStream, byte[] prefix, long txId, int key, long timestamp, boolean tombstoned) throws Exception {
+        byte[] row = primaryRowMarshaller.toRow(RowType.primary, WALKey.compose(prefix, UIO.intBytes(key)),
+            tombstoned ? null : UIO.longBytes(timestamp), timestamp, tombstoned, timestamp);
+        takeRowStream.row(-1, txId, RowType.primary, row);
+    }
+
+    private void highwater(TakeRowStream takeRowStream, long txId, WALHighwater highwater) throws Exception {
+        takeRowStream.row(-1, txId, RowType.highwater, highwaterRowMarshaller.toBytes(highwater));
+    }
+
+    private List<WALRow> appliedRows() {
+        List<WALRow> applied = Lists.newArrayList();
+        synchronized (commits) {
+            for (List<WALRow> commit : commits) {
+                applied.addAll(commit);
+            }
+        }
+        return applied;
+    }
+
+    private void assertAppliedInOrder(int fromKey, int toKey) {
+        List<WALRow> applied = appliedRows();
+        Assert.assertEquals(applied.size(), toKey - fromKey + 1);
+        for (int i = 0; i < applied.size(); i++) {
+            Assert.assertEquals(UIO.bytesInt(applied.get(i).key), fromKey + i);
+        }
+    }
+}
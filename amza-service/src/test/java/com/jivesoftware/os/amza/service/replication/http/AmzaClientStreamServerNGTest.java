@@ -0,0 +1,362 @@
+package com.jivesoftware.os.amza.service.replication.http;
+
+import com.jivesoftware.os.amza.api.AmzaInterner;
+import com.jivesoftware.os.amza.api.AmzaStreamProtocol;
+import com.jivesoftware.os.amza.api.AmzaStreamProtocol.Frame;
+import com.jivesoftware.os.amza.api.PartitionClient.KeyValueFilter;
+import com.jivesoftware.os.amza.api.RingPartitionProperties;
+import com.jivesoftware.os.amza.api.filer.FilerOutputStream;
+import com.jivesoftware.os.amza.api.filer.IReadable;
+import com.jivesoftware.os.amza.api.filer.IWriteable;
+import com.jivesoftware.os.amza.api.filer.UIO;
+import com.jivesoftware.os.amza.api.partition.Consistency;
+import com.jivesoftware.os.amza.api.partition.PartitionName;
+import com.jivesoftware.os.amza.api.partition.PartitionProperties;
+import com.jivesoftware.os.amza.service.Partition.ScanRange;
+import com.jivesoftware.os.amza.service.replication.LeaderChangeJournal.LeaderChanges;
+import com.jivesoftware.os.amza.service.ring.RingTopology;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ *
+ */
+public class AmzaClientStreamServerNGTest {
+
+    private static final int MAX_REQUEST_BYTES = 1_024;
+
+    private final PartitionName partitionName = new PartitionName(false, bytes("ring"), bytes("partition"));
+    private final PartitionName missingPartitionName = new PartitionName(false, bytes("ring"), bytes("missing"));
+    private final AtomicReference<byte[]> committed = new AtomicReference<>();
+    private final AtomicReference<List<ScanRange>> scanned = new AtomicReference<>();
+
+    private ExecutorService requestThreads;
+    private AmzaClientStreamServer server;
+    private Socket socket;
+    private DataInputStream in;
+    private DataOutputStream out;
+
+    @BeforeMethod
+    public void setUp() throws Exception {
+        requestThreads = Executors.newCachedThreadPool();
+        server = new AmzaClientStreamServer(0, new FakeRestClient(), new AmzaInterner(), requestThreads, MAX_REQUEST_BYTES, 1_000);
+        server.start();
+        socket = new Socket("localhost", server.getPort());
+        socket.setSoTimeout(10_000);
+        in = new DataInputStream(socket.getInputStream());
+        out = new DataOutputStream(socket.getOutputStream());
+    }
+
+    @AfterMethod
+    public void tearDown() throws Exception {
+        socket.close();
+        server.stop();
+        requestThreads.shutdownNow();
+    }
+
+    @Test
+    public void testGet() throws Exception {
+        Response response = call(1, AmzaStreamProtocol.OP_GET, partitionName, bytes("get-body"));
+        Assert.assertEquals(response.status, 200);
+        Assert.assertEquals(new String(response.body, StandardCharsets.UTF_8), "get:get-body");
+    }
+
+    @Test
+    public void testScan() throws Exception {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        FilerOutputStream fos = new FilerOutputStream(body);
+        byte[] intLongBuffer = new byte[8];
+        for (String[] range : new String[][] { { "a", "c" }, { "m", "z" } }) {
+            UIO.writeByte(fos, (byte) 1, "eos");
+            UIO.writeByteArray(fos, null, "fromPrefix", intLongBuffer);
+            UIO.writeByteArray(fos, bytes(range[0]), "fromKey", intLongBuffer);
+            UIO.writeByteArray(fos, null, "toPrefix", intLongBuffer);
+            UIO.writeByteArray(fos, bytes(range[1]), "toKey", intLongBuffer);
+        }
+        UIO.writeByte(fos, (byte) 0, "eos");
+
+        Response response = call(1, AmzaStreamProtocol.OP_SCAN, partitionName, body.toByteArray());
+        Assert.assertEquals(response.status, 200);
+        Assert.assertEquals(new String(response.body, StandardCharsets.UTF_8), "scan:2");
+        Assert.assertEquals(scanned.get().get(1).fromKey, bytes("m"));
+    }
+
+    @Test
+    public void testScanRejectsInvertedRange() throws Exception {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        FilerOutputStream fos = new FilerOutputStream(body);
+        byte[] intLongBuffer = new byte[8];
+        UIO.writeByte(fos, (byte) 1, "eos");
+        UIO.writeByteArray(fos, null, "fromPrefix", intLongBuffer);
+        UIO.writeByteArray(fos, bytes("z"), "fromKey", intLongBuffer);
+        UIO.writeByteArray(fos, null, "toPrefix", intLongBuffer);
+        UIO.writeByteArray(fos, bytes("a"), "toKey", intLongBuffer);
+        UIO.writeByte(fos, (byte) 0, "eos");
+
+        Response response = call(1, AmzaStreamProtocol.OP_SCAN, partitionName, body.toByteArray());
+        Assert.assertEquals(response.status, AmzaStreamProtocol.STATUS_BAD_REQUEST);
+    }
+
+    @Test
+    public void testCommit() throws Exception {
+        Response response = call(1, AmzaStreamProtocol.OP_COMMIT, partitionName, bytes("commit-body"));
+        Assert.assertEquals(response.status, 200);
+        Assert.assertEquals(response.body.length, 0);
+        Assert.assertEquals(committed.get(), bytes("commit-body"));
+    }
+
+    @Test
+    public void testTake() throws Exception {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        FilerOutputStream fos = new FilerOutputStream(body);
+        UIO.writeInt(fos, 7, "limit", new byte[4]);
+        UIO.writeLong(fos, 1234L, "transactionId", new byte[8]);
+
+        Response response = call(1, AmzaStreamProtocol.OP_TAKE, partitionName, body.toByteArray());
+        Assert.assertEquals(response.status, 200);
+        Assert.assertEquals(new String(response.body, StandardCharsets.UTF_8), "take:7:1234");
+    }
+
+    @Test
+    public void testTakePrefix() throws Exception {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        FilerOutputStream fos = new FilerOutputStream(body);
+        UIO.writeInt(fos, 3, "limit", new byte[4]);
+        UIO.writeByteArray(fos, bytes("prefix"), "prefix", new byte[8]);
+        UIO.writeLong(fos, 42L, "transactionId", new byte[8]);
+
+        Response response = call(1, AmzaStreamProtocol.OP_TAKE_PREFIX, partitionName, body.toByteArray());
+        Assert.assertEquals(response.status, 200);
+        Assert.assertEquals(new String(response.body, StandardCharsets.UTF_8), "takePrefix:3:prefix:42");
+    }
+
+    @Test
+    public void testErrorStatus() throws Exception {
+        Response response = call(1, AmzaStreamProtocol.OP_GET, missingPartitionName, bytes("get-body"));
+        Assert.assertEquals(response.status, AmzaStreamProtocol.STATUS_NOT_FOUND);
+        Assert.assertEquals(response.message, "no properties");
+
+        response = call(2, (byte) 99, partitionName, new byte[0]);
+        Assert.assertEquals(response.status, AmzaStreamProtocol.STATUS_BAD_REQUEST);
+    }
+
+    @Test
+    public void testOversizedRequestRejected() throws Exception {
+        byte[] chunk = new byte[MAX_REQUEST_BYTES / 2 + 1];
+        byte[] request = AmzaStreamProtocol.request(AmzaStreamProtocol.OP_COMMIT, partitionName.toBytes(), Consistency.none.name(),
+            false, false);
+        writeFrame(1, AmzaStreamProtocol.FRAME_REQUEST, request);
+        writeFrame(1, AmzaStreamProtocol.FRAME_DATA, chunk);
+        writeFrame(1, AmzaStreamProtocol.FRAME_DATA, chunk);
+        writeFrame(1, AmzaStreamProtocol.FRAME_END, new byte[0]);
+
+        Response response = read(1);
+        Assert.assertEquals(response.status, AmzaStreamProtocol.STATUS_TOO_LARGE);
+        Assert.assertNull(committed.get());
+
+        // the connection survives for other streams
+        response = call(2, AmzaStreamProtocol.OP_GET, partitionName, bytes("after"));
+        Assert.assertEquals(response.status, 200);
+        Assert.assertEquals(new String(response.body, StandardCharsets.UTF_8), "get:after");
+    }
+
+    @Test
+    public void testOversizedFrameClosesConnection() throws Exception {
+        out.writeInt(5 + AmzaStreamProtocol.MAX_FRAME_PAYLOAD + 1);
+        out.writeInt(1);
+        out.writeByte(AmzaStreamProtocol.FRAME_DATA);
+        out.flush();
+
+        Assert.assertEquals(in.read(), -1);
+    }
+
+    private Response call(int streamId, byte op, PartitionName name, byte[] body) throws IOException {
+        byte[] request = AmzaStreamProtocol.request(op, name.toBytes(), Consistency.none.name(), false, false);
+        writeFrame(streamId, AmzaStreamProtocol.FRAME_REQUEST, request);
+        writeFrame(streamId, AmzaStreamProtocol.FRAME_DATA, body);
+        writeFrame(streamId, AmzaStreamProtocol.FRAME_END, new byte[0]);
+        return read(streamId);
+    }
+
+    private void writeFrame(int streamId, byte type, byte[] payload) throws IOException {
+        AmzaStreamProtocol.writeFrame(out, streamId, type, payload, 0, payload.length);
+        out.flush();
+    }
+
+    private Response read(int streamId) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        while (true) {
+            Frame frame = AmzaStreamProtocol.readFrame(in);
+            Assert.assertEquals(frame.streamId, streamId);
+            if (frame.type == AmzaStreamProtocol.FRAME_DATA) {
+                body.write(frame.payload);
+            } else if (frame.type == AmzaStreamProtocol.FRAME_END) {
+                return new Response(200, null, body.toByteArray());
+            } else if (frame.type == AmzaStreamProtocol.FRAME_ERROR) {
+                String message = new String(AmzaStreamProtocol.getBytes(frame.payload, 4), StandardCharsets.UTF_8);
+                return new Response(UIO.bytesInt(frame.payload, 0), message, body.toByteArray());
+            } else {
+                Assert.fail("Unexpected frame type:" + frame.type);
+            }
+        }
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static class Response {
+
+        private final int status;
+        private final String message;
+        private final byte[] body;
+
+        Response(int status, String message, byte[] body) {
+            this.status = status;
+            this.message = message;
+            this.body = body;
+        }
+    }
+
+    private class FakeRestClient implements AmzaRestClient {
+
+        private byte[] readAll(IReadable in) throws IOException {
+            ByteArrayOutputStream all = new ByteArrayOutputStream();
+            int read;
+            while ((read = in.read()) >= 0) {
+                all.write(read);
+            }
+            return all.toByteArray();
+        }
+
+        private void write(IWriteable out, String value) throws IOException {
+            byte[] bytes = bytes(value);
+            out.write(bytes, 0, bytes.length);
+        }
+
+        @Override
+        public StateMessageCause status(PartitionName partitionName,
+            Consistency consistency,
+            boolean checkLeader,
+            long partitionAwaitOnlineTimeoutMillis) {
+            if (partitionName.equals(missingPartitionName)) {
+                return new StateMessageCause(partitionName, consistency, checkLeader, partitionAwaitOnlineTimeoutMillis,
+                    State.properties_not_present, "no properties", null);
+            }
+            return null;
+        }
+
+        @Override
+        public StateMessageCause commit(PartitionName partitionName,
+            Consistency consistency,
+            boolean checkLeader,
+            long partitionAwaitOnlineTimeoutMillis,
+            IReadable read) throws Exception {
+            committed.set(readAll(read));
+            return null;
+        }
+
+        @Override
+        public void get(PartitionName partitionName, Consistency consistency, IReadable in, IWriteable out) throws Exception {
+            write(out, "get:" + new String(readAll(in), StandardCharsets.UTF_8));
+        }
+
+        @Override
+        public void getOffset(PartitionName partitionName, Consistency consistency, IReadable in, IWriteable out) throws Exception {
+            write(out, "getOffset:" + new String(readAll(in), StandardCharsets.UTF_8));
+        }
+
+        @Override
+        public void scan(PartitionName partitionName,
+            List<ScanRange> ranges,
+            boolean rangeBoundaries,
+            KeyValueFilter filter,
+            IWriteable out,
+            boolean hydrateValues) throws Exception {
+            scanned.set(ranges);
+            write(out, "scan:" + ranges.size());
+        }
+
+        @Override
+        public void takeFromTransactionId(PartitionName partitionName, int limit, IReadable in, IWriteable out) throws Exception {
+            long txId = UIO.readLong(in, "transactionId", new byte[8]);
+            write(out, "take:" + limit + ":" + txId);
+        }
+
+        @Override
+        public void takePrefixFromTransactionId(PartitionName partitionName, int limit, IReadable in, IWriteable out) throws Exception {
+            byte[] prefix = UIO.readByteArray(in, "prefix", new byte[8]);
+            long txId = UIO.readLong(in, "transactionId", new byte[8]);
+            write(out, "takePrefix:" + limit + ":" + new String(prefix, StandardCharsets.UTF_8) + ":" + txId);
+        }
+
+        @Override
+        public RingPartitionProperties getProperties(PartitionName partitionName) throws Exception {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public RingTopology configPartition(PartitionName partitionName,
+            PartitionProperties partitionProperties,
+            int ringSize) throws Exception {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void configPartition(RingTopology ring, IWriteable writeable) throws Exception {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void ensurePartition(PartitionName partitionName, long waitForLeaderElection) throws Exception {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public RingLeader ring(PartitionName partitionName) throws Exception {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public RingLeader ringLeader(PartitionName partitionName, long waitForLeaderElection) throws Exception {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void ring(RingLeader ringLeader, IWriteable writeable) throws IOException {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void ringLeaders(List<PartitionName> partitionNames, IWriteable writeable) throws Exception {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public LeaderChanges leaderChanges(long journalId, long sinceSequence, long waitForChangesMillis) throws Exception {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void leaderChanges(LeaderChanges leaderChanges, IWriteable writeable) throws IOException {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public long approximateCount(PartitionName partitionName) throws Exception {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package com.jivesoftware.os.amza.service.replication.http;
+
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+/**
+ *
+ */
+public class PeerTakeWindowNGTest {
+
+    @Test
+    public void testFullFastTakesGrowToTheCeiling() {
+        PeerTakeWindow window = new PeerTakeWindow(1_000, 100, 2_000, Long.MAX_VALUE, 4d);
+        for (int i = 0; i < 20; i++) {
+            long limit = window.limit(65_536);
+            window.completed(65_536, limit, limit, limit * 10, 10, 20);
+        }
+        assertEquals(window.limit(65_536), 65_536);
+    }
+
+    @Test
+    public void testPartialTakesDoNotGrow() {
+        PeerTakeWindow window = new PeerTakeWindow(1_000, 100, 2_000, Long.MAX_VALUE, 4d);
+        window.completed(65_536, 1_000, 10, 100, 10, 20);
+        assertEquals(window.limit(65_536), 1_000);
+    }
+
+    @Test
+    public void testSlowTakesAndFailuresShrink() {
+        PeerTakeWindow window = new PeerTakeWindow(8_000, 100, 2_000, Long.MAX_VALUE, 4d);
+        window.completed(65_536, 8_000, 8_000, 80_000, 10, 3_000);
+        long shrunk = window.limit(65_536);
+        assertTrue(shrunk < 8_000 && shrunk >= 4_000, "shrunk:" + shrunk);
+
+        for (int i = 0; i < 20; i++) {
+            window.failed();
+        }
+        assertEquals(window.limit(65_536), 100);
+    }
+
+    @Test
+    public void testBytesPerRowCapsTheWindow() {
+        PeerTakeWindow window = new PeerTakeWindow(8_000, 100, 2_000, 1_000_000, 4d);
+        window.completed(65_536, 8_000, 1_000, 1_000_000, 10, 20);
+        assertEquals(window.limit(65_536), 1_000);
+    }
+}
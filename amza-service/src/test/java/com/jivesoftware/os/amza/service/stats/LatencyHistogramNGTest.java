@@ -0,0 +1,37 @@
+package com.jivesoftware.os.amza.service.stats;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ *
+ */
+public class LatencyHistogramNGTest {
+
+    @Test
+    public void testPercentiles() throws Exception {
+        LatencyHistogram histogram = new LatencyHistogram();
+        Assert.assertEquals(histogram.percentileMicros(0.99d), -1);
+
+        for (int i = 0; i < 99; i++) {
+            histogram.record(100_000);
+        }
+        histogram.record(50_000_000);
+
+        Assert.assertEquals(histogram.percentileMicros(0.5d), 128);
+        Assert.assertEquals(histogram.percentileMicros(0.99d), 128);
+        Assert.assertEquals(histogram.percentileMicros(1d), 65_536);
+    }
+
+    @Test
+    public void testDrainOnlySeesTheLatestInterval() throws Exception {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(10_000_000);
+        Assert.assertEquals(histogram.drainPercentileMicros(0.99d), 16_384);
+        Assert.assertEquals(histogram.drainPercentileMicros(0.99d), -1);
+
+        histogram.record(1_000);
+        Assert.assertEquals(histogram.drainPercentileMicros(0.99d), 1);
+        Assert.assertEquals(histogram.percentileMicros(1d), 16_384);
+    }
+}
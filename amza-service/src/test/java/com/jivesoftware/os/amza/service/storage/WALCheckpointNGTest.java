@@ -0,0 +1,49 @@
+package com.jivesoftware.os.amza.service.storage;
+
+import com.google.common.io.Files;
+import java.io.File;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+/**
+ *
+ */
+public class WALCheckpointNGTest {
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        File file = new File(Files.createTempDir(), "test.checkpoint");
+        assertNull(WALCheckpoint.read(file));
+
+        WALCheckpoint.write(file, new WALCheckpoint(1_000, 900, 42, 43, 1, 2, 3, 4, 5, 6, 700, 8, true, new long[] { 9, 10 }));
+        WALCheckpoint checkpoint = WALCheckpoint.read(file);
+        assertNotNull(checkpoint);
+        assertEquals(checkpoint.endFp, 1_000);
+        assertEquals(checkpoint.highestTxId, 43);
+        assertEquals(checkpoint.oldestTimestamp, 1);
+        assertEquals(checkpoint.oldestTombstonedVersion, 4);
+        assertEquals(checkpoint.keyCount, 5);
+        assertEquals(checkpoint.clobberCount, 6);
+        assertEquals(checkpoint.fpOfLastLeap, 700);
+        assertEquals(checkpoint.updatesSinceLastLeap, 8);
+        assertTrue(checkpoint.hasEndOfMergeMarker);
+        assertEquals(checkpoint.keyHighwaterTimestamps, new long[] { 9, 10 });
+
+        WALCheckpoint.write(file, new WALCheckpoint(1_000, 900, 42, 43, 1, 2, 3, 4, 5, 6, 700, 8, false, null));
+        assertNull(WALCheckpoint.read(file).keyHighwaterTimestamps);
+    }
+
+    @Test
+    public void testOnlyMatchesSameLastRow() throws Exception {
+        WALCheckpoint checkpoint = new WALCheckpoint(1_000, 900, 42, 43, 1, 2, 3, 4, 5, 6, 700, 8, true, null);
+        assertTrue(checkpoint.matches(new long[] { 900, 42 }));
+        assertFalse(checkpoint.matches(new long[] { 900, 41 }));
+        assertFalse(checkpoint.matches(new long[] { 899, 42 }));
+        assertFalse(checkpoint.matches(null));
+    }
+}
@@ -0,0 +1,57 @@
+package com.jivesoftware.os.amza.service.storage;
+
+import com.google.common.io.Files;
+import com.jivesoftware.os.amza.api.filer.UIO;
+import java.io.File;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+/**
+ *
+ */
+public class WALKeyFilterNGTest {
+
+    @Test
+    public void testNoFalseNegatives() {
+        WALKeyFilter filter = WALKeyFilter.create(1_000, 0.01d);
+        assertFalse(filter.mightContain(null, UIO.longBytes(1)));
+
+        for (long i = 0; i < 1_000; i++) {
+            filter.put(i % 2 == 0 ? null : new byte[] { 1 }, UIO.longBytes(i));
+        }
+        int falsePositives = 0;
+        for (long i = 0; i < 1_000; i++) {
+            assertTrue(filter.mightContain(i % 2 == 0 ? null : new byte[] { 1 }, UIO.longBytes(i)));
+            if (filter.mightContain(new byte[] { 2 }, UIO.longBytes(i))) {
+                falsePositives++;
+            }
+        }
+        assertTrue(falsePositives < 50, "falsePositives:" + falsePositives);
+    }
+
+    @Test
+    public void testPersistedFilterOnlyMatchesSameWAL() throws Exception {
+        WALKeyFilter filter = WALKeyFilter.create(100, 0.01d);
+        for (long i = 0; i < 100; i++) {
+            filter.put(null, UIO.longBytes(i));
+        }
+        File file = new File(Files.createTempDir(), "filter.bloom");
+        WALKeyFilter.write(file, filter.toBytes(4096, 77));
+
+        assertNull(WALKeyFilter.read(file, 4097, 77));
+        assertNull(WALKeyFilter.read(file, 4096, 78));
+        assertNull(WALKeyFilter.read(new File(file.getParentFile(), "missing.bloom"), 4096, 77));
+
+        WALKeyFilter read = WALKeyFilter.read(file, 4096, 77);
+        assertNotNull(read);
+        assertEquals(read.getExpectedKeys(), 100);
+        for (long i = 0; i < 100; i++) {
+            assertTrue(read.mightContain(null, UIO.longBytes(i)));
+        }
+    }
+}
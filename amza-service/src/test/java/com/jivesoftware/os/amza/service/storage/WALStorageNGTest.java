@@ -0,0 +1,204 @@
+package com.jivesoftware.os.amza.service.storage;
+
+import com.google.common.collect.Lists;
+import com.google.common.io.Files;
+import com.jivesoftware.os.amza.api.AmzaInterner;
+import com.jivesoftware.os.amza.api.IoStats;
+import com.jivesoftware.os.amza.api.filer.UIO;
+import com.jivesoftware.os.amza.api.partition.PartitionName;
+import com.jivesoftware.os.amza.api.partition.VersionedPartitionName;
+import com.jivesoftware.os.amza.api.stream.RowType;
+import com.jivesoftware.os.amza.api.wal.MemoryWALIndex;
+import com.jivesoftware.os.amza.api.wal.MemoryWALIndexProvider;
+import com.jivesoftware.os.amza.api.wal.MemoryWALUpdates;
+import com.jivesoftware.os.amza.api.wal.WALRow;
+import com.jivesoftware.os.amza.service.SickPartitions;
+import com.jivesoftware.os.amza.service.filer.DirectByteBufferPool;
+import com.jivesoftware.os.amza.service.stats.AmzaStats;
+import com.jivesoftware.os.amza.service.stats.AmzaStats.CompactionFamily;
+import com.jivesoftware.os.amza.service.stats.AmzaStats.CompactionStats;
+import com.jivesoftware.os.amza.service.storage.binary.BinaryHighwaterRowMarshaller;
+import com.jivesoftware.os.amza.service.storage.binary.BinaryPrimaryRowMarshaller;
+import com.jivesoftware.os.amza.service.storage.binary.BinaryRowIOProvider;
+import com.jivesoftware.os.amza.service.storage.binary.BinaryWALTx;
+import com.jivesoftware.os.amza.service.storage.binary.RowIOProvider;
+import com.jivesoftware.os.amza.service.storage.binary.WALCompactionPolicy;
+import com.jivesoftware.os.jive.utils.ordered.id.ConstantWriterIdProvider;
+import com.jivesoftware.os.jive.utils.ordered.id.OrderIdProviderImpl;
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ *
+ */
+public class WALStorageNGTest {
+
+    private final BinaryPrimaryRowMarshaller primaryRowMarshaller = new BinaryPrimaryRowMarshaller();
+    private final BinaryHighwaterRowMarshaller highwaterRowMarshaller = new BinaryHighwaterRowMarshaller(new AmzaInterner());
+    private final VersionedPartitionName versionedPartitionName = new VersionedPartitionName(
+        new PartitionName(false, "ring".getBytes(), "booya".getBytes()),
+        VersionedPartitionName.STATIC_VERSION);
+    private final byte[] prefix = UIO.intBytes(-1);
+
+    private final IoStats ioStats = new IoStats();
+    private final OrderIdProviderImpl idProvider = new OrderIdProviderImpl(new ConstantWriterIdProvider(1));
+    private final List<Runnable> keyFilterRebuilds = Lists.newArrayList();
+    private File walDir;
+    private AmzaStats amzaStats;
+    private WALStorage<MemoryWALIndex> walStorage;
+
+    @BeforeMethod
+    public void setUp() throws Exception {
+        walDir = Files.createTempDir();
+        keyFilterRebuilds.clear();
+    }
+
+    @Test
+    public void testKeyFilterIsBuiltOffTheMergeThread() throws Exception {
+        open();
+        write(0, 100);
+        walStorage.endOfMergeMarker(ioStats, 1, 100);
+
+        // the merge only queued the rebuild, so every lookup still probes the index
+        Assert.assertNull(walStorage.getTimestampedValue(prefix, UIO.intBytes(1_000)));
+        Assert.assertEquals(amzaStats.keyFilterNegatives.longValue(), 0);
+        Assert.assertEquals(keyFilterRebuilds.size(), 1);
+
+        // further merges don't queue another rebuild while one is pending
+        walStorage.endOfMergeMarker(ioStats, 2, 100);
+        Assert.assertEquals(keyFilterRebuilds.size(), 1);
+
+        runKeyFilterRebuilds();
+        assertShortCircuits(1_000, 1_100);
+        assertReadable(0, 100);
+        Assert.assertEquals(amzaStats.keyFilterFalsePositives.longValue(), 0);
+    }
+
+    @Test
+    public void testKeyFilterTracksUpdates() throws Exception {
+        open();
+        write(0, 10);
+        walStorage.endOfMergeMarker(ioStats, 1, 10);
+        runKeyFilterRebuilds();
+
+        write(10, 10);
+        assertReadable(0, 20);
+        assertShortCircuits(1_000, 1_010);
+    }
+
+    @Test
+    public void testKeyFilterRebuiltAfterCompaction() throws Exception {
+        open();
+        write(0, 100);
+        walStorage.endOfMergeMarker(ioStats, 1, 100);
+        runKeyFilterRebuilds();
+
+        CompactionStats compactionStats = new AmzaStats().beginCompaction(CompactionFamily.tombstone, "test");
+        long sizeAfterCompaction = walStorage.compactTombstone(ioStats, compactionStats, walDir, walDir, RowType.primary,
+            0, 0, -1, -1, -1, -1, 0, true, false,
+            transitionToCompacted -> transitionToCompacted.tx(() -> null));
+        Assert.assertTrue(sizeAfterCompaction > 0);
+
+        assertReadable(0, 100);
+        assertShortCircuits(1_000, 1_100);
+        write(100, 10);
+        assertReadable(100, 10);
+    }
+
+    @Test
+    public void testPersistedKeyFilterIsReused() throws Exception {
+        open();
+        write(0, 100);
+        walStorage.endOfMergeMarker(ioStats, 1, 100);
+        runKeyFilterRebuilds();
+        Assert.assertFalse(keyFilterFile().exists(), "only a checkpoint persists the filter");
+
+        walStorage.checkpoint();
+        Assert.assertTrue(keyFilterFile().exists());
+
+        open();
+        // no merge and no rebuild, so the filter can only have come from disk
+        Assert.assertTrue(keyFilterRebuilds.isEmpty());
+        assertShortCircuits(1_000, 1_100);
+        assertReadable(0, 100);
+    }
+
+    @Test
+    public void testStalePersistedKeyFilterIsIgnored() throws Exception {
+        open();
+        write(0, 100);
+        walStorage.endOfMergeMarker(ioStats, 1, 100);
+        runKeyFilterRebuilds();
+        walStorage.checkpoint();
+
+        // rows written after the checkpoint aren't in the persisted filter
+        open();
+        write(100, 100);
+
+        open();
+        Assert.assertNull(walStorage.getTimestampedValue(prefix, UIO.intBytes(1_000)));
+        Assert.assertEquals(amzaStats.keyFilterNegatives.longValue(), 0);
+        assertReadable(0, 200);
+    }
+
+    private void open() throws Exception {
+        RowIOProvider rowIOProvider = new BinaryRowIOProvider(4_096, 64, false, new DirectByteBufferPool(64 * 1024, 16), 64);
+        BinaryWALTx binaryWALTx = new BinaryWALTx("booya", rowIOProvider, primaryRowMarshaller, 4_096, 64, WALCompactionPolicy.NONE);
+        amzaStats = new AmzaStats();
+        walStorage = new WALStorage<>(amzaStats,
+            versionedPartitionName,
+            idProvider,
+            primaryRowMarshaller,
+            highwaterRowMarshaller,
+            binaryWALTx,
+            new MemoryWALIndexProvider("memory"),
+            new SickPartitions(),
+            false,
+            2,
+            0.01d,
+            keyFilterRebuilds::add);
+        walStorage.load(ioStats, walDir, -1, -1, false, false, -1, 0);
+    }
+
+    private void runKeyFilterRebuilds() {
+        for (Runnable rebuild : keyFilterRebuilds) {
+            rebuild.run();
+        }
+        keyFilterRebuilds.clear();
+    }
+
+    private File keyFilterFile() throws IOException {
+        return new File(walDir, versionedPartitionName.toBase64() + ".bloom");
+    }
+
+    private void write(int start, int count) throws Exception {
+        List<WALRow> updates = Lists.newArrayList();
+        for (int i = start; i < start + count; i++) {
+            long timestampAndVersion = idProvider.nextId();
+            updates.add(new WALRow(RowType.primary, prefix, UIO.intBytes(i), UIO.longBytes(timestampAndVersion), timestampAndVersion, false,
+                timestampAndVersion));
+        }
+        walStorage.update(ioStats, true, RowType.primary, -1, false, prefix, new MemoryWALUpdates(updates, null));
+    }
+
+    private void assertReadable(int start, int count) throws Exception {
+        for (int i = start; i < start + count; i++) {
+            Assert.assertNotNull(walStorage.getTimestampedValue(prefix, UIO.intBytes(i)), "missing key:" + i);
+        }
+    }
+
+    private void assertShortCircuits(int from, int to) throws Exception {
+        long negatives = amzaStats.keyFilterNegatives.longValue();
+        long falsePositives = amzaStats.keyFilterFalsePositives.longValue();
+        for (int i = from; i < to; i++) {
+            Assert.assertNull(walStorage.getTimestampedValue(prefix, UIO.intBytes(i)));
+        }
+        long skipped = amzaStats.keyFilterNegatives.longValue() - negatives;
+        Assert.assertEquals(skipped + amzaStats.keyFilterFalsePositives.longValue() - falsePositives, to - from);
+        Assert.assertTrue(skipped >= (to - from) * 9 / 10, "only skipped " + skipped + " of " + (to - from));
+    }
+}
@@ -0,0 +1,78 @@
+package com.jivesoftware.os.amza.service.storage.binary;
+
+import com.jivesoftware.os.amza.api.stream.RowType;
+import java.io.File;
+import java.nio.file.Files;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ *
+ */
+public class BinaryPrimaryRowMarshallerNGTest {
+
+    @Test
+    public void testDeflateRoundTrip() throws Exception {
+        DeflateDictionaryTrainer trainer = new DeflateDictionaryTrainer(8, 4_096);
+        for (int i = 0; i < 1_000; i++) {
+            trainer.sample(value(i));
+        }
+        byte[] dictionary = trainer.train();
+
+        BinaryPrimaryRowMarshaller plain = new BinaryPrimaryRowMarshaller();
+        BinaryPrimaryRowMarshaller trained = new BinaryPrimaryRowMarshaller(dictionary);
+        BinaryPrimaryRowMarshaller retrained = new BinaryPrimaryRowMarshaller(new byte[] { 1, 2, 3 }, dictionary);
+
+        long deflatedBytes = 0;
+        long dictionaryBytes = 0;
+        for (int i = 0; i < 1_000; i++) {
+            byte[] pk = ("key-" + i).getBytes();
+            byte[] value = value(i);
+            byte[] primary = plain.toRow(RowType.primary, pk, value, i, false, i);
+            byte[] deflated = plain.toRow(RowType.deflate_primary, pk, value, i, false, i);
+            byte[] withDictionary = trained.toRow(RowType.deflate_primary, pk, value, i, false, i);
+            deflatedBytes += deflated.length;
+            dictionaryBytes += withDictionary.length;
+
+            Assert.assertEquals(plain.valueFromRow(RowType.deflate_primary, deflated, 0), value);
+            Assert.assertEquals(trained.valueFromRow(RowType.deflate_primary, withDictionary, 0), value);
+            Assert.assertEquals(retrained.valueFromRow(RowType.deflate_primary, withDictionary, 0), value);
+            Assert.assertEquals(trained.timestampFromRow(withDictionary, 0), i);
+            Assert.assertEquals(trained.versionFromRow(withDictionary, 0), i);
+            Assert.assertEquals(trained.convert(RowType.deflate_primary, withDictionary, RowType.primary), primary);
+
+            byte[] tombstone = trained.toRow(RowType.deflate_primary, pk, null, i, true, i);
+            Assert.assertNull(trained.valueFromRow(RowType.deflate_primary, tombstone, 0));
+            Assert.assertTrue(trained.tombstonedFromRow(tombstone, 0));
+            Assert.assertEquals(trained.convert(RowType.deflate_primary, tombstone, RowType.primary),
+                plain.toRow(RowType.primary, pk, null, i, true, i));
+        }
+        Assert.assertTrue(dictionaryBytes < deflatedBytes, dictionaryBytes + " vs " + deflatedBytes);
+    }
+
+    @Test
+    public void testReadDeflateDictionaries() throws Exception {
+        DeflateDictionaryTrainer trainer = new DeflateDictionaryTrainer(8, 4_096);
+        for (int i = 0; i < 100; i++) {
+            trainer.sample(value(i));
+        }
+        byte[] dictionary = trainer.train();
+        File file = File.createTempFile("amza", ".dict");
+        file.deleteOnExit();
+        Files.write(file.toPath(), dictionary);
+
+        byte[][] dictionaries = BinaryPrimaryRowMarshaller.readDeflateDictionaries(file.getAbsolutePath());
+        Assert.assertEquals(dictionaries.length, 1);
+        Assert.assertEquals(dictionaries[0], dictionary);
+        Assert.assertEquals(BinaryPrimaryRowMarshaller.readDeflateDictionaries().length, 0);
+
+        BinaryPrimaryRowMarshaller trained = new BinaryPrimaryRowMarshaller(dictionary);
+        BinaryPrimaryRowMarshaller loaded = new BinaryPrimaryRowMarshaller(dictionaries);
+        byte[] row = trained.toRow(RowType.deflate_primary, "key".getBytes(), value(7), 7, false, 7);
+        Assert.assertEquals(loaded.valueFromRow(RowType.deflate_primary, row, 0), value(7));
+    }
+
+    private static byte[] value(int i) {
+        return ("{\"user\":\"u" + i + "\",\"status\":\"active\",\"count\":" + (i * 7) + "}").getBytes();
+    }
+}
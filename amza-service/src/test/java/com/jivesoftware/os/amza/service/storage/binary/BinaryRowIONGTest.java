@@ -5,6 +5,7 @@ import com.google.common.io.Files;
 import com.jivesoftware.os.amza.api.filer.UIO;
 import com.jivesoftware.os.amza.api.scan.RowStream;
 import com.jivesoftware.os.amza.api.stream.RowType;
+import com.jivesoftware.os.amza.service.filer.DirectByteBufferPool;
 import com.jivesoftware.os.amza.service.filer.HeapByteBufferFactory;
 import com.jivesoftware.os.amza.service.filer.MultiAutoGrowingByteBufferBackedFiler;
 import com.jivesoftware.os.amza.api.IoStats;
@@ -33,8 +34,9 @@ public class BinaryRowIONGTest {
         BinaryRowIO binaryRowIO = new BinaryRowIO(file,
             "test",
             new BinaryRowReader(filer),
-            new BinaryRowWriter(filer),
+            new BinaryRowWriter(filer, new DirectByteBufferPool(64 * 1024, 16)),
             4096,
+            64,
             64);
         binaryRowIO.initLeaps(ioStats, -1, 0);
         write(ioStats, 10_000, () -> binaryRowIO);
@@ -48,8 +50,9 @@ public class BinaryRowIONGTest {
         BinaryRowIO binaryRowIO = new BinaryRowIO(Files.createTempDir(),
             "test",
             new BinaryRowReader(filer),
-            new BinaryRowWriter(filer),
+            new BinaryRowWriter(filer, new DirectByteBufferPool(64 * 1024, 16)),
             4096,
+            64,
             64);
         binaryRowIO.initLeaps(ioStats, -1, 0);
         write(ioStats, 500, () -> binaryRowIO);
@@ -118,7 +121,7 @@ public class BinaryRowIONGTest {
         IoStats ioStats = new IoStats();
         leap(ioStats,
             () -> {
-                BinaryRowIO io = new BinaryRowIO(file, "test", new BinaryRowReader(filer), new BinaryRowWriter(filer), 4096, 64);
+                BinaryRowIO io = new BinaryRowIO(file, "test", new BinaryRowReader(filer), new BinaryRowWriter(filer, new DirectByteBufferPool(64 * 1024, 16)), 4096, 64, 64);
                 io.initLeaps(ioStats, -1, 0);
                 return io;
             },
@@ -130,8 +133,8 @@ public class BinaryRowIONGTest {
         MemoryBackedWALFiler filer = new MemoryBackedWALFiler(new MultiAutoGrowingByteBufferBackedFiler(1_024, 1_024 * 1_024,
             new HeapByteBufferFactory()));
         IoStats ioStats = new IoStats();
-        BinaryRowIO binaryRowIO = new BinaryRowIO(Files.createTempDir(), "test", new BinaryRowReader(filer), new BinaryRowWriter(filer),
-            4096, 64);
+        BinaryRowIO binaryRowIO = new BinaryRowIO(Files.createTempDir(), "test", new BinaryRowReader(filer), new BinaryRowWriter(filer, new DirectByteBufferPool(64 * 1024, 16)),
+            4096, 64, 64);
         binaryRowIO.initLeaps(ioStats, -1, 0);
         leap(ioStats, () -> binaryRowIO, 4096);
     }
@@ -21,9 +21,11 @@ import com.jivesoftware.os.amza.api.filer.UIO;
 import com.jivesoftware.os.amza.api.scan.RowStream;
 import com.jivesoftware.os.amza.api.stream.RowType;
 import com.jivesoftware.os.amza.api.wal.WALWriter;
+import com.jivesoftware.os.amza.service.filer.DirectByteBufferPool;
 import com.jivesoftware.os.amza.service.filer.HeapByteBufferFactory;
 import com.jivesoftware.os.amza.service.filer.MultiAutoGrowingByteBufferBackedFiler;
 import com.jivesoftware.os.amza.api.IoStats;
+import com.jivesoftware.os.amza.service.storage.filer.DirectAppendWALFiler;
 import com.jivesoftware.os.amza.service.storage.filer.DiskBackedWALFiler;
 import com.jivesoftware.os.amza.service.storage.filer.MemoryBackedWALFiler;
 import com.jivesoftware.os.amza.service.storage.filer.WALFiler;
@@ -69,9 +71,85 @@ public class BinaryRowReaderWriterTest {
 
     }
 
+    @Test
+    public void testScanBuffersMemMapped() throws Exception {
+        File dir = Files.createTempDir();
+        IoStats ioStats = new IoStats();
+        DiskBackedWALFiler filer = new DiskBackedWALFiler(new File(dir, "booya").getAbsolutePath(), "rw", true, 0);
+        BinaryRowReader binaryRowReader = new BinaryRowReader(filer);
+        BinaryRowWriter binaryRowWriter = new BinaryRowWriter(filer, new DirectByteBufferPool(64 * 1024, 16));
+
+        for (long i = 0; i < 10; i++) {
+            byte[] row = { 1, 2, 3, (byte) i };
+            binaryRowWriter.write(ioStats, i, RowType.primary, 1, 4, stream -> stream.stream(row), indexableKeys, txKeyPointerFpStream, true, false);
+        }
+
+        List<byte[]> scanned = Lists.newArrayList();
+        binaryRowReader.scan(ioStats, 0, false, (rowFP, rowTxId, rowType, row) -> {
+            scanned.add(row);
+            return true;
+        });
+
+        MutableInt index = new MutableInt();
+        Assert.assertTrue(binaryRowReader.scanBuffers(ioStats, 0, (rowFP, rowTxId, rowType, row) -> {
+            Assert.assertEquals(rowTxId, index.longValue());
+            byte[] copy = new byte[row.remaining()];
+            row.get(copy);
+            Assert.assertEquals(copy, scanned.get(index.intValue()));
+            index.increment();
+            return true;
+        }));
+        Assert.assertEquals(index.intValue(), 10);
+    }
+
+    @Test
+    public void testValidateFromCheckpoint() throws Exception {
+        IoStats ioStats = new IoStats();
+        WALFiler filer = new MemoryBackedWALFiler(new MultiAutoGrowingByteBufferBackedFiler(1_024, 1_024 * 1_024,
+            new HeapByteBufferFactory()));
+        BinaryRowReader binaryRowReader = new BinaryRowReader(filer);
+        BinaryRowWriter binaryRowWriter = new BinaryRowWriter(filer, new DirectByteBufferPool(64 * 1024, 16));
+
+        for (long i = 0; i < 10; i++) {
+            byte[] row = { 1, 2, 3, (byte) i };
+            binaryRowWriter.write(ioStats, i, RowType.primary, 1, 4, stream -> stream.stream(row), indexableKeys, txKeyPointerFpStream, true, false);
+        }
+        long checkpointFp = filer.length();
+        long[] lastRow = binaryRowReader.rowEndingAt(checkpointFp);
+        Assert.assertNotNull(lastRow);
+        Assert.assertEquals(lastRow[1], 9L);
+        Assert.assertNull(binaryRowReader.rowEndingAt(checkpointFp - 1));
+
+        for (long i = 10; i < 13; i++) {
+            byte[] row = { 1, 2, 3, (byte) i };
+            binaryRowWriter.write(ioStats, i, RowType.primary, 1, 4, stream -> stream.stream(row), indexableKeys, txKeyPointerFpStream, true, false);
+        }
+
+        List<Long> forwardTxIds = Lists.newArrayList();
+        binaryRowReader.validate(ioStats, checkpointFp, false, false,
+            (long rowFP, long rowTxId, RowType rowType, byte[] row) -> -1,
+            (long rowFP, long rowTxId, RowType rowType, byte[] row) -> {
+                forwardTxIds.add(rowTxId);
+                return -(rowFP + 1);
+            },
+            null);
+        Assert.assertEquals(forwardTxIds, Arrays.asList(10L, 11L, 12L));
+
+        List<Long> backwardTxIds = Lists.newArrayList();
+        binaryRowReader.validate(ioStats, checkpointFp, true, true,
+            (long rowFP, long rowTxId, RowType rowType, byte[] row) -> {
+                backwardTxIds.add(rowTxId);
+                return -1;
+            },
+            (long rowFP, long rowTxId, RowType rowType, byte[] row) -> -1,
+            (truncatedAtFP) -> Assert.assertEquals(truncatedAtFP, checkpointFp));
+        Assert.assertEquals(backwardTxIds, Arrays.asList(12L, 11L, 10L));
+        Assert.assertEquals(filer.length(), checkpointFp);
+    }
+
     private void validate(WALFiler filer, IoStats ioStats) throws Exception {
         BinaryRowReader binaryRowReader = new BinaryRowReader(filer);
-        BinaryRowWriter binaryRowWriter = new BinaryRowWriter(filer);
+        BinaryRowWriter binaryRowWriter = new BinaryRowWriter(filer, new DirectByteBufferPool(64 * 1024, 16));
 
         binaryRowWriter.write(ioStats, 0L, RowType.primary, 1, 4, stream -> stream.stream(new byte[] { 1, 2, 3, 4 }), indexableKeys, txKeyPointerFpStream, true,
             false);
@@ -137,9 +215,18 @@ public class BinaryRowReaderWriterTest {
 
     }
 
+    @Test
+    public void testDirectAppendRead() throws Exception {
+        File dir = Files.createTempDir();
+        IoStats ioStats = new IoStats();
+        WALFiler filer = new DirectAppendWALFiler(new File(dir, "booya").getAbsolutePath(), "rw", 16, 1, 4, new DirectByteBufferPool(16, 4));
+        read(filer, ioStats);
+
+    }
+
     private void read(WALFiler filer, IoStats ioStats) throws Exception {
         BinaryRowReader binaryRowReader = new BinaryRowReader(filer);
-        BinaryRowWriter binaryRowWriter = new BinaryRowWriter(filer);
+        BinaryRowWriter binaryRowWriter = new BinaryRowWriter(filer, new DirectByteBufferPool(64 * 1024, 16));
 
         ReadStream readStream = new ReadStream();
         binaryRowReader.reverseScan(ioStats, readStream);
@@ -179,7 +266,7 @@ public class BinaryRowReaderWriterTest {
         IoStats ioStats = new IoStats();
         DiskBackedWALFiler filer = new DiskBackedWALFiler(new File(dir, "booya").getAbsolutePath(), "rw", false, 0);
         BinaryRowReader binaryRowReader = new BinaryRowReader(filer);
-        BinaryRowWriter binaryRowWriter = new BinaryRowWriter(filer);
+        BinaryRowWriter binaryRowWriter = new BinaryRowWriter(filer, new DirectByteBufferPool(64 * 1024, 16));
 
         ReadStream readStream = new ReadStream();
         binaryRowReader.reverseScan(ioStats, readStream);
@@ -216,7 +303,7 @@ public class BinaryRowReaderWriterTest {
         for (long i = 0; i < 1000; i++) {
             DiskBackedWALFiler filer = new DiskBackedWALFiler(new File(dir, "foo").getAbsolutePath(), "rw", false, 0);
             BinaryRowReader binaryRowReader = new BinaryRowReader(filer);
-            BinaryRowWriter binaryRowWriter = new BinaryRowWriter(filer);
+            BinaryRowWriter binaryRowWriter = new BinaryRowWriter(filer, new DirectByteBufferPool(64 * 1024, 16));
 
             ReadStream readStream = new ReadStream();
 
@@ -234,12 +321,98 @@ public class BinaryRowReaderWriterTest {
 
     }
 
+    @Test
+    public void testDirectAppendOpenCloseAppend() throws Exception {
+        File dir = Files.createTempDir();
+
+        IoStats ioStats = new IoStats();
+        Random rand = new Random();
+        List<byte[]> rows = new ArrayList<>();
+        for (long i = 0; i < 100; i++) {
+            DirectAppendWALFiler filer = new DirectAppendWALFiler(new File(dir, "foo").getAbsolutePath(), "rw", 16, 2, 4, new DirectByteBufferPool(16, 4));
+            BinaryRowReader binaryRowReader = new BinaryRowReader(filer);
+            BinaryRowWriter binaryRowWriter = new BinaryRowWriter(filer, new DirectByteBufferPool(64 * 1024, 16));
+
+            ReadStream readStream = new ReadStream();
+
+            if (i > 0) {
+                binaryRowReader.scan(ioStats, 0, false, readStream);
+                Assert.assertEquals(readStream.rows.size(), i);
+                for (int j = 0; j < i; j++) {
+                    Assert.assertTrue(Arrays.equals(readStream.rows.get(j), rows.get(j)));
+                }
+            }
+            readStream.clear();
+
+            byte[] row = new byte[1 + rand.nextInt(40)];
+            rand.nextBytes(row);
+            rows.add(row);
+            binaryRowWriter.write(ioStats, i, RowType.primary, 1, row.length, stream -> stream.stream(row), indexableKeys, txKeyPointerFpStream, true, false);
+            filer.close();
+        }
+
+    }
+
+    @Test
+    public void testDirectAppendConcurrentReadsRecycleBlocks() throws Exception {
+        File dir = Files.createTempDir();
+        IoStats ioStats = new IoStats();
+        // two cached blocks of 16 bytes, so nearly every read evicts and recycles a block another reader may be copying from
+        DirectAppendWALFiler filer = new DirectAppendWALFiler(new File(dir, "recycle").getAbsolutePath(), "rw", 16, 1, 2, new DirectByteBufferPool(16, 2));
+        BinaryRowReader binaryRowReader = new BinaryRowReader(filer);
+        BinaryRowWriter binaryRowWriter = new BinaryRowWriter(filer, new DirectByteBufferPool(64 * 1024, 16));
+
+        int numRows = 2_000;
+        ExecutorService executors = Executors.newFixedThreadPool(5);
+        AtomicBoolean running = new AtomicBoolean(true);
+        List<Future<?>> futures = Lists.newArrayList();
+        for (int i = 0; i < 4; i++) {
+            futures.add(executors.submit(() -> {
+                while (running.get()) {
+                    MutableInt index = new MutableInt();
+                    binaryRowReader.scan(ioStats, 0, false, (rowFP, rowTxId, rowType, row) -> {
+                        Assert.assertEquals(rowTxId, index.longValue());
+                        Assert.assertTrue(Arrays.equals(row, UIO.intBytes(index.intValue())));
+                        index.increment();
+                        return true;
+                    });
+                }
+                return null;
+            }));
+        }
+        futures.add(executors.submit(() -> {
+            try {
+                for (int i = 0; i < numRows; i++) {
+                    byte[] row = UIO.intBytes(i);
+                    binaryRowWriter.write(ioStats, i, RowType.primary, 1, row.length, stream -> stream.stream(row), indexableKeys, txKeyPointerFpStream,
+                        false, false);
+                    if (i % 7 == 0) {
+                        binaryRowWriter.flush(false);
+                    }
+                }
+            } finally {
+                running.set(false);
+            }
+            return null;
+        }));
+
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executors.shutdownNow();
+
+        ReadStream readStream = new ReadStream();
+        binaryRowReader.scan(ioStats, 0, false, readStream);
+        Assert.assertEquals(readStream.rows.size(), numRows);
+        filer.close();
+    }
+
     @Test(enabled = false)
     public void testConcurrency() throws Exception {
         MemoryBackedWALFiler walFiler = new MemoryBackedWALFiler(new MultiAutoGrowingByteBufferBackedFiler(32, 1_024 * 1_024, new HeapByteBufferFactory()));
         IoStats ioStats = new IoStats();
         BinaryRowReader binaryRowReader = new BinaryRowReader(walFiler);
-        BinaryRowWriter binaryRowWriter = new BinaryRowWriter(walFiler);
+        BinaryRowWriter binaryRowWriter = new BinaryRowWriter(walFiler, new DirectByteBufferPool(64 * 1024, 16));
 
         ExecutorService executors = Executors.newFixedThreadPool(9);
         AtomicBoolean running = new AtomicBoolean(true);
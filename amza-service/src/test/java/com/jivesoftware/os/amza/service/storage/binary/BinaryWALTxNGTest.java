@@ -0,0 +1,259 @@
+package com.jivesoftware.os.amza.service.storage.binary;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.io.Files;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.jivesoftware.os.amza.api.AmzaInterner;
+import com.jivesoftware.os.amza.api.IoStats;
+import com.jivesoftware.os.amza.api.filer.UIO;
+import com.jivesoftware.os.amza.api.partition.PartitionName;
+import com.jivesoftware.os.amza.api.partition.VersionedPartitionName;
+import com.jivesoftware.os.amza.api.stream.RowType;
+import com.jivesoftware.os.amza.api.wal.MemoryWALIndex;
+import com.jivesoftware.os.amza.api.wal.MemoryWALIndexProvider;
+import com.jivesoftware.os.amza.api.wal.MemoryWALUpdates;
+import com.jivesoftware.os.amza.api.wal.WALCompactionStats;
+import com.jivesoftware.os.amza.api.wal.WALRow;
+import com.jivesoftware.os.amza.service.SickPartitions;
+import com.jivesoftware.os.amza.service.filer.DirectByteBufferPool;
+import com.jivesoftware.os.amza.service.stats.AmzaStats;
+import com.jivesoftware.os.amza.service.storage.WALStorage;
+import com.jivesoftware.os.jive.utils.ordered.id.ConstantWriterIdProvider;
+import com.jivesoftware.os.jive.utils.ordered.id.OrderIdProviderImpl;
+import java.io.File;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ *
+ */
+public class BinaryWALTxNGTest {
+
+    private static final long SEGMENT_SIZE_IN_BYTES = 1_024;
+
+    private final BinaryPrimaryRowMarshaller primaryRowMarshaller = new BinaryPrimaryRowMarshaller();
+    private final BinaryHighwaterRowMarshaller highwaterRowMarshaller = new BinaryHighwaterRowMarshaller(new AmzaInterner());
+    private final VersionedPartitionName versionedPartitionName = new VersionedPartitionName(
+        new PartitionName(false, "ring".getBytes(), "booya".getBytes()),
+        VersionedPartitionName.STATIC_VERSION);
+
+    private final IoStats ioStats = new IoStats();
+    private final OrderIdProviderImpl idProvider = new OrderIdProviderImpl(new ConstantWriterIdProvider(1));
+    private File walDir;
+    private BinaryWALTx binaryWALTx;
+    private WALStorage<MemoryWALIndex> walStorage;
+
+    @BeforeMethod
+    public void setUp() throws Exception {
+        walDir = Files.createTempDir();
+    }
+
+    @Test
+    public void testSkipsBelowMinReclaimableRatio() throws Exception {
+        open(new WALCompactionPolicy(null, SEGMENT_SIZE_IN_BYTES, 0.5d, 60_000));
+        write(0, 100);
+        long length = binaryWALTx.length();
+
+        CountingCompactionStats stats = new CountingCompactionStats();
+        Assert.assertNull(compactTombstone(stats, false));
+        Assert.assertEquals(stats.count("compact-skipped"), 1);
+        Assert.assertTrue(stats.count("analyze-segment") > 1);
+        Assert.assertEquals(stats.count("compact-segment"), 0);
+        Assert.assertEquals(binaryWALTx.length(), length);
+    }
+
+    @Test
+    public void testSystemRowsAreNotReclaimable() throws Exception {
+        // a leap every update, which compaction writes out again
+        open(new WALCompactionPolicy(null, SEGMENT_SIZE_IN_BYTES, 0.1d, 60_000), 1);
+        for (int i = 0; i < 200; i++) {
+            write(i, 1);
+        }
+
+        CountingCompactionStats stats = new CountingCompactionStats();
+        Assert.assertNull(compactTombstone(stats, false));
+        Assert.assertEquals(stats.count("compact-skipped"), 1);
+        Assert.assertEquals(stats.count("compact-segment"), 0);
+    }
+
+    @Test
+    public void testCompactsAboveMinReclaimableRatio() throws Exception {
+        open(new WALCompactionPolicy(null, SEGMENT_SIZE_IN_BYTES, 0.5d, 60_000));
+        for (int i = 0; i < 10; i++) {
+            write(0, 10);
+        }
+        long length = binaryWALTx.length();
+
+        CountingCompactionStats stats = new CountingCompactionStats();
+        Assert.assertNotNull(compactTombstone(stats, false));
+        Assert.assertEquals(stats.count("compact-skipped"), 0);
+        Assert.assertTrue(binaryWALTx.length() < length);
+        assertReadable(0, 10);
+    }
+
+    @Test
+    public void testForceBypassesSkip() throws Exception {
+        open(new WALCompactionPolicy(null, SEGMENT_SIZE_IN_BYTES, 0.5d, 60_000));
+        write(0, 100);
+
+        CountingCompactionStats stats = new CountingCompactionStats();
+        Assert.assertNull(compactTombstone(stats, false));
+        Assert.assertEquals(stats.count("compact-skipped"), 1);
+
+        stats = new CountingCompactionStats();
+        Assert.assertNotNull(compactTombstone(stats, true));
+        Assert.assertEquals(stats.count("compact-skipped"), 0);
+        Assert.assertEquals(stats.count("analyze-segment"), 0);
+        Assert.assertTrue(stats.count("compact-segment") > 0);
+        assertReadable(0, 100);
+    }
+
+    @Test
+    public void testSkippedWALIsNotReanalyzedUntilItGrowsBySegment() throws Exception {
+        open(new WALCompactionPolicy(null, SEGMENT_SIZE_IN_BYTES, 0.5d, 60_000));
+        write(0, 100);
+
+        CountingCompactionStats stats = new CountingCompactionStats();
+        Assert.assertNull(compactTombstone(stats, false));
+        Assert.assertTrue(stats.count("analyze-segment") > 0);
+
+        stats = new CountingCompactionStats();
+        Assert.assertNull(compactTombstone(stats, false));
+        Assert.assertEquals(stats.count("compact-skipped"), 1);
+        Assert.assertEquals(stats.count("analyze-segment"), 0);
+
+        write(100, 100);
+        stats = new CountingCompactionStats();
+        Assert.assertNull(compactTombstone(stats, false));
+        Assert.assertTrue(stats.count("analyze-segment") > 0);
+    }
+
+    @Test
+    public void testSkippedWALIsReanalyzedAfterMillis() throws Exception {
+        open(new WALCompactionPolicy(null, SEGMENT_SIZE_IN_BYTES, 0.5d, 100));
+        write(0, 100);
+
+        CountingCompactionStats stats = new CountingCompactionStats();
+        Assert.assertNull(compactTombstone(stats, false));
+
+        stats = new CountingCompactionStats();
+        Assert.assertNull(compactTombstone(stats, false));
+        Assert.assertEquals(stats.count("analyze-segment"), 0);
+
+        Thread.sleep(200);
+        stats = new CountingCompactionStats();
+        Assert.assertNull(compactTombstone(stats, false));
+        Assert.assertTrue(stats.count("analyze-segment") > 0);
+    }
+
+    @Test
+    public void testCompactionLockReleasedBetweenSegments() throws Exception {
+        AtomicInteger throttled = new AtomicInteger();
+        AtomicInteger throttledUnderLock = new AtomicInteger();
+        open(new WALCompactionPolicy(null, SEGMENT_SIZE_IN_BYTES, 0.5d, 60_000) {
+            @Override
+            public void throttle(long bytes) {
+                throttled.incrementAndGet();
+                if (binaryWALTx.isCompactionLockHeld()) {
+                    throttledUnderLock.incrementAndGet();
+                }
+            }
+        });
+        for (int i = 0; i < 10; i++) {
+            write(0, 10);
+        }
+
+        Assert.assertNotNull(compactTombstone(new CountingCompactionStats(), false));
+        Assert.assertTrue(throttled.get() > 2, "expected several segments");
+        Assert.assertEquals(throttledUnderLock.get(), 0);
+        Assert.assertFalse(binaryWALTx.isCompactionLockHeld());
+    }
+
+    private void open(WALCompactionPolicy compactionPolicy) throws Exception {
+        open(compactionPolicy, 4_096);
+    }
+
+    private void open(WALCompactionPolicy compactionPolicy, int updatesBetweenLeaps) throws Exception {
+        RowIOProvider rowIOProvider = new BinaryRowIOProvider(4_096, 64, false, new DirectByteBufferPool(64 * 1024, 16), 64);
+        binaryWALTx = new BinaryWALTx("booya", rowIOProvider, primaryRowMarshaller, updatesBetweenLeaps, 64, compactionPolicy);
+        walStorage = new WALStorage<>(new AmzaStats(),
+            versionedPartitionName,
+            idProvider,
+            primaryRowMarshaller,
+            highwaterRowMarshaller,
+            binaryWALTx,
+            new MemoryWALIndexProvider("memory"),
+            new SickPartitions(),
+            false,
+            2,
+            0.01d,
+            MoreExecutors.directExecutor());
+        walStorage.load(ioStats, walDir, -1, -1, false, false, -1, 0);
+    }
+
+    private void write(int start, int count) throws Exception {
+        List<WALRow> updates = Lists.newArrayList();
+        byte[] prefix = UIO.intBytes(-1);
+        for (int i = start; i < start + count; i++) {
+            long timestampAndVersion = idProvider.nextId();
+            updates.add(new WALRow(RowType.primary, prefix, UIO.intBytes(i), UIO.longBytes(timestampAndVersion), timestampAndVersion, false,
+                timestampAndVersion));
+        }
+        walStorage.update(ioStats, true, RowType.primary, -1, false, prefix, new MemoryWALUpdates(updates, null));
+    }
+
+    private void assertReadable(int start, int count) throws Exception {
+        byte[] prefix = UIO.intBytes(-1);
+        for (int i = start; i < start + count; i++) {
+            Assert.assertNotNull(walStorage.getTimestampedValue(prefix, UIO.intBytes(i)), "missing key:" + i);
+        }
+    }
+
+    private Long compactTombstone(WALCompactionStats stats, boolean force) throws Exception {
+        long sizeAfterCompaction = walStorage.compactTombstone(ioStats, stats, walDir, walDir, RowType.primary,
+            0, 0, -1, -1, -1, -1, 0, force, false,
+            transitionToCompacted -> transitionToCompacted.tx(() -> null));
+        return sizeAfterCompaction > 0 ? sizeAfterCompaction : null;
+    }
+
+    private static class CountingCompactionStats implements WALCompactionStats {
+
+        private final Map<String, Long> counts = Maps.newConcurrentMap();
+        private final Map<String, Long> timings = Maps.newConcurrentMap();
+
+        long count(String name) {
+            return counts.getOrDefault(name, 0L);
+        }
+
+        @Override
+        public Set<Map.Entry<String, Long>> getTimings() {
+            return timings.entrySet();
+        }
+
+        @Override
+        public Set<Map.Entry<String, Long>> getCounts() {
+            return counts.entrySet();
+        }
+
+        @Override
+        public void add(String name, long count) {
+            counts.merge(name, count, Long::sum);
+        }
+
+        @Override
+        public void start(String name) {
+            timings.put(name, System.currentTimeMillis());
+        }
+
+        @Override
+        public void stop(String name) {
+            timings.computeIfPresent(name, (key, started) -> System.currentTimeMillis() - started);
+        }
+    }
+}
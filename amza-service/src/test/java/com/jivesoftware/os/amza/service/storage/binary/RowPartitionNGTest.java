@@ -2,6 +2,7 @@ package com.jivesoftware.os.amza.service.storage.binary;
 
 import com.google.common.collect.Lists;
 import com.google.common.io.Files;
+import com.google.common.util.concurrent.MoreExecutors;
 import com.jivesoftware.os.amza.api.AmzaInterner;
 import com.jivesoftware.os.amza.api.TimestampedValue;
 import com.jivesoftware.os.amza.api.filer.UIO;
@@ -15,6 +16,7 @@ import com.jivesoftware.os.amza.api.wal.WALIndexProvider;
 import com.jivesoftware.os.amza.api.wal.WALKey;
 import com.jivesoftware.os.amza.api.wal.WALRow;
 import com.jivesoftware.os.amza.service.SickPartitions;
+import com.jivesoftware.os.amza.service.filer.DirectByteBufferPool;
 import com.jivesoftware.os.amza.service.filer.HeapByteBufferFactory;
 import com.jivesoftware.os.amza.service.stats.AmzaStats;
 import com.jivesoftware.os.amza.service.stats.AmzaStats.CompactionStats;
@@ -45,7 +47,7 @@ public class RowPartitionNGTest {
         AmzaStats amzaStats = new AmzaStats();
         File walDir = Files.createTempDir();
         IoStats ioStats = new IoStats();
-        RowIOProvider binaryRowIOProvider = new BinaryRowIOProvider(4096, 64, false);
+        RowIOProvider binaryRowIOProvider = new BinaryRowIOProvider(4096, 64, false, new DirectByteBufferPool(64 * 1024, 16), 64);
 
         final WALIndexProvider<MemoryWALIndex> indexProvider = new MemoryWALIndexProvider("memory");
         VersionedPartitionName partitionName = new VersionedPartitionName(new PartitionName(false, "ring".getBytes(), "booya".getBytes()),
@@ -64,7 +66,9 @@ public class RowPartitionNGTest {
             indexProvider,
             new SickPartitions(),
             false,
-            2);
+            2,
+            0.01d,
+            MoreExecutors.directExecutor());
 
         indexedWAL.load(ioStats, walDir, -1, -1, false, false, -1, 0);
 
@@ -74,7 +78,7 @@ public class RowPartitionNGTest {
         compact.scheduleAtFixedRate(() -> {
             CompactionStats compactionStats = amzaStats.beginCompaction(AmzaStats.CompactionFamily.tombstone, walDir.getName());
             try {
-                indexedWAL.compactTombstone(ioStats, compactionStats, walDir, walDir, RowType.primary, 0, 0, Long.MAX_VALUE, Long.MAX_VALUE, -1, -1, 0, false,
+                indexedWAL.compactTombstone(ioStats, compactionStats, walDir, walDir, RowType.primary, 0, 0, Long.MAX_VALUE, Long.MAX_VALUE, -1, -1, 0, true, false,
                     (transitionToCompacted) -> transitionToCompacted.tx(() -> {
                         return null;
                     }));
@@ -139,7 +143,7 @@ public class RowPartitionNGTest {
         File walDir = Files.createTempDir();
         IoStats ioStats = new IoStats();
 
-        RowIOProvider binaryRowIOProvider = new BinaryRowIOProvider(4096, 64, false);
+        RowIOProvider binaryRowIOProvider = new BinaryRowIOProvider(4096, 64, false, new DirectByteBufferPool(64 * 1024, 16), 64);
 
         WALIndexProvider<MemoryWALIndex> indexProvider = new MemoryWALIndexProvider("memory");
         VersionedPartitionName versionedPartitionName = new VersionedPartitionName(new PartitionName(false, "ring".getBytes(), "booya".getBytes()),
@@ -155,7 +159,7 @@ public class RowPartitionNGTest {
     public void memoryBackedEventualConsistencyTest() throws Exception {
         IoStats ioStats = new IoStats();
 
-        RowIOProvider binaryRowIOProvider = new MemoryBackedRowIOProvider(4_096, 4_096, 4_096, 64, new HeapByteBufferFactory());
+        RowIOProvider binaryRowIOProvider = new MemoryBackedRowIOProvider(4_096, 4_096, 4_096, 64, new HeapByteBufferFactory(), new DirectByteBufferPool(64 * 1024, 16), 64);
 
         WALIndexProvider<MemoryWALIndex> indexProvider = new MemoryWALIndexProvider("memory");
         VersionedPartitionName versionedPartitionName = new VersionedPartitionName(new PartitionName(false, "ring".getBytes(), "booya".getBytes()),
@@ -182,7 +186,9 @@ public class RowPartitionNGTest {
             walIndexProvider,
             new SickPartitions(),
             false,
-            2);
+            2,
+            0.01d,
+            MoreExecutors.directExecutor());
 
         indexedWAL.load(ioStats, baseKey, -1, -1, false, false, -1, 0);
         WALKey walKey = k(1);
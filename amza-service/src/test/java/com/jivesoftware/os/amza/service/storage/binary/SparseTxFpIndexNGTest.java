@@ -0,0 +1,52 @@
+package com.jivesoftware.os.amza.service.storage.binary;
+
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+
+/**
+ *
+ */
+public class SparseTxFpIndexNGTest {
+
+    @Test
+    public void testBracket() {
+        SparseTxFpIndex index = new SparseTxFpIndex(8);
+        assertEquals(index.bracket(10), new long[] { 0, -1 });
+
+        index.add(100, 1_000);
+        index.add(200, 2_000);
+        index.add(300, 3_000);
+
+        assertEquals(index.bracket(50), new long[] { 0, 1_000 });
+        assertEquals(index.bracket(100), new long[] { 0, 1_000 });
+        assertEquals(index.bracket(101), new long[] { 1_000, 2_000 });
+        assertEquals(index.bracket(300), new long[] { 2_000, 3_000 });
+        assertEquals(index.bracket(301), new long[] { 3_000, -1 });
+    }
+
+    @Test
+    public void testEvictionKeepsEnds() {
+        SparseTxFpIndex index = new SparseTxFpIndex(16);
+        for (long i = 1; i <= 1_000; i++) {
+            index.add(i * 10, i * 100);
+        }
+        assertEquals(index.size(), 16);
+        assertEquals(index.bracket(5), new long[] { 0, 100 });
+        assertEquals(index.bracket(10_001), new long[] { 100_000, -1 });
+
+        long[] bracket = index.bracket(5_000);
+        assertEquals(bracket[0] < 50_000, true);
+        assertEquals(bracket[1] >= 50_000, true);
+    }
+
+    @Test
+    public void testDuplicateFpKeepsHighestTxId() {
+        SparseTxFpIndex index = new SparseTxFpIndex(8);
+        index.add(100, 1_000);
+        index.add(50, 1_000);
+        assertEquals(index.size(), 1);
+        assertEquals(index.bracket(100), new long[] { 0, 1_000 });
+        assertEquals(index.bracket(101), new long[] { 1_000, -1 });
+    }
+}
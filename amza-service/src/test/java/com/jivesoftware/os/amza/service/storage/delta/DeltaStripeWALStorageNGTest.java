@@ -29,10 +29,12 @@ import com.jivesoftware.os.amza.service.AmzaRingStoreReader;
 import com.jivesoftware.os.amza.service.IndexedWALStorageProvider;
 import com.jivesoftware.os.amza.service.SickPartitions;
 import com.jivesoftware.os.amza.service.WALIndexProviderRegistry;
+import com.jivesoftware.os.amza.service.filer.DirectByteBufferPool;
 import com.jivesoftware.os.amza.service.filer.HeapByteBufferFactory;
 import com.jivesoftware.os.amza.service.replication.AsyncStripeFlusher;
 import com.jivesoftware.os.amza.service.replication.CurrentVersionProvider;
 import com.jivesoftware.os.amza.service.replication.PartitionBackedHighwaterStorage;
+import com.jivesoftware.os.amza.service.replication.StripeDurabilityMode;
 import com.jivesoftware.os.amza.service.stats.AmzaStats;
 import com.jivesoftware.os.amza.service.stats.AmzaStats.CompactionStats;
 import com.jivesoftware.os.amza.service.storage.JacksonPartitionPropertyMarshaller;
@@ -46,6 +48,7 @@ import com.jivesoftware.os.amza.service.storage.binary.BinaryPrimaryRowMarshalle
 import com.jivesoftware.os.amza.service.storage.binary.BinaryRowIOProvider;
 import com.jivesoftware.os.amza.service.storage.binary.MemoryBackedRowIOProvider;
 import com.jivesoftware.os.amza.service.storage.binary.RowIOProvider;
+import com.jivesoftware.os.amza.service.storage.binary.WALCompactionPolicy;
 import com.jivesoftware.os.amza.service.take.HighwaterStorage;
 import com.jivesoftware.os.jive.utils.collections.bah.ConcurrentBAHash;
 import com.jivesoftware.os.jive.utils.ordered.id.ConstantWriterIdProvider;
@@ -121,11 +124,15 @@ public class DeltaStripeWALStorageNGTest {
             1_024 * 1_024,
             4_096,
             64,
-            new HeapByteBufferFactory());
+            new HeapByteBufferFactory(),
+            new DirectByteBufferPool(64 * 1024, 16),
+            64);
         BinaryRowIOProvider persistentRowIOProvider = new BinaryRowIOProvider(
             4_096,
             64,
-            false);
+            false,
+            new DirectByteBufferPool(64 * 1024, 16),
+            64);
         walIndexProviderRegistry = new WALIndexProviderRegistry(ephemeralRowIOProvider, persistentRowIOProvider);
 
         amzaSystemStats = new AmzaStats();
@@ -139,7 +146,10 @@ public class DeltaStripeWALStorageNGTest {
             ids,
             new SickPartitions(),
             -1,
-            TimeUnit.DAYS.toMillis(1));
+            TimeUnit.DAYS.toMillis(1),
+            WALCompactionPolicy.NONE,
+            0.01d,
+            Executors.newSingleThreadExecutor());
 
         orderIdProvider = new OrderIdProviderImpl(new ConstantWriterIdProvider(1), new SnowflakeIdPacker(),
             new JiveEpochTimestampProvider());
@@ -173,6 +183,10 @@ public class DeltaStripeWALStorageNGTest {
 
         AsyncStripeFlusher systemFlusher = new AsyncStripeFlusher(-1,
             1_000,
+            StripeDurabilityMode.every_commit,
+            10,
+            1_024 * 1_024,
+            null,
             null);
 
         systemWALStorage = new SystemWALStorage(amzaSystemStats,
@@ -233,7 +247,7 @@ public class DeltaStripeWALStorageNGTest {
 
         File tmp = Files.createTempDir();
         workingDirectories = new File[] { tmp };
-        RowIOProvider ioProvider = new BinaryRowIOProvider(4_096, 64, false);
+        RowIOProvider ioProvider = new BinaryRowIOProvider(4_096, 64, false, new DirectByteBufferPool(64 * 1024, 16), 64);
         deltaWALFactory = new DeltaWALFactory(ids, tmp, ioProvider, primaryRowMarshaller, highwaterRowMarshaller, 100);
         deltaStripeWALStorage = loadDeltaStripe(ioStats);
 
@@ -259,6 +273,8 @@ public class DeltaStripeWALStorageNGTest {
             ringStoreReader,
             highwaterStorage, deltaWALFactory,
             8,
+            DeltaPointerIndexType.heap,
+            4_096,
             true,
             walIndexProviderRegistry,
             20_000,
@@ -336,14 +352,14 @@ public class DeltaStripeWALStorageNGTest {
         File baseKey = indexedWALStorageProvider.baseKey(versionedPartitionName1, 0);
         CompactionStats compactionStats = amzaStats.beginCompaction(AmzaStats.CompactionFamily.tombstone, "foo");
 
-        storage1.compactTombstone(ioStats, compactionStats, baseKey, baseKey, testRowType1, 10, 10, Long.MAX_VALUE, Long.MAX_VALUE, -1, -1, 0, true,
+        storage1.compactTombstone(ioStats, compactionStats, baseKey, baseKey, testRowType1, 10, 10, Long.MAX_VALUE, Long.MAX_VALUE, -1, -1, 0, true, true,
             (transitionToCompacted) -> transitionToCompacted.tx(() -> {
                 return null;
             }));
         compactionStats.finished();
 
         compactionStats = amzaStats.beginCompaction(AmzaStats.CompactionFamily.tombstone, "bar");
-        storage1.compactTombstone(ioStats, compactionStats, baseKey, baseKey, testRowType1, 10, 10, Long.MAX_VALUE, Long.MAX_VALUE, -1, -1, 0, true,
+        storage1.compactTombstone(ioStats, compactionStats, baseKey, baseKey, testRowType1, 10, 10, Long.MAX_VALUE, Long.MAX_VALUE, -1, -1, 0, true, true,
             (transitionToCompacted) -> transitionToCompacted.tx(() -> {
                 return null;
             })); // Bla
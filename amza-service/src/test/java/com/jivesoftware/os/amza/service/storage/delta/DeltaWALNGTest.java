@@ -1,15 +1,19 @@
 package com.jivesoftware.os.amza.service.storage.delta;
 
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 import com.google.common.io.Files;
 import com.jivesoftware.os.amza.api.AmzaInterner;
 import com.jivesoftware.os.amza.api.partition.PartitionName;
 import com.jivesoftware.os.amza.api.partition.VersionedPartitionName;
 import com.jivesoftware.os.amza.api.stream.RowType;
 import com.jivesoftware.os.amza.api.wal.PrimaryRowMarshaller;
+import com.jivesoftware.os.amza.api.wal.WALHighwater;
 import com.jivesoftware.os.amza.api.wal.WALKey;
 import com.jivesoftware.os.amza.api.wal.WALValue;
 import com.jivesoftware.os.amza.api.IoStats;
+import com.jivesoftware.os.amza.service.filer.DirectByteBufferPool;
 import com.jivesoftware.os.amza.service.storage.HighwaterRowMarshaller;
 import com.jivesoftware.os.amza.service.storage.binary.BinaryHighwaterRowMarshaller;
 import com.jivesoftware.os.amza.service.storage.binary.BinaryPrimaryRowMarshaller;
@@ -17,7 +21,15 @@ import com.jivesoftware.os.amza.service.storage.binary.BinaryRowIOProvider;
 import com.jivesoftware.os.jive.utils.ordered.id.ConstantWriterIdProvider;
 import com.jivesoftware.os.jive.utils.ordered.id.OrderIdProviderImpl;
 import java.io.File;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import org.testng.Assert;
 import org.testng.annotations.Test;
 
@@ -37,7 +49,7 @@ public class DeltaWALNGTest {
         String[] workingDirs = new String[] { tmp.getAbsolutePath() };
 
         IoStats ioStats = new IoStats();
-        BinaryRowIOProvider binaryRowIOProvider = new BinaryRowIOProvider(4_096, 64, false);
+        BinaryRowIOProvider binaryRowIOProvider = new BinaryRowIOProvider(4_096, 64, false, new DirectByteBufferPool(64 * 1024, 16), 64);
 
         OrderIdProviderImpl ids = new OrderIdProviderImpl(new ConstantWriterIdProvider(1));
         DeltaWALFactory deltaWALFactory = new DeltaWALFactory(ids, tmp, binaryRowIOProvider, primaryRowMarshaller, highwaterRowMarshaller, 1);
@@ -112,4 +124,125 @@ public class DeltaWALNGTest {
 
         }
     }
+
+    @Test
+    public void testConcurrentGroupCommit() throws Exception {
+        AmzaInterner amzaInterner = new AmzaInterner();
+        File tmp = Files.createTempDir();
+        PrimaryRowMarshaller primaryRowMarshaller = new BinaryPrimaryRowMarshaller();
+        HighwaterRowMarshaller<byte[]> highwaterRowMarshaller = new BinaryHighwaterRowMarshaller(amzaInterner);
+
+        // holds the first group commit mid write so the other writers are forced to queue up behind it
+        CountDownLatch firstWriteStarted = new CountDownLatch(1);
+        CountDownLatch releaseFirstWrite = new CountDownLatch(1);
+        AtomicBoolean first = new AtomicBoolean(true);
+        HighwaterRowMarshaller<byte[]> gatedHighwaterRowMarshaller = new HighwaterRowMarshaller<byte[]>() {
+            @Override
+            public byte[] toBytes(WALHighwater highwater) throws Exception {
+                if (first.compareAndSet(true, false)) {
+                    firstWriteStarted.countDown();
+                    releaseFirstWrite.await();
+                }
+                return highwaterRowMarshaller.toBytes(highwater);
+            }
+
+            @Override
+            public int sizeInBytes(WALHighwater hints) {
+                return highwaterRowMarshaller.sizeInBytes(hints);
+            }
+
+            @Override
+            public WALHighwater fromBytes(byte[] row) throws Exception {
+                return highwaterRowMarshaller.fromBytes(row);
+            }
+        };
+
+        IoStats ioStats = new IoStats();
+        BinaryRowIOProvider binaryRowIOProvider = new BinaryRowIOProvider(4_096, 64, false, new DirectByteBufferPool(64 * 1024, 16), 64);
+
+        OrderIdProviderImpl ids = new OrderIdProviderImpl(new ConstantWriterIdProvider(1));
+        DeltaWALFactory deltaWALFactory = new DeltaWALFactory(ids, tmp, binaryRowIOProvider, primaryRowMarshaller, gatedHighwaterRowMarshaller, 1);
+        DeltaWAL deltaWAL = deltaWALFactory.create(ioStats, -1);
+
+        int numWriters = 8;
+        int numCommits = 100;
+        ExecutorService executorService = Executors.newFixedThreadPool(numWriters);
+        List<Future<List<DeltaWAL.DeltaWALApplied>>> futures = Lists.newArrayList();
+        for (int w = 0; w < numWriters; w++) {
+            if (w == 1) {
+                Assert.assertTrue(firstWriteStarted.await(10, TimeUnit.SECONDS));
+            }
+            VersionedPartitionName versionedPartitionName = new VersionedPartitionName(
+                new PartitionName(false, "test".getBytes(), ("test" + w).getBytes()), VersionedPartitionName.STATIC_VERSION);
+            futures.add(executorService.submit(() -> {
+                List<DeltaWAL.DeltaWALApplied> applied = Lists.newArrayList();
+                for (int c = 0; c < numCommits; c++) {
+                    Map<WALKey, WALValue> apply = Maps.newLinkedHashMap();
+                    for (int i = 0; i < 3; i++) {
+                        byte[] bytes = (c + "k" + i).getBytes();
+                        long timestampAndVersion = ids.nextId();
+                        apply.put(new WALKey(null, bytes), new WALValue(RowType.primary, bytes, timestampAndVersion, false, timestampAndVersion));
+                    }
+                    applied.add(deltaWAL.update(ioStats, RowType.primary, versionedPartitionName, apply, null));
+                }
+                return applied;
+            }));
+        }
+
+        long waitUntil = System.currentTimeMillis() + 10_000;
+        while (deltaWAL.pendingTxCount() < numWriters - 1 && System.currentTimeMillis() < waitUntil) {
+            Thread.sleep(1);
+        }
+        Assert.assertEquals(deltaWAL.pendingTxCount(), numWriters - 1);
+        releaseFirstWrite.countDown();
+
+        Set<Long> txIds = Sets.newHashSet();
+        for (Future<List<DeltaWAL.DeltaWALApplied>> future : futures) {
+            long lastTxId = -1;
+            for (DeltaWAL.DeltaWALApplied applied : future.get()) {
+                Assert.assertTrue(applied.txId > lastTxId);
+                Assert.assertTrue(txIds.add(applied.txId));
+                lastTxId = applied.txId;
+                for (int i = 0; i < applied.fps.length; i++) {
+                    DeltaWAL.KeyValueHighwater kvh = applied.keyValueHighwaters[i];
+                    WALValue hydrated = deltaWAL.hydrate(applied.fps[i]);
+                    Assert.assertEquals(hydrated.getValue(), kvh.value);
+                    Assert.assertEquals(hydrated.getTimestampId(), kvh.valueTimestamp);
+                }
+            }
+        }
+        executorService.shutdownNow();
+
+        Assert.assertEquals(txIds.size(), numWriters * numCommits);
+        Assert.assertEquals(deltaWAL.getGroupCommitTxs(), numWriters * numCommits);
+        // the writers queued behind the held write must have shared a single group commit
+        Assert.assertTrue(deltaWAL.getGroupCommits() <= numWriters * numCommits - (numWriters - 2),
+            "groupCommits:" + deltaWAL.getGroupCommits() + " groupCommitTxs:" + deltaWAL.getGroupCommitTxs());
+        Assert.assertTrue(deltaWAL.getGroupCommitTxs() > deltaWAL.getGroupCommits());
+    }
+
+    @Test
+    public void testAwaitDerefencedWakesOnRelease() throws Exception {
+        AmzaInterner amzaInterner = new AmzaInterner();
+        File tmp = Files.createTempDir();
+        IoStats ioStats = new IoStats();
+        OrderIdProviderImpl ids = new OrderIdProviderImpl(new ConstantWriterIdProvider(1));
+        DeltaWALFactory deltaWALFactory = new DeltaWALFactory(ids, tmp, new BinaryRowIOProvider(4_096, 64, false, new DirectByteBufferPool(64 * 1024, 16), 64), new BinaryPrimaryRowMarshaller(),
+            new BinaryHighwaterRowMarshaller(amzaInterner), 1);
+        DeltaWAL deltaWAL = deltaWALFactory.create(ioStats, -1);
+
+        deltaWAL.acquire();
+        deltaWAL.acquire();
+        ExecutorService executorService = Executors.newSingleThreadExecutor();
+        executorService.submit(() -> {
+            deltaWAL.release();
+            Thread.sleep(100);
+            deltaWAL.release();
+            return null;
+        });
+
+        long awaitedMillis = deltaWAL.awaitDerefenced();
+        executorService.shutdownNow();
+        Assert.assertTrue(awaitedMillis < 1_000, "Awaited " + awaitedMillis);
+    }
 }
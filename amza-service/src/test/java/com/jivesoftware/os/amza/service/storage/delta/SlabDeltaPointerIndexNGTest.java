@@ -0,0 +1,73 @@
+package com.jivesoftware.os.amza.service.storage.delta;
+
+import com.jivesoftware.os.amza.api.wal.WALKey;
+import com.jivesoftware.os.amza.api.wal.WALPointer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+
+/**
+ *
+ */
+public class SlabDeltaPointerIndexNGTest {
+
+    @Test
+    public void testMatchesHeapIndex() {
+        Random random = new Random(1234);
+        DeltaPointerIndex heap = new HeapDeltaPointerIndex();
+        DeltaPointerIndex slab = new SlabDeltaPointerIndex(16);
+
+        for (int i = 0; i < 2_000; i++) {
+            byte[] prefix = random.nextBoolean() ? null : new byte[] { (byte) random.nextInt(4) };
+            byte[] walKey = WALKey.compose(prefix, new byte[] { (byte) random.nextInt(32), (byte) random.nextInt(256) });
+            boolean hasValue = random.nextBoolean();
+            WALPointer pointer = new WALPointer(i, i, random.nextBoolean(), i, hasValue, hasValue ? new byte[] { (byte) i } : null);
+            heap.put(walKey, pointer);
+            slab.put(walKey, pointer);
+        }
+
+        assertEquals(slab.size(), heap.size());
+        assertEntries(slab.iterator(null, null), heap.iterator(null, null));
+
+        byte[] from = WALKey.compose(null, new byte[] { 4 });
+        byte[] to = WALKey.compose(new byte[] { 2 }, new byte[] { 7 });
+        assertEntries(slab.iterator(from, to), heap.iterator(from, to));
+        assertEntries(slab.iterator(from, null), heap.iterator(from, null));
+        assertEntries(slab.iterator(null, to), heap.iterator(null, to));
+
+        Iterator<Map.Entry<byte[], WALPointer>> iterator = heap.iterator(null, null);
+        while (iterator.hasNext()) {
+            Map.Entry<byte[], WALPointer> entry = iterator.next();
+            assertEquals(slab.get(entry.getKey()), entry.getValue());
+        }
+        assertNull(slab.get(WALKey.compose(new byte[] { 9 }, new byte[] { 1 })));
+    }
+
+    private static void assertEntries(Iterator<Map.Entry<byte[], WALPointer>> actual, Iterator<Map.Entry<byte[], WALPointer>> expected) {
+        List<byte[]> actualKeys = new ArrayList<>();
+        List<WALPointer> actualPointers = new ArrayList<>();
+        while (actual.hasNext()) {
+            Map.Entry<byte[], WALPointer> entry = actual.next();
+            actualKeys.add(entry.getKey());
+            actualPointers.add(entry.getValue());
+        }
+        List<byte[]> expectedKeys = new ArrayList<>();
+        List<WALPointer> expectedPointers = new ArrayList<>();
+        while (expected.hasNext()) {
+            Map.Entry<byte[], WALPointer> entry = expected.next();
+            expectedKeys.add(entry.getKey());
+            expectedPointers.add(entry.getValue());
+        }
+        assertEquals(actualKeys.size(), expectedKeys.size());
+        for (int i = 0; i < expectedKeys.size(); i++) {
+            assertEquals(actualKeys.get(i), expectedKeys.get(i));
+        }
+        assertEquals(actualPointers, expectedPointers);
+    }
+}
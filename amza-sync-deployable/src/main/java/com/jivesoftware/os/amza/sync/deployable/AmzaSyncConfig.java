@@ -2,6 +2,7 @@ package com.jivesoftware.os.amza.sync.deployable;
 
 import org.merlin.config.Config;
 import org.merlin.config.defaults.BooleanDefault;
+import org.merlin.config.defaults.DoubleDefault;
 import org.merlin.config.defaults.IntDefault;
 import org.merlin.config.defaults.LongDefault;
 
@@ -33,4 +34,22 @@ public interface AmzaSyncConfig extends Config {
 
     @LongDefault(60_000)
     long getAmzaAwaitLeaderElectionForNMillis();
+
+    @IntDefault(128)
+    int getAmzaHostLatencyWindowSize();
+
+    @IntDefault(16)
+    int getAmzaHostLatencyMinSamples();
+
+    @DoubleDefault(0.99d)
+    double getAmzaHedgePercentile();
+
+    @LongDefault(1)
+    long getAmzaMinHedgeMillis();
+
+    @IntDefault(32)
+    int getAmzaHedgeProbeOneInN();
+
+    @LongDefault(10 * 60_000)
+    long getAmzaHostLatencyExpireAfterMillis();
 }
@@ -28,6 +28,7 @@ import com.jivesoftware.os.amza.api.stream.RowType;
 import com.jivesoftware.os.amza.client.aquarium.AmzaClientAquariumProvider;
 import com.jivesoftware.os.amza.client.collection.AmzaMarshaller;
 import com.jivesoftware.os.amza.client.http.AmzaClientProvider;
+import com.jivesoftware.os.amza.client.http.HostLatencies;
 import com.jivesoftware.os.amza.client.http.HttpPartitionClientFactory;
 import com.jivesoftware.os.amza.client.http.HttpPartitionHostsProvider;
 import com.jivesoftware.os.amza.client.http.RingHostHttpClientProvider;
@@ -157,6 +158,12 @@ public class AmzaSyncMain {
                 new HttpPartitionHostsProvider(amzaClient, tailAtScaleStrategy, mapper),
                 new RingHostHttpClientProvider(amzaClient),
                 deployable.newBoundedExecutor(syncConfig.getAmzaCallerThreadPoolSize(), "amza-client"),
+                new HostLatencies(syncConfig.getAmzaHostLatencyWindowSize(),
+                    syncConfig.getAmzaHostLatencyMinSamples(),
+                    syncConfig.getAmzaHedgePercentile(),
+                    syncConfig.getAmzaMinHedgeMillis(),
+                    syncConfig.getAmzaHedgeProbeOneInN(),
+                    syncConfig.getAmzaHostLatencyExpireAfterMillis()),
                 syncConfig.getAmzaAwaitLeaderElectionForNMillis(),
                 -1,
                 -1);
@@ -18,6 +18,7 @@ import com.jivesoftware.os.amza.api.stream.RowType;
 import com.jivesoftware.os.amza.api.wal.WALHighwater;
 import com.jivesoftware.os.amza.service.AmzaService;
 import com.jivesoftware.os.amza.service.PartitionIsDisposedException;
+import com.jivesoftware.os.amza.service.replication.AmzaAquariumProvider;
 import com.jivesoftware.os.amza.service.replication.PartitionStripeProvider;
 import com.jivesoftware.os.amza.service.ring.AmzaRingReader;
 import com.jivesoftware.os.amza.service.ring.RingTopology;
@@ -411,11 +412,16 @@ public class MetricsPluginRegion implements PageRegion<MetricsPluginRegion.Metri
                         map.put("highwaters", "(requires watch)");
                     }
 
-                    map.put("localState", ImmutableMap.of("online", livelyEndState != null && livelyEndState.isOnline(),
-                        "state", currentState != null ? currentState.name() : "unknown",
-                        "name", new String(amzaService.getRingReader().getRingMember().asAquariumMember().getMember()),
-                        "partitionVersion", versionedPartitionName == null ? "none" : String.valueOf(versionedPartitionName.getPartitionVersion()),
-                        "stripeVersion", versionedAquarium == null ? "none" : String.valueOf(stripeVersion[0])));
+                    long electionLatencyMillis = amzaService.getAquariumProvider().getElectionLatencyMillis(name);
+                    map.put("localState", ImmutableMap.builder()
+                        .put("online", livelyEndState != null && livelyEndState.isOnline())
+                        .put("state", currentState != null ? currentState.name() : "unknown")
+                        .put("name", new String(amzaService.getRingReader().getRingMember().asAquariumMember().getMember()))
+                        .put("partitionVersion",
+                            versionedPartitionName == null ? "none" : String.valueOf(versionedPartitionName.getPartitionVersion()))
+                        .put("stripeVersion", versionedAquarium == null ? "none" : String.valueOf(stripeVersion[0]))
+                        .put("electionLatency", electionLatencyMillis < 0 ? "none" : getDurationBreakdown(electionLatencyMillis))
+                        .build());
 
                     return -1;
                 });
@@ -505,7 +511,19 @@ public class MetricsPluginRegion implements PageRegion<MetricsPluginRegion.Metri
         sb.append("&nbsp;&nbsp;&nbsp;&nbsp;deltaRem1<span class=\"badge\">").append(amzaService.amzaStats.deltaFirstCheckRemoves.longValue()).append("</span>");
         sb.append("&nbsp;&nbsp;&nbsp;&nbsp;deltaRem2<span class=\"badge\">").append(amzaService.amzaStats.deltaSecondCheckRemoves.longValue()).append(
             "</span>");
+        sb.append("&nbsp;&nbsp;&nbsp;&nbsp;deltaAwaitedReaders<span class=\"badge\">").append(amzaService.amzaStats.deltaMergeAwaitedReaders.longValue())
+            .append("</span>");
+        sb.append("&nbsp;&nbsp;&nbsp;&nbsp;deltaAwaitedReadersLag<span class=\"badge\">")
+            .append(getDurationBreakdown(amzaService.amzaStats.deltaMergeAwaitedReadersMillis.longValue())).append("</span>");
         sb.append("&nbsp;&nbsp;&nbsp;&nbsp;baIntern<span class=\"badge\">").append(amzaInterner.size()).append("</span>");
+        long internHits = amzaInterner.hits();
+        long internLookups = internHits + amzaInterner.misses();
+        sb.append("&nbsp;&nbsp;&nbsp;&nbsp;internHitRate<span class=\"badge\">")
+            .append(internLookups == 0 ? "-" : numberFormat.format(internHits * 100d / internLookups) + "%").append("</span>");
+        sb.append("&nbsp;&nbsp;&nbsp;&nbsp;internEvictions<span class=\"badge\">").append(amzaInterner.evictions()).append("</span>");
+        AmzaAquariumProvider aquariumProvider = amzaService.getAquariumProvider();
+        sb.append("&nbsp;&nbsp;&nbsp;&nbsp;electing<span class=\"badge\">").append(aquariumProvider.getElectingCount()).append("</span>");
+        sb.append("&nbsp;&nbsp;&nbsp;&nbsp;stateChangesQueued<span class=\"badge\">").append(aquariumProvider.getSmellsFishyDepth()).append("</span>");
 
         double processCpuLoad = getProcessCpuLoad();
         sb.append(progress("CPU",
@@ -593,6 +611,13 @@ public class MetricsPluginRegion implements PageRegion<MetricsPluginRegion.Metri
             (int) ((amzaStats.backPressure.longValue() / 10000d) * 100), "" + amzaStats.pushBacks.longValue(),
             null, null));
 
+        long keyFilterFalsePositives = amzaStats.keyFilterFalsePositives.longValue();
+        long keyFilterNegatives = amzaStats.keyFilterNegatives.longValue();
+        double keyFilterFalsePositiveRate = (double) keyFilterFalsePositives / Math.max(1, keyFilterFalsePositives + keyFilterNegatives);
+        sb.append(progress("Key Filter False Positives (" + numberFormat.format(keyFilterFalsePositives) + ")",
+            (int) (keyFilterFalsePositiveRate * 100), numberFormat.format(keyFilterNegatives) + " skipped lookups",
+            null, null));
+
         long[] count = amzaStats.deltaStripeMergeLoaded;
         double[] load = amzaStats.deltaStripeLoad;
         long[] mergeCount = amzaStats.deltaStripeMergePending;
@@ -618,6 +643,13 @@ public class MetricsPluginRegion implements PageRegion<MetricsPluginRegion.Metri
             (int) ((tombostoneCompaction / 10d) * 100), " total:" + amzaStats.getTotalCompactions(CompactionFamily.tombstone),
             null, null));
 
+        long compactionBackoffs = amzaStats.compactionBackoffs.longValue();
+        long getLatencyP99Micros = amzaStats.getLatencies.percentileMicros(0.99d);
+        sb.append(progress("Compaction Backoffs (" + numberFormat.format(compactionBackoffs) + ")",
+            (int) ((compactionBackoffs / 100d) * 100),
+            " get p99:" + (getLatencyP99Micros < 0 ? "-" : numberFormat.format(getLatencyP99Micros) + "us"),
+            null, null));
+
         sb.append(progress("Merge Compactions (" + numberFormat.format(mergeCompaction) + ")",
             (int) ((mergeCompaction / 10d) * 100), " total:" + amzaStats.getTotalCompactions(CompactionFamily.merge),
             null, null));